@@ -43,7 +43,12 @@
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 
 import org.apache.commons.io.FileUtils;
@@ -63,21 +68,25 @@
 import de.bluecolored.bluemap.api.gson.MarkerGson;
 import de.bluecolored.bluemap.api.markers.MarkerSet;
 import de.bluecolored.bluemap.common.config.ConfigurationException;
+import de.bluecolored.bluemap.common.config.CoreConfig;
 import de.bluecolored.bluemap.common.config.MapConfig;
 import de.bluecolored.bluemap.common.config.storage.StorageConfig;
 import de.bluecolored.bluemap.common.plugin.Plugin;
 import de.bluecolored.bluemap.common.serverinterface.ServerInterface;
 import de.bluecolored.bluemap.common.serverinterface.ServerWorld;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.MinecraftVersion;
 import de.bluecolored.bluemap.core.debug.StateDumper;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.TileWritePipeline;
 import de.bluecolored.bluemap.core.map.MapSettings.WorldType;
 import de.bluecolored.bluemap.core.mca.MCAWorld;
 import de.bluecolored.bluemap.core.mcr.MCRWorld;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.util.FileHelper;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
 import de.bluecolored.bluemap.core.world.World;
 
 /**
@@ -91,11 +100,14 @@ public class BlueMapService implements Closeable {
 
     private final Map<Path, String> worldIds;
     private final Map<String, Storage> storages;
+    private final Map<String, Object> worldLoadLocks;
 
     private volatile WebFilesManager webFilesManager;
+    private volatile TileWritePipeline tileWritePipeline;
 
     private Map<String, World> worlds;
     private Map<String, BmMap> maps;
+    private SharedMemoryBudget chunkCacheMemoryBudget;
 
     private ResourcePack resourcePack;
 
@@ -113,6 +125,7 @@ public BlueMapService(ServerInterface serverInterface, BlueMapConfigProvider con
 
         this.worldIds = new ConcurrentHashMap<>();
         this.storages = new HashMap<>();
+        this.worldLoadLocks = new ConcurrentHashMap<>();
 
         StateDumper.global().register(this);
     }
@@ -205,26 +218,71 @@ public synchronized Map<String, BmMap> getMaps() throws InterruptedException {
     }
 
     private synchronized void loadWorldsAndMaps() throws InterruptedException {
-        maps = new HashMap<>();
-        worlds = new HashMap<>();
+        maps = new ConcurrentHashMap<>();
+        worlds = new ConcurrentHashMap<>();
+
+        // all worlds share one chunk-cache budget, so the memory-usage doesn't grow with the number of worlds
+        chunkCacheMemoryBudget = new SharedMemoryBudget(configs.getCoreConfig().resolveChunkCacheMemoryBudget());
+
+        try {
+            // the resource-pack and the tile-write-pipeline are shared by all maps, so they are created upfront
+            ResourcePack resourcePack = getResourcePack();
+            TileWritePipeline tileWritePipeline = getTileWritePipeline();
+
+            // load all maps concurrently, maps sharing a world or storage wait for each other on loading it
+            // loading does blocking I/O, so this uses its own threads instead of the shared BlueMap.THREAD_POOL
+            Map<String, MapConfig> mapConfigs = configs.getMapConfigs();
+            ExecutorService mapLoadExecutor = createMapLoadExecutor(mapConfigs.size());
+            List<CompletableFuture<Void>> mapLoaders = new ArrayList<>();
+            for (var entry : mapConfigs.entrySet()) {
+                mapLoaders.add(CompletableFuture.runAsync(() -> {
+                    try {
+                        loadMapConfig(entry.getKey(), entry.getValue(), resourcePack, tileWritePipeline);
+                    } catch (ConfigurationException ex) {
+                        logConfigurationException(ex);
+                    } catch (RuntimeException ex) {
+                        Logger.global.logError("Failed to load map '" + entry.getKey() + "'!", ex);
+                    }
+                }, mapLoadExecutor));
+            }
 
-        for (var entry : configs.getMapConfigs().entrySet()) {
             try {
-                loadMapConfig(entry.getKey(), entry.getValue());
-            } catch (ConfigurationException ex) {
-                Logger.global.logWarning(ex.getFormattedExplanation());
-                Throwable cause = ex.getRootCause();
-                if (cause != null) {
-                    Logger.global.logError("Detailed error:", ex);
-                }
+                CompletableFuture.allOf(mapLoaders.toArray(CompletableFuture[]::new)).get();
+            } catch (ExecutionException ex) {
+                Logger.global.logError("Failed to load maps!", ex.getCause());
+            } finally {
+                mapLoadExecutor.shutdown();
             }
+        } catch (ConfigurationException ex) {
+            logConfigurationException(ex);
         }
 
-        worlds = Collections.unmodifiableMap(worlds);
-        maps = Collections.unmodifiableMap(maps);
+        worlds = Collections.unmodifiableMap(new HashMap<>(worlds));
+        maps = Collections.unmodifiableMap(new HashMap<>(maps));
+    }
+
+    private static ExecutorService createMapLoadExecutor(int mapCount) {
+        int threadCount = Math.max(1, Math.min(mapCount, Runtime.getRuntime().availableProcessors()));
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, "BlueMap-MapLoader-" + threadIndex.getAndIncrement());
+            // use current classloader, this fixes ClassLoading issues with forge
+            thread.setContextClassLoader(BlueMap.class.getClassLoader());
+            thread.setDaemon(true);
+            return thread;
+        });
     }
 
-    private synchronized void loadMapConfig(String id, MapConfig mapConfig) throws ConfigurationException, InterruptedException {
+    private void logConfigurationException(ConfigurationException ex) {
+        Logger.global.logWarning(ex.getFormattedExplanation());
+        Throwable cause = ex.getRootCause();
+        if (cause != null) {
+            Logger.global.logError("Detailed error:", ex);
+        }
+    }
+
+    private void loadMapConfig(String id, MapConfig mapConfig, ResourcePack resourcePack, TileWritePipeline tileWritePipeline) throws ConfigurationException {
         String name = mapConfig.getName();
         if (name == null) name = id;
 
@@ -252,21 +310,24 @@ private synchronized void loadMapConfig(String id, MapConfig mapConfig) throws C
                     ex);
         }
 
-        World world = worlds.get(worldId);
-        if (world == null) {
-            try {
-                Logger.global.logInfo("Loading world '" + worldId + "' (" + worldFolder.toAbsolutePath().normalize() + ")...");
-                if (mapConfig.getWorldType() == WorldType.MCREGION)
-                	world = new MCRWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
-                else
-                	world = new MCAWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData());
-                
-                worlds.put(worldId, world);
-            } catch (IOException ex) {
-                throw new ConfigurationException(
-                        "Failed to load world '" + worldId + "' (" + worldFolder.toAbsolutePath().normalize() + ")!\n" +
-                        "Is the level.dat of that world present and not corrupted?",
-                        ex);
+        World world;
+        synchronized (worldLoadLocks.computeIfAbsent(worldId, k -> new Object())) {
+            world = worlds.get(worldId);
+            if (world == null) {
+                try {
+                    Logger.global.logInfo("Loading world '" + worldId + "' (" + worldFolder.toAbsolutePath().normalize() + ")...");
+                    if (mapConfig.getWorldType() == WorldType.MCREGION)
+                        world = new MCRWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), chunkCacheMemoryBudget);
+                    else
+                        world = new MCAWorld(worldFolder, mapConfig.getWorldSkyLight(), mapConfig.isIgnoreMissingLightData(), chunkCacheMemoryBudget, configs.getCoreConfig().isDecodeChunks());
+
+                    worlds.put(worldId, world);
+                } catch (IOException ex) {
+                    throw new ConfigurationException(
+                            "Failed to load world '" + worldId + "' (" + worldFolder.toAbsolutePath().normalize() + ")!\n" +
+                            "Is the level.dat of that world present and not corrupted?",
+                            ex);
+                }
             }
         }
 
@@ -281,8 +342,9 @@ private synchronized void loadMapConfig(String id, MapConfig mapConfig) throws C
                     worldId,
                     world,
                     storage,
-                    getResourcePack(),
-                    mapConfig
+                    resourcePack,
+                    mapConfig,
+                    tileWritePipeline
             );
             maps.put(id, map);
 
@@ -312,7 +374,14 @@ private synchronized void loadMapConfig(String id, MapConfig mapConfig) throws C
         }
     }
 
-    public synchronized Storage getStorage(String storageId) throws ConfigurationException {
+    public Storage getStorage(String storageId) throws ConfigurationException {
+        // maps are loaded concurrently, so this only locks the storages and not the whole service
+        synchronized (storages) {
+            return loadStorage(storageId);
+        }
+    }
+
+    private Storage loadStorage(String storageId) throws ConfigurationException {
         Storage storage = storages.get(storageId);
 
         if (storage == null) {
@@ -356,6 +425,7 @@ public synchronized ResourcePack getResourcePack() throws ConfigurationException
 
             Path defaultResourceFile = configs.getCoreConfig().getData().resolve("minecraft-client-" + minecraftVersion.getResource().getVersion().getVersionString() + ".jar");
             Path resourceExtensionsFile = configs.getCoreConfig().getData().resolve("resourceExtensions.zip");
+            Path resourceCacheFile = configs.getCoreConfig().getData().resolve("resources-cache.json.gz");
 
             Path resourcePackFolder = serverInterface.getConfigFolder().resolve("resourcepacks");
 
@@ -390,14 +460,21 @@ public synchronized ResourcePack getResourcePack() throws ConfigurationException
             }
 
             try {
-                Files.deleteIfExists(resourceExtensionsFile);
                 FileHelper.createDirectories(resourceExtensionsFile.getParent());
                 URL resourceExtensionsUrl = Objects.requireNonNull(
                         Plugin.class.getResource(
                                 "/de/bluecolored/bluemap/" + minecraftVersion.getResource().getResourcePrefix() +
                                 "/resourceExtensions.zip")
                 );
-                FileUtils.copyURLToFile(resourceExtensionsUrl, resourceExtensionsFile.toFile(), 10000, 10000);
+
+                // only replace the file if it changed, so it doesn't invalidate the resource-cache on every start
+                Path tempResourceExtensionsFile = resourceExtensionsFile.getParent().resolve(resourceExtensionsFile.getFileName() + ".filepart");
+                FileUtils.copyURLToFile(resourceExtensionsUrl, tempResourceExtensionsFile.toFile(), 10000, 10000);
+                if (FileUtils.contentEquals(tempResourceExtensionsFile.toFile(), resourceExtensionsFile.toFile())) {
+                    Files.delete(tempResourceExtensionsFile);
+                } else {
+                    FileHelper.move(tempResourceExtensionsFile, resourceExtensionsFile);
+                }
             } catch (IOException ex) {
                 throw new ConfigurationException(
                         "Failed to create resourceExtensions.zip!\n" +
@@ -444,7 +521,7 @@ public synchronized ResourcePack getResourcePack() throws ConfigurationException
                 resourcePackRoots.add(resourceExtensionsFile);
                 resourcePackRoots.add(defaultResourceFile);
 
-                resourcePack.loadResources(resourcePackRoots);
+                resourcePack.loadResources(resourcePackRoots, resourceCacheFile);
             } catch (IOException | RuntimeException e) {
                 throw new ConfigurationException("Failed to parse resources!\n" +
                         "Is one of your resource-packs corrupted?", e);
@@ -476,10 +553,36 @@ public BlueMapConfigProvider getConfigs() {
         return configs;
     }
 
+    public TileWritePipeline getTileWritePipeline() {
+        if (tileWritePipeline == null) {
+            synchronized (this) {
+                if (tileWritePipeline == null) {
+                    CoreConfig coreConfig = configs.getCoreConfig();
+                    tileWritePipeline = new TileWritePipeline(
+                            coreConfig.getTileEncodeThreadCount(),
+                            coreConfig.getTileWriteThreadCount(),
+                            coreConfig.getTileWriteQueueSize()
+                    );
+                }
+            }
+        }
+
+        return tileWritePipeline;
+    }
+
     @Override
     public void close() throws IOException {
         IOException exception = null;
 
+        // write all pending tiles before the storages get closed
+        if (tileWritePipeline != null) {
+            try {
+                tileWritePipeline.close();
+            } catch (IOException ex) {
+                exception = ex;
+            }
+        }
+
         for (Storage storage : storages.values()) {
             try {
                 if (storage != null) {
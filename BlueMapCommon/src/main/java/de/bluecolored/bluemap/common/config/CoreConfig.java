@@ -25,6 +25,7 @@
 package de.bluecolored.bluemap.common.config;
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.world.ChunkCache;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 
 import java.nio.file.Path;
@@ -38,6 +39,18 @@ public class CoreConfig {
 
     private int renderThreadCount = 1;
 
+    private int tileEncodeThreadCount = 1;
+
+    private int tileWriteThreadCount = 1;
+
+    private int tileWriteQueueSize = 16;
+
+    private int chunkCacheMemory = 0;
+
+    private boolean decodeChunks = true;
+
+    private int idleMapTimeout = 30;
+
     private boolean metrics = true;
 
     private Path data = Path.of("bluemap");
@@ -59,6 +72,41 @@ public int resolveRenderThreadCount() {
         return Math.max(Runtime.getRuntime().availableProcessors() + renderThreadCount, 1);
     }
 
+    public int getTileEncodeThreadCount() {
+        return tileEncodeThreadCount;
+    }
+
+    public int getTileWriteThreadCount() {
+        return tileWriteThreadCount;
+    }
+
+    public int getTileWriteQueueSize() {
+        return tileWriteQueueSize;
+    }
+
+    public int getChunkCacheMemory() {
+        return chunkCacheMemory;
+    }
+
+    /**
+     * Returns the memory-budget in bytes that the chunk-caches of all worlds share
+     */
+    public long resolveChunkCacheMemoryBudget() {
+        if (chunkCacheMemory > 0) return chunkCacheMemory * 1024L * 1024L;
+        return ChunkCache.getDefaultMemoryBudget();
+    }
+
+    public boolean isDecodeChunks() {
+        return decodeChunks;
+    }
+
+    /**
+     * Returns the time in minutes after which the resources of maps that are not rendered are released
+     */
+    public int getIdleMapTimeout() {
+        return idleMapTimeout;
+    }
+
     public boolean isMetrics() {
         return metrics;
     }
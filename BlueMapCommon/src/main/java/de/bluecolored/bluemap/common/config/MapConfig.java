@@ -81,6 +81,8 @@ public class MapConfig implements MapSettings {
 
     private boolean ignoreMissingLightData = false;
 
+    private boolean splitMarkerFiles = false;
+
     private ConfigurationNode markerSets = null;
 
     // hidden config fields
@@ -88,6 +90,7 @@ public class MapConfig implements MapSettings {
     private int lowresTileSize = 500;
     private int lodCount = 3;
     private int lodFactor = 5;
+    private int midresCellSize = 0;
 
     @Nullable
     public String getName() {
@@ -177,6 +180,11 @@ public boolean isIgnoreMissingLightData() {
         return ignoreMissingLightData;
     }
 
+    @Override
+    public boolean isSplitMarkerFiles() {
+        return splitMarkerFiles;
+    }
+
     @Nullable
     public ConfigurationNode getMarkerSets() {
         return markerSets;
@@ -202,6 +210,11 @@ public int getLodFactor() {
         return lodFactor;
     }
     
+    @Override
+    public int getMidresCellSize() {
+        return midresCellSize;
+    }
+
     @Override
     public WorldType getWorldType() {
     	if (this.worldtype.equalsIgnoreCase("mca"))
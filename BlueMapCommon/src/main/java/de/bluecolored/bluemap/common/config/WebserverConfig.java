@@ -43,6 +43,9 @@ public class WebserverConfig {
     private String ip = "0.0.0.0";
     private int port = 8100;
 
+    private int maxRequestsPerConnection = 100;
+    private int idleTimeout = 30;
+
     private LogConfig log = new LogConfig();
 
     public boolean isEnabled() {
@@ -71,6 +74,17 @@ public int getPort() {
         return port;
     }
 
+    public int getMaxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    /**
+     * The time in seconds after which idle connections are closed
+     */
+    public int getIdleTimeout() {
+        return idleTimeout;
+    }
+
     public LogConfig getLog() {
         return log;
     }
@@ -25,9 +25,12 @@
 package de.bluecolored.bluemap.common.config.storage;
 
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.storage.CachingStorage;
 import de.bluecolored.bluemap.core.storage.Storage;
 import org.spongepowered.configurate.objectmapping.ConfigSerializable;
 
+import java.util.concurrent.TimeUnit;
+
 @SuppressWarnings("FieldMayBeFinal")
 @DebugDump
 @ConfigSerializable
@@ -35,15 +38,42 @@ public class StorageConfig {
 
     private StorageType storageType = StorageType.FILE;
 
+    private int tileCacheSize = 32;
+    private int tileCacheExpiration = 60;
+
     public StorageType getStorageType() {
         return storageType;
     }
 
+    /**
+     * The maximum size of the tile-cache in megabytes, zero or less to disable the cache
+     */
+    public int getTileCacheSize() {
+        return tileCacheSize;
+    }
+
+    /**
+     * The time in seconds after which a cached tile is read from the storage again
+     */
+    public int getTileCacheExpiration() {
+        return tileCacheExpiration;
+    }
+
     public Storage createStorage() throws Exception {
         if (this.getClass().equals(StorageConfig.class))
             throw new UnsupportedOperationException("Can not create a Storage from the StorageConfig superclass.");
 
-        return storageType.getStorageFactory(this.getClass()).provide(this);
+        Storage storage = storageType.getStorageFactory(this.getClass()).provide(this);
+
+        if (tileCacheSize > 0) {
+            storage = new CachingStorage(
+                    storage,
+                    tileCacheSize * 1024L * 1024L,
+                    TimeUnit.SECONDS.toMillis(tileCacheExpiration)
+            );
+        }
+
+        return storage;
     }
 
 }
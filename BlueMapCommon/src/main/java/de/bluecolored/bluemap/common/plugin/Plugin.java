@@ -33,6 +33,7 @@
 import de.bluecolored.bluemap.common.config.*;
 import de.bluecolored.bluemap.common.live.LivePlayersDataSupplier;
 import de.bluecolored.bluemap.common.plugin.skins.PlayerSkinUpdater;
+import de.bluecolored.bluemap.common.rendermanager.IdleResourceReleaser;
 import de.bluecolored.bluemap.common.rendermanager.MapUpdateTask;
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
 import de.bluecolored.bluemap.common.serverinterface.ServerEventListener;
@@ -65,7 +66,6 @@
 import java.util.*;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 
 @DebugDump
 public class Plugin implements ServerEventListener {
@@ -195,9 +195,8 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                             mapRequestHandler = new MapRequestHandler(id, storage);
                         }
 
-                        routingRequestHandler.register(
-                                "maps/" + Pattern.quote(id) + "/(.*)",
-                                "$1",
+                        routingRequestHandler.registerPrefix(
+                                "maps/" + id + "/",
                                 new BlueMapResponseModifier(mapRequestHandler)
                         );
                     }
@@ -214,11 +213,15 @@ private void load(@Nullable ResourcePack preloadedResourcePack) throws IOExcepti
                     webLogger = Logger.combine(webLoggerList);
 
                     try {
-                        webServer = new HttpServer(new LoggingRequestHandler(
-                                routingRequestHandler,
-                                webserverConfig.getLog().getFormat(),
-                                webLogger
-                        ));
+                        webServer = new HttpServer(
+                                new LoggingRequestHandler(
+                                        routingRequestHandler,
+                                        webserverConfig.getLog().getFormat(),
+                                        webLogger
+                                ),
+                                webserverConfig.getMaxRequestsPerConnection(),
+                                TimeUnit.SECONDS.toMillis(webserverConfig.getIdleTimeout())
+                        );
                         webServer.bind(new InetSocketAddress(
                                 webserverConfig.resolveIp(),
                                 webserverConfig.getPort()
@@ -329,6 +332,13 @@ public void run() {
                     daemonTimer.scheduleAtFixedRate(updateAllMapsTask, fullUpdateTime, fullUpdateTime);
                 }
 
+                //periodically release resources of idle maps
+                if (coreConfig.getIdleMapTimeout() > 0) {
+                    long idleTimeout = TimeUnit.MINUTES.toMillis(coreConfig.getIdleMapTimeout());
+                    daemonTimer.scheduleAtFixedRate(new IdleResourceReleaser(maps::values, idleTimeout),
+                            TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(1));
+                }
+
                 //metrics
                 TimerTask metricsTask = new TimerTask() {
                     @Override
@@ -25,12 +25,14 @@
 package de.bluecolored.bluemap.common.plugin;
 
 import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.common.rendermanager.RegionLeaseManager;
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
 import de.bluecolored.bluemap.common.rendermanager.WorldRegionRenderTask;
 import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.BmMap;
 import de.bluecolored.bluemap.core.util.FileHelper;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.IOException;
 import java.nio.file.*;
@@ -43,6 +45,7 @@ public class RegionFileWatchService extends Thread {
 
     private final BmMap map;
     private final RenderManager renderManager;
+    @Nullable private final RegionLeaseManager leaseManager;
     private final WatchService watchService;
 
     private boolean verbose;
@@ -54,7 +57,15 @@ public class RegionFileWatchService extends Thread {
     private final Map<Vector2i, TimerTask> scheduledUpdates;
 
     public RegionFileWatchService(RenderManager renderManager, BmMap map, boolean verbose) throws IOException {
+        this(renderManager, map, verbose, null);
+    }
+
+    /**
+     * @param leaseManager if not null, the updated regions are only rendered if this instance gets the lease on them
+     */
+    public RegionFileWatchService(RenderManager renderManager, BmMap map, boolean verbose, @Nullable RegionLeaseManager leaseManager) throws IOException {
         this.renderManager = renderManager;
+        this.leaseManager = leaseManager;
         this.map = map;
         this.verbose = verbose;
         this.closed = false;
@@ -124,7 +135,7 @@ public void run() {
                     synchronized (RegionFileWatchService.this) {
                         WorldRegionRenderTask task = new WorldRegionRenderTask(map, regionPos);
                         scheduledUpdates.remove(regionPos);
-                        renderManager.scheduleRenderTask(task);
+                        renderManager.scheduleRenderTask(leaseManager != null ? leaseManager.wrap(task) : task);
 
                         if (verbose) Logger.global.logInfo("Scheduled update for region-file: " + regionPos + " (Map: " + map.getId() + ")");
                     }
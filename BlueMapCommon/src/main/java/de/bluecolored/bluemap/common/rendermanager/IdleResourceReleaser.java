@@ -0,0 +1,81 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.function.Supplier;
+
+/**
+ * Periodically releases the cached resources of maps that haven't been rendered for a while, and of worlds that only
+ * have such idle maps.<br>
+ * This way the memory-usage scales with the maps that are actually being updated instead of all configured maps.
+ * Everything that has been released is loaded again on demand once a map is rendered again.
+ */
+public class IdleResourceReleaser extends TimerTask {
+
+    private final Supplier<Collection<BmMap>> maps;
+    private final long idleTimeout;
+
+    /**
+     * @param idleTimeout the time in milliseconds after which the resources of a map that hasn't been rendered are released
+     */
+    public IdleResourceReleaser(Supplier<Collection<BmMap>> maps, long idleTimeout) {
+        this.maps = maps;
+        this.idleTimeout = idleTimeout;
+    }
+
+    @Override
+    public void run() {
+        long idleSince = System.currentTimeMillis() - idleTimeout;
+
+        // a world can only be released if all maps rendering it are idle
+        Map<World, Boolean> idleWorlds = new IdentityHashMap<>();
+        for (BmMap map : maps.get()) {
+            boolean idle = map.getLastRenderTime() < idleSince;
+            idleWorlds.merge(map.getWorld(), idle, Boolean::logicalAnd);
+
+            if (!idle || map.isResourcesReleased()) continue;
+
+            Logger.global.logDebug("Releasing resources of idle map '" + map.getId() + "'...");
+            try {
+                map.releaseResources();
+            } catch (RuntimeException ex) {
+                Logger.global.logError("Failed to release resources of map '" + map.getId() + "'!", ex);
+            }
+        }
+
+        idleWorlds.forEach((world, idle) -> {
+            if (idle) world.releaseResources();
+        });
+    }
+
+}
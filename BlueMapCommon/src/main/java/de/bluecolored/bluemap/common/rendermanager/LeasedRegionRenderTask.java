@@ -0,0 +1,162 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.MapRenderState;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * A {@link WorldRegionRenderTask} that only renders its region if the {@link RegionLeaseManager} can claim the lease on it.
+ */
+@DebugDump
+public class LeasedRegionRenderTask implements RenderTask {
+
+    private final RegionLeaseManager leaseManager;
+    private final WorldRegionRenderTask task;
+
+    private boolean claimAttempted;
+    private boolean claimed;
+
+    private volatile boolean cancelled;
+
+    LeasedRegionRenderTask(RegionLeaseManager leaseManager, WorldRegionRenderTask task) {
+        this.leaseManager = leaseManager;
+        this.task = task;
+
+        this.claimAttempted = false;
+        this.claimed = false;
+        this.cancelled = false;
+    }
+
+    @Override
+    public void doWork() throws Exception {
+        if (cancelled) return;
+
+        synchronized (this) {
+            if (!claimAttempted) claim();
+            if (!claimed) return;
+        }
+
+        task.doWork();
+    }
+
+    private void claim() {
+        claimAttempted = true;
+
+        OptionalLong sharedRenderTime;
+        try {
+            sharedRenderTime = leaseManager.claim(this);
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to claim the lease on region " + getWorldRegion() + " of map '" + getMap().getId() + "'!", ex);
+            return;
+        }
+
+        if (sharedRenderTime.isEmpty()) {
+            Logger.global.logDebug("Region " + getWorldRegion() + " of map '" + getMap().getId() + "' is rendered by another instance, skipping it.");
+            return;
+        }
+
+        // the region might have been rendered by another instance since this one rendered it
+        MapRenderState renderState = getMap().getRenderState();
+        if (sharedRenderTime.getAsLong() > renderState.getRenderTime(getWorldRegion()))
+            renderState.setRenderTime(getWorldRegion(), sharedRenderTime.getAsLong());
+
+        claimed = true;
+        task.getCompletion().thenRun(() ->
+                leaseManager.release(this, renderState.getRenderTime(getWorldRegion()))
+        );
+    }
+
+    @Override
+    public synchronized boolean hasMoreWork() {
+        if (cancelled) return false;
+        if (!claimAttempted) return true;
+        return claimed && task.hasMoreWork();
+    }
+
+    @Override
+    public double estimateProgress() {
+        return task.estimateProgress();
+    }
+
+    @Override
+    public void cancel() {
+        this.cancelled = true;
+        task.cancel();
+
+        synchronized (this) {
+            if (claimed) leaseManager.release(this, -1);
+        }
+    }
+
+    @Override
+    public boolean contains(RenderTask task) {
+        return equals(task) || this.task.contains(task);
+    }
+
+    public WorldRegionRenderTask getTask() {
+        return task;
+    }
+
+    public BmMap getMap() {
+        return task.getMap();
+    }
+
+    public Vector2i getWorldRegion() {
+        return task.getWorldRegion();
+    }
+
+    @Override
+    public String getDescription() {
+        return task.getDescription();
+    }
+
+    @Override
+    public Optional<String> getDetail() {
+        return task.getDetail();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LeasedRegionRenderTask that = (LeasedRegionRenderTask) o;
+        return task.equals(that.task);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(task);
+    }
+
+}
@@ -67,6 +67,12 @@ public void doWork() throws Exception {
         } finally {
             // reset renderstate
             map.getRenderState().reset();
+
+            // the purged tiles have to be written again, even if they don't change
+            map.getTileContentHashes().reset();
+
+            // the purged marker-files have to be written again as well
+            map.resetMarkerState();
         }
     }
 
@@ -29,6 +29,7 @@
 import de.bluecolored.bluemap.core.map.BmMap;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -51,6 +52,10 @@ public MapUpdateTask(BmMap map, boolean force) {
         this(map, getRegions(map), force);
     }
 
+    public MapUpdateTask(BmMap map, boolean force, @Nullable RegionLeaseManager leaseManager) {
+        this(map, getRegions(map), force, leaseManager);
+    }
+
     public MapUpdateTask(BmMap map, Vector2i center, int radius) {
         this(map, getRegions(map, center, radius));
     }
@@ -64,7 +69,14 @@ public MapUpdateTask(BmMap map, Collection<Vector2i> regions) {
     }
 
     public MapUpdateTask(BmMap map, Collection<Vector2i> regions, boolean force) {
-        super("Update map '" + map.getId() + "'", createTasks(map, regions, force));
+        this(map, regions, force, null);
+    }
+
+    /**
+     * @param leaseManager if not null, the regions are only rendered if this instance gets the lease on them
+     */
+    public MapUpdateTask(BmMap map, Collection<Vector2i> regions, boolean force, @Nullable RegionLeaseManager leaseManager) {
+        super("Update map '" + map.getId() + "'", createTasks(map, regions, force, leaseManager));
         this.map = map;
         this.regions = Collections.unmodifiableCollection(new ArrayList<>(regions));
     }
@@ -77,7 +89,7 @@ public Collection<Vector2i> getRegions() {
         return regions;
     }
 
-    private static Collection<RenderTask> createTasks(BmMap map, Collection<Vector2i> regions, boolean force) {
+    private static Collection<RenderTask> createTasks(BmMap map, Collection<Vector2i> regions, boolean force, @Nullable RegionLeaseManager leaseManager) {
         ArrayList<WorldRegionRenderTask> regionTasks = new ArrayList<>(regions.size());
         regions.forEach(region -> regionTasks.add(new WorldRegionRenderTask(map, region, force)));
 
@@ -93,7 +105,11 @@ private static Collection<RenderTask> createTasks(BmMap map, Collection<Vector2i
         // save map before and after the whole update
         ArrayList<RenderTask> tasks = new ArrayList<>(regionTasks.size() + 2);
         tasks.add(new MapSaveTask(map));
-        tasks.addAll(regionTasks);
+        if (leaseManager != null) {
+            regionTasks.forEach(task -> tasks.add(leaseManager.wrap(task)));
+        } else {
+            tasks.addAll(regionTasks);
+        }
         tasks.add(new MapSaveTask(map));
 
         return tasks;
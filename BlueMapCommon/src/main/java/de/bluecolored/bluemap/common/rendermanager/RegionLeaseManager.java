@@ -0,0 +1,177 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.rendermanager;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.MapRenderState;
+import de.bluecolored.bluemap.core.storage.CachingStorage;
+import de.bluecolored.bluemap.core.storage.RegionLeaseStorage;
+import de.bluecolored.bluemap.core.storage.Storage;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Distributes the region-render-tasks of maps between multiple BlueMap instances that share the same
+ * {@link RegionLeaseStorage}.<br>
+ * Each region is only rendered by the instance that holds the lease on it. Held leases are renewed regularly
+ * by a heartbeat, if an instance stops its leases expire and the regions can be picked up by other instances.
+ */
+@DebugDump
+public class RegionLeaseManager implements Closeable {
+
+    private final String owner;
+    private final long leaseDuration;
+
+    private final Set<LeasedRegionRenderTask> leasedTasks;
+    private final Timer heartbeatTimer;
+
+    /**
+     * @param owner a unique name for this instance
+     * @param leaseDuration the time in milliseconds after which the lease on a region expires if it isn't renewed
+     */
+    public RegionLeaseManager(String owner, long leaseDuration) {
+        this.owner = owner;
+        this.leaseDuration = leaseDuration;
+
+        this.leasedTasks = ConcurrentHashMap.newKeySet();
+        this.heartbeatTimer = new Timer("BlueMap-RegionLease-Heartbeat", true);
+
+        long heartbeatInterval = Math.max(leaseDuration / 3, 1);
+        this.heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
+            @Override
+            public void run() {
+                renewLeases();
+            }
+        }, heartbeatInterval, heartbeatInterval);
+    }
+
+    /**
+     * Returns true if the storage of the map supports distributing the rendering
+     */
+    public static boolean supports(BmMap map) {
+        return storage(map) != null;
+    }
+
+    /**
+     * Wraps the task so that its region is only rendered if this instance gets the lease on it.<br>
+     * If the storage of the map doesn't support leases, the task is returned unchanged.
+     */
+    public RenderTask wrap(WorldRegionRenderTask task) {
+        if (!supports(task.getMap())) return task;
+        return new LeasedRegionRenderTask(this, task);
+    }
+
+    /**
+     * Merges the render-times of the regions that have been rendered by any instance into the render-state of the map,
+     * so the saved render-state of this instance is up-to-date as well
+     */
+    public void syncRenderState(BmMap map) {
+        if (!supports(map)) return;
+
+        try {
+            Map<Vector2i, Long> renderTimes = storage(map).readRegionRenderTimes(map.getId());
+            MapRenderState renderState = map.getRenderState();
+            renderTimes.forEach((region, renderTime) -> {
+                if (renderTime > renderState.getRenderTime(region))
+                    renderState.setRenderTime(region, renderTime);
+            });
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to sync the render-state of map '" + map.getId() + "'!", ex);
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    @DebugDump
+    public int getLeaseCount() {
+        return leasedTasks.size();
+    }
+
+    OptionalLong claim(LeasedRegionRenderTask task) throws IOException {
+        BmMap map = task.getMap();
+        OptionalLong renderTime = storage(map).claimRegion(map.getId(), task.getWorldRegion(), owner, leaseDuration);
+        if (renderTime.isPresent()) leasedTasks.add(task);
+        return renderTime;
+    }
+
+    void release(LeasedRegionRenderTask task, long renderTime) {
+        if (!leasedTasks.remove(task)) return;
+
+        BmMap map = task.getMap();
+        try {
+            storage(map).releaseRegion(map.getId(), task.getWorldRegion(), owner, renderTime);
+        } catch (IOException ex) {
+            // the lease will expire
+            Logger.global.logError("Failed to release the lease on region " + task.getWorldRegion() + " of map '" + map.getId() + "'!", ex);
+        }
+    }
+
+    private void renewLeases() {
+        for (LeasedRegionRenderTask task : leasedTasks) {
+            BmMap map = task.getMap();
+            try {
+                if (!storage(map).renewRegion(map.getId(), task.getWorldRegion(), owner, leaseDuration)) {
+                    Logger.global.logWarning("Lost the lease on region " + task.getWorldRegion() + " of map '" + map.getId() + "', stopping to render it.");
+                    leasedTasks.remove(task);
+                    task.cancel();
+                }
+            } catch (IOException ex) {
+                Logger.global.logWarning("Failed to renew the lease on region " + task.getWorldRegion() + " of map '" + map.getId() + "': " + ex);
+            }
+        }
+    }
+
+    /**
+     * Stops the heartbeat and releases all leases that are still held
+     */
+    @Override
+    public void close() {
+        heartbeatTimer.cancel();
+        for (LeasedRegionRenderTask task : leasedTasks) {
+            release(task, -1);
+        }
+    }
+
+    @Nullable
+    private static RegionLeaseStorage storage(BmMap map) {
+        Storage storage = map.getStorage();
+        if (storage instanceof CachingStorage) storage = ((CachingStorage) storage).getStorage();
+        return storage instanceof RegionLeaseStorage ? (RegionLeaseStorage) storage : null;
+    }
+
+}
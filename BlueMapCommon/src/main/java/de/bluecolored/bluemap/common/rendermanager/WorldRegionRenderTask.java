@@ -25,11 +25,15 @@
 package de.bluecolored.bluemap.common.rendermanager;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -45,6 +49,8 @@
 @DebugDump
 public class WorldRegionRenderTask implements RenderTask {
 
+    private static final int PREFETCH_TILES = 2;
+
     private final BmMap map;
     private final Vector2i worldRegion;
     private final boolean force;
@@ -52,6 +58,9 @@ public class WorldRegionRenderTask implements RenderTask {
     private Deque<Vector2i> tiles;
     private int tileCount;
     private long startTime;
+    private List<CompletableFuture<Void>> pendingSaves;
+    private final CompletableFuture<Void> completion;
+    private boolean lowresTilesPinned;
 
     private volatile int atWork;
     private volatile boolean cancelled;
@@ -68,13 +77,16 @@ public WorldRegionRenderTask(BmMap map, Vector2i worldRegion, boolean force) {
         this.tiles = null;
         this.tileCount = -1;
         this.startTime = -1;
+        this.pendingSaves = new ArrayList<>();
+        this.completion = new CompletableFuture<>();
+        this.lowresTilesPinned = false;
 
         this.atWork = 0;
         this.cancelled = false;
     }
 
     private synchronized void init() {
-        Set<Vector2l> tileSet = new HashSet<>();
+        Set<Vector2i> tileSet = new HashSet<>();
         startTime = System.currentTimeMillis();
 
         //Logger.global.logInfo("Starting: " + worldRegion);
@@ -94,7 +106,7 @@ private synchronized void init() {
 
             for (int x = tileMin.getX(); x <= tileMax.getX(); x++) {
                 for (int z = tileMin.getY(); z <= tileMax.getY(); z++) {
-                    tileSet.add(new Vector2l(x, z));
+                    tileSet.add(new Vector2i(x, z));
                 }
             }
 
@@ -114,13 +126,17 @@ private synchronized void init() {
 
         this.tileCount = tileSet.size();
         this.tiles = tileSet.stream()
-                .sorted(WorldRegionRenderTask::compareVec2L) //sort with longs to avoid overflow (comparison uses distanceSquared)
-                .map(Vector2l::toInt) // back to ints
+                .sorted(localityComparator(tileSet))
                 .filter(boundsTileFilter)
                 .filter(map.getTileFilter())
                 .collect(Collectors.toCollection(ArrayDeque::new));
 
-        if (tiles.isEmpty()) complete();
+        if (tiles.isEmpty()) {
+            completeWhenSaved();
+        } else {
+            // keep the lowres-tiles of this region in memory until the region is done
+            pinLowresTiles(true);
+        }
     }
 
     @Override
@@ -134,24 +150,65 @@ public void doWork() {
             if (tiles.isEmpty()) return;
 
             tile = tiles.pollFirst();
+            prefetchNextTiles();
 
             this.atWork++;
         }
 
         //Logger.global.logInfo("Working on " + worldRegion + " - Tile " + tile);
+        CompletableFuture<Void> saved = null;
         if (tileRenderPreconditions(tile)) {
-            map.renderTile(tile); // <- actual work
+            saved = map.renderTile(tile); // <- actual work
         }
 
         synchronized (this) {
             this.atWork--;
 
+            if (saved != null && !saved.isDone()) {
+                pendingSaves.removeIf(CompletableFuture::isDone);
+                pendingSaves.add(saved);
+            }
+
             if (atWork <= 0 && tiles.isEmpty() && !cancelled) {
-                complete();
+                completeWhenSaved();
             }
         }
     }
 
+    /**
+     * Completes this task once all rendered tiles have been written, so the region is never marked as rendered
+     * while its tiles are still in the write-pipeline
+     */
+    private synchronized void completeWhenSaved() {
+        CompletableFuture<?>[] saves = pendingSaves.toArray(CompletableFuture[]::new);
+        pendingSaves.clear();
+
+        CompletableFuture.allOf(saves).thenRun(() -> {
+            if (!cancelled) complete();
+        });
+    }
+
+    /**
+     * Lets the world load the chunks of the next tiles in render-order in the background
+     */
+    private synchronized void prefetchNextTiles() {
+        Grid tileGrid = map.getHiresModelManager().getTileGrid();
+        Grid chunkGrid = map.getWorld().getChunkGrid();
+
+        Iterator<Vector2i> nextTiles = tiles.iterator();
+        for (int i = 0; i < PREFETCH_TILES && nextTiles.hasNext(); i++) {
+            Vector2i nextTile = nextTiles.next();
+            Vector2i minChunk = tileGrid.getCellMin(nextTile, chunkGrid);
+            Vector2i maxChunk = tileGrid.getCellMax(nextTile, chunkGrid);
+
+            // include the neighbouring chunks, the renderer reads over the tile-borders
+            map.getWorld().prefetchChunks(
+                    minChunk.getX() - 1, minChunk.getY() - 1,
+                    maxChunk.getX() + 1, maxChunk.getY() + 1
+            );
+        }
+    }
+
     private boolean tileRenderPreconditions(Vector2i tile) {
         Grid tileGrid = map.getHiresModelManager().getTileGrid();
         Grid chunkGrid = map.getWorld().getChunkGrid();
@@ -188,12 +245,33 @@ private boolean tileRenderPreconditions(Vector2i tile) {
         return isInhabited;
     }
 
+    private synchronized void pinLowresTiles(boolean pin) {
+        if (lowresTilesPinned == pin) return;
+        lowresTilesPinned = pin;
+
+        Grid regionGrid = map.getWorld().getRegionGrid();
+        Vector2i min = regionGrid.getCellMin(worldRegion);
+        Vector2i max = regionGrid.getCellMax(worldRegion);
+        if (pin) map.getLowresTileManager().pinArea(min.getX(), min.getY(), max.getX(), max.getY());
+        else map.getLowresTileManager().unpinArea(min.getX(), min.getY(), max.getX(), max.getY());
+    }
+
     private void complete() {
+        pinLowresTiles(false);
         map.getRenderState().setRenderTime(worldRegion, startTime);
+        completion.complete(null);
 
         //Logger.global.logInfo("Done with: " + worldRegion);
     }
 
+    /**
+     * Returns a future that completes once all tiles of the region have been rendered and saved
+     * and the render-time of the region has been updated. It doesn't complete if the task gets cancelled.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
     @Override
     @DebugDump
     public synchronized boolean hasMoreWork() {
@@ -217,6 +295,8 @@ public void cancel() {
         synchronized (this) {
             if (tiles != null) this.tiles.clear();
         }
+
+        pinLowresTiles(false);
     }
 
     public BmMap getMap() {
@@ -258,6 +338,51 @@ public static Comparator<WorldRegionRenderTask> defaultComparator(final Vector2i
         };
     }
 
+    /**
+     * Orders the tiles along a hilbert-curve over their bounding-box.<br>
+     * The render-threads take the tiles in this order, so the tiles that are rendered at the same time and shortly
+     * after each other are always neighbours that share most of their chunks in the chunk-cache.
+     */
+    private static Comparator<Vector2i> localityComparator(Collection<Vector2i> tiles) {
+        int minX = Integer.MAX_VALUE, minZ = Integer.MAX_VALUE, maxX = Integer.MIN_VALUE, maxZ = Integer.MIN_VALUE;
+        for (Vector2i tile : tiles) {
+            minX = Math.min(minX, tile.getX());
+            minZ = Math.min(minZ, tile.getY());
+            maxX = Math.max(maxX, tile.getX());
+            maxZ = Math.max(maxZ, tile.getY());
+        }
+
+        int size = 1;
+        while (size <= maxX - minX || size <= maxZ - minZ) size <<= 1;
+
+        final int curveSize = size, offsetX = minX, offsetZ = minZ;
+        return Comparator.comparingLong(tile -> hilbertIndex(curveSize, tile.getX() - offsetX, tile.getY() - offsetZ));
+    }
+
+    /**
+     * Returns the position of x, y on a hilbert-curve filling a square of the given size (a power of two)
+     */
+    static long hilbertIndex(int size, int x, int y) {
+        long index = 0;
+        for (int s = size >>> 1; s > 0; s >>>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            index += (long) s * s * ((3 * rx) ^ ry);
+
+            // rotate the quadrant, so the curve continues where the last quadrant ended
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = size - 1 - x;
+                    y = size - 1 - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
+    }
+
     /**
      * Comparison method that doesn't overflow that easily
      */
@@ -0,0 +1,137 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import de.bluecolored.bluemap.api.markers.MarkerSet;
+import de.bluecolored.bluemap.common.web.http.*;
+import de.bluecolored.bluemap.core.map.BmMap;
+import de.bluecolored.bluemap.core.map.SerializedMarkerSets;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Provides the live marker-sets one by one, the same way they are written when a map splits its marker-files:
+ * <code>index.json</code> lists all marker-sets with their etags, and <code>sets/{file}</code> provides a single set.
+ */
+public class LiveMarkerSetsRequestHandler implements HttpRequestHandler {
+
+    private static final String INDEX_FILE = BmMap.META_FILE_MARKER_INDEX.substring(BmMap.META_FILE_MARKER_INDEX.lastIndexOf('/') + 1);
+    private static final String SETS_FOLDER = "sets/";
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<String, MarkerSet> markerSets;
+    private final long rateLimitMillis;
+
+    private long updateTime = -1;
+    private volatile Snapshot snapshot = null;
+
+    public LiveMarkerSetsRequestHandler(Map<String, MarkerSet> markerSets, long rateLimitMillis) {
+        this.markerSets = markerSets;
+        this.rateLimitMillis = rateLimitMillis;
+    }
+
+    @Override
+    public HttpResponse handle(HttpRequest request) {
+        String path = request.getPath();
+        if (path.startsWith("/")) path = path.substring(1);
+
+        update();
+        Snapshot snapshot = this.snapshot;
+        if (snapshot == null) return new HttpResponse(HttpStatusCode.SERVICE_UNAVAILABLE);
+        SerializedMarkerSets serialized = snapshot.serialized;
+
+        if (path.equals(INDEX_FILE)) {
+            return createResponse(snapshot.index);
+        }
+
+        if (path.startsWith(SETS_FOLDER)) {
+            String fileName = path.substring(SETS_FOLDER.length());
+            for (String id : serialized.getIds()) {
+                if (!SerializedMarkerSets.getFileName(id).equals(fileName)) continue;
+
+                String eTag = serialized.getETag(id);
+                HttpHeader etagHeader = request.getHeader("If-None-Match");
+                if (etagHeader != null && etagHeader.getValue().equals(eTag)) {
+                    return new HttpResponse(HttpStatusCode.NOT_MODIFIED);
+                }
+
+                HttpResponse response = createResponse(serialized.getJson(id));
+                response.addHeader("ETag", eTag);
+                return response;
+            }
+        }
+
+        return new HttpResponse(HttpStatusCode.NOT_FOUND);
+    }
+
+    private HttpResponse createResponse(String json) {
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        response.addHeader("Cache-Control", "no-cache");
+        response.addHeader("Content-Type", "application/json");
+        response.setData(json);
+        return response;
+    }
+
+    private void update() {
+        if (lock.tryLock()) {
+            try {
+                long now = System.currentTimeMillis();
+                Snapshot snapshot = this.snapshot;
+                if (snapshot != null && now < updateTime + this.rateLimitMillis) return;
+
+                SerializedMarkerSets serialized = SerializedMarkerSets.serialize(markerSets, snapshot != null ? snapshot.serialized : null);
+                StringWriter indexWriter = new StringWriter();
+                serialized.writeIndex(indexWriter);
+
+                this.snapshot = new Snapshot(serialized, indexWriter.toString());
+                this.updateTime = now;
+            } catch (IOException ex) {
+                throw new RuntimeException(ex); // StringWriter does not throw
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * The serialized marker-sets together with their index, so a request never sees an index of a different state
+     */
+    private static class Snapshot {
+
+        private final SerializedMarkerSets serialized;
+        private final String index;
+
+        private Snapshot(SerializedMarkerSets serialized, String index) {
+            this.serialized = serialized;
+            this.index = index;
+        }
+
+    }
+
+}
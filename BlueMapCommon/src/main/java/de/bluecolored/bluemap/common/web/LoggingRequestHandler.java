@@ -24,15 +24,51 @@
  */
 package de.bluecolored.bluemap.common.web;
 
+import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.common.web.http.*;
+import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
-
+import de.bluecolored.bluemap.core.util.RingBuffer;
+
+import java.net.InetAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs all requests.<br>
+ * The request-handling only captures a small record of each request, the records are formatted and logged in batches
+ * on a background-thread. If the logging can't keep up, records are dropped (and counted) instead of slowing down
+ * the request-handling.
+ */
+@DebugDump
 public class LoggingRequestHandler implements HttpRequestHandler {
 
+    private static final int BUFFER_SIZE = 4096;
+
+    // the thread only lives as long as there is something to log
+    private static final ExecutorService LOG_EXECUTOR = new ThreadPoolExecutor(
+            0, 1, 10, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "BlueMap-AccessLog");
+                thread.setContextClassLoader(BlueMap.class.getClassLoader());
+                thread.setDaemon(true);
+                return thread;
+            }
+    );
+
     private final HttpRequestHandler delegate;
     private final Logger logger;
     private final String format;
 
+    private final RingBuffer<AccessRecord> records;
+    private final AtomicBoolean drainScheduled;
+    private final LongAdder droppedRecords, reportedDroppedRecords;
+
     public LoggingRequestHandler(HttpRequestHandler delegate) {
         this(delegate, Logger.global);
     }
@@ -49,14 +85,19 @@ public LoggingRequestHandler(HttpRequestHandler delegate, String format, Logger
         this.delegate = delegate;
         this.format = format;
         this.logger = logger;
+
+        this.records = new RingBuffer<>(BUFFER_SIZE);
+        this.drainScheduled = new AtomicBoolean(false);
+        this.droppedRecords = new LongAdder();
+        this.reportedDroppedRecords = new LongAdder();
     }
 
     @Override
     public HttpResponse handle(HttpRequest request) {
 
         // gather format parameters from request
-        String source = request.getSource().toString();
-        String xffSource = source;
+        InetAddress source = request.getSource();
+        String xffSource = null;
         HttpHeader xffHeader = request.getHeader("X-Forwarded-For");
         if (xffHeader != null && !xffHeader.getValues().isEmpty()) {
             xffSource = xffHeader.getValues().get(0);
@@ -69,20 +110,55 @@ public HttpResponse handle(HttpRequest request) {
         // run request
         HttpResponse response = delegate.handle(request);
 
-        // gather format parameters from response
-        HttpStatusCode status = response.getStatusCode();
+        // capture the record, the formatting and logging happens later
+        AccessRecord record = new AccessRecord(source, xffSource, method, address, version, response.getStatusCode());
+        if (records.offer(record)) {
+            scheduleDrain();
+        } else {
+            droppedRecords.increment();
+        }
+
+        // return the response
+        return response;
+    }
+
+    private void scheduleDrain() {
+        if (!drainScheduled.compareAndSet(false, true)) return;
+        LOG_EXECUTOR.execute(this::drain);
+    }
+
+    private void drain() {
+        AccessRecord record;
+        while ((record = records.poll()) != null) {
+            log(record);
+        }
+
+        long dropped = droppedRecords.sum() - reportedDroppedRecords.sum();
+        if (dropped > 0) {
+            reportedDroppedRecords.add(dropped);
+            logger.logWarning("Dropped " + dropped + " request-log entries because the logging couldn't keep up!");
+        }
+
+        drainScheduled.set(false);
+
+        // records might have been added after the last poll, but before the flag got reset
+        if (!records.isEmpty()) scheduleDrain();
+    }
+
+    private void log(AccessRecord record) {
+        String source = record.source.toString();
+        HttpStatusCode status = record.status;
         int statusCode = status.getCode();
-        String statusMessage = status.getMessage();
 
         // format log message
         String log = String.format(this.format,
                 source,
-                xffSource,
-                method,
-                address,
-                version,
+                record.xffSource != null ? record.xffSource : source,
+                record.method,
+                record.address,
+                record.version,
                 statusCode,
-                statusMessage
+                status.getMessage()
         );
 
         // do the logging
@@ -91,9 +167,27 @@ public HttpResponse handle(HttpRequest request) {
         } else {
             logger.logWarning(log);
         }
+    }
 
-        // return the response
-        return response;
+    @DebugDump
+    public long getDroppedRecordCount() {
+        return droppedRecords.sum();
+    }
+
+    private static class AccessRecord {
+        private final InetAddress source;
+        private final String xffSource;
+        private final String method, address, version;
+        private final HttpStatusCode status;
+
+        private AccessRecord(InetAddress source, String xffSource, String method, String address, String version, HttpStatusCode status) {
+            this.source = source;
+            this.xffSource = xffSource;
+            this.method = method;
+            this.address = address;
+            this.version = version;
+            this.status = status;
+        }
     }
 
 }
@@ -42,6 +42,8 @@ public MapRequestHandler(BmMap map, ServerInterface serverInterface, PluginConfi
         this(map.getId(), map.getStorage(),
                 new LivePlayersDataSupplier(serverInterface, pluginConfig, map.getWorldId(), playerFilter),
                 new LiveMarkersDataSupplier(map.getMarkerSets()));
+
+        registerPrefix("live/markers/", new LiveMarkerSetsRequestHandler(map.getMarkerSets(), 10000));
     }
 
     public MapRequestHandler(String mapId, Storage mapStorage) {
@@ -52,16 +54,16 @@ public MapRequestHandler(String mapId, Storage mapStorage,
                              @Nullable Supplier<String> livePlayersDataSupplier,
                              @Nullable Supplier<String> liveMarkerDataSupplier) {
 
-        register(".*", new MapStorageRequestHandler(mapId, mapStorage));
+        registerPrefix("", new MapStorageRequestHandler(mapId, mapStorage));
 
         if (livePlayersDataSupplier != null) {
-            register("live/players\\.json", "", new JsonDataRequestHandler(
+            registerExact("live/players.json", new JsonDataRequestHandler(
                     new CachedRateLimitDataSupplier(livePlayersDataSupplier,1000)
             ));
         }
 
         if (liveMarkerDataSupplier != null) {
-            register("live/markers\\.json", "", new JsonDataRequestHandler(
+            registerExact("live/markers.json", new JsonDataRequestHandler(
                     new CachedRateLimitDataSupplier(liveMarkerDataSupplier,10000)
             ));
         }
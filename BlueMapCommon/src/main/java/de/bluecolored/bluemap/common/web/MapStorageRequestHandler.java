@@ -37,13 +37,14 @@
 import org.apache.commons.lang3.time.DateFormatUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MapStorageRequestHandler implements HttpRequestHandler {
 
-    private static final Pattern TILE_PATTERN = Pattern.compile("tiles/([\\d/]+)/x(-?[\\d/]+)z(-?[\\d/]+).*");
+    private static final String TILE_PREFIX = "tiles/";
+    private static final String BATCH_SUFFIX = "/batch";
+    private static final int MAX_BATCH_SIZE = 128;
 
     private final String mapId;
     private final Storage mapStorage;
@@ -69,12 +70,17 @@ public HttpResponse handle(HttpRequest request) {
 
         try {
 
+            // provide multiple map-tiles at once
+            if (path.startsWith(TILE_PREFIX) && path.endsWith(BATCH_SUFFIX)) {
+                return handleBatch(path, request);
+            }
+
             // provide map-tiles
-            Matcher tileMatcher = TILE_PATTERN.matcher(path);
-            if (tileMatcher.matches()) {
-                int lod = Integer.parseInt(tileMatcher.group(1));
-                int x = Integer.parseInt(tileMatcher.group(2).replace("/", ""));
-                int z = Integer.parseInt(tileMatcher.group(3).replace("/", ""));
+            int[] tilePath = new int[3];
+            if (parseTilePath(path, tilePath)) {
+                int lod = tilePath[0];
+                int x = tilePath[1];
+                int z = tilePath[2];
                 Optional<TileInfo> optTileInfo = mapStorage.readMapTileInfo(mapId, lod, new Vector2i(x, z));
 
                 if (optTileInfo.isPresent()) {
@@ -107,7 +113,7 @@ public HttpResponse handle(HttpRequest request) {
                     if (lastModified > 0)
                         response.addHeader("Last-Modified", timestampToString(lastModified));
 
-                    if (lod == 0) response.addHeader("Content-Type", "application/json");
+                    if (lod <= 0) response.addHeader("Content-Type", "application/json");
                     else response.addHeader("Content-Type", "image/png");
 
                     writeToResponse(compressedIn, response, request);
@@ -145,6 +151,234 @@ public HttpResponse handle(HttpRequest request) {
         return new HttpResponse(HttpStatusCode.NOT_FOUND);
     }
 
+    /**
+     * Handles a batch-request for multiple tiles of the same lod: <code>tiles/{lod}/batch</code><br>
+     * The requested tiles are listed in the <code>tiles</code> GET-parameter and/or the request-body as entries in the
+     * format <code>{x},{z}</code> or <code>{x},{z},{etag}</code> separated by <code>;</code> or line-breaks.
+     * Additionally, a rectangle of tiles can be requested with the GET-parameter <code>rect={minX},{minZ},{maxX},{maxZ}</code>.
+     * If an entry contains the etag the client already has and the tile did not change, its data is not sent again.<br>
+     * <br>
+     * The response is a sequence of frames, one for each requested tile (in no particular order), each one containing:
+     * <pre>
+     * int    x
+     * int    z
+     * short  status        (200 = data follows, 304 = not modified, 404 = tile does not exist)
+     * utf    etag
+     * long   last-modified
+     * utf    content-encoding of the data (empty if the data is not encoded)
+     * int    length of the data
+     * byte[] data
+     * </pre>
+     * All numbers are big-endian and strings are prefixed with their length as a short, like with {@link DataOutputStream}.
+     */
+    private HttpResponse handleBatch(String path, HttpRequest request) throws IOException {
+        int lod;
+        Map<Vector2i, String> requestedTiles = new LinkedHashMap<>();
+        try {
+            lod = Integer.parseInt(path.substring(TILE_PREFIX.length(), path.length() - BATCH_SUFFIX.length()));
+
+            Map<String, String> params = request.getGETParams();
+            parseTileList(params.get("tiles"), requestedTiles);
+            parseTileRect(params.get("rect"), requestedTiles);
+
+            byte[] body = request.getData();
+            if (body != null && body.length > 0)
+                parseTileList(new String(body, StandardCharsets.UTF_8), requestedTiles);
+        } catch (IllegalArgumentException ex) { // includes NumberFormatException
+            return new HttpResponse(HttpStatusCode.BAD_REQUEST);
+        }
+
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteOut);
+
+        // check the etags and collect the tiles that need to be sent
+        Map<Vector2i, TileInfo> tileInfos = mapStorage.readMapTileInfos(mapId, lod, requestedTiles.keySet());
+        Map<Vector2i, String> changedTiles = new LinkedHashMap<>();
+        for (Map.Entry<Vector2i, String> entry : requestedTiles.entrySet()) {
+            Vector2i tile = entry.getKey();
+            TileInfo tileInfo = tileInfos.get(tile);
+
+            if (tileInfo == null) {
+                writeFrame(out, tile, HttpStatusCode.NOT_FOUND, "", 0, "", new byte[0]);
+                continue;
+            }
+
+            String eTag = calculateETag(tilePath(lod, tile), tileInfo);
+            if (eTag.equals(entry.getValue())) {
+                writeFrame(out, tile, HttpStatusCode.NOT_MODIFIED, eTag, tileInfo.getLastModified(), "", new byte[0]);
+                continue;
+            }
+
+            changedTiles.put(tile, eTag);
+        }
+
+        // read all changed tiles at once
+        Set<Vector2i> sentTiles = new HashSet<>();
+        mapStorage.readMapTiles(mapId, lod, changedTiles.keySet(), (tile, data) -> {
+            Compression compression = data.getCompression();
+            String encoding = "";
+            byte[] bytes;
+            if (
+                    compression != Compression.NONE &&
+                    !compression.usesDictionary() &&
+                    request.hasHeaderValue("Accept-Encoding", compression.getTypeId())
+            ) {
+                encoding = compression.getTypeId();
+                bytes = IOUtils.toByteArray(data);
+            } else {
+                bytes = IOUtils.toByteArray(data.decompress());
+            }
+
+            TileInfo tileInfo = tileInfos.get(tile);
+            writeFrame(out, tile, HttpStatusCode.OK, changedTiles.get(tile), tileInfo.getLastModified(), encoding, bytes);
+            sentTiles.add(tile);
+        });
+
+        // tiles that have been deleted in the meantime
+        for (Vector2i tile : changedTiles.keySet()) {
+            if (!sentTiles.contains(tile))
+                writeFrame(out, tile, HttpStatusCode.NOT_FOUND, "", 0, "", new byte[0]);
+        }
+
+        out.flush();
+        HttpResponse response = new HttpResponse(HttpStatusCode.OK);
+        response.addHeader("Content-Type", "application/octet-stream");
+        response.setData(new ByteArrayInputStream(byteOut.toByteArray()));
+        return response;
+    }
+
+    private void writeFrame(DataOutputStream out, Vector2i tile, HttpStatusCode status, String eTag, long lastModified, String encoding, byte[] data) throws IOException {
+        out.writeInt(tile.getX());
+        out.writeInt(tile.getY());
+        out.writeShort(status.getCode());
+        out.writeUTF(eTag);
+        out.writeLong(lastModified);
+        out.writeUTF(encoding);
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    private static void parseTileList(String list, Map<Vector2i, String> target) {
+        if (list == null) return;
+
+        for (String entry : list.split("[;\\n]")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+
+            String[] parts = entry.split(",", 3);
+            if (parts.length < 2) throw new IllegalArgumentException("Invalid tile: " + entry);
+
+            Vector2i tile = new Vector2i(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+            target.put(tile, parts.length > 2 ? parts[2].trim() : null);
+            if (target.size() > MAX_BATCH_SIZE) throw new IllegalArgumentException("Too many tiles requested");
+        }
+    }
+
+    private static void parseTileRect(String rect, Map<Vector2i, String> target) {
+        if (rect == null) return;
+
+        String[] parts = rect.split(",");
+        if (parts.length != 4) throw new IllegalArgumentException("Invalid rect: " + rect);
+
+        int minX = Integer.parseInt(parts[0].trim()), minZ = Integer.parseInt(parts[1].trim());
+        int maxX = Integer.parseInt(parts[2].trim()), maxZ = Integer.parseInt(parts[3].trim());
+        if (minX > maxX || minZ > maxZ) throw new IllegalArgumentException("Invalid rect: " + rect);
+        if (((long) maxX - minX + 1) * ((long) maxZ - minZ + 1) + target.size() > MAX_BATCH_SIZE)
+            throw new IllegalArgumentException("Too many tiles requested");
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                target.putIfAbsent(new Vector2i(x, z), null);
+            }
+        }
+    }
+
+    /**
+     * The path the web-app would request a single tile with, to calculate the same etags for both
+     */
+    private static String tilePath(int lod, Vector2i tile) {
+        StringBuilder sb = new StringBuilder(TILE_PREFIX).append(lod).append("/x");
+        appendSplitNumber(sb, tile.getX());
+        sb.append('z');
+        appendSplitNumber(sb, tile.getY());
+        sb.setLength(sb.length() - 1);
+        sb.append(lod <= 0 ? ".json" : ".png");
+        return sb.toString();
+    }
+
+    private static void appendSplitNumber(StringBuilder sb, int number) {
+        String s = Integer.toString(number);
+        int i = 0;
+        if (s.charAt(0) == '-') {
+            sb.append('-');
+            i++;
+        }
+        for (; i < s.length(); i++) {
+            sb.append(s.charAt(i)).append('/');
+        }
+    }
+
+    /**
+     * Parses a tile-path in the format <code>tiles/{lod}/x{x}z{z}...</code> where the digits of x and z might be
+     * separated by slashes (e.g. <code>tiles/1/x-1/23z4/5.png</code>).
+     * @param target the array the lod, x and z will be written to
+     * @return false if the path is not a valid tile-path
+     */
+    static boolean parseTilePath(String path, int[] target) {
+        if (!path.startsWith(TILE_PREFIX)) return false;
+
+        int[] index = { TILE_PREFIX.length() };
+        long lod = parseNumber(path, index, false);
+        if (lod == Long.MIN_VALUE || !expect(path, index, '/') || !expect(path, index, 'x')) return false;
+
+        long x = parseNumber(path, index, true);
+        if (x == Long.MIN_VALUE || !expect(path, index, 'z')) return false;
+
+        long z = parseNumber(path, index, true);
+        if (z == Long.MIN_VALUE) return false;
+
+        target[0] = (int) lod;
+        target[1] = (int) x;
+        target[2] = (int) z;
+        return true;
+    }
+
+    private static boolean expect(String path, int[] index, char c) {
+        if (index[0] >= path.length() || path.charAt(index[0]) != c) return false;
+        index[0]++;
+        return true;
+    }
+
+    /**
+     * Parses an int starting at the index, and advances the index to the end of the number
+     * @return the number or Long.MIN_VALUE if there is no valid int at the index
+     */
+    private static long parseNumber(String path, int[] index, boolean allowSlashes) {
+        int i = index[0];
+        boolean negative = i < path.length() && path.charAt(i) == '-';
+        if (negative) i++;
+
+        long value = 0;
+        int digits = 0;
+        for (; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                if (value > (long) Integer.MAX_VALUE + 1) return Long.MIN_VALUE;
+                digits++;
+            } else if (!(allowSlashes && c == '/')) {
+                break;
+            }
+        }
+
+        if (digits == 0) return Long.MIN_VALUE;
+        if (negative) value = -value;
+        if (value > Integer.MAX_VALUE) return Long.MIN_VALUE;
+
+        index[0] = i;
+        return value;
+    }
+
     private String calculateETag(String path, TileInfo tileInfo) {
         return Long.toHexString(tileInfo.getSize()) + Integer.toHexString(path.hashCode()) + Long.toHexString(tileInfo.getLastModified());
     }
@@ -153,6 +387,7 @@ private void writeToResponse(CompressedInputStream data, HttpResponse response,
         Compression compression = data.getCompression();
         if (
                 compression != Compression.NONE &&
+                !compression.usesDictionary() &&
                 request.hasHeaderValue("Accept-Encoding", compression.getTypeId())
         ) {
             response.addHeader("Content-Encoding", compression.getTypeId());
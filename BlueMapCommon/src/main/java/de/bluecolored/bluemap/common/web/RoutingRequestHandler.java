@@ -30,16 +30,25 @@
 import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
 import org.intellij.lang.annotations.Language;
 
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Routes requests to other handlers based on their path.<br>
+ * Routes registered with a fixed path or path-prefix are stored in a prefix-tree, so they are found without
+ * testing them one by one. Those routes are always checked first (the longest matching one wins), routes registered with
+ * a regex-pattern are only tested if no fixed route matches.
+ */
 public class RoutingRequestHandler implements HttpRequestHandler {
 
     public LinkedList<Route> routes;
+    private final Node root;
 
     public RoutingRequestHandler() {
         this.routes = new LinkedList<>();
+        this.root = new Node();
     }
 
     public void register(@Language("RegExp") String pattern, HttpRequestHandler handler) {
@@ -58,12 +67,55 @@ public void register(Pattern pattern, String replacementRoute, HttpRequestHandle
         this.routes.addFirst(new Route(pattern, replacementRoute, handler));
     }
 
+    /**
+     * Routes all requests whose path starts with the prefix to the handler, the path of the request is replaced
+     * with the rest of the path after the prefix
+     */
+    public void registerPrefix(String prefix, HttpRequestHandler handler) {
+        root.getOrCreate(prefix).prefixHandler = handler;
+    }
+
+    /**
+     * Routes all requests with exactly this path to the handler, the path of the request is replaced with an empty string
+     */
+    public void registerExact(String path, HttpRequestHandler handler) {
+        root.getOrCreate(path).exactHandler = handler;
+    }
+
     @Override
     public HttpResponse handle(HttpRequest request) {
         String path = request.getPath();
 
         // normalize path
-        if (path.startsWith("/")) path = path.substring(1);
+        int start = path.startsWith("/") ? 1 : 0;
+
+        // fixed routes
+        HttpRequestHandler prefixHandler = null;
+        int prefixEnd = -1;
+        Node node = root;
+        int i = start;
+        for (; node != null; i++) {
+            if (node.prefixHandler != null) {
+                prefixHandler = node.prefixHandler;
+                prefixEnd = i;
+            }
+
+            if (i >= path.length()) break;
+            node = node.get(path.charAt(i));
+        }
+
+        if (node != null && node.exactHandler != null) {
+            request.setPath("");
+            return node.exactHandler.handle(request);
+        }
+
+        if (prefixHandler != null) {
+            request.setPath(path.substring(prefixEnd));
+            return prefixHandler.handle(request);
+        }
+
+        // regex routes
+        if (start > 0) path = path.substring(start);
         if (path.isEmpty()) path = "/";
 
         for (Route route : routes) {
@@ -77,6 +129,39 @@ public HttpResponse handle(HttpRequest request) {
         return new HttpResponse(HttpStatusCode.BAD_REQUEST);
     }
 
+    private static class Node {
+
+        private char[] keys = new char[0];
+        private Node[] children = new Node[0];
+
+        private HttpRequestHandler prefixHandler, exactHandler;
+
+        private Node get(char c) {
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == c) return children[i];
+            }
+            return null;
+        }
+
+        private Node getOrCreate(String path) {
+            Node node = this;
+            for (int i = 0; i < path.length(); i++) {
+                char c = path.charAt(i);
+                Node child = node.get(c);
+                if (child == null) {
+                    child = new Node();
+                    node.keys = Arrays.copyOf(node.keys, node.keys.length + 1);
+                    node.children = Arrays.copyOf(node.children, node.children.length + 1);
+                    node.keys[node.keys.length - 1] = c;
+                    node.children[node.children.length - 1] = child;
+                }
+                node = child;
+            }
+            return node;
+        }
+
+    }
+
     private static class Route {
 
         private final Pattern routePattern;
@@ -25,11 +25,13 @@
 package de.bluecolored.bluemap.common.web.http;
 
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.InstancePool;
 
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
@@ -39,19 +41,48 @@
 
 public class HttpConnection implements SelectionConsumer {
 
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+    private static final InstancePool<ByteBuffer> READ_BUFFER_POOL = new InstancePool<>(
+            () -> ByteBuffer.allocateDirect(READ_BUFFER_SIZE),
+            ByteBuffer::clear,
+            ByteBuffer::capacity,
+            256L * READ_BUFFER_SIZE, // keep at most 256 buffers
+            60000 // drop buffers that have not been needed for a minute
+    );
+
     private final HttpRequestHandler requestHandler;
     private final Executor responseHandlerExecutor;
+    private final int maxRequests;
+    private final long idleTimeout;
+
+    private ByteBuffer readBuffer;
     private HttpRequest request;
     private CompletableFuture<HttpResponse> futureResponse;
     private HttpResponse response;
+    private boolean closeAfterResponse = false;
+
+    private int requestCount = 0;
+    private long lastActivity = System.currentTimeMillis();
 
     public HttpConnection(HttpRequestHandler requestHandler) {
         this(requestHandler, Runnable::run); //run synchronously
     }
 
     public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor) {
+        this(requestHandler, responseHandlerExecutor, 0, 0);
+    }
+
+    /**
+     * @param maxRequests the maximum number of requests served on this connection before it is closed,
+     *                    zero or less for no limit
+     * @param idleTimeout the time in milliseconds after which the connection is closed if nothing has been received
+     *                    or sent, zero or less for no timeout
+     */
+    public HttpConnection(HttpRequestHandler requestHandler, Executor responseHandlerExecutor, int maxRequests, long idleTimeout) {
         this.requestHandler = requestHandler;
         this.responseHandlerExecutor = responseHandlerExecutor;
+        this.maxRequests = maxRequests;
+        this.idleTimeout = idleTimeout;
     }
 
     @Override
@@ -74,55 +105,134 @@ public void accept(SelectionKey selectionKey) {
                 request = new HttpRequest(remoteInet);
             }
 
-            // receive request
-            if (!request.write(channel)) {
+            // loop to handle pipelined requests that are already buffered
+            while (true) {
+
+                // receive request
+                if (!request.isComplete() && !receive(channel)) {
+                    if (!selectionKey.isValid()) return;
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
+
+                // process request
+                if (futureResponse == null) {
+                    closeAfterResponse = !isKeepAlive(request) || (maxRequests > 0 && requestCount + 1 >= maxRequests);
+                    boolean addCloseHeader = closeAfterResponse;
+                    futureResponse = CompletableFuture.supplyAsync(
+                            () -> {
+                                HttpResponse response = requestHandler.handle(request);
+                                if (addCloseHeader) response.addHeader("Connection", "close");
+                                return response;
+                            },
+                            responseHandlerExecutor
+                    );
+                    futureResponse.thenAccept(response -> {
+                        try {
+                            response.read(channel); // do an initial read to trigger response sending intent
+                            this.response = response;
+                        } catch (IOException e) {
+                            handleIOException(channel, e);
+                        }
+                    });
+                }
+
+                if (response == null) return;
                 if (!selectionKey.isValid()) return;
-                selectionKey.interestOps(SelectionKey.OP_READ);
-                return;
-            }
 
-            // process request
-            if (futureResponse == null) {
-                futureResponse = CompletableFuture.supplyAsync(
-                        () -> requestHandler.handle(request),
-                        responseHandlerExecutor
-                );
-                futureResponse.thenAccept(response -> {
-                    try {
-                        response.read(channel); // do an initial read to trigger response sending intent
-                        this.response = response;
-                    } catch (IOException e) {
-                        handleIOException(channel, e);
-                    }
-                });
+                // send response
+                if (!response.read(channel)){
+                    lastActivity = System.currentTimeMillis();
+                    selectionKey.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+
+                lastActivity = System.currentTimeMillis();
+                requestCount++;
+                response.close();
+                futureResponse = null;
+                response = null;
+
+                if (closeAfterResponse) {
+                    close(channel);
+                    return;
+                }
+
+                // reset to accept new request
+                request.clear();
+
+                // wait for more data if nothing else is buffered
+                if (readBuffer == null) {
+                    selectionKey.interestOps(SelectionKey.OP_READ);
+                    return;
+                }
             }
 
-            if (response == null) return;
-            if (!selectionKey.isValid()) return;
+        } catch (IOException e) {
+            handleIOException(channel, e);
+        }
+    }
 
-            // send response
-            if (!response.read(channel)){
-                selectionKey.interestOps(SelectionKey.OP_WRITE);
-                return;
+    /**
+     * Parses the buffered data and reads from the channel until the request is complete or no more data is available.
+     * @return true if the request is complete
+     */
+    private boolean receive(SocketChannel channel) throws IOException {
+        // the buffer is claimed from a shared pool and only held while receiving a request
+        if (readBuffer == null) readBuffer = READ_BUFFER_POOL.claimInstance();
+
+        while (true) {
+            readBuffer.flip();
+            boolean complete;
+            try {
+                complete = request.write(readBuffer);
+            } finally {
+                readBuffer.compact();
             }
 
-            // reset to accept new request
-            request.clear();
-            response.close();
-            futureResponse = null;
-            response = null;
-            selectionKey.interestOps(SelectionKey.OP_READ);
+            if (complete) {
+                // only hold on to the buffer if a pipelined request is already waiting in it
+                if (readBuffer.position() == 0) releaseBuffer();
+                return true;
+            }
 
-        } catch (IOException e) {
-            handleIOException(channel, e);
+            int read = channel.read(readBuffer);
+            if (read == 0) return false;
+            if (read == -1) {
+                close(channel);
+                return false;
+            }
+
+            lastActivity = System.currentTimeMillis();
         }
     }
 
+    private boolean isKeepAlive(HttpRequest request) {
+        if (request.hasHeaderValue("connection", "close")) return false;
+        if ("HTTP/1.0".equalsIgnoreCase(request.getVersion()))
+            return request.hasHeaderValue("connection", "keep-alive");
+        return true;
+    }
+
+    @Override
+    public void tick(SelectionKey selectionKey, long now) {
+        if (idleTimeout <= 0) return;
+        if (futureResponse != null) return; // currently processing a request
+        if (now - lastActivity < idleTimeout) return;
+
+        close(selectionKey.channel());
+    }
+
     private void handleIOException(Channel channel, IOException e) {
-        request.clear();
+        Logger.global.logDebug("Failed to process selection: " + e);
+        close(channel);
+    }
+
+    private synchronized void close(Channel channel) {
+        if (request != null) request.clear();
         response = null;
+        releaseBuffer();
 
-        Logger.global.logDebug("Failed to process selection: " + e);
         try {
             channel.close();
         } catch (IOException e2) {
@@ -130,4 +240,10 @@ private void handleIOException(Channel channel, IOException e) {
         }
     }
 
+    private void releaseBuffer() {
+        if (readBuffer == null) return;
+        READ_BUFFER_POOL.recycleInstance(readBuffer);
+        readBuffer = null;
+    }
+
 }
@@ -29,27 +29,53 @@
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+/**
+ * A HTTP/1.1 request that is parsed incrementally from the bytes written to it.<br>
+ * The request-line and the headers are only copied into a reusable byte-array while parsing, the strings are decoded
+ * lazily when they are requested. A request only consumes its own bytes, any following (pipelined) request stays in the
+ * buffer.
+ */
 public class HttpRequest {
 
-    private static final Pattern REQUEST_PATTERN = Pattern.compile("^(\\w+) (\\S+) (.+)$");
+    private static final int MAX_HEADER_SIZE = 16 * 1024;
+    private static final int MAX_BODY_SIZE = 8 * 1024 * 1024;
+
+    private static final byte[] EMPTY_DATA = new byte[0];
+
+    private enum State {
+        HEADER,
+        BODY,
+        CHUNK_SIZE,
+        CHUNK_EXTENSION,
+        CHUNK_DATA,
+        CHUNK_DATA_END,
+        TRAILER,
+        COMPLETE
+    }
+
+    private State state = State.HEADER;
 
-    // reading helper
-    private final ByteBuffer byteBuffer = ByteBuffer.allocate(1024);
-    private final StringBuffer lineBuffer = new StringBuffer();
+    // raw header data
+    private byte[] head = new byte[1024];
+    private int headLength = 0;
+    private int methodEnd, addressStart, addressEnd, versionStart, versionEnd;
+    private int[] headerOffsets = new int[4 * 16]; // nameStart, nameEnd, valueStart, valueEnd for each header
+    private int headerCount = 0;
 
-    private boolean complete = false;
-    private boolean headerComplete = false;
-    private final List<String> headerLines = new ArrayList<>(20);
+    // body parsing
+    private byte[] body = EMPTY_DATA;
+    private int bodyLength = 0;
+    private long remaining = 0;
+    private boolean chunkSizeEmpty = true;
+    private int trailerLineLength = 0;
 
     // request data
     private final InetAddress source;
     private String method, address, version;
-    private final Map<String, HttpHeader> headers = new HashMap<>();
+    private Map<String, HttpHeader> headers = null;
     private byte[] data;
 
     // lazy parsed
@@ -61,100 +87,304 @@ public HttpRequest(InetAddress source) {
         this.source = source;
     }
 
-    public boolean write(ReadableByteChannel channel) throws IOException {
-        if (complete) return true;
+    /**
+     * Consumes the bytes of this request from the buffer, until the request is complete or the buffer is empty.
+     * @return true if the request is complete
+     * @throws IOException if the request is not a valid HTTP-request
+     */
+    public boolean write(ByteBuffer buffer) throws IOException {
+        while (state != State.COMPLETE) {
+            if (!buffer.hasRemaining()) return false;
+
+            switch (state) {
+                case HEADER: writeHeader(buffer); break;
+                case BODY: writeBody(buffer); break;
+                case CHUNK_SIZE: writeChunkSize(buffer); break;
+                case CHUNK_EXTENSION: writeChunkExtension(buffer); break;
+                case CHUNK_DATA: writeChunkData(buffer); break;
+                case CHUNK_DATA_END: writeChunkDataEnd(buffer); break;
+                case TRAILER: writeTrailer(buffer); break;
+            }
+        }
+
+        return true;
+    }
 
-        int read = channel.read(byteBuffer);
-        if (read == 0) return false;
-        if (read == -1) {
-            channel.close();
-            return false;
+    private void writeHeader(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+
+            // ignore empty lines in front of the request-line
+            if (headLength == 0 && (b == '\r' || b == '\n')) continue;
+
+            if (headLength >= head.length) {
+                if (head.length >= MAX_HEADER_SIZE) throw new IOException("Invalid HTTP Request: Header too large");
+                head = Arrays.copyOf(head, Math.min(head.length * 2, MAX_HEADER_SIZE));
+            }
+            head[headLength++] = b;
+
+            if (b == '\n' && isHeaderEnd()) {
+                parseHeader();
+                startBody();
+                return;
+            }
         }
+    }
 
-        byteBuffer.flip();
-        try {
+    private boolean isHeaderEnd() {
+        int i = headLength - 2;
+        if (i >= 0 && head[i] == '\r') i--;
+        return i >= 0 && head[i] == '\n';
+    }
 
-            // read headers
-            while (!headerComplete) {
-                if (!writeLine()) return false;
-                String line = lineBuffer.toString().stripTrailing();
-                lineBuffer.setLength(0);
+    private void startBody() throws IOException {
+        if (hasHeaderValue("transfer-encoding", "chunked")) {
+            state = State.CHUNK_SIZE;
+            remaining = 0;
+            chunkSizeEmpty = true;
+            return;
+        }
 
-                if (line.isEmpty()) {
-                    headerComplete = true;
-                    parseHeaders();
-                } else {
-                    headerLines.add(line);
-                }
+        long contentLength = 0;
+        int header = findHeader("content-length");
+        if (header != -1) {
+            contentLength = parseContentLength(header);
+        }
+
+        if (contentLength > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: Body too large");
+        if (contentLength > 0) {
+            ensureBodyCapacity((int) contentLength);
+            remaining = contentLength;
+            state = State.BODY;
+        } else {
+            complete();
+        }
+    }
+
+    private void writeBody(ByteBuffer buffer) {
+        int length = (int) Math.min(remaining, buffer.remaining());
+        buffer.get(body, bodyLength, length);
+        bodyLength += length;
+        remaining -= length;
+
+        if (remaining == 0) complete();
+    }
+
+    private void writeChunkSize(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+
+            int digit = Character.digit(b, 16);
+            if (digit != -1) {
+                remaining = remaining * 16 + digit;
+                if (remaining > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: Body too large");
+                chunkSizeEmpty = false;
+                continue;
             }
 
-            if (hasHeaderValue("transfer-encoding", "chunked")) {
-                writeChunkedBody();
-            } else {
-                HttpHeader contentLengthHeader = getHeader("content-length");
-                int contentLength = 0;
-                if (contentLengthHeader != null) {
-                    try {
-                        contentLength = Integer.parseInt(contentLengthHeader.getValue().trim());
-                    } catch (NumberFormatException ex) {
-                        throw new IOException("Invalid HTTP Request: content-length is not a number", ex);
-                    }
-                }
+            if (chunkSizeEmpty) throw new IOException("Invalid HTTP Request: Invalid chunk-size");
 
-                if (contentLength > 0) {
-                    writeBody(contentLength);
-                }
+            if (b == '\n') {
+                endChunkSize();
+            } else {
+                state = State.CHUNK_EXTENSION;
             }
+            return;
+        }
+    }
 
-            complete = true;
-            return true;
+    private void writeChunkExtension(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (buffer.get() == '\n') {
+                endChunkSize();
+                return;
+            }
+        }
+    }
 
-        } finally {
-            byteBuffer.compact();
+    private void endChunkSize() throws IOException {
+        if (remaining == 0) {
+            trailerLineLength = 0;
+            state = State.TRAILER;
+            return;
         }
+
+        if (bodyLength + remaining > MAX_BODY_SIZE) throw new IOException("Invalid HTTP Request: Body too large");
+        ensureBodyCapacity(bodyLength + (int) remaining);
+        state = State.CHUNK_DATA;
     }
 
-    private void writeChunkedBody() {
-        // TODO
+    private void writeChunkData(ByteBuffer buffer) {
+        int length = (int) Math.min(remaining, buffer.remaining());
+        buffer.get(body, bodyLength, length);
+        bodyLength += length;
+        remaining -= length;
+
+        if (remaining == 0) state = State.CHUNK_DATA_END;
     }
 
-    private void writeBody(int length) {
-        // TODO
+    private void writeChunkDataEnd(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\r') continue;
+            if (b != '\n') throw new IOException("Invalid HTTP Request: Chunk-data not terminated");
+
+            remaining = 0;
+            chunkSizeEmpty = true;
+            state = State.CHUNK_SIZE;
+            return;
+        }
     }
 
-    private void parseHeaders() throws IOException {
-        if (headerLines.isEmpty()) throw new IOException("Invalid HTTP Request: No Header");
+    private void writeTrailer(ByteBuffer buffer) {
+        // trailer-headers are skipped
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\r') continue;
+            if (b == '\n') {
+                if (trailerLineLength == 0) {
+                    complete();
+                    return;
+                }
+                trailerLineLength = 0;
+            } else {
+                trailerLineLength++;
+            }
+        }
+    }
 
-        Matcher m = REQUEST_PATTERN.matcher(headerLines.get(0));
-        if (!m.find()) throw new IOException("Invalid HTTP Request: Request-Pattern not matching");
+    private void ensureBodyCapacity(int capacity) {
+        if (body.length >= capacity) return;
+        body = Arrays.copyOf(body, Math.max(capacity, Math.min(body.length * 2, MAX_BODY_SIZE)));
+    }
 
-        method = m.group(1);
-        if (method == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (method)");
+    private void complete() {
+        if (bodyLength == 0) {
+            data = EMPTY_DATA;
+        } else if (bodyLength == body.length) {
+            data = body; // hand the buffer over instead of copying it
+            body = EMPTY_DATA;
+        } else {
+            data = Arrays.copyOf(body, bodyLength);
+        }
+        state = State.COMPLETE;
+    }
 
-        address = m.group(2);
-        if (address == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (address)");
+    private void parseHeader() throws IOException {
+        int lineEnd = lineEnd(0);
+
+        // request-line
+        methodEnd = indexOf(' ', 0, lineEnd);
+        if (methodEnd <= 0) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (method)");
+
+        addressStart = methodEnd + 1;
+        addressEnd = indexOf(' ', addressStart, lineEnd);
+        if (addressEnd <= addressStart) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (address)");
+
+        versionStart = addressEnd + 1;
+        versionEnd = trimEnd(versionStart, lineEnd);
+        if (versionEnd <= versionStart) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (version)");
+
+        // headers
+        headerCount = 0;
+        int lineStart = nextLine(lineEnd);
+        while (lineStart < headLength) {
+            lineEnd = lineEnd(lineStart);
+
+            int colon = indexOf(':', lineStart, lineEnd);
+            if (colon > lineStart) {
+                if (headerOffsets.length < (headerCount + 1) * 4)
+                    headerOffsets = Arrays.copyOf(headerOffsets, headerOffsets.length * 2);
+
+                int o = headerCount++ * 4;
+                headerOffsets[o] = trimStart(lineStart, colon);
+                headerOffsets[o + 1] = trimEnd(lineStart, colon);
+                headerOffsets[o + 2] = trimStart(colon + 1, lineEnd);
+                headerOffsets[o + 3] = trimEnd(colon + 1, lineEnd);
+            }
 
-        version = m.group(3);
-        if (version == null) throw new IOException("Invalid HTTP Request: Request-Pattern not matching (version)");
+            lineStart = nextLine(lineEnd);
+        }
+    }
 
-        headers.clear();
-        for (int i = 1; i < headerLines.size(); i++) {
-            String line = headerLines.get(i);
-            if (line.trim().isEmpty()) continue;
+    private long parseContentLength(int header) throws IOException {
+        int o = header * 4;
+        int start = headerOffsets[o + 2], end = headerOffsets[o + 3];
+        if (start == end) throw new IOException("Invalid HTTP Request: content-length is not a number");
+
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = head[i];
+            if (b < '0' || b > '9') throw new IOException("Invalid HTTP Request: content-length is not a number");
+            value = value * 10 + (b - '0');
+            if (value > Integer.MAX_VALUE) throw new IOException("Invalid HTTP Request: Body too large");
+        }
+        return value;
+    }
 
-            String[] kv = line.split(":", 2);
-            if (kv.length < 2) continue;
+    /**
+     * Finds the index of the last header with the given (lower-case) name, or -1 if there is no such header
+     */
+    private int findHeader(String lowerCaseName) {
+        for (int h = headerCount - 1; h >= 0; h--) {
+            int o = h * 4;
+            int start = headerOffsets[o], end = headerOffsets[o + 1];
+            if (end - start != lowerCaseName.length()) continue;
+
+            boolean matches = true;
+            for (int i = start; i < end; i++) {
+                int c = head[i];
+                if (c >= 'A' && c <= 'Z') c += 'a' - 'A';
+                if (c != lowerCaseName.charAt(i - start)) {
+                    matches = false;
+                    break;
+                }
+            }
 
-            headers.put(kv[0].trim().toLowerCase(Locale.ROOT), new HttpHeader(kv[0], kv[1]));
+            if (matches) return h;
         }
+        return -1;
     }
 
-    private boolean writeLine() {
-        while (lineBuffer.length() <= 0 || lineBuffer.charAt(lineBuffer.length() - 1) != '\n'){
-            if (!byteBuffer.hasRemaining()) return false;
-            lineBuffer.append((char) byteBuffer.get());
+    private HttpHeader decodeHeader(int header) {
+        int o = header * 4;
+        return new HttpHeader(
+                decode(headerOffsets[o], headerOffsets[o + 1]),
+                decode(headerOffsets[o + 2], headerOffsets[o + 3])
+        );
+    }
+
+    private String decode(int start, int end) {
+        return new String(head, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private int indexOf(char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (head[i] == c) return i;
         }
-        return true;
+        return -1;
+    }
+
+    private int lineEnd(int start) {
+        int end = indexOf('\n', start, headLength);
+        if (end == -1) end = headLength;
+        if (end > start && head[end - 1] == '\r') end--;
+        return end;
+    }
+
+    private int nextLine(int lineEnd) {
+        int next = indexOf('\n', lineEnd, headLength);
+        return next == -1 ? headLength : next + 1;
+    }
+
+    private int trimStart(int start, int end) {
+        while (start < end && (head[start] == ' ' || head[start] == '\t')) start++;
+        return start;
+    }
+
+    private int trimEnd(int start, int end) {
+        while (end > start && (head[end - 1] == ' ' || head[end - 1] == '\t')) end--;
+        return end;
     }
 
     public InetAddress getSource() {
@@ -162,6 +392,7 @@ public InetAddress getSource() {
     }
 
     public String getMethod() {
+        if (method == null && isHeaderParsed()) method = decode(0, methodEnd);
         return method;
     }
 
@@ -170,6 +401,7 @@ public void setMethod(String method) {
     }
 
     public String getAddress() {
+        if (address == null && isHeaderParsed()) address = decode(addressStart, addressEnd);
         return address;
     }
 
@@ -181,6 +413,7 @@ public void setAddress(String address) {
     }
 
     public String getVersion() {
+        if (version == null && isHeaderParsed()) version = decode(versionStart, versionEnd);
         return version;
     }
 
@@ -189,11 +422,21 @@ public void setVersion(String version) {
     }
 
     public Map<String, HttpHeader> getHeaders() {
+        if (headers == null) {
+            headers = new HashMap<>();
+            for (int h = 0; h < headerCount; h++) {
+                HttpHeader header = decodeHeader(h);
+                headers.put(header.getKey().toLowerCase(Locale.ROOT), header);
+            }
+        }
         return headers;
     }
 
     public HttpHeader getHeader(String header) {
-        return this.headers.get(header.toLowerCase(Locale.ROOT));
+        if (headers != null) return headers.get(header.toLowerCase(Locale.ROOT));
+
+        int index = findHeader(header.toLowerCase(Locale.ROOT));
+        return index == -1 ? null : decodeHeader(index);
     }
 
     public boolean hasHeaderValue(String key, String value) {
@@ -255,22 +498,33 @@ private void parseGetParams() {
         this.getParams = getParams;
     }
 
+    private boolean isHeaderParsed() {
+        return state != State.HEADER;
+    }
+
     public boolean isComplete() {
-        return complete;
+        return state == State.COMPLETE;
     }
 
+    /**
+     * Resets this request so it can be reused to parse the next request.<br>
+     * The buffers are kept, but shrunk to their initial size if they had to grow for a large request.
+     */
     public void clear() {
-        byteBuffer.clear();
-        lineBuffer.setLength(0);
+        state = State.HEADER;
+
+        if (head.length > 1024) head = new byte[1024];
+        headLength = 0;
+        headerCount = 0;
 
-        complete = false;
-        headerComplete = false;
-        headerLines.clear();
+        if (body.length > 64 * 1024) body = EMPTY_DATA;
+        bodyLength = 0;
+        remaining = 0;
 
         method = null;
         address = null;
         version = null;
-        headers.clear();
+        headers = null;
         data = null;
 
         path = null;
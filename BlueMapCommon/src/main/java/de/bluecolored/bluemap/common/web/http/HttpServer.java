@@ -29,14 +29,27 @@
 public class HttpServer extends Server {
 
     private final HttpRequestHandler requestHandler;
+    private final int maxRequestsPerConnection;
+    private final long idleTimeout;
 
     public HttpServer(HttpRequestHandler requestHandler) throws IOException {
+        this(requestHandler, 0, 0);
+    }
+
+    /**
+     * @param maxRequestsPerConnection the maximum number of requests served on one connection before it is closed,
+     *                                 zero or less for no limit
+     * @param idleTimeout the time in milliseconds after which idle connections are closed, zero or less for no timeout
+     */
+    public HttpServer(HttpRequestHandler requestHandler, int maxRequestsPerConnection, long idleTimeout) throws IOException {
         this.requestHandler = requestHandler;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.idleTimeout = idleTimeout;
     }
 
     @Override
     public SelectionConsumer createConnectionHandler() {
-        return new HttpConnection(requestHandler);
+        return new HttpConnection(requestHandler, Runnable::run, maxRequestsPerConnection, idleTimeout);
 
         // Enable async request handling ...
         // TODO: maybe find a better/separate executor than using bluemap's common thread-pool
@@ -27,4 +27,13 @@
 import java.nio.channels.SelectionKey;
 import java.util.function.Consumer;
 
-public interface SelectionConsumer extends Consumer<SelectionKey> {}
+public interface SelectionConsumer extends Consumer<SelectionKey> {
+
+    /**
+     * Called periodically by the server for each registered channel, e.g. to close channels that have been idle for
+     * too long.
+     * @param now the current time in milliseconds
+     */
+    default void tick(SelectionKey selectionKey, long now) {}
+
+}
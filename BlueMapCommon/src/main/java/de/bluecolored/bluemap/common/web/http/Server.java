@@ -35,6 +35,8 @@
 
 public abstract class Server extends Thread implements Closeable, Runnable {
 
+    private static final long TICK_INTERVAL = 1000;
+
     private final Selector selector;
     private final Collection<ServerSocketChannel> server;
 
@@ -58,15 +60,33 @@ public void bind(SocketAddress address) throws IOException {
     @Override
     public void run() {
         Logger.global.logInfo("WebServer started.");
+        long nextTick = System.currentTimeMillis() + TICK_INTERVAL;
         while (this.selector.isOpen()) {
             try {
-                this.selector.select(this::selection);
+                this.selector.select(this::selection, TICK_INTERVAL);
+
+                long now = System.currentTimeMillis();
+                if (now >= nextTick) {
+                    nextTick = now + TICK_INTERVAL;
+                    tick(now);
+                }
             } catch (IOException e) {
                 Logger.global.logDebug("Failed to select channel: " + e);
             } catch (ClosedSelectorException ignore) {}
         }
     }
 
+    private void tick(long now) {
+        for (SelectionKey selectionKey : this.selector.keys()) {
+            if (!selectionKey.isValid()) continue;
+
+            Object attachment = selectionKey.attachment();
+            if (attachment instanceof SelectionConsumer) {
+                ((SelectionConsumer) attachment).tick(selectionKey, now);
+            }
+        }
+    }
+
     private void selection(SelectionKey selectionKey) {
         Object attachment = selectionKey.attachment();
         if (attachment instanceof SelectionConsumer) {
@@ -0,0 +1,183 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.common.web;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.common.web.http.HttpRequest;
+import de.bluecolored.bluemap.common.web.http.HttpResponse;
+import de.bluecolored.bluemap.common.web.http.HttpStatusCode;
+import de.bluecolored.bluemap.core.storage.Compression;
+import de.bluecolored.bluemap.core.storage.file.FileStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapStorageRequestHandlerTest {
+
+    private static final String MAP_ID = "world";
+
+    @TempDir
+    Path tempDir;
+
+    private MapStorageRequestHandler handler;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        FileStorage storage = new FileStorage(tempDir, Compression.GZIP);
+        for (int x = 0; x < 2; x++) {
+            try (OutputStream out = storage.writeMapTile(MAP_ID, 1, new Vector2i(x, 0))) {
+                out.write(content(x));
+            }
+        }
+
+        handler = new MapStorageRequestHandler(MAP_ID, storage);
+    }
+
+    @Test
+    public void testBatchFrames() throws IOException {
+        Map<Vector2i, Frame> frames = requestBatch("tiles=0,0;1,0;5,5");
+        assertEquals(3, frames.size());
+
+        for (int x = 0; x < 2; x++) {
+            Frame frame = frames.get(new Vector2i(x, 0));
+            assertEquals(200, frame.status);
+            assertFalse(frame.eTag.isEmpty());
+            assertTrue(frame.lastModified > 0);
+            assertEquals("", frame.encoding);
+            assertArrayEquals(content(x), frame.data);
+        }
+
+        Frame missing = frames.get(new Vector2i(5, 5));
+        assertEquals(404, missing.status);
+        assertEquals(0, missing.data.length);
+    }
+
+    @Test
+    public void testBatchNotModified() throws IOException {
+        String eTag = requestBatch("tiles=0,0").get(new Vector2i(0, 0)).eTag;
+
+        Map<Vector2i, Frame> frames = requestBatch("tiles=0,0," + eTag + ";1,0,outdated");
+        assertEquals(2, frames.size());
+
+        Frame notModified = frames.get(new Vector2i(0, 0));
+        assertEquals(304, notModified.status);
+        assertEquals(eTag, notModified.eTag);
+        assertEquals(0, notModified.data.length);
+
+        Frame modified = frames.get(new Vector2i(1, 0));
+        assertEquals(200, modified.status);
+        assertArrayEquals(content(1), modified.data);
+    }
+
+    @Test
+    public void testBatchTooLarge() throws IOException {
+        HttpResponse response = handler.handle(request("/tiles/1/batch?rect=0,0,99,99"));
+        assertEquals(HttpStatusCode.BAD_REQUEST, response.getStatusCode());
+    }
+
+    private Map<Vector2i, Frame> requestBatch(String params) throws IOException {
+        HttpResponse response = handler.handle(request("/tiles/1/batch?" + params));
+        assertEquals(HttpStatusCode.OK, response.getStatusCode());
+
+        Map<Vector2i, Frame> frames = new HashMap<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readBody(response)));
+        while (in.available() > 0) {
+            Vector2i tile = new Vector2i(in.readInt(), in.readInt());
+            Frame frame = new Frame();
+            frame.status = in.readShort();
+            frame.eTag = in.readUTF();
+            frame.lastModified = in.readLong();
+            frame.encoding = in.readUTF();
+            frame.data = new byte[in.readInt()];
+            in.readFully(frame.data);
+            assertNull(frames.put(tile, frame), "Tile " + tile + " has been sent twice");
+        }
+        return frames;
+    }
+
+    private static HttpRequest request(String address) throws IOException {
+        HttpRequest request = new HttpRequest(InetAddress.getLoopbackAddress());
+        byte[] head = ("GET " + address + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.UTF_8);
+        assertTrue(request.write(ByteBuffer.wrap(head)));
+        return request;
+    }
+
+    /**
+     * Reads the (chunked) body of the response
+     */
+    private static byte[] readBody(HttpResponse response) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(raw);
+        while (!response.read(channel));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw.toByteArray()));
+        while (!readLine(in).isEmpty()); // skip status-line and headers
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        int chunkSize;
+        while ((chunkSize = Integer.parseInt(readLine(in), 16)) > 0) {
+            byte[] chunk = new byte[chunkSize];
+            in.readFully(chunk);
+            body.write(chunk);
+            readLine(in);
+        }
+        return body.toByteArray();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c == -1) throw new EOFException();
+            if (c != '\r') line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private static byte[] content(int x) {
+        return ("lowres tile " + x).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class Frame {
+        int status;
+        String eTag;
+        long lastModified;
+        String encoding;
+        byte[] data;
+    }
+
+}
@@ -70,6 +70,7 @@ dependencies {
     compileOnly ("org.jetbrains:annotations:23.0.0")
 
     testImplementation ("org.junit.jupiter:junit-jupiter:5.8.2")
+    testImplementation ("org.xerial:sqlite-jdbc:3.36.0.3")
     testRuntimeOnly ("org.junit.jupiter:junit-jupiter-engine:5.8.2")
 }
 
@@ -27,23 +27,26 @@
 import com.flowpowered.math.vector.Vector2i;
 import com.google.gson.GsonBuilder;
 import de.bluecolored.bluemap.api.debug.DebugDump;
-import de.bluecolored.bluemap.api.gson.MarkerGson;
 import de.bluecolored.bluemap.api.markers.MarkerSet;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.hires.HiresModelManager;
 import de.bluecolored.bluemap.core.map.lowres.LowresTileManager;
+import de.bluecolored.bluemap.core.map.midres.MidresTileManager;
 import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 @DebugDump
@@ -51,10 +54,18 @@ public class BmMap {
 
     public static final String META_FILE_SETTINGS = "settings.json";
     public static final String META_FILE_TEXTURES = "textures.json";
+    public static final String META_FILE_TEXTURE_ATLAS = "textures-atlas.json";
+    public static final String META_FILE_TEXTURE_ATLAS_PAGE_PREFIX = "textures-atlas/";
     public static final String META_FILE_RENDER_STATE = ".rstate";
+    public static final String META_FILE_RENDER_STATE_JOURNAL = ".rstate-journal";
+    public static final String META_FILE_TILE_HASHES = ".tilehashes";
     public static final String META_FILE_MARKERS = "live/markers.json";
+    public static final String META_FILE_MARKER_INDEX = "live/markers/index.json";
+    public static final String META_FOLDER_MARKER_SETS = "live/markers/sets/";
     public static final String META_FILE_PLAYERS = "live/players.json";
 
+    private static final long MARKER_CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
     private final String id;
     private final String name;
     private final String worldId;
@@ -64,19 +75,35 @@ public class BmMap {
 
     private final ResourcePack resourcePack;
     private final MapRenderState renderState;
+    private final TileContentHashes tileContentHashes;
+    private final TileWritePipeline writePipeline;
     private final TextureGallery textureGallery;
 
     private final HiresModelManager hiresModelManager;
     private final LowresTileManager lowresTileManager;
+    @Nullable private final MidresTileManager midresTileManager;
 
     private final ConcurrentHashMap<String, MarkerSet> markerSets;
+    @Nullable private SerializedMarkerSets savedMarkerSets;
+    private boolean markerFilesWritten;
+    private volatile boolean markerSetsAccessed;
+    private long lastMarkerCheckTime;
 
     private Predicate<Vector2i> tileFilter;
 
+    private volatile boolean textureGalleryDirty;
+
     private long renderTimeSumNanos;
     private long tilesRendered;
 
+    private volatile long lastRenderTime;
+    private volatile boolean resourcesReleased;
+
     public BmMap(String id, String name, String worldId, World world, Storage storage, ResourcePack resourcePack, MapSettings settings) throws IOException {
+        this(id, name, worldId, world, storage, resourcePack, settings, TileWritePipeline.SYNCHRONOUS);
+    }
+
+    public BmMap(String id, String name, String worldId, World world, Storage storage, ResourcePack resourcePack, MapSettings settings, TileWritePipeline writePipeline) throws IOException {
         this.id = Objects.requireNonNull(id);
         this.name = Objects.requireNonNull(name);
         this.worldId = Objects.requireNonNull(worldId);
@@ -84,27 +111,55 @@ public BmMap(String id, String name, String worldId, World world, Storage storag
         this.storage = Objects.requireNonNull(storage);
         this.resourcePack = Objects.requireNonNull(resourcePack);
         this.mapSettings = Objects.requireNonNull(settings);
+        this.writePipeline = Objects.requireNonNull(writePipeline);
 
         this.renderState = new MapRenderState();
         loadRenderState();
 
+        // the tile-hashes can get big, they are only loaded once the map is rendered
+        this.tileContentHashes = new TileContentHashes(() -> storage.readMeta(id, META_FILE_TILE_HASHES));
+
+        // the textures are usually only written once the map actually renders or saves, see ensureTextureGallerySaved()
         this.textureGallery = loadTextureGallery();
         this.textureGallery.put(resourcePack);
-        saveTextureGallery();
+        this.textureGalleryDirty = true;
+
+        // .. but a map without any textures in storage yet would not be viewable (e.g. with only the webserver running)
+        if (storage.readMetaInfo(id, META_FILE_TEXTURES).isEmpty()) {
+            saveTextureGallery();
+            this.textureGalleryDirty = false;
+        }
 
         this.hiresModelManager = new HiresModelManager(
                 storage.tileStorage(id, 0),
                 this.resourcePack,
                 this.textureGallery,
                 settings,
-                new Grid(settings.getHiresTileSize(), 2)
+                new Grid(settings.getHiresTileSize(), 2),
+                this.tileContentHashes,
+                this.writePipeline
         );
 
+        Grid lowresTileGrid = new Grid(settings.getLowresTileSize());
+
+        if (settings.getMidresCellSize() > 0) {
+            this.midresTileManager = new MidresTileManager(
+                    storage.tileStorage(id, MidresTileManager.LOD),
+                    lowresTileGrid,
+                    settings.getMidresCellSize(),
+                    this.tileContentHashes
+            );
+        } else {
+            this.midresTileManager = null;
+        }
+
         this.lowresTileManager = new LowresTileManager(
                 storage.mapStorage(id),
-                new Grid(settings.getLowresTileSize()),
+                lowresTileGrid,
                 settings.getLodCount(),
-                settings.getLodFactor()
+                settings.getLodFactor(),
+                this.midresTileManager,
+                this.tileContentHashes
         );
 
         this.tileFilter = t -> true;
@@ -114,39 +169,101 @@ public BmMap(String id, String name, String worldId, World world, Storage storag
         this.renderTimeSumNanos = 0;
         this.tilesRendered = 0;
 
+        this.lastRenderTime = System.currentTimeMillis();
+        this.resourcesReleased = false;
+
         saveMapSettings();
     }
 
-    public void renderTile(Vector2i tile) {
-        if (!tileFilter.test(tile)) return;
+    /**
+     * Renders the tile, the returned future completes once the rendered tile has been saved
+     */
+    public CompletableFuture<Void> renderTile(Vector2i tile) {
+        if (!tileFilter.test(tile)) return CompletableFuture.completedFuture(null);
+
+        lastRenderTime = System.currentTimeMillis();
+        resourcesReleased = false;
+
+        ensureTextureGallerySaved();
 
         long start = System.nanoTime();
 
-        hiresModelManager.render(world, tile, lowresTileManager, mapSettings.isSaveHiresLayer());
+        CompletableFuture<Void> saved = hiresModelManager.render(world, tile, lowresTileManager, mapSettings.isSaveHiresLayer());
 
         long end = System.nanoTime();
         long delta = end - start;
 
         renderTimeSumNanos += delta;
         tilesRendered ++;
+
+        return saved;
     }
 
     public synchronized void save() {
+        // write all queued tiles first, so their hashes are saved as well
+        writePipeline.flush();
+
         lowresTileManager.save();
         saveRenderState();
+        saveTileContentHashes();
         saveMarkerState();
         savePlayerState();
         saveMapSettings();
 
         // only save texture gallery if not present in storage
         try {
-            if (storage.readMetaInfo(id, META_FILE_TEXTURES).isEmpty())
+            if (textureGalleryDirty || storage.readMetaInfo(id, META_FILE_TEXTURES).isEmpty()) {
+                textureGalleryDirty = false;
                 saveTextureGallery();
+            }
         } catch (IOException e) {
             Logger.global.logError("Failed to read texture gallery", e);
         }
     }
 
+    /**
+     * Saves and releases the cached lowres-tiles and tile-hashes of this map to free up memory.<br>
+     * Everything is loaded again on demand the next time the map is rendered.
+     */
+    public synchronized void releaseResources() {
+        writePipeline.flush();
+
+        lowresTileManager.save();
+        saveTileContentHashes();
+        tileContentHashes.unload();
+
+        resourcesReleased = true;
+    }
+
+    /**
+     * Returns the time (in milliseconds since epoch) when a tile of this map has last been rendered,
+     * or the time when this map has been loaded if it hasn't been rendered since then
+     */
+    public long getLastRenderTime() {
+        return lastRenderTime;
+    }
+
+    /**
+     * Returns true if the resources of this map have been released and the map hasn't been rendered since then
+     */
+    public boolean isResourcesReleased() {
+        return resourcesReleased;
+    }
+
+    /**
+     * Writes the texture-gallery to the storage if it changed since it has last been written.<br>
+     * This is deferred until the map is first rendered or saved, so loading a map stays cheap.
+     */
+    public void ensureTextureGallerySaved() {
+        if (!textureGalleryDirty) return;
+
+        synchronized (this) {
+            if (!textureGalleryDirty) return;
+            saveTextureGallery();
+            textureGalleryDirty = false;
+        }
+    }
+
     private void loadRenderState() throws IOException {
         Optional<InputStream> rstateData = storage.readMeta(id, META_FILE_RENDER_STATE);
         if (rstateData.isPresent()) {
@@ -156,16 +273,71 @@ private void loadRenderState() throws IOException {
                 Logger.global.logWarning("Failed to load render-state for map '" + getId() + "': " + ex);
             }
         }
+
+        Optional<InputStream> journalData = storage.readMeta(id, META_FILE_RENDER_STATE_JOURNAL);
+        if (journalData.isPresent()) {
+            try (InputStream in = journalData.get()){
+                this.renderState.loadJournal(in);
+            } catch (IOException ex) {
+                Logger.global.logWarning("Failed to load render-state journal for map '" + getId() + "': " + ex);
+            }
+        }
     }
 
+    /**
+     * Saves the render-times that changed since the last save into the render-state journal,
+     * and only rewrites the complete render-state once the journal grew too big.
+     */
     public synchronized void saveRenderState() {
-        try (OutputStream out = storage.writeMeta(id, META_FILE_RENDER_STATE)) {
-            this.renderState.save(out);
+        if (!this.renderState.isModified()) return;
+
+        try {
+            if (this.renderState.isCompactionDue()) {
+                // delete the journal first, an outdated journal must never be loaded on top of a newer render-state
+                storage.deleteMeta(id, META_FILE_RENDER_STATE_JOURNAL);
+
+                try (OutputStream out = storage.writeMeta(id, META_FILE_RENDER_STATE)) {
+                    this.renderState.save(out);
+                }
+            } else {
+                try (OutputStream out = storage.writeMeta(id, META_FILE_RENDER_STATE_JOURNAL)) {
+                    this.renderState.saveJournal(out);
+                }
+            }
         } catch (IOException ex){
             Logger.global.logError("Failed to save render-state for map: '" + this.id + "'!", ex);
         }
     }
 
+    public synchronized void saveTileContentHashes() {
+        if (!this.tileContentHashes.isModified()) return;
+
+        try (OutputStream out = storage.writeMeta(id, META_FILE_TILE_HASHES)) {
+            this.tileContentHashes.save(out);
+        } catch (IOException ex){
+            Logger.global.logError("Failed to save tile-hashes for map: '" + this.id + "'!", ex);
+        }
+    }
+
+    /**
+     * Prepares this map to be rendered by multiple instances into the same storage at the same time.<br>
+     * The tile-hashes are disabled (and deleted from the storage), since tiles written by another instance would not be
+     * known to them. And lowres-tiles are merged with their stored version instead of being overwritten, since they span
+     * regions that might be rendered by another instance.
+     */
+    public synchronized void enableSharedRendering() {
+        writePipeline.flush();
+
+        tileContentHashes.setEnabled(false);
+        lowresTileManager.setMergeOnSave(true);
+
+        try {
+            storage.deleteMeta(id, META_FILE_TILE_HASHES);
+        } catch (IOException ex){
+            Logger.global.logError("Failed to delete tile-hashes for map: '" + this.id + "'!", ex);
+        }
+    }
+
     private TextureGallery loadTextureGallery() throws IOException {
         TextureGallery gallery = null;
         Optional<InputStream> texturesData = storage.readMeta(id, META_FILE_TEXTURES);
@@ -180,16 +352,66 @@ private TextureGallery loadTextureGallery() throws IOException {
     }
 
     private void saveTextureGallery() {
+        String hash = this.textureGallery.calculateHash(this.resourcePack);
+
+        // skip if the textures in storage are already up-to-date
+        try {
+            if (
+                    hash.equals(loadTextureAtlasHash()) &&
+                    storage.readMetaInfo(id, META_FILE_TEXTURES).isPresent()
+            ) return;
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to check textures for map '" + getId() + "': " + ex);
+        }
+
         try (OutputStream out = storage.writeMeta(id, META_FILE_TEXTURES)) {
             this.textureGallery.writeTexturesFile(this.resourcePack, out);
         } catch (IOException ex) {
             Logger.global.logError("Failed to save textures for map '" + getId() + "'!", ex);
         }
+
+        saveTextureAtlas();
+    }
+
+    @Nullable
+    private String loadTextureAtlasHash() {
+        try {
+            Optional<InputStream> atlasData = storage.readMeta(id, META_FILE_TEXTURE_ATLAS);
+            if (atlasData.isEmpty()) return null;
+
+            try (InputStream in = atlasData.get()) {
+                return TextureAtlas.readAtlasFile(in).getHash();
+            }
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logWarning("Failed to load texture-atlas for map '" + getId() + "': " + ex);
+            return null;
+        }
+    }
+
+    private void saveTextureAtlas() {
+        try {
+            TextureAtlas atlas = this.textureGallery.createTextureAtlas(this.resourcePack,
+                    page -> META_FILE_TEXTURE_ATLAS_PAGE_PREFIX + page + ".png");
+
+            for (int page = 0; page < atlas.getPageCount(); page++) {
+                try (OutputStream out = storage.writeMeta(id, atlas.getPage(page).getFile())) {
+                    atlas.writePage(page, out);
+                }
+            }
+
+            // write the atlas-file last, so the stored hash only changes once all pages are written
+            try (OutputStream out = storage.writeMeta(id, META_FILE_TEXTURE_ATLAS)) {
+                atlas.writeAtlasFile(out);
+            }
+        } catch (IOException ex) {
+            Logger.global.logError("Failed to save texture-atlas for map '" + getId() + "'!", ex);
+        }
     }
 
     public synchronized void resetTextureGallery() {
         this.textureGallery.clear();
         this.textureGallery.put(this.resourcePack);
+        this.textureGalleryDirty = true;
     }
 
     private void saveMapSettings() {
@@ -206,14 +428,95 @@ private void saveMapSettings() {
         }
     }
 
+    /**
+     * Writes the marker-sets to the storage, but only if they changed since they have last been written.<br>
+     * The marker-sets can only change through {@link #getMarkerSets()}, but the returned marker-sets may be held
+     * and modified later, so they are fully compared at least every {@link #MARKER_CHECK_INTERVAL_MILLIS} regardless.
+     */
     public synchronized void saveMarkerState() {
+        long now = System.currentTimeMillis();
+        if (
+                markerFilesWritten && !markerSetsAccessed &&
+                now < lastMarkerCheckTime + MARKER_CHECK_INTERVAL_MILLIS
+        ) return;
+
+        markerSetsAccessed = false;
+        lastMarkerCheckTime = now;
+
+        // after a restart, the stored index tells which marker-set files are already written
+        if (savedMarkerSets == null && mapSettings.isSplitMarkerFiles()) savedMarkerSets = loadMarkerIndex();
+
+        SerializedMarkerSets serialized = SerializedMarkerSets.serialize(this.markerSets, savedMarkerSets);
+        if (markerFilesWritten && serialized.isEqual(savedMarkerSets)) return;
+
+        try {
+            try (
+                    OutputStream out = storage.writeMeta(id, META_FILE_MARKERS);
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)
+            ) {
+                serialized.writeAll(writer);
+            }
+
+            if (mapSettings.isSplitMarkerFiles()) saveMarkerSetFiles(serialized);
+
+            savedMarkerSets = serialized;
+            markerFilesWritten = true;
+        } catch (Exception ex) {
+            Logger.global.logError("Failed to save markers for map '" + getId() + "'!", ex);
+        }
+    }
+
+    /**
+     * Forgets which marker-files have been written, so they are all written again on the next save
+     * (e.g. after the map has been purged)
+     */
+    public synchronized void resetMarkerState() {
+        savedMarkerSets = null;
+        markerFilesWritten = false;
+    }
+
+    @Nullable
+    private SerializedMarkerSets loadMarkerIndex() {
+        try {
+            Optional<InputStream> indexData = storage.readMeta(id, META_FILE_MARKER_INDEX);
+            if (indexData.isEmpty()) return null;
+
+            try (Reader reader = new InputStreamReader(indexData.get(), StandardCharsets.UTF_8)) {
+                return SerializedMarkerSets.readIndex(reader);
+            }
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logWarning("Failed to load marker-index for map '" + getId() + "': " + ex);
+            return null;
+        }
+    }
+
+    /**
+     * Writes each changed marker-set into its own file, together with an index of all marker-sets and their etags
+     */
+    private void saveMarkerSetFiles(SerializedMarkerSets serialized) throws IOException {
+        for (String markerSetId : serialized.getIds()) {
+            if (!serialized.isChanged(markerSetId, savedMarkerSets)) continue;
+
+            try (
+                    OutputStream out = storage.writeMeta(id, META_FOLDER_MARKER_SETS + SerializedMarkerSets.getFileName(markerSetId));
+                    Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)
+            ) {
+                writer.write(Objects.requireNonNull(serialized.getJson(markerSetId)));
+            }
+        }
+
+        if (savedMarkerSets != null) {
+            for (String markerSetId : savedMarkerSets.getIds()) {
+                if (serialized.getJson(markerSetId) == null)
+                    storage.deleteMeta(id, META_FOLDER_MARKER_SETS + SerializedMarkerSets.getFileName(markerSetId));
+            }
+        }
+
         try (
-                OutputStream out = storage.writeMeta(id, META_FILE_MARKERS);
+                OutputStream out = storage.writeMeta(id, META_FILE_MARKER_INDEX);
                 Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)
         ) {
-            MarkerGson.INSTANCE.toJson(this.markerSets, writer);
-        } catch (Exception ex) {
-            Logger.global.logError("Failed to save markers for map '" + getId() + "'!", ex);
+            serialized.writeIndex(writer);
         }
     }
 
@@ -255,6 +558,10 @@ public MapRenderState getRenderState() {
         return renderState;
     }
 
+    public TileContentHashes getTileContentHashes() {
+        return tileContentHashes;
+    }
+
     public HiresModelManager getHiresModelManager() {
         return hiresModelManager;
     }
@@ -263,7 +570,12 @@ public LowresTileManager getLowresTileManager() {
         return lowresTileManager;
     }
 
+    public Optional<MidresTileManager> getMidresTileManager() {
+        return Optional.ofNullable(midresTileManager);
+    }
+
     public Map<String, MarkerSet> getMarkerSets() {
+        markerSetsAccessed = true;
         return markerSets;
     }
 
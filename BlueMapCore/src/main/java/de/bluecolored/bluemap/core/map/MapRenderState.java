@@ -28,92 +28,377 @@
 import de.bluecolored.bluemap.api.debug.DebugDump;
 
 import java.io.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+/**
+ * Remembers the time each region of a map has last been rendered.<br>
+ * The render-times are kept in primitive open-addressing tables which are split into stripes that are locked
+ * independently, so render-threads updating different regions don't block each other.<br>
+ * <br>
+ * Each stripe keeps a bitmap of the entries that changed since the last full save. Those changes can be saved
+ * as a small journal using {@link #saveJournal(OutputStream)}, so the whole state only needs to be written again
+ * once the journal grows too big (see {@link #isCompactionDue()}).
+ */
 @DebugDump
 public class MapRenderState {
 
-    private final Map<Vector2i, Long> regionRenderTimes;
-    private transient long latestRenderTime = -1;
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int STRIPE_COUNT = 16;
+
+    /**
+     * The journal is compacted once it contains more than this many entries and more than a quarter of all entries
+     */
+    private static final int MIN_COMPACTION_SIZE = 1024;
+
+    private final Stripe[] stripes;
+    private final Object latestRenderTimeLock = new Object();
+    private long latestRenderTime = -1;
+
+    private volatile boolean compactionRequired;
 
     public MapRenderState() {
-        regionRenderTimes = new HashMap<>();
+        this.stripes = new Stripe[STRIPE_COUNT];
+        for (int i = 0; i < STRIPE_COUNT; i++) this.stripes[i] = new Stripe();
+        this.compactionRequired = false;
     }
 
-    public synchronized void setRenderTime(Vector2i regionPos, long renderTime) {
-        regionRenderTimes.put(regionPos, renderTime);
+    public void setRenderTime(Vector2i regionPos, long renderTime) {
+        long key = key(regionPos.getX(), regionPos.getY());
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, renderTime, true);
+        }
 
-        if (latestRenderTime != -1) {
-            if (renderTime > latestRenderTime)
-                latestRenderTime = renderTime;
-            else
-                latestRenderTime = -1;
+        synchronized (latestRenderTimeLock) {
+            if (latestRenderTime != -1) {
+                if (renderTime > latestRenderTime)
+                    latestRenderTime = renderTime;
+                else
+                    latestRenderTime = -1;
+            }
         }
     }
 
-    public synchronized long getRenderTime(Vector2i regionPos) {
-        Long renderTime = regionRenderTimes.get(regionPos);
-        if (renderTime == null) return -1;
-        else return renderTime;
+    public long getRenderTime(Vector2i regionPos) {
+        long key = key(regionPos.getX(), regionPos.getY());
+        Stripe stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key);
+        }
     }
 
     public long getLatestRenderTime() {
-        if (latestRenderTime == -1) {
-            synchronized (this) {
-                latestRenderTime = regionRenderTimes.values().stream()
-                        .mapToLong(Long::longValue)
-                        .max()
-                        .orElse(-1);
+        synchronized (latestRenderTimeLock) {
+            if (latestRenderTime == -1) {
+                long latest = -1;
+                for (Stripe stripe : stripes) {
+                    synchronized (stripe) {
+                        latest = Math.max(latest, stripe.max());
+                    }
+                }
+                latestRenderTime = latest;
+            }
+
+            return latestRenderTime;
+        }
+    }
+
+    public void reset() {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+
+        synchronized (latestRenderTimeLock) {
+            latestRenderTime = -1;
+        }
+
+        // the journal can only add entries, so the cleared state needs to be saved completely
+        compactionRequired = true;
+    }
+
+    @DebugDump
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of entries that changed since the state has last been saved completely
+     */
+    @DebugDump
+    public int getJournalSize() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.changedCount;
             }
         }
+        return size;
+    }
 
-        return latestRenderTime;
+    /**
+     * Returns true if anything changed since the state or the journal has last been saved
+     */
+    public boolean isModified() {
+        if (compactionRequired) return true;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                if (stripe.unsaved) return true;
+            }
+        }
+        return false;
     }
 
-    public synchronized void reset() {
-        regionRenderTimes.clear();
+    /**
+     * Returns true if the state should be saved completely with {@link #save(OutputStream)} instead of only saving
+     * the journal, because the journal got too big or can not represent the changes.
+     */
+    public boolean isCompactionDue() {
+        if (compactionRequired) return true;
+        int journalSize = getJournalSize();
+        return journalSize > MIN_COMPACTION_SIZE && journalSize * 4 > size();
     }
 
-    public synchronized void save(OutputStream out) throws IOException {
+    /**
+     * Saves the complete state and clears the journal.<br>
+     * A previously saved journal should be deleted <b>before</b> calling this, since loading an old journal on top of
+     * a newer state would restore outdated render-times.
+     */
+    public void save(OutputStream out) throws IOException {
+        // clear the flag before copying the stripes, so a reset() while copying them keeps it set
+        compactionRequired = false;
+
+        // copy the stripes, so they are not locked while writing
+        long[][] keys = new long[STRIPE_COUNT][], renderTimes = new long[STRIPE_COUNT][];
+        int size = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                keys[i] = stripe.keys.clone();
+                renderTimes[i] = stripe.renderTimes.clone();
+                size += stripe.size;
+                stripe.clearChanges();
+            }
+        }
+
         try (
                 DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))
         ) {
-            dOut.writeInt(regionRenderTimes.size());
+            dOut.writeInt(size);
+
+            for (int i = 0; i < STRIPE_COUNT; i++) {
+                writeEntries(dOut, keys[i], renderTimes[i], null);
+            }
+
+            dOut.flush();
+        } catch (IOException | RuntimeException ex) {
+            // the changes are no longer tracked, so the next save has to be complete again
+            compactionRequired = true;
+            throw ex;
+        }
+    }
 
-            for (Map.Entry<Vector2i, Long> entry : regionRenderTimes.entrySet()) {
-                Vector2i regionPos = entry.getKey();
-                long renderTime = entry.getValue();
+    /**
+     * Saves all entries that changed since the state has last been saved completely.<br>
+     * The journal has the same format as the complete state, so it is loaded on top of the state using
+     * {@link #loadJournal(InputStream)}.
+     */
+    public void saveJournal(OutputStream out) throws IOException {
+        long[][] keys = new long[STRIPE_COUNT][], renderTimes = new long[STRIPE_COUNT][];
+        long[][] changed = new long[STRIPE_COUNT][];
+        int size = 0;
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                keys[i] = stripe.keys.clone();
+                renderTimes[i] = stripe.renderTimes.clone();
+                changed[i] = stripe.changed.clone();
+                size += stripe.changedCount;
+                stripe.unsaved = false;
+            }
+        }
 
-                dOut.writeInt(regionPos.getX());
-                dOut.writeInt(regionPos.getY());
-                dOut.writeLong(renderTime);
+        try (
+                DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))
+        ) {
+            dOut.writeInt(size);
+
+            for (int i = 0; i < STRIPE_COUNT; i++) {
+                writeEntries(dOut, keys[i], renderTimes[i], changed[i]);
             }
 
             dOut.flush();
+        } catch (IOException | RuntimeException ex) {
+            compactionRequired = true;
+            throw ex;
         }
     }
 
-    public synchronized void load(InputStream in) throws IOException {
-        regionRenderTimes.clear();
+    public void load(InputStream in) throws IOException {
+        reset();
+        readEntries(in, false);
+        compactionRequired = false;
+    }
 
+    /**
+     * Applies a journal that has been saved with {@link #saveJournal(OutputStream)} on top of the current state.
+     */
+    public void loadJournal(InputStream in) throws IOException {
+        // the loaded entries are not part of the saved state, so they stay in the journal
+        readEntries(in, true);
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.unsaved = false;
+            }
+        }
+
+        synchronized (latestRenderTimeLock) {
+            latestRenderTime = -1;
+        }
+    }
+
+    private void readEntries(InputStream in, boolean changed) throws IOException {
         try (
                 DataInputStream dIn = new DataInputStream(new GZIPInputStream(in))
         ) {
             int size = dIn.readInt();
 
             for (int i = 0; i < size; i++) {
-                Vector2i regionPos = new Vector2i(
-                        dIn.readInt(),
-                        dIn.readInt()
-                );
+                long key = key(dIn.readInt(), dIn.readInt());
                 long renderTime = dIn.readLong();
 
-                regionRenderTimes.put(regionPos, renderTime);
+                Stripe stripe = stripe(key);
+                synchronized (stripe) {
+                    stripe.put(key, renderTime, changed);
+                }
             }
         } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
     }
 
+    private static void writeEntries(DataOutputStream dOut, long[] keys, long[] renderTimes, long[] changed) throws IOException {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == EMPTY) continue;
+            if (changed != null && (changed[i >>> 6] & (1L << i)) == 0) continue;
+
+            dOut.writeInt((int) (keys[i] >> 32));
+            dOut.writeInt((int) keys[i]);
+            dOut.writeLong(renderTimes[i]);
+        }
+    }
+
+    private Stripe stripe(long key) {
+        return stripes[(int) (mix(key) >>> 60) & (STRIPE_COUNT - 1)];
+    }
+
+    private static long key(int x, int z) {
+        return ((long) x << 32) | (z & 0xFFFFFFFFL);
+    }
+
+    private static long mix(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    /**
+     * An open-addressing table of render-times with a bitmap marking the entries that changed since the last complete save
+     */
+    private static class Stripe {
+
+        private long[] keys;
+        private long[] renderTimes;
+        private long[] changed;
+        private int size;
+        private int changedCount;
+        private boolean unsaved;
+
+        private Stripe() {
+            this.keys = new long[64];
+            this.renderTimes = new long[64];
+            this.changed = new long[1];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        private long get(long key) {
+            int index = indexOf(key);
+            return keys[index] == key ? renderTimes[index] : -1;
+        }
+
+        private void put(long key, long renderTime, boolean markChanged) {
+            int index = indexOf(key);
+            if (keys[index] == key) {
+                if (renderTimes[index] == renderTime) return;
+                renderTimes[index] = renderTime;
+            } else {
+                keys[index] = key;
+                renderTimes[index] = renderTime;
+                size++;
+            }
+
+            if (markChanged) {
+                unsaved = true;
+                if ((changed[index >>> 6] & (1L << index)) == 0) {
+                    changed[index >>> 6] |= 1L << index;
+                    changedCount++;
+                }
+            }
+
+            if (size * 4 > keys.length * 3) grow();
+        }
+
+        private long max() {
+            long max = -1;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != EMPTY && renderTimes[i] > max) max = renderTimes[i];
+            }
+            return max;
+        }
+
+        private void clear() {
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            clearChanges();
+        }
+
+        private void clearChanges() {
+            Arrays.fill(changed, 0);
+            changedCount = 0;
+            unsaved = false;
+        }
+
+        private int indexOf(long key) {
+            int mask = keys.length - 1;
+            int index = (int) (mix(key) >>> 32) & mask;
+            while (keys[index] != EMPTY && keys[index] != key) {
+                index = (index + 1) & mask;
+            }
+            return index;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys, oldRenderTimes = renderTimes, oldChanged = changed;
+            keys = new long[oldKeys.length * 2];
+            renderTimes = new long[oldKeys.length * 2];
+            changed = new long[keys.length >>> 6];
+            Arrays.fill(keys, EMPTY);
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                renderTimes[index] = oldRenderTimes[i];
+                if ((oldChanged[i >>> 6] & (1L << i)) != 0)
+                    changed[index >>> 6] |= 1L << index;
+            }
+        }
+
+    }
+
 }
@@ -48,6 +48,16 @@ public interface MapSettings extends RenderSettings {
     int getLodCount();
 
     int getLodFactor();
+
+    /**
+     * The size (in blocks) of the cells of the simplified midres-models, or 0 if no midres-layer should be generated.
+     */
+    int getMidresCellSize();
+
+    /**
+     * Whether each marker-set should additionally be written into its own file, together with an index of their etags
+     */
+    boolean isSplitMarkerFiles();
     
     WorldType getWorldType();
     
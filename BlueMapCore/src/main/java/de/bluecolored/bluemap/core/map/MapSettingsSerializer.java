@@ -30,6 +30,7 @@
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 import de.bluecolored.bluemap.core.map.lowres.LowresTileManager;
+import de.bluecolored.bluemap.core.map.midres.MidresTileManager;
 import de.bluecolored.bluemap.core.util.math.Color;
 
 import java.lang.reflect.Type;
@@ -65,6 +66,15 @@ public JsonElement serialize(BmMap map, Type typeOfSrc, JsonSerializationContext
         lowres.add("lodCount", context.serialize(lowresTileManager.getLodCount()));
         root.add("lowres", lowres);
 
+        // midres
+        map.getMidresTileManager().ifPresent(midresTileManager -> {
+            JsonObject midres = new JsonObject();
+            midres.add("tileSize", context.serialize(midresTileManager.getTileGrid().getGridSize()));
+            midres.add("cellSize", context.serialize(midresTileManager.getCellSize()));
+            midres.add("lod", context.serialize(MidresTileManager.LOD));
+            root.add("midres", midres);
+        });
+
         // startPos
         Vector2i startPos = map.getMapSettings().getStartPos()
                 .orElse(map.getWorld().getSpawnPoint().toVector2(true));
@@ -0,0 +1,226 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import de.bluecolored.bluemap.api.gson.MarkerGson;
+import de.bluecolored.bluemap.api.markers.MarkerSet;
+import de.bluecolored.bluemap.core.storage.Storage;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * The marker-sets of a map, serialized to json one by one, with a hash of each marker-set to detect which of them
+ * changed.<br>
+ * The marker-sets of the API are plain mutable objects that can't tell if they have been changed, so comparing the
+ * serialized state is the only reliable way to find out.<br>
+ * To keep this cheap, a marker-set is only streamed into its hash first, and only serialized into a json-string again
+ * if the hash differs from the previous state.
+ */
+public class SerializedMarkerSets {
+
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+
+    private final SortedMap<String, Long> hashes;
+    private final Map<String, String> json;
+
+    private SerializedMarkerSets(SortedMap<String, Long> hashes, Map<String, String> json) {
+        this.hashes = hashes;
+        this.json = json;
+    }
+
+    public static SerializedMarkerSets serialize(Map<String, MarkerSet> markerSets) {
+        return serialize(markerSets, null);
+    }
+
+    /**
+     * Serializes the marker-sets, reusing the json of all marker-sets that didn't change since the previous state
+     */
+    public static SerializedMarkerSets serialize(Map<String, MarkerSet> markerSets, @Nullable SerializedMarkerSets previous) {
+        SortedMap<String, Long> hashes = new TreeMap<>();
+        Map<String, String> json = new HashMap<>();
+        markerSets.forEach((id, markerSet) -> {
+            HashingWriter hashingWriter = new HashingWriter();
+            MarkerGson.INSTANCE.toJson(markerSet, hashingWriter);
+            long hash = hashingWriter.hash;
+
+            String setJson = null;
+            if (previous != null && Objects.equals(previous.hashes.get(id), hash)) setJson = previous.json.get(id);
+            if (setJson == null) setJson = MarkerGson.INSTANCE.toJson(markerSet);
+
+            hashes.put(id, hash);
+            json.put(id, setJson);
+        });
+        return new SerializedMarkerSets(hashes, json);
+    }
+
+    /**
+     * Reads the ids and etags of the marker-sets from an index written by {@link #writeIndex(Writer)}.<br>
+     * The returned state contains no json, it can only be used to find out which marker-sets changed since the index
+     * has been written.
+     */
+    public static SerializedMarkerSets readIndex(Reader reader) throws IOException {
+        SortedMap<String, Long> hashes = new TreeMap<>();
+
+        JsonReader jsonReader = new JsonReader(reader);
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            String id = jsonReader.nextName();
+            Long hash = null;
+
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                if (!jsonReader.nextName().equals("etag")) {
+                    jsonReader.skipValue();
+                    continue;
+                }
+
+                try {
+                    hash = Long.parseUnsignedLong(jsonReader.nextString(), 16);
+                } catch (NumberFormatException ignore) {}
+            }
+            jsonReader.endObject();
+
+            // an unknown etag is kept as null, so the marker-set counts as changed
+            hashes.put(id, hash);
+        }
+        jsonReader.endObject();
+
+        return new SerializedMarkerSets(hashes, Collections.emptyMap());
+    }
+
+    public Set<String> getIds() {
+        return hashes.keySet();
+    }
+
+    @Nullable
+    public String getJson(String id) {
+        return json.get(id);
+    }
+
+    /**
+     * An etag for the marker-set, that changes whenever the marker-set changes
+     */
+    @Nullable
+    public String getETag(String id) {
+        Long hash = hashes.get(id);
+        return hash != null ? Long.toHexString(hash) : null;
+    }
+
+    /**
+     * Returns true if the marker-set is not contained in the other serialized state, or has changed
+     */
+    public boolean isChanged(String id, @Nullable SerializedMarkerSets other) {
+        if (other == null) return true;
+        return !Objects.equals(hashes.get(id), other.hashes.get(id));
+    }
+
+    /**
+     * Returns true if both contain the same marker-sets with the same content
+     */
+    public boolean isEqual(@Nullable SerializedMarkerSets other) {
+        return other != null && hashes.equals(other.hashes);
+    }
+
+    /**
+     * Writes all marker-sets as one json-object, the same way they would be serialized as a map by {@link MarkerGson}
+     */
+    public void writeAll(Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        for (String id : hashes.keySet()) {
+            jsonWriter.name(id).jsonValue(Objects.requireNonNull(json.get(id)));
+        }
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes an index of all marker-sets with the name of their file and their etag
+     */
+    public void writeIndex(Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        for (String id : hashes.keySet()) {
+            jsonWriter.name(id).beginObject()
+                    .name("file").value(getFileName(id))
+                    .name("etag").value(getETag(id))
+                    .endObject();
+        }
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    /**
+     * The name of the file the marker-set is written to, when the marker-sets are written to separate files
+     */
+    public static String getFileName(String id) {
+        return Storage.escapeMetaName(id).replace('/', '_') + ".json";
+    }
+
+    /**
+     * Calculates the (FNV-1a) hash of everything written to it, without keeping the written chars
+     */
+    private static class HashingWriter extends Writer {
+
+        private long hash = FNV_OFFSET_BASIS;
+
+        @Override
+        public void write(int c) {
+            hash ^= (char) c;
+            hash *= FNV_PRIME;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                hash ^= cbuf[i];
+                hash *= FNV_PRIME;
+            }
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                hash ^= str.charAt(i);
+                hash *= FNV_PRIME;
+            }
+        }
+
+        @Override
+        public void flush() {}
+
+        @Override
+        public void close() {}
+
+    }
+
+}
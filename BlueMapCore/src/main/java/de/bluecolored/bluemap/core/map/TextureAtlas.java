@@ -0,0 +1,340 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.google.gson.JsonIOException;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * A set of power-of-two PNG-images (pages) that contain all textures of a {@link TextureGallery}, together
+ * with the rectangle of each texture (by gallery-ordinal) on those pages.
+ */
+@DebugDump
+public class TextureAtlas {
+
+    public static final int MAX_PAGE_SIZE = 4096;
+
+    // empty border around each texture that gets filled with the edge-pixels of that texture to prevent bleeding
+    private static final int PADDING = 1;
+
+    private static final String DATA_URL_PREFIX = "data:image/png;base64,";
+
+    private String hash;
+    private Page[] pages;
+    private Region[] textures;
+
+    private transient BufferedImage[] pageImages;
+
+    @SuppressWarnings("unused")
+    private TextureAtlas() {}
+
+    private TextureAtlas(String hash, Page[] pages, Region[] textures, BufferedImage[] pageImages) {
+        this.hash = hash;
+        this.pages = pages;
+        this.textures = textures;
+        this.pageImages = pageImages;
+    }
+
+    /**
+     * The hash of the textures that this atlas has been built from
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    public int getPageCount() {
+        return pages.length;
+    }
+
+    public Page getPage(int page) {
+        return pages[page];
+    }
+
+    public void writePage(int page, OutputStream out) throws IOException {
+        if (pageImages == null) throw new IllegalStateException("This texture-atlas has no loaded page-images!");
+        ImageIO.write(pageImages[page], "png", out);
+    }
+
+    public void writeAtlasFile(OutputStream out) throws IOException {
+        try (Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+            ResourcesGson.INSTANCE.toJson(this, TextureAtlas.class, writer);
+        } catch (JsonIOException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Reads an atlas-file, the returned atlas contains the texture-regions and hash but no page-images.
+     */
+    public static TextureAtlas readAtlasFile(InputStream in) throws IOException {
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            TextureAtlas atlas = ResourcesGson.INSTANCE.fromJson(reader, TextureAtlas.class);
+            if (atlas == null) throw new IOException("Texture-atlas data is empty!");
+            return atlas;
+        } catch (JsonIOException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Packs the given textures (indexed by their gallery-ordinal) into as few pages as possible.
+     * @param pageFileName a function returning the file-name that will be used to store the page with the given index
+     */
+    public static TextureAtlas build(Texture[] textures, String hash, IntFunction<String> pageFileName) throws IOException {
+        BufferedImage[] images = new BufferedImage[textures.length];
+        Integer[] order = new Integer[textures.length];
+        for (int i = 0; i < textures.length; i++) {
+            images[i] = decodeImage(textures[i]);
+            order[i] = i;
+        }
+
+        // sort by height (then width) for a tighter shelf-packing
+        Arrays.sort(order, (a, b) -> {
+            int c = Integer.compare(images[b].getHeight(), images[a].getHeight());
+            if (c != 0) return c;
+            return Integer.compare(images[b].getWidth(), images[a].getWidth());
+        });
+
+        Region[] regions = new Region[textures.length];
+        List<Page> pages = new ArrayList<>();
+        List<BufferedImage> pageImages = new ArrayList<>();
+
+        int next = 0;
+        while (next < order.length) {
+            int pageIndex = pages.size();
+
+            // start with the smallest square page that could hold all remaining textures and grow if they don't fit
+            long area = 0;
+            for (int i = next; i < order.length; i++) {
+                BufferedImage image = images[order[i]];
+                area += (long) (image.getWidth() + 2 * PADDING) * (image.getHeight() + 2 * PADDING);
+            }
+            int size = Math.min(nextPowerOfTwo((int) Math.ceil(Math.sqrt(area))), MAX_PAGE_SIZE);
+
+            int packed, usedHeight;
+            while (true) {
+                ShelfPacker packer = new ShelfPacker(size, size);
+                packed = 0;
+                for (int i = next; i < order.length; i++) {
+                    BufferedImage image = images[order[i]];
+                    if (!packer.place(image.getWidth() + 2 * PADDING, image.getHeight() + 2 * PADDING)) break;
+                    packed++;
+                }
+
+                if (next + packed == order.length || size >= MAX_PAGE_SIZE) {
+                    if (packed == 0) throw new IOException("Texture is too big to fit into a texture-atlas: " +
+                            textures[order[next]].getResourcePath());
+                    usedHeight = packer.usedHeight;
+                    break;
+                }
+
+                size *= 2;
+            }
+
+            int pageWidth = size, pageHeight = nextPowerOfTwo(usedHeight);
+            BufferedImage pageImage = new BufferedImage(pageWidth, pageHeight, BufferedImage.TYPE_INT_ARGB);
+
+            // place again, this time for real
+            ShelfPacker packer = new ShelfPacker(pageWidth, pageHeight);
+            for (int i = next; i < next + packed; i++) {
+                int ordinal = order[i];
+                BufferedImage image = images[ordinal];
+                packer.place(image.getWidth() + 2 * PADDING, image.getHeight() + 2 * PADDING);
+
+                int x = packer.lastX + PADDING, y = packer.lastY + PADDING;
+                drawPadded(pageImage, image, x, y);
+                regions[ordinal] = new Region(pageIndex, x, y, image.getWidth(), image.getHeight(), pageWidth, pageHeight);
+            }
+
+            pages.add(new Page(pageFileName.apply(pageIndex), pageWidth, pageHeight));
+            pageImages.add(pageImage);
+            next += packed;
+        }
+
+        return new TextureAtlas(
+                hash,
+                pages.toArray(Page[]::new),
+                regions,
+                pageImages.toArray(BufferedImage[]::new)
+        );
+    }
+
+    private static BufferedImage decodeImage(Texture texture) throws IOException {
+        String data = texture.getTexture();
+        if (data == null || !data.startsWith(DATA_URL_PREFIX)) data = Texture.MISSING.getTexture();
+
+        byte[] bytes = Base64.getDecoder().decode(data.substring(DATA_URL_PREFIX.length()));
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(bytes));
+        if (image == null) throw new IOException("Failed to decode texture: " + texture.getResourcePath());
+        return image;
+    }
+
+    private static void drawPadded(BufferedImage target, BufferedImage image, int x, int y) {
+        int width = image.getWidth(), height = image.getHeight();
+        for (int dx = -PADDING; dx < width + PADDING; dx++) {
+            for (int dy = -PADDING; dy < height + PADDING; dy++) {
+                int sx = Math.min(Math.max(dx, 0), width - 1);
+                int sy = Math.min(Math.max(dy, 0), height - 1);
+                target.setRGB(x + dx, y + dy, image.getRGB(sx, sy));
+            }
+        }
+    }
+
+    private static int nextPowerOfTwo(int value) {
+        int result = 1;
+        while (result < value) result <<= 1;
+        return result;
+    }
+
+    /**
+     * Simple shelf-packing: rectangles are placed left to right in rows ("shelves"),
+     * a new shelf is started when the current one is full.
+     */
+    private static class ShelfPacker {
+
+        private final int width, height;
+        private int shelfX, shelfY, shelfHeight;
+        private int lastX, lastY;
+        private int usedHeight;
+
+        private ShelfPacker(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        private boolean place(int w, int h) {
+            if (w > width) return false;
+
+            if (shelfX + w > width) {
+                shelfY += shelfHeight;
+                shelfX = 0;
+                shelfHeight = 0;
+            }
+
+            if (shelfY + h > height) return false;
+
+            lastX = shelfX;
+            lastY = shelfY;
+
+            shelfX += w;
+            shelfHeight = Math.max(shelfHeight, h);
+            usedHeight = Math.max(usedHeight, shelfY + shelfHeight);
+            return true;
+        }
+
+    }
+
+    @DebugDump
+    public static class Page {
+
+        private String file;
+        private int width, height;
+
+        @SuppressWarnings("unused")
+        private Page() {}
+
+        private Page(String file, int width, int height) {
+            this.file = file;
+            this.width = width;
+            this.height = height;
+        }
+
+        public String getFile() {
+            return file;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+    }
+
+    /**
+     * The location of a texture on a page, in pixels and as uv-coordinates (u0, v0, u1, v1) with the origin
+     * in the top-left corner of the page.
+     */
+    @DebugDump
+    public static class Region {
+
+        private int page;
+        private int x, y, width, height;
+        private float[] uv;
+
+        @SuppressWarnings("unused")
+        private Region() {}
+
+        private Region(int page, int x, int y, int width, int height, int pageWidth, int pageHeight) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.uv = new float[] {
+                    (float) x / pageWidth,
+                    (float) y / pageHeight,
+                    (float) (x + width) / pageWidth,
+                    (float) (y + height) / pageHeight
+            };
+        }
+
+        public int getPage() {
+            return page;
+        }
+
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+    }
+
+}
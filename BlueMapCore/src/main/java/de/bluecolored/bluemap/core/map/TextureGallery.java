@@ -33,9 +33,13 @@
 import org.jetbrains.annotations.Nullable;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntFunction;
 
 @DebugDump
 public class TextureGallery {
@@ -70,6 +74,55 @@ public synchronized void put(ResourcePack resourcePack) {
     }
 
     public void writeTexturesFile(ResourcePack resourcePack, OutputStream out) throws IOException {
+        Texture[] textures = collectTextures(resourcePack);
+
+        try (Writer writer = new OutputStreamWriter(out)) {
+            ResourcesGson.INSTANCE.toJson(textures, Texture[].class, writer);
+        } catch (JsonIOException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    /**
+     * Packs all textures of this gallery into a {@link TextureAtlas}
+     */
+    public TextureAtlas createTextureAtlas(ResourcePack resourcePack, IntFunction<String> pageFileName) throws IOException {
+        Texture[] textures = collectTextures(resourcePack);
+        return TextureAtlas.build(textures, calculateHash(textures), pageFileName);
+    }
+
+    /**
+     * Calculates a hash over all textures of this gallery (including their ordinals and image-data).
+     * The hash only changes if the textures that would be written to the textures-file change.
+     */
+    public String calculateHash(ResourcePack resourcePack) {
+        return calculateHash(collectTextures(resourcePack));
+    }
+
+    private String calculateHash(Texture[] textures) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 is not supported on this platform!", ex);
+        }
+
+        for (Texture texture : textures) {
+            digest.update(texture.getResourcePath().getFormatted().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            if (texture.getTexture() != null)
+                digest.update(texture.getTexture().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+        return hash.toString();
+    }
+
+    private Texture[] collectTextures(ResourcePack resourcePack) {
         Texture[] textures = new Texture[nextId];
         Arrays.fill(textures, Texture.MISSING);
 
@@ -82,11 +135,7 @@ public void writeTexturesFile(ResourcePack resourcePack, OutputStream out) throw
                 textures[ordinal] = Texture.missing(textureResourcePath);
         });
 
-        try (Writer writer = new OutputStreamWriter(out)) {
-            ResourcesGson.INSTANCE.toJson(textures, Texture[].class, writer);
-        } catch (JsonIOException ex) {
-            throw new IOException(ex);
-        }
+        return textures;
     }
 
     public static TextureGallery readTexturesFile(InputStream in) throws IOException {
@@ -0,0 +1,375 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Remembers a 64-bit hash of the content that has last been written for each tile of a map,
+ * so re-rendered tiles that didn't change don't need to be written again
+ * (which would also change their last-modified time and invalidate any web-caches).
+ */
+@DebugDump
+public class TileContentHashes {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+    private long[] hashes;
+    private int size;
+    private boolean modified;
+
+    @Nullable private final Source source;
+    private boolean loaded;
+    private boolean enabled;
+
+    public TileContentHashes() {
+        this(null);
+    }
+
+    /**
+     * @param source the source that the saved hashes are loaded from once they are first needed
+     */
+    public TileContentHashes(@Nullable Source source) {
+        this.keys = new long[1024];
+        this.hashes = new long[1024];
+        Arrays.fill(keys, EMPTY);
+        this.size = 0;
+        this.modified = false;
+        this.source = source;
+        this.loaded = source == null;
+        this.enabled = true;
+    }
+
+    /**
+     * Encodes the tile into memory and only writes it to the output if its content changed since it has last been written.
+     * @return true if the tile has been written
+     */
+    public boolean write(int lod, Vector2i tile, TileEncoder encoder, TileOutput output) throws IOException {
+        return write(lod, tile, encode(encoder), output);
+    }
+
+    /**
+     * Writes the already encoded tile to the output if its content changed since it has last been written.
+     * @return true if the tile has been written
+     */
+    public boolean write(int lod, Vector2i tile, EncodedTile data, TileOutput output) throws IOException {
+        long hash = data.getHash();
+        if (contains(lod, tile, hash)) return false;
+
+        try (OutputStream out = output.open()) {
+            data.writeTo(out);
+        } catch (IOException | RuntimeException ex) {
+            // the stored tile might be partially overwritten now
+            remove(lod, tile);
+            throw ex;
+        }
+
+        // the hash is only stored once the tile has been written, so saved hashes never describe unwritten tiles
+        update(lod, tile, hash);
+        return true;
+    }
+
+    /**
+     * Encodes the tile into memory, so it can be written later using {@link #write(int, Vector2i, EncodedTile, TileOutput)}
+     */
+    public static EncodedTile encode(TileEncoder encoder) throws IOException {
+        EncodedTile data = new EncodedTile();
+        encoder.encode(data);
+        return data;
+    }
+
+    /**
+     * Returns true if the hash is stored for the tile
+     */
+    public synchronized boolean contains(int lod, Vector2i tile, long hash) {
+        if (!enabled) return false;
+        ensureLoaded();
+
+        long key = key(lod, tile);
+        int index = indexOf(key);
+        return keys[index] == key && hashes[index] == hash;
+    }
+
+    /**
+     * Stores the hash for the tile.
+     * @return false if the tile already had the same hash, true otherwise
+     */
+    public synchronized boolean update(int lod, Vector2i tile, long hash) {
+        if (!enabled) return true;
+        ensureLoaded();
+
+        long key = key(lod, tile);
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            if (hashes[index] == hash) return false;
+            hashes[index] = hash;
+            modified = true;
+            return true;
+        }
+
+        keys[index] = key;
+        hashes[index] = hash;
+        if (++size * 4 > keys.length * 3) grow();
+        modified = true;
+        return true;
+    }
+
+    public synchronized void remove(int lod, Vector2i tile) {
+        if (!enabled) return;
+        ensureLoaded();
+
+        int index = indexOf(key(lod, tile));
+        if (keys[index] == EMPTY) return;
+
+        // re-insert the following entries of the probe-sequence, so no entry gets unreachable
+        keys[index] = EMPTY;
+        size--;
+        modified = true;
+        for (int i = (index + 1) & (keys.length - 1); keys[i] != EMPTY; i = (i + 1) & (keys.length - 1)) {
+            long key = keys[i], hash = hashes[i];
+            keys[i] = EMPTY;
+            int newIndex = indexOf(key);
+            keys[newIndex] = key;
+            hashes[newIndex] = hash;
+        }
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        modified = true;
+        loaded = true;
+    }
+
+    /**
+     * Sets whether the hashes are remembered at all. If disabled, all hashes are dropped and every tile is always written.<br>
+     * The hashes must be disabled if other instances write tiles of the same map into the same storage, since they would
+     * not know about tiles that have been changed by those instances.
+     */
+    public synchronized void setEnabled(boolean enabled) {
+        if (this.enabled == enabled) return;
+        this.enabled = enabled;
+
+        if (!enabled) {
+            keys = new long[1024];
+            hashes = new long[1024];
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+            modified = false;
+            loaded = true;
+        }
+    }
+
+    @DebugDump
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Frees the memory of the hashes if they have a source and are not modified.
+     * They are loaded from the source again once they are needed.
+     * @return true if the hashes have been unloaded
+     */
+    public synchronized boolean unload() {
+        if (source == null || modified || !enabled) return false;
+
+        keys = new long[1024];
+        hashes = new long[1024];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        loaded = false;
+        return true;
+    }
+
+    /**
+     * Returns true if any hash changed since this has last been saved or loaded
+     */
+    public synchronized boolean isModified() {
+        return modified;
+    }
+
+    @DebugDump
+    public synchronized int size() {
+        ensureLoaded();
+        return size;
+    }
+
+    public synchronized void save(OutputStream out) throws IOException {
+        ensureLoaded();
+
+        try (
+                DataOutputStream dOut = new DataOutputStream(new GZIPOutputStream(out))
+        ) {
+            dOut.writeInt(size);
+
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] == EMPTY) continue;
+                dOut.writeLong(keys[i]);
+                dOut.writeLong(hashes[i]);
+            }
+
+            dOut.flush();
+        }
+
+        modified = false;
+    }
+
+    public synchronized void load(InputStream in) throws IOException {
+        reset();
+
+        try (
+                DataInputStream dIn = new DataInputStream(new GZIPInputStream(in))
+        ) {
+            int size = dIn.readInt();
+
+            for (int i = 0; i < size; i++) {
+                long key = dIn.readLong();
+                long hash = dIn.readLong();
+
+                int index = indexOf(key);
+                if (keys[index] != key) {
+                    keys[index] = key;
+                    if (++this.size * 4 > keys.length * 3) grow();
+                }
+                hashes[indexOf(key)] = hash;
+            }
+        } catch (EOFException ignore){} // ignoring a sudden end of stream, since it is save to only read as many as we can
+
+        modified = false;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+
+        try {
+            Optional<InputStream> data = source.open();
+            if (data.isEmpty()) return;
+
+            try (InputStream in = data.get()) {
+                load(in);
+            }
+        } catch (IOException ex) {
+            Logger.global.logWarning("Failed to load tile-hashes: " + ex);
+        }
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = (int) spread(key) & mask;
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Mixes all 64 bits of the key into the low bits, so tables of any size get an even spread (murmur3's fmix64)
+     */
+    private static long spread(long key) {
+        key ^= key >>> 33;
+        key *= 0xFF51AFD7ED558CCDL;
+        key ^= key >>> 33;
+        key *= 0xC4CEB9FE1A85EC53L;
+        key ^= key >>> 33;
+        return key;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys, oldHashes = hashes;
+        keys = new long[oldKeys.length * 2];
+        hashes = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == EMPTY) continue;
+            int index = indexOf(oldKeys[i]);
+            keys[index] = oldKeys[i];
+            hashes[index] = oldHashes[i];
+        }
+    }
+
+    private static long key(int lod, Vector2i tile) {
+        return  ((long) (lod & 0xFF) << 48) |
+                ((long) (tile.getX() & 0xFFFFFF) << 24) |
+                (tile.getY() & 0xFFFFFF);
+    }
+
+    @FunctionalInterface
+    public interface Source {
+        Optional<InputStream> open() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface TileEncoder {
+        void encode(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface TileOutput {
+        OutputStream open() throws IOException;
+    }
+
+    /**
+     * An encoded tile held in memory, with a 64-bit hash over its content
+     */
+    public static class EncodedTile extends ByteArrayOutputStream {
+
+        private EncodedTile() {
+            super(8192);
+        }
+
+        public long getHash() {
+            long hash = 0xCBF29CE484222325L ^ count;
+            int i = 0;
+            for (; i + 8 <= count; i += 8) {
+                long word = 0;
+                for (int b = 0; b < 8; b++) word = (word << 8) | (buf[i + b] & 0xFF);
+                hash = mix(hash ^ word);
+            }
+            for (; i < count; i++) {
+                hash = mix(hash ^ (buf[i] & 0xFF));
+            }
+            return mix(hash);
+        }
+
+        private static long mix(long value) {
+            value *= 0x9E3779B97F4A7C15L;
+            return value ^ (value >>> 29);
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Moves the encoding and storing of rendered tiles off the render-threads.<br>
+ * <br>
+ * Each submitted tile is first encoded on one of the encode-threads and then written on one of the write-threads,
+ * so a slow storage doesn't throttle the rendering. The amount of tiles in flight is bounded: if it is reached,
+ * {@link #submit} blocks until a tile has been written.<br>
+ * A stage with zero threads runs directly on the thread that finished the previous stage, so a pipeline with
+ * zero threads for both stages behaves exactly like writing the tiles directly.
+ */
+@DebugDump
+public class TileWritePipeline implements Closeable {
+
+    /**
+     * A pipeline that encodes and writes all tiles directly on the submitting thread
+     */
+    public static final TileWritePipeline SYNCHRONOUS = new TileWritePipeline(0, 0, 1);
+
+    private final int encodeThreadCount, writeThreadCount;
+    private final ExecutorService encodeExecutor, writeExecutor;
+
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+
+    private volatile boolean closed;
+
+    public TileWritePipeline(int encodeThreadCount, int writeThreadCount, int maxInFlight) {
+        this.encodeThreadCount = Math.max(encodeThreadCount, 0);
+        this.writeThreadCount = Math.max(writeThreadCount, 0);
+        this.encodeExecutor = createExecutor(this.encodeThreadCount, "BlueMap-TileEncoder-");
+        this.writeExecutor = createExecutor(this.writeThreadCount, "BlueMap-TileWriter-");
+
+        this.maxInFlight = Math.max(maxInFlight, 1);
+        this.inFlight = new Semaphore(this.maxInFlight, true); // fair, so a flush can't be starved by new submissions
+
+        this.closed = false;
+    }
+
+    /**
+     * Submits a tile to the pipeline, blocking while the pipeline is full.
+     * @return a future that completes once the tile has been written (or failed to)
+     */
+    public <T> CompletableFuture<Void> submit(EncodeStage<T> encoder, WriteStage<T> writer) {
+        if (isSynchronous()) {
+            try {
+                writer.write(encoder.encode());
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException | RuntimeException ex) {
+                return CompletableFuture.failedFuture(ex);
+            }
+        }
+
+        inFlight.acquireUninterruptibly();
+        try {
+            return CompletableFuture
+                    .supplyAsync(unchecked(encoder), executor(encodeExecutor))
+                    .thenAcceptAsync(unchecked(writer), executor(writeExecutor))
+                    .whenComplete((result, ex) -> inFlight.release());
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * Blocks until all tiles that have been submitted so far are written
+     */
+    public void flush() {
+        if (isSynchronous()) return;
+
+        inFlight.acquireUninterruptibly(maxInFlight);
+        inFlight.release(maxInFlight);
+    }
+
+    @DebugDump
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public boolean isSynchronous() {
+        return closed || (encodeExecutor == null && writeExecutor == null);
+    }
+
+    /**
+     * Writes all pending tiles and stops the threads, tiles submitted afterwards are written directly
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        closed = true;
+
+        if (encodeExecutor != null) encodeExecutor.shutdown();
+        if (writeExecutor != null) writeExecutor.shutdown();
+    }
+
+    private static Executor executor(ExecutorService executorService) {
+        if (executorService == null) return Runnable::run;
+        return executorService;
+    }
+
+    private static ExecutorService createExecutor(int threadCount, String threadNamePrefix) {
+        if (threadCount <= 0) return null;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        return Executors.newFixedThreadPool(threadCount, runnable -> {
+            Thread thread = new Thread(runnable, threadNamePrefix + threadIndex.getAndIncrement());
+            // use current classloader, this fixes ClassLoading issues with forge
+            thread.setContextClassLoader(BlueMap.class.getClassLoader());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static <T> Supplier<T> unchecked(EncodeStage<T> encoder) {
+        return () -> {
+            try {
+                return encoder.encode();
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        };
+    }
+
+    private static <T> Consumer<T> unchecked(WriteStage<T> writer) {
+        return encoded -> {
+            try {
+                writer.write(encoded);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        };
+    }
+
+    @FunctionalInterface
+    public interface EncodeStage<T> {
+        T encode() throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface WriteStage<T> {
+        void write(T encoded) throws IOException;
+    }
+
+}
@@ -28,36 +28,59 @@
 import com.flowpowered.math.vector.Vector3i;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.map.TextureGallery;
+import de.bluecolored.bluemap.core.map.TileContentHashes;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
+import de.bluecolored.bluemap.core.map.TileWritePipeline;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.storage.Storage;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.World;
 
-import java.io.IOException;
-import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public class HiresModelManager {
 
     private final Storage.TileStorage storage;
     private final HiresModelRenderer renderer;
     private final Grid tileGrid;
+    private final TileContentHashes contentHashes;
+    private final TileWritePipeline writePipeline;
 
     public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, Grid tileGrid) {
-        this(storage, new HiresModelRenderer(resourcePack, textureGallery, renderSettings), tileGrid);
+        this(storage, resourcePack, textureGallery, renderSettings, tileGrid, new TileContentHashes());
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, Grid tileGrid, TileContentHashes contentHashes) {
+        this(storage, resourcePack, textureGallery, renderSettings, tileGrid, contentHashes, TileWritePipeline.SYNCHRONOUS);
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, Grid tileGrid, TileContentHashes contentHashes, TileWritePipeline writePipeline) {
+        this(storage, new HiresModelRenderer(resourcePack, textureGallery, renderSettings), tileGrid, contentHashes, writePipeline);
     }
 
     public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid) {
+        this(storage, renderer, tileGrid, new TileContentHashes());
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid, TileContentHashes contentHashes) {
+        this(storage, renderer, tileGrid, contentHashes, TileWritePipeline.SYNCHRONOUS);
+    }
+
+    public HiresModelManager(Storage.TileStorage storage, HiresModelRenderer renderer, Grid tileGrid, TileContentHashes contentHashes, TileWritePipeline writePipeline) {
         this.storage = storage;
         this.renderer = renderer;
 
         this.tileGrid = tileGrid;
+        this.contentHashes = contentHashes;
+        this.writePipeline = writePipeline;
     }
 
     /**
-     * Renders the given world tile with the provided render-settings
+     * Renders the given world tile with the provided render-settings.<br>
+     * The model is encoded and saved through the write-pipeline, the returned future completes once this is done.
      */
-    public void render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer, boolean save) {
+    public CompletableFuture<Void> render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer, boolean save) {
         Vector2i tileMin = tileGrid.getCellMin(tile);
         Vector2i tileMax = tileGrid.getCellMax(tile);
 
@@ -66,22 +89,38 @@ public void render(World world, Vector2i tile, TileMetaConsumer tileMetaConsumer
 
         HiresTileModel model = HiresTileModel.instancePool().claimInstance();
 
-        renderer.render(world, modelMin, modelMax, model, tileMetaConsumer);
+        try {
+            renderer.render(world, modelMin, modelMax, model, tileMetaConsumer);
+        } catch (RuntimeException ex) {
+            HiresTileModel.instancePool().recycleInstance(model);
+            throw ex;
+        }
 
-        if (save){
-            model.sort();
-            save(model, tile);
+        if (!save) {
+            HiresTileModel.instancePool().recycleInstance(model);
+            return CompletableFuture.completedFuture(null);
         }
 
-        HiresTileModel.instancePool().recycleInstance(model);
+        return save(model, tile);
     }
 
-    private void save(final HiresTileModel model, Vector2i tile) {
-        try (OutputStream os = storage.write(tile)) {
-            model.writeBufferGeometryJson(os);
-        } catch (IOException e){
-            Logger.global.logError("Failed to save hires model: " + tile, e);
-        }
+    private CompletableFuture<Void> save(final HiresTileModel model, Vector2i tile) {
+        return writePipeline.submit(
+                () -> {
+                    try {
+                        model.sort();
+                        return TileContentHashes.encode(model::writeBufferGeometryJson);
+                    } finally {
+                        HiresTileModel.instancePool().recycleInstance(model);
+                    }
+                },
+                // unchanged tiles are not written again
+                data -> contentHashes.write(0, tile, data, () -> storage.write(tile))
+        ).exceptionally(ex -> {
+            if (ex instanceof CompletionException && ex.getCause() != null) ex = ex.getCause();
+            Logger.global.logError("Failed to save hires model: " + tile, ex);
+            return null;
+        });
     }
 
     /**
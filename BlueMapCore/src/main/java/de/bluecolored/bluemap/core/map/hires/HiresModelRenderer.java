@@ -28,9 +28,11 @@
 import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
 import de.bluecolored.bluemap.core.map.hires.blockmodel.BlockStateModelFactory;
+import de.bluecolored.bluemap.core.resources.BiomeBlendGrid;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
+import de.bluecolored.bluemap.core.world.ColumnRanges;
 import de.bluecolored.bluemap.core.world.World;
 
 public class HiresModelRenderer {
@@ -54,16 +56,18 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileM
         Vector3i max = modelMax.min(renderSettings.getMaxPos());
         Vector3i modelAnchor = new Vector3i(modelMin.getX(), 0, modelMin.getZ());
 
-        // create new for each tile-render since the factory is not threadsafe
-        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, textureGallery, renderSettings);
+        // create new for each tile-render since the factory and the blend-grid are not threadsafe
+        BiomeBlendGrid biomeBlendGrid = new BiomeBlendGrid(resourcePack, world, min.getX(), min.getZ(), max.getX(), max.getZ());
+        BlockStateModelFactory modelFactory = new BlockStateModelFactory(resourcePack, textureGallery, renderSettings, biomeBlendGrid);
 
         int maxHeight, minY, maxY;
         double topBlockLight;
         Color columnColor = new Color(), blockColor = new Color();
         BlockNeighborhood<?> block = new BlockNeighborhood<>(resourcePack, renderSettings, world, 0, 0, 0);
         BlockModelView blockModel = new BlockModelView(model);
+        ColumnRanges columnRanges = new ColumnRanges();
 
-        int x, y, z;
+        int x, y, z, r, rangeMaxY, nextY;
         for (x = min.getX(); x <= max.getX(); x++){
             for (z = min.getZ(); z <= max.getZ(); z++){
 
@@ -76,43 +80,79 @@ public void render(World world, Vector3i modelMin, Vector3i modelMax, HiresTileM
                     minY = Math.max(min.getY(), world.getMinY(x, z));
                     maxY = Math.min(max.getY(), world.getMaxY(x, z));
 
-                    for (y = minY; y <= maxY; y++) {
-                        block.set(x, y, z);
-                        if (!block.isInsideRenderBounds()) continue;
+                    // only render the parts of the column that are not known to be air
+                    world.getNonEmptyRanges(x, z, columnRanges);
+                    nextY = minY;
+
+                    for (r = 0; r < columnRanges.size(); r++) {
+                        y = Math.max(minY, columnRanges.getMinY(r));
+                        rangeMaxY = Math.min(maxY, columnRanges.getMaxY(r));
+                        if (y > rangeMaxY) continue;
+
+                        topBlockLight = updateAirLight(block, x, nextY, y - 1, z, topBlockLight);
+                        nextY = rangeMaxY + 1;
+
+                        for (; y <= rangeMaxY; y++) {
+                            block.set(x, y, z);
+                            if (!block.isInsideRenderBounds()) continue;
+
+                            blockModel.initialize();
+
+                            modelFactory.render(block, blockModel, blockColor);
+
+                            //update topBlockLight
+                            if (
+                                    y >= renderSettings.getRemoveCavesBelowY() ||
+                                    (renderSettings.isCaveDetectionUsesBlockLight() ? block.getBlockLightLevel() : block.getSunLightLevel()) > 0
+                            ) {
+                                if (blockColor.a > 0) {
+                                    topBlockLight = Math.floor(topBlockLight * (1 - blockColor.a));
+                                }
+                                topBlockLight = Math.max(topBlockLight, block.getBlockLightLevel());
+                            } else {
+                                topBlockLight = 0;
+                            }
 
-                        blockModel.initialize();
+                            // skip empty blocks
+                            if (blockModel.getSize() <= 0) continue;
 
-                        modelFactory.render(block, blockModel, blockColor);
+                            // move block-model to correct position
+                            blockModel.translate(x - modelAnchor.getX(), y - modelAnchor.getY(), z - modelAnchor.getZ());
 
-                        //update topBlockLight
-                        if (
-                                y >= renderSettings.getRemoveCavesBelowY() ||
-                                (renderSettings.isCaveDetectionUsesBlockLight() ? block.getBlockLightLevel() : block.getSunLightLevel()) > 0
-                        ) {
+                            //update color and height (only if not 100% translucent)
                             if (blockColor.a > 0) {
-                                topBlockLight = Math.floor(topBlockLight * (1 - blockColor.a));
+                                maxHeight = y;
+                                columnColor.overlay(blockColor.premultiplied());
                             }
-                            topBlockLight = Math.max(topBlockLight, block.getBlockLightLevel());
-                        } else {
-                            topBlockLight = 0;
-                        }
-
-                        // skip empty blocks
-                        if (blockModel.getSize() <= 0) continue;
-
-                        // move block-model to correct position
-                        blockModel.translate(x - modelAnchor.getX(), y - modelAnchor.getY(), z - modelAnchor.getZ());
-
-                        //update color and height (only if not 100% translucent)
-                        if (blockColor.a > 0) {
-                            maxHeight = y;
-                            columnColor.overlay(blockColor.premultiplied());
                         }
                     }
+
+                    topBlockLight = updateAirLight(block, x, nextY, maxY, z, topBlockLight);
                 }
 
                 tileMetaConsumer.set(x, z, columnColor, maxHeight, (int) topBlockLight);
             }
         }
     }
+
+    /**
+     * Updates the topBlockLight for the skipped (air) blocks from minY to maxY (inclusive) of a column.<br>
+     * Only the top block of the skipped range is sampled: air doesn't dim the light, so the light of that block is what
+     * the blocks above will see, and looking up the light of every single air block is costly for tall empty columns.
+     */
+    private double updateAirLight(BlockNeighborhood<?> block, int x, int minY, int maxY, int z, double topBlockLight) {
+        if (minY > maxY) return topBlockLight;
+
+        block.set(x, maxY, z);
+        if (!block.isInsideRenderBounds()) return topBlockLight;
+
+        if (
+                maxY >= renderSettings.getRemoveCavesBelowY() ||
+                (renderSettings.isCaveDetectionUsesBlockLight() ? block.getBlockLightLevel() : block.getSunLightLevel()) > 0
+        ) {
+            return Math.max(topBlockLight, block.getBlockLightLevel());
+        }
+
+        return 0;
+    }
 }
@@ -39,7 +39,7 @@
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.StandardCharsets;
-import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 public class HiresTileModel {
     private static final double GROW_MULTIPLIER = 1.5;
@@ -54,9 +54,22 @@ public class HiresTileModel {
             FI_BLOCKLIGHT =     1       ,
             FI_MATERIAL_INDEX = 1       ;
 
+    // the bytes used by the attribute-arrays per face
+    private static final int BYTES_PER_FACE =
+            FI_POSITION * Double.BYTES +
+            (FI_UV + FI_AO + FI_COLOR) * Float.BYTES +
+            (FI_SUNLIGHT + FI_BLOCKLIGHT) +
+            FI_MATERIAL_INDEX * Integer.BYTES * 3; // + 2 sort-arrays
+
+    // pooled models are shrunk to this capacity, so one huge tile doesn't leave all pooled models oversized
+    private static final int MAX_POOLED_CAPACITY = 50000;
+
     private static final InstancePool<HiresTileModel> INSTANCE_POOL = new InstancePool<>(
             () -> new HiresTileModel(100),
-            HiresTileModel::clear
+            HiresTileModel::recycle,
+            HiresTileModel::estimateMemorySize,
+            Math.max(Runtime.getRuntime().maxMemory() / 32, 16L * 1024 * 1024),
+            TimeUnit.SECONDS.toMillis(30)
     );
 
     private int capacity;
@@ -356,6 +369,23 @@ public HiresTileModel clear() {
         return this;
     }
 
+    private HiresTileModel recycle() {
+        clear();
+        if (capacity > MAX_POOLED_CAPACITY) setCapacity(MAX_POOLED_CAPACITY);
+        return this;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns an estimation of the memory this model occupies in bytes
+     */
+    public long estimateMemorySize() {
+        return (long) capacity * BYTES_PER_FACE + 256;
+    }
+
     private void ensureCapacity(int count) {
         if (size + count > capacity){
             double[] _position = position;
@@ -403,7 +433,6 @@ public void writeBufferGeometryJson(OutputStream out) throws IOException {
 
         // set special values
         json.name("type").value("BufferGeometry");
-        json.name("uuid").value(UUID.randomUUID().toString().toUpperCase());
 
         json.name("data").beginObject(); // data
         json.name("attributes").beginObject(); // attributes
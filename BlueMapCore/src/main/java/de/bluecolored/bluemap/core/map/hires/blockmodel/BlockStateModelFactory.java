@@ -27,12 +27,14 @@
 import de.bluecolored.bluemap.core.map.TextureGallery;
 import de.bluecolored.bluemap.core.map.hires.BlockModelView;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resources.BiomeBlendGrid;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
 import de.bluecolored.bluemap.core.resources.resourcepack.blockstate.Variant;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -46,10 +48,14 @@ public class BlockStateModelFactory {
     private final List<Variant> variants = new ArrayList<>();
 
     public BlockStateModelFactory(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
+        this(resourcePack, textureGallery, renderSettings, null);
+    }
+
+    public BlockStateModelFactory(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, @Nullable BiomeBlendGrid biomeBlendGrid) {
         this.resourcePack = resourcePack;
 
-        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, textureGallery, renderSettings);
-        this.liquidModelBuilder = new LiquidModelBuilder(resourcePack, textureGallery, renderSettings);
+        this.resourceModelBuilder = new ResourceModelBuilder(resourcePack, textureGallery, renderSettings, biomeBlendGrid);
+        this.liquidModelBuilder = new LiquidModelBuilder(resourcePack, textureGallery, renderSettings, biomeBlendGrid);
     }
 
     public void render(BlockNeighborhood<?> block, BlockModelView blockModel, Color blockColor) {
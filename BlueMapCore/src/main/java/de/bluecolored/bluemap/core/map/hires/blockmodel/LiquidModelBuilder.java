@@ -30,6 +30,7 @@
 import de.bluecolored.bluemap.core.map.hires.BlockModelView;
 import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resources.BiomeBlendGrid;
 import de.bluecolored.bluemap.core.resources.BlockColorCalculatorFactory;
 import de.bluecolored.bluemap.core.resources.ResourcePath;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
@@ -45,6 +46,7 @@
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
 import de.bluecolored.bluemap.core.world.BlockState;
 import de.bluecolored.bluemap.core.world.ExtendedBlock;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A model builder for all liquid blocks
@@ -73,11 +75,11 @@ public class LiquidModelBuilder {
     private Color blockColor;
     private boolean isCave;
 
-    public LiquidModelBuilder(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
+    public LiquidModelBuilder(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, @Nullable BiomeBlendGrid biomeBlendGrid) {
         this.resourcePack = resourcePack;
         this.textureGallery = textureGallery;
         this.renderSettings = renderSettings;
-        this.blockColorCalculator = resourcePack.getColorCalculatorFactory().createCalculator();
+        this.blockColorCalculator = resourcePack.getColorCalculatorFactory().createCalculator(biomeBlendGrid);
 
         corners = new VectorM3f[]{
                 new VectorM3f( 0, 0, 0 ),
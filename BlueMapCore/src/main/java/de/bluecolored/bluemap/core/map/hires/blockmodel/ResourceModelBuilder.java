@@ -32,6 +32,7 @@
 import de.bluecolored.bluemap.core.map.hires.BlockModelView;
 import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
 import de.bluecolored.bluemap.core.map.hires.RenderSettings;
+import de.bluecolored.bluemap.core.resources.BiomeBlendGrid;
 import de.bluecolored.bluemap.core.resources.BlockColorCalculatorFactory;
 import de.bluecolored.bluemap.core.resources.ResourcePath;
 import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
@@ -49,6 +50,7 @@
 import de.bluecolored.bluemap.core.world.BlockProperties;
 import de.bluecolored.bluemap.core.world.ExtendedBlock;
 import de.bluecolored.bluemap.core.world.LightData;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This model builder creates a BlockStateModel using the information from parsed resource-pack json files.
@@ -76,11 +78,11 @@ public class ResourceModelBuilder {
     private float blockColorOpacity;
     private boolean isCave;
 
-    public ResourceModelBuilder(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings) {
+    public ResourceModelBuilder(ResourcePack resourcePack, TextureGallery textureGallery, RenderSettings renderSettings, @Nullable BiomeBlendGrid biomeBlendGrid) {
         this.resourcePack = resourcePack;
         this.textureGallery = textureGallery;
         this.renderSettings = renderSettings;
-        this.blockColorCalculator = resourcePack.getColorCalculatorFactory().createCalculator();
+        this.blockColorCalculator = resourcePack.getColorCalculatorFactory().createCalculator(biomeBlendGrid);
 
         for (int i = 0; i < corners.length; i++) corners[i] = new VectorM3f(0, 0, 0);
         for (int i = 0; i < uvs.length; i++) rawUvs[i] = new VectorM2f(0, 0);
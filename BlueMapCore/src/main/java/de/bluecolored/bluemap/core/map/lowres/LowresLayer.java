@@ -26,9 +26,16 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import com.github.benmanes.caffeine.cache.*;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.bluecolored.bluemap.api.debug.DebugDump;
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.TileContentHashes;
+import de.bluecolored.bluemap.core.map.midres.MidresTileManager;
+import de.bluecolored.bluemap.core.storage.CachingStorage;
+import de.bluecolored.bluemap.core.storage.RegionLeaseStorage;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.Grid;
@@ -37,13 +44,32 @@
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
-public class LowresLayer {
+/**
+ * One level-of-detail of the lowres-tiles of a map.<br>
+ * Tiles are cached in memory (bounded by their estimated memory-size and a share of a {@link SharedMemoryBudget})
+ * and only written back to the storage if they changed. Tiles can be pinned while they are still being rendered, pinned tiles are kept in memory and not saved
+ * when they are evicted from the cache, but only once they are unpinned again or the layer gets saved.<br>
+ * If the storage is shared with other instances rendering the same map, tiles can be merged with their stored version
+ * before they are saved (see {@link #setMergeOnSave(boolean)}).
+ */
+@DebugDump
+public class LowresLayer implements SharedMemoryBudget.Cache {
 
     private static final Vector2iCache VECTOR_2_I_CACHE = new Vector2iCache();
 
+    // the lease on a tile is only held while merging and writing it
+    private static final String TILE_LEASE_OWNER = UUID.randomUUID().toString();
+    private static final long TILE_LEASE_DURATION = TimeUnit.SECONDS.toMillis(30);
+    private static final long TILE_LEASE_TIMEOUT = TimeUnit.SECONDS.toMillis(60);
+
     private final Storage.MapStorage mapStorage;
 
     private final Grid tileGrid;
@@ -51,19 +77,54 @@ public class LowresLayer {
 
     private final int lod;
     private final LoadingCache<Vector2i, LowresTile> tileCache;
+    private final Map<Vector2i, PinnedTile> pinnedTiles;
+    private final LongAdder savedTiles, skippedTiles;
     @Nullable private final LowresLayer nextLayer;
+    @Nullable private final MidresTileManager midresTileManager;
+    private final TileContentHashes contentHashes;
+
+    private volatile boolean mergeOnSave;
 
     public LowresLayer(
             Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
             int lod, @Nullable LowresLayer nextLayer
+    ) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, lod, nextLayer, null);
+    }
+
+    public LowresLayer(
+            Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
+            int lod, @Nullable LowresLayer nextLayer, @Nullable MidresTileManager midresTileManager
+    ) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, lod, nextLayer, midresTileManager, new TileContentHashes());
+    }
+
+    public LowresLayer(
+            Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
+            int lod, @Nullable LowresLayer nextLayer, @Nullable MidresTileManager midresTileManager,
+            TileContentHashes contentHashes
+    ) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, lod, nextLayer, midresTileManager, contentHashes,
+                LowresTileManager.DEFAULT_BUDGET);
+    }
+
+    /**
+     * Creates a layer whose tile-cache gets an equal share of the given budget with all other caches using the same budget
+     */
+    public LowresLayer(
+            Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor,
+            int lod, @Nullable LowresLayer nextLayer, @Nullable MidresTileManager midresTileManager,
+            TileContentHashes contentHashes, SharedMemoryBudget memoryBudget
     ) {
         this.mapStorage = mapStorage;
+        this.contentHashes = contentHashes;
 
         this.tileGrid = tileGrid;
         this.lodFactor = lodFactor;
 
         this.lod = lod;
         this.nextLayer = nextLayer;
+        this.midresTileManager = midresTileManager;
 
         // this extra cache makes sure that a tile instance is reused as long as it is still referenced somewhere ..
         // so always only one instance of the same lowres-tile exists
@@ -75,18 +136,30 @@ public LowresLayer(
         this.tileCache = Caffeine.newBuilder()
                 .executor(BlueMap.THREAD_POOL)
                 .scheduler(Scheduler.systemScheduler())
-                .expireAfterAccess(10, TimeUnit.SECONDS)
+                .maximumWeight(memoryBudget.getMemoryBudget())
+                .weigher((Vector2i pos, LowresTile tile) -> tile.estimateMemorySize())
+                .expireAfterAccess(1, TimeUnit.MINUTES)
                 .expireAfterWrite(5, TimeUnit.MINUTES)
+                .recordStats()
                 .writer(new CacheWriter<Vector2i, LowresTile>() {
                     @Override
                     public void write(@NonNull Vector2i key, @NonNull LowresTile value) {}
 
                     @Override
                     public void delete(@NonNull Vector2i key, @Nullable LowresTile value, @NonNull RemovalCause cause) {
+                        // pinned tiles are still referenced and will be saved once they are unpinned
+                        if (cause.wasEvicted() && pinnedTiles.containsKey(key)) return;
                         saveTile(key, value, cause);
                     }
                 })
                 .build(tileWeakInstanceCache::get);
+
+        this.pinnedTiles = new ConcurrentHashMap<>();
+        this.savedTiles = new LongAdder();
+        this.skippedTiles = new LongAdder();
+        this.mergeOnSave = false;
+
+        memoryBudget.register(this);
     }
 
     public void save() {
@@ -94,33 +167,95 @@ public void save() {
         tileCache.cleanUp();
     }
 
+    /**
+     * Sets whether the changed pixels of a tile are merged onto the currently stored version of that tile before it is
+     * saved, instead of overwriting it.<br>
+     * This is needed if other instances render (other regions of) the same map into the same storage at the same time,
+     * since a lowres-tile and the tiles of the higher lods span multiple regions.<br>
+     * <i>(All tiles currently in memory are saved first)</i>
+     */
+    public void setMergeOnSave(boolean mergeOnSave) {
+        save();
+        this.mergeOnSave = mergeOnSave;
+    }
+
+    /**
+     * Keeps the tile in memory until it is unpinned as often as it has been pinned
+     */
+    public void pin(int x, int z) {
+        Vector2i tilePos = new Vector2i(x, z);
+        LowresTile tile = tileCache.get(tilePos);
+        pinnedTiles.compute(tilePos, (pos, pinned) -> {
+            if (pinned == null) return new PinnedTile(tile);
+            pinned.count++;
+            return pinned;
+        });
+    }
+
+    public void unpin(int x, int z) {
+        Vector2i tilePos = new Vector2i(x, z);
+        PinnedTile[] unpinned = new PinnedTile[1];
+        pinnedTiles.computeIfPresent(tilePos, (pos, pinned) -> {
+            if (--pinned.count > 0) return pinned;
+            unpinned[0] = pinned;
+            return null;
+        });
+
+        // if the tile has been evicted while it was pinned, put it back so it gets saved normally
+        if (unpinned[0] != null && unpinned[0].tile.isDirty()) {
+            tileCache.asMap().putIfAbsent(tilePos, unpinned[0].tile);
+        }
+    }
+
     private LowresTile createTile(Vector2i tilePos) {
+        boolean trackChanges = mergeOnSave;
         try (InputStream in = mapStorage.read(lod, tilePos).orElse(null)) {
-            if (in != null) return new LowresTile(tileGrid.getGridSize(), in);
+            if (in != null) return new LowresTile(tileGrid.getGridSize(), in, trackChanges);
         } catch (IOException e) {
             Logger.global.logError("Failed to load tile " + tilePos + " (lod: " + lod + ")", e);
         }
 
         // if the tile can not be loaded, we create a new one
-        return new LowresTile(tileGrid.getGridSize());
+        return new LowresTile(tileGrid.getGridSize(), trackChanges);
     }
 
     private void saveTile(Vector2i tilePos, @Nullable LowresTile tile, RemovalCause removalCause) {
         if (tile == null) return;
 
+        // nothing to do if the tile didn't change
+        if (!tile.isDirty()) {
+            skippedTiles.increment();
+            return;
+        }
+
         // check if storage is closed
         if (mapStorage.getStorage().isClosed()){
             Logger.global.logDebug("Tried to save tile " + tilePos + " (lod: " + lod + ") but storage is already closed.");
             return;
         }
 
-        // save the tile
-        try (OutputStream out = mapStorage.write(lod, tilePos)) {
-            tile.save(out);
+        // save the tile (unless it didn't change)
+        try {
+            if (mergeOnSave) {
+                if (mergeAndWriteLeased(tilePos, tile)) {
+                    savedTiles.increment();
+                } else {
+                    skippedTiles.increment();
+                }
+            } else {
+                contentHashes.write(lod, tilePos, tile::save, () -> mapStorage.write(lod, tilePos));
+                savedTiles.increment();
+            }
         } catch (IOException e) {
+            tile.markDirty();
             Logger.global.logError("Failed to save tile " + tilePos + " (lod: " + lod + ")", e);
         }
 
+        // update the midres-model of this tile
+        if (this.midresTileManager != null) {
+            this.midresTileManager.save(tilePos, tile);
+        }
+
         // write to next LOD (prepare for the most confusing grid-math you will ever see)
         if (this.nextLayer == null) return;
 
@@ -168,6 +303,62 @@ private void saveTile(Vector2i tilePos, @Nullable LowresTile tile, RemovalCause
         }
     }
 
+    /**
+     * Merges the tile with its stored version and writes it, while holding the lease on the tile (if the storage
+     * supports leases), so another instance can't change the stored tile in between.
+     * @return false if the stored tile already equals the merged tile and nothing has been written
+     */
+    private boolean mergeAndWriteLeased(Vector2i tilePos, LowresTile tile) throws IOException {
+        Storage storage = mapStorage.getStorage();
+        if (storage instanceof CachingStorage) storage = ((CachingStorage) storage).getStorage();
+        if (!(storage instanceof RegionLeaseStorage)) return mergeAndWrite(tilePos, tile);
+
+        RegionLeaseStorage leaseStorage = (RegionLeaseStorage) storage;
+        String mapId = mapStorage.getMapId();
+        long timeout = System.currentTimeMillis() + TILE_LEASE_TIMEOUT;
+        while (!leaseStorage.claimTile(mapId, lod, tilePos, TILE_LEASE_OWNER, TILE_LEASE_DURATION)) {
+            if (System.currentTimeMillis() > timeout)
+                throw new IOException("Timed out waiting for the lease on the tile");
+
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the lease on the tile");
+            }
+        }
+
+        try {
+            return mergeAndWrite(tilePos, tile);
+        } finally {
+            leaseStorage.releaseTile(mapId, lod, tilePos, TILE_LEASE_OWNER);
+        }
+    }
+
+    private boolean mergeAndWrite(Vector2i tilePos, LowresTile tile) throws IOException {
+        if (!mergeTile(tilePos, tile)) return false;
+
+        try (OutputStream out = mapStorage.write(lod, tilePos)) {
+            tile.save(out);
+        }
+        return true;
+    }
+
+    /**
+     * Merges the tile onto its currently stored version, reading it past any cache since it might have been changed
+     * by another instance.
+     * @return false if the stored tile already equals the merged tile
+     */
+    private boolean mergeTile(Vector2i tilePos, LowresTile tile) throws IOException {
+        Storage storage = mapStorage.getStorage();
+        if (storage instanceof CachingStorage) storage = ((CachingStorage) storage).getStorage();
+
+        try (InputStream in = storage.readMapTile(mapStorage.getMapId(), lod, tilePos).orElse(null)) {
+            if (in == null) return true;
+            return tile.merge(in);
+        }
+    }
+
     private LowresTile getTile(int x, int z) {
         return tileCache.get(VECTOR_2_I_CACHE.get(x, z));
     }
@@ -193,4 +384,63 @@ void set(int cellX, int cellZ, int pixelX, int pixelZ, Color color, int height,
         }
     }
 
+    @DebugDump
+    public int getLod() {
+        return lod;
+    }
+
+    @DebugDump
+    public boolean isMergeOnSave() {
+        return mergeOnSave;
+    }
+
+    @DebugDump
+    public long getMemoryBudget() {
+        return tileCache.policy().eviction()
+                .map(eviction -> eviction.getMaximum())
+                .orElse(0L);
+    }
+
+    @Override
+    public void setMemoryBudget(long memoryBudget) {
+        tileCache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(memoryBudget));
+    }
+
+    @DebugDump
+    public long getEstimatedMemoryUsage() {
+        return tileCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @DebugDump
+    public int getPinnedTileCount() {
+        return pinnedTiles.size();
+    }
+
+    @DebugDump
+    public long getSavedTileCount() {
+        return savedTiles.sum();
+    }
+
+    @DebugDump
+    public long getSkippedTileCount() {
+        return skippedTiles.sum();
+    }
+
+    @DebugDump
+    public CacheStats getStats() {
+        return tileCache.stats();
+    }
+
+    private static class PinnedTile {
+        private final LowresTile tile;
+        private int count;
+
+        private PinnedTile(LowresTile tile) {
+            this.tile = tile;
+            this.count = 1;
+        }
+    }
+
 }
@@ -26,12 +26,14 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.core.util.math.Color;
+import org.jetbrains.annotations.Nullable;
 
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class LowresTile {
@@ -43,13 +45,35 @@ public class LowresTile {
     private final BufferedImage texture;
     private final Vector2i size;
 
+    private volatile boolean dirty;
+
+    // the pixels that have been set since the tile has been loaded or last been saved, only tracked if needed for merging
+    @Nullable private final boolean[] changedPixels;
+
     public LowresTile(Vector2i tileSize) {
+        this(tileSize, false);
+    }
+
+    /**
+     * @param trackChanges whether the changed pixels are tracked, so this tile can be merged with {@link #merge(InputStream)}
+     */
+    public LowresTile(Vector2i tileSize, boolean trackChanges) {
         this.size = tileSize.add(1, 1); // add 1 for seamless edges
         this.texture = new BufferedImage(this.size.getX(), this.size.getY() * 2, BufferedImage.TYPE_INT_ARGB);
+        this.changedPixels = trackChanges ? new boolean[this.size.getX() * this.size.getY()] : null;
+        this.dirty = false;
     }
 
     public LowresTile(Vector2i tileSize, InputStream in) throws IOException {
+        this(tileSize, in, false);
+    }
+
+    /**
+     * @param trackChanges whether the changed pixels are tracked, so this tile can be merged with {@link #merge(InputStream)}
+     */
+    public LowresTile(Vector2i tileSize, InputStream in, boolean trackChanges) throws IOException {
         this.size = tileSize.add(1, 1); // add 1 for seamless edges
+        this.changedPixels = trackChanges ? new boolean[this.size.getX() * this.size.getY()] : null;
         this.texture = ImageIO.read(in);
 
         if (this.texture == null) {
@@ -59,17 +83,25 @@ public LowresTile(Vector2i tileSize, InputStream in) throws IOException {
         if (this.texture.getWidth() != this.size.getX() || this.texture.getHeight() != this.size.getY() * 2) {
             throw new IOException("Size of tile does not match");
         }
+
+        this.dirty = false;
     }
 
     public void set(int x, int z, Color color, int height, int blockLight) {
+        int colorValue = color.straight().getInt();
+        int metaValue = (height & 0x0000FFFF) |
+                ((blockLight << 16) & 0x00FF0000) |
+                0xFF000000;
+
         lock.readLock().lock();
         try {
-            texture.setRGB(x, z, color.straight().getInt());
-            texture.setRGB(x, size.getY() + z,
-                    (height & 0x0000FFFF) |
-                            ((blockLight << 16) & 0x00FF0000) |
-                            0xFF000000
-            );
+            // only mark the tile as changed if the pixel actually changed
+            if (texture.getRGB(x, z) == colorValue && texture.getRGB(x, size.getY() + z) == metaValue) return;
+
+            texture.setRGB(x, z, colorValue);
+            texture.setRGB(x, size.getY() + z, metaValue);
+            if (changedPixels != null) changedPixels[z * size.getX() + x] = true;
+            dirty = true;
         } finally {
             lock.readLock().unlock();
         }
@@ -90,13 +122,84 @@ public int getBlockLight(int x, int z) {
         return (texture.getRGB(x, size.getY() + z) & 0x00FF0000) >> 16;
     }
 
+    /**
+     * Writes this tile as png to the output-stream and marks it as not changed
+     */
     public void save(OutputStream out) throws IOException {
         lock.writeLock().lock();
         try {
+            dirty = false;
             ImageIO.write(texture, "png", out);
+            if (changedPixels != null) Arrays.fill(changedPixels, false);
+        } catch (IOException | RuntimeException ex) {
+            dirty = true;
+            throw ex;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges the pixels of this tile that changed since it has been loaded or last been saved onto the given
+     * (stored) version of this tile, and updates this tile to the result.
+     * So pixels that have been changed in the stored tile by someone else meanwhile are kept.<br>
+     * If the changed pixels are not tracked or the stored tile can not be read, this tile is left as it is.
+     * @return false if the merged tile is equal to the stored tile, so this tile doesn't need to be saved
+     */
+    public boolean merge(InputStream in) throws IOException {
+        if (changedPixels == null) return true;
+
+        BufferedImage stored = ImageIO.read(in);
+        if (stored == null || stored.getWidth() != texture.getWidth() || stored.getHeight() != texture.getHeight())
+            return true;
+
+        int width = texture.getWidth(), height = texture.getHeight();
+        int metaOffset = width * size.getY();
+
+        lock.writeLock().lock();
+        try {
+            int[] merged = stored.getRGB(0, 0, width, height, null, 0, width);
+            int[] own = texture.getRGB(0, 0, width, height, null, 0, width);
+
+            boolean changed = false;
+            for (int i = 0; i < metaOffset; i++) {
+                if (!changedPixels[i]) continue;
+                if (merged[i] == own[i] && merged[metaOffset + i] == own[metaOffset + i]) continue;
+
+                merged[i] = own[i];
+                merged[metaOffset + i] = own[metaOffset + i];
+                changed = true;
+            }
+
+            texture.setRGB(0, 0, width, height, merged, 0, width);
+
+            if (!changed) {
+                dirty = false;
+                Arrays.fill(changedPixels, false);
+            }
+
+            return changed;
         } finally {
             lock.writeLock().unlock();
         }
     }
 
+    /**
+     * Returns true if this tile changed since it has been loaded or last been saved
+     */
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    void markDirty() {
+        dirty = true;
+    }
+
+    /**
+     * Returns an estimation of the memory this tile occupies in bytes
+     */
+    public int estimateMemorySize() {
+        return texture.getWidth() * texture.getHeight() * 4 + (changedPixels != null ? changedPixels.length : 0) + 256;
+    }
+
 }
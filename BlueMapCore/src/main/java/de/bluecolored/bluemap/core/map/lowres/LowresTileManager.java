@@ -24,19 +24,47 @@
  */
 package de.bluecolored.bluemap.core.map.lowres;
 
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.map.TileContentHashes;
 import de.bluecolored.bluemap.core.map.TileMetaConsumer;
+import de.bluecolored.bluemap.core.map.midres.MidresTileManager;
 import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.Grid;
+import org.jetbrains.annotations.Nullable;
 
+@DebugDump
 public class LowresTileManager implements TileMetaConsumer {
 
+    private static final long MIN_CACHE_MEMORY_BUDGET = 32L * 1024 * 1024;
+
+    /**
+     * The memory-budget that is shared by the tile-caches of all layers of all maps that are not created with an explicit budget
+     */
+    public static final SharedMemoryBudget DEFAULT_BUDGET = new SharedMemoryBudget(getDefaultCacheMemoryBudget());
+
     private final Grid tileGrid;
     private final int lodFactor, lodCount;
 
     private final LowresLayer[] layers;
 
     public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, null);
+    }
+
+    public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor, @Nullable MidresTileManager midresTileManager) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, midresTileManager, new TileContentHashes());
+    }
+
+    public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor, @Nullable MidresTileManager midresTileManager, TileContentHashes contentHashes) {
+        this(mapStorage, tileGrid, lodCount, lodFactor, midresTileManager, contentHashes, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param cacheMemoryBudget the memory-budget that the tile-caches of all layers share with all other caches using it
+     */
+    public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCount, int lodFactor, @Nullable MidresTileManager midresTileManager, TileContentHashes contentHashes, SharedMemoryBudget cacheMemoryBudget) {
         this.tileGrid = tileGrid;
         this.lodFactor = lodFactor;
         this.lodCount = lodCount;
@@ -44,7 +72,8 @@ public LowresTileManager(Storage.MapStorage mapStorage, Grid tileGrid, int lodCo
         this.layers = new LowresLayer[lodCount];
         for (int i = lodCount - 1; i >= 0; i--) {
             this.layers[i] = new LowresLayer(mapStorage, tileGrid, lodCount, lodFactor, i + 1,
-                    (i == lodCount - 1) ? null : layers[i + 1]);
+                    (i == lodCount - 1) ? null : layers[i + 1],
+                    (i == 0) ? midresTileManager : null, contentHashes, cacheMemoryBudget);
         }
     }
 
@@ -54,6 +83,42 @@ public synchronized void save() {
         }
     }
 
+    /**
+     * Sets on all layers whether tiles are merged with their stored version before they are saved.
+     * @see LowresLayer#setMergeOnSave(boolean)
+     */
+    public synchronized void setMergeOnSave(boolean mergeOnSave) {
+        for (LowresLayer layer : this.layers) {
+            layer.setMergeOnSave(mergeOnSave);
+        }
+    }
+
+    /**
+     * Pins all lowres-tiles (of the first lod) that contain the given block-area,
+     * so they stay in memory while the area is being rendered
+     */
+    public void pinArea(int minX, int minZ, int maxX, int maxZ) {
+        forEachTile(minX, minZ, maxX, maxZ, layers[0]::pin);
+    }
+
+    /**
+     * Unpins the tiles that have been pinned with {@link #pinArea(int, int, int, int)}
+     */
+    public void unpinArea(int minX, int minZ, int maxX, int maxZ) {
+        forEachTile(minX, minZ, maxX, maxZ, layers[0]::unpin);
+    }
+
+    private void forEachTile(int minX, int minZ, int maxX, int maxZ, TileConsumer consumer) {
+        // include the neighbouring tiles, they are touched for seamless edges
+        int minCellX = tileGrid.getCellX(minX) - 1, minCellZ = tileGrid.getCellY(minZ) - 1;
+        int maxCellX = tileGrid.getCellX(maxX), maxCellZ = tileGrid.getCellY(maxZ);
+        for (int x = minCellX; x <= maxCellX; x++) {
+            for (int z = minCellZ; z <= maxCellZ; z++) {
+                consumer.accept(x, z);
+            }
+        }
+    }
+
     public Grid getTileGrid() {
         return tileGrid;
     }
@@ -66,6 +131,11 @@ public int getLodFactor() {
         return lodFactor;
     }
 
+    @DebugDump
+    public LowresLayer[] getLayers() {
+        return layers;
+    }
+
     @Override
     public void set(int x, int z, Color color, int height, int blockLight) {
         int cellX = tileGrid.getCellX(x);
@@ -75,4 +145,16 @@ public void set(int x, int z, Color color, int height, int blockLight) {
         layers[0].set(cellX, cellZ, localX, localZ, color, height, blockLight);
     }
 
+    /**
+     * Returns the default memory-budget (in bytes) for the lowres-tile-caches of all maps together, which is a sixteenth of the maximum heap-size.
+     */
+    public static long getDefaultCacheMemoryBudget() {
+        return Math.max(Runtime.getRuntime().maxMemory() / 16, MIN_CACHE_MEMORY_BUDGET);
+    }
+
+    @FunctionalInterface
+    private interface TileConsumer {
+        void accept(int x, int z);
+    }
+
 }
@@ -0,0 +1,257 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.midres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
+import de.bluecolored.bluemap.core.map.lowres.LowresTile;
+import de.bluecolored.bluemap.core.util.math.Color;
+
+/**
+ * Builds a simplified 3d-model of the top-surfaces of a (lod 1) {@link LowresTile}.<br>
+ * The columns of the tile are grouped into square cells, and neighbouring cells with the same height, color and
+ * block-light are merged into one face (greedy meshing).
+ */
+public class MidresModelBuilder {
+
+    private static final int HEIGHT_UNDEFINED = Integer.MIN_VALUE;
+
+    private final int cellSize;
+
+    public MidresModelBuilder(int cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("cellSize has to be greater than 0");
+        this.cellSize = cellSize;
+    }
+
+    /**
+     * Builds the model of the given lowres-tile into the given {@link HiresTileModel}.
+     * The model-positions are relative to the minimum-corner of the tile.
+     */
+    public void build(LowresTile tile, Vector2i tileSize, HiresTileModel model) {
+        int sizeX = tileSize.getX(), sizeZ = tileSize.getY();
+        int cellsX = Math.floorDiv(sizeX + cellSize - 1, cellSize);
+        int cellsZ = Math.floorDiv(sizeZ + cellSize - 1, cellSize);
+
+        // one additional row/column of cells which holds the seamless-edge-pixels of the tile
+        int gridX = cellsX + 1, gridZ = cellsZ + 1;
+        int[] heights = new int[gridX * gridZ];
+        int[] colors = new int[gridX * gridZ];
+        int[] blockLights = new int[gridX * gridZ];
+
+        Color color = new Color(), averageColor = new Color();
+        int height, blockLight, count, i;
+        for (int cx = 0; cx < gridX; cx++) {
+            int x0 = Math.min(cx * cellSize, sizeX), x1 = cx == cellsX ? sizeX + 1 : Math.min(x0 + cellSize, sizeX);
+
+            for (int cz = 0; cz < gridZ; cz++) {
+                int z0 = Math.min(cz * cellSize, sizeZ), z1 = cz == cellsZ ? sizeZ + 1 : Math.min(z0 + cellSize, sizeZ);
+
+                averageColor.set(0, 0, 0, 0, true);
+                height = HEIGHT_UNDEFINED;
+                blockLight = 0;
+                count = 0;
+
+                for (int x = x0; x < x1; x++) {
+                    for (int z = z0; z < z1; z++) {
+                        tile.getColor(x, z, color);
+
+                        // transparent columns (e.g. outside the rendered area) don't contribute to the cell
+                        if (color.a <= 0) continue;
+
+                        count++;
+                        averageColor.add(color.premultiplied());
+                        height = Math.max(height, tile.getHeight(x, z));
+                        blockLight += tile.getBlockLight(x, z);
+                    }
+                }
+
+                i = cx * gridZ + cz;
+                heights[i] = height;
+                if (height != HEIGHT_UNDEFINED) {
+                    colors[i] = averageColor.div(count).straight().getInt();
+                    blockLights[i] = blockLight / count;
+                }
+            }
+        }
+
+        buildTopFaces(model, heights, colors, blockLights, cellsX, cellsZ, gridZ, sizeX, sizeZ);
+        buildSideFaces(model, heights, colors, blockLights, cellsX, cellsZ, gridZ, sizeX, sizeZ);
+    }
+
+    private void buildTopFaces(
+            HiresTileModel model, int[] heights, int[] colors, int[] blockLights,
+            int cellsX, int cellsZ, int gridZ, int sizeX, int sizeZ
+    ) {
+        boolean[] merged = new boolean[heights.length];
+        Color color = new Color();
+
+        int i, width, depth;
+        for (int cx = 0; cx < cellsX; cx++) {
+            for (int cz = 0; cz < cellsZ; cz++) {
+                i = cx * gridZ + cz;
+                if (merged[i] || heights[i] == HEIGHT_UNDEFINED) continue;
+
+                // grow along z as long as the cells are equal
+                depth = 1;
+                while (cz + depth < cellsZ && canMerge(i, cx * gridZ + cz + depth, heights, colors, blockLights, merged))
+                    depth++;
+
+                // grow along x as long as the whole z-strip is equal
+                width = 1;
+                growX: while (cx + width < cellsX) {
+                    for (int d = 0; d < depth; d++) {
+                        if (!canMerge(i, (cx + width) * gridZ + cz + d, heights, colors, blockLights, merged))
+                            break growX;
+                    }
+                    width++;
+                }
+
+                for (int w = 0; w < width; w++) {
+                    for (int d = 0; d < depth; d++) {
+                        merged[(cx + w) * gridZ + cz + d] = true;
+                    }
+                }
+
+                color.set(colors[i]);
+                double
+                        x0 = cx * cellSize, x1 = Math.min((cx + width) * cellSize, sizeX),
+                        z0 = cz * cellSize, z1 = Math.min((cz + depth) * cellSize, sizeZ),
+                        y = heights[i] + 1;
+
+                addQuad(model, color, blockLights[i],
+                        x0, y, z0,
+                        x0, y, z1,
+                        x1, y, z1,
+                        x1, y, z0
+                );
+            }
+        }
+    }
+
+    private void buildSideFaces(
+            HiresTileModel model, int[] heights, int[] colors, int[] blockLights,
+            int cellsX, int cellsZ, int gridZ, int sizeX, int sizeZ
+    ) {
+        Color color = new Color();
+
+        int i, n, h, nh;
+        for (int cx = 0; cx < cellsX; cx++) {
+            double x0 = cx * cellSize, x1 = Math.min(x0 + cellSize, sizeX);
+
+            for (int cz = 0; cz < cellsZ; cz++) {
+                double z0 = cz * cellSize, z1 = Math.min(z0 + cellSize, sizeZ);
+
+                i = cx * gridZ + cz;
+                h = heights[i];
+                if (h == HEIGHT_UNDEFINED) continue;
+
+                // east
+                n = i + gridZ;
+                nh = heights[n];
+                if (nh != HEIGHT_UNDEFINED && nh != h) {
+                    if (h > nh) {
+                        addQuad(model, color.set(colors[i]), blockLights[i],
+                                x1, nh + 1, z0,
+                                x1, h + 1, z0,
+                                x1, h + 1, z1,
+                                x1, nh + 1, z1
+                        );
+                    } else {
+                        addQuad(model, color.set(colors[n]), blockLights[n],
+                                x1, h + 1, z0,
+                                x1, h + 1, z1,
+                                x1, nh + 1, z1,
+                                x1, nh + 1, z0
+                        );
+                    }
+                }
+
+                // south
+                n = i + 1;
+                nh = heights[n];
+                if (nh != HEIGHT_UNDEFINED && nh != h) {
+                    if (h > nh) {
+                        addQuad(model, color.set(colors[i]), blockLights[i],
+                                x0, nh + 1, z1,
+                                x1, nh + 1, z1,
+                                x1, h + 1, z1,
+                                x0, h + 1, z1
+                        );
+                    } else {
+                        addQuad(model, color.set(colors[n]), blockLights[n],
+                                x0, h + 1, z1,
+                                x0, nh + 1, z1,
+                                x1, nh + 1, z1,
+                                x1, h + 1, z1
+                        );
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean canMerge(int i, int n, int[] heights, int[] colors, int[] blockLights, boolean[] merged) {
+        return
+                !merged[n] &&
+                heights[n] == heights[i] &&
+                colors[n] == colors[i] &&
+                blockLights[n] == blockLights[i];
+    }
+
+    /**
+     * Adds a quad (as two faces) to the model, the corners need to be in counter-clockwise order
+     * (looking at the visible side of the quad)
+     */
+    private void addQuad(
+            HiresTileModel model, Color color, int blockLight,
+            double x1, double y1, double z1,
+            double x2, double y2, double z2,
+            double x3, double y3, double z3,
+            double x4, double y4, double z4
+    ) {
+        int face = model.add(2);
+
+        model.setPositions(face,
+                x1, y1, z1,
+                x2, y2, z2,
+                x3, y3, z3
+        );
+        model.setPositions(face + 1,
+                x1, y1, z1,
+                x3, y3, z3,
+                x4, y4, z4
+        );
+
+        for (int f = face; f < face + 2; f++) {
+            model.setUvs(f, 0, 0, 0, 0, 0, 0);
+            model.setAOs(f, 1, 1, 1);
+            model.setColor(f, color.r, color.g, color.b);
+            model.setSunlight(f, 15);
+            model.setBlocklight(f, blockLight);
+            model.setMaterialIndex(f, 0);
+        }
+    }
+
+}
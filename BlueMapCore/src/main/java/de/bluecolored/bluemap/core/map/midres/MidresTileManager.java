@@ -0,0 +1,91 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.midres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.map.TileContentHashes;
+import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
+import de.bluecolored.bluemap.core.map.lowres.LowresTile;
+import de.bluecolored.bluemap.core.storage.Storage;
+import de.bluecolored.bluemap.core.world.Grid;
+
+import java.io.IOException;
+
+/**
+ * Manages the midres-layer of a map: simplified 3d-models of the map-surface that are generated from the
+ * first lowres-layer whenever one of its tiles is saved, and stored with their own lod ({@link #LOD}).
+ */
+public class MidresTileManager {
+
+    public static final int LOD = -1;
+
+    private final Storage.TileStorage storage;
+    private final MidresModelBuilder modelBuilder;
+    private final Grid tileGrid;
+    private final int cellSize;
+    private final TileContentHashes contentHashes;
+
+    public MidresTileManager(Storage.TileStorage storage, Grid tileGrid, int cellSize) {
+        this(storage, tileGrid, cellSize, new TileContentHashes());
+    }
+
+    public MidresTileManager(Storage.TileStorage storage, Grid tileGrid, int cellSize, TileContentHashes contentHashes) {
+        this.storage = storage;
+        this.modelBuilder = new MidresModelBuilder(cellSize);
+        this.tileGrid = tileGrid;
+        this.cellSize = cellSize;
+        this.contentHashes = contentHashes;
+    }
+
+    /**
+     * Builds and saves the midres-model for the given (lod 1) lowres-tile
+     */
+    public void save(Vector2i tile, LowresTile lowresTile) {
+        HiresTileModel model = HiresTileModel.instancePool().claimInstance();
+
+        try {
+            modelBuilder.build(lowresTile, tileGrid.getGridSize(), model);
+
+            contentHashes.write(LOD, tile, model::writeBufferGeometryJson, () -> storage.write(tile));
+        } catch (IOException e) {
+            Logger.global.logError("Failed to save midres model: " + tile, e);
+        } finally {
+            HiresTileModel.instancePool().recycleInstance(model);
+        }
+    }
+
+    /**
+     * Returns the tile-grid (which is the same as the tile-grid of the lowres-layers)
+     */
+    public Grid getTileGrid() {
+        return tileGrid;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+}
@@ -27,18 +27,20 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.ColumnRanges;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 @SuppressWarnings("FieldMayBeFinal")
 public class ChunkAnvil116 extends MCAChunk {
+    // 1.16.5, chunks of later versions can belong to a dimension with a custom min-y that the heightmaps are relative to
+    private static final int LAST_FIXED_MIN_Y_DATA_VERSION = 2586;
+
     private static final long[] EMPTY_LONG_ARRAY = new long[0];
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
 
     private boolean isGenerated;
     private boolean hasLight;
@@ -53,11 +55,10 @@ public class ChunkAnvil116 extends MCAChunk {
     private long[] oceanFloorHeights = EMPTY_LONG_ARRAY;
     private long[] worldSurfaceHeights = EMPTY_LONG_ARRAY;
 
-    @SuppressWarnings("unchecked")
-    public ChunkAnvil116(MCAWorld world, CompoundTag chunkTag) {
-        super(world, chunkTag);
+    public ChunkAnvil116(MCAWorld world, ChunkData chunkData) {
+        super(world, chunkData.getTag());
 
-        CompoundTag levelData = chunkTag.getCompoundTag("Level");
+        CompoundTag levelData = chunkData.getTag().getCompoundTag("Level");
 
         String status = levelData.getString("Status");
         this.isGenerated = status.equals("full");
@@ -75,17 +76,17 @@ public ChunkAnvil116(MCAWorld world, CompoundTag chunkTag) {
             this.oceanFloorHeights = heightmapsTag.getLongArray("OCEAN_FLOOR");
         }
 
-        if (levelData.containsKey("Sections")) {
+        if (chunkData.getSections() != null) {
             this.sectionMin = Integer.MAX_VALUE;
             this.sectionMax = Integer.MIN_VALUE;
 
-            ListTag<CompoundTag> sectionsTag = (ListTag<CompoundTag>) levelData.getListTag("Sections");
-            ArrayList<Section> sectionList = new ArrayList<>(sectionsTag.size());
+            ChunkSectionData[] sectionsData = chunkData.getSections();
+            ArrayList<Section> sectionList = new ArrayList<>(sectionsData.length);
 
-            for (CompoundTag sectionTag : sectionsTag) {
-                if (sectionTag.getListTag("Palette") == null) continue; // ignore empty sections
+            for (ChunkSectionData sectionData : sectionsData) {
+                if (sectionData.getBlockPalette() == null) continue; // ignore empty sections
 
-                Section section = new Section(sectionTag);
+                Section section = new Section(sectionData, getWorld().isDecodeChunks());
                 int y = section.getSectionY();
 
                 if (sectionMin > y) sectionMin = y;
@@ -194,6 +195,41 @@ public int getOceanFloorY(int x, int z) {
         return (int) MCAMath.getValueFromLongArray(this.oceanFloorHeights, z * 16 + x, 9);
     }
 
+    @Override
+    public ColumnRanges getNonEmptyRanges(int x, int z, ColumnRanges target) {
+        target.clear();
+
+        // the world-surface heightmap is only reliable on fully generated chunks,
+        // and only usable if we know the min-y of the dimension that it is relative to
+        int maxY = getMaxY(x, z);
+        if (hasLight && getDataVersion() <= LAST_FIXED_MIN_Y_DATA_VERSION && this.worldSurfaceHeights.length >= 37) maxY = Math.min(maxY, getWorldSurfaceY(x, z) - 1);
+
+        for (int i = 0; i < this.sections.length; i++) {
+            Section section = this.sections[i];
+            if (section == null || section.isEmpty()) continue;
+
+            int sectionMinY = (sectionMin + i) * 16;
+            if (sectionMinY > maxY) break;
+
+            target.add(sectionMinY, Math.min(sectionMinY + 15, maxY));
+        }
+
+        return target;
+    }
+
+    @Override
+    public int estimateMemorySize() {
+        int size = 128 + 8 * (oceanFloorHeights.length + worldSurfaceHeights.length) + 4 * biomes.length;
+        for (Section section : sections) {
+            if (section == null) continue;
+            if (section.decodedBlocks != null) size += 2 * section.decodedBlocks.length;
+            if (section.decodedLight != null) size += section.decodedLight.length;
+            size += 64 + section.blockLight.length + section.skyLight.length +
+                    8 * (section.blocks.length + section.palette.length);
+        }
+        return size;
+    }
+
     private Section getSection(int y) {
         y -= sectionMin;
         if (y < 0 || y >= this.sections.length) return null;
@@ -201,8 +237,6 @@ private Section getSection(int y) {
     }
 
     private static class Section {
-        private static final String AIR_ID = "minecraft:air";
-
         private int sectionY;
         private byte[] blockLight;
         private byte[] skyLight;
@@ -211,61 +245,67 @@ private static class Section {
 
         private int bitsPerBlock;
 
-        @SuppressWarnings("unchecked")
-        public Section(CompoundTag sectionData) {
-            this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
-            this.blockLight = sectionData.getByteArray("BlockLight");
-            this.skyLight = sectionData.getByteArray("SkyLight");
-            this.blocks = sectionData.getLongArray("BlockStates");
+        // flat block-palette indices and light-levels (sky-light << 4 | block-light), only present if the section got decoded
+        private short[] decodedBlocks;
+        private byte[] decodedLight;
+
+        public Section(ChunkSectionData sectionData, boolean decode) {
+            this.sectionY = sectionData.getSectionY();
+            this.blockLight = sectionData.getBlockLight();
+            this.skyLight = sectionData.getSkyLight();
+            this.blocks = sectionData.getBlockStates();
 
             if (blocks.length < 256 && blocks.length > 0) blocks = Arrays.copyOf(blocks, 256);
             if (blockLight.length < 2048 && blockLight.length > 0) blockLight = Arrays.copyOf(blockLight, 2048);
             if (skyLight.length < 2048 && skyLight.length > 0) skyLight = Arrays.copyOf(skyLight, 2048);
 
-            //read block palette
-            ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) sectionData.getListTag("Palette");
-            if (paletteTag != null) {
-                this.palette = new BlockState[paletteTag.size()];
-                for (int i = 0; i < this.palette.length; i++) {
-                    CompoundTag stateTag = paletteTag.get(i);
-
-                    String id = stateTag.getString("Name"); //shortcut to save time and memory
-                    if (id.equals(AIR_ID)) {
-                        palette[i] = BlockState.AIR;
-                        continue;
-                    }
-
-                    Map<String, String> properties = new HashMap<>();
-
-                    if (stateTag.containsKey("Properties")) {
-                        CompoundTag propertiesTag = stateTag.getCompoundTag("Properties");
-                        for (Entry<String, Tag<?>> property : propertiesTag) {
-                            properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                        }
-                    }
-
-                    palette[i] = new BlockState(id, properties);
-                }
-            } else {
-                this.palette = new BlockState[0];
-            }
+            // the block palette is already resolved by the NBTChunkReader
+            this.palette = sectionData.getBlockPalette() != null ? sectionData.getBlockPalette() : new BlockState[0];
 
             this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
+
+            if (decode) decode();
+        }
+
+        /**
+         * Expands the bit-packed block-data and the light nibble-arrays once into flat arrays,
+         * trading some memory for much cheaper random access.
+         */
+        private void decode() {
+            if (palette.length > 1 && blocks.length > 0) {
+                this.decodedBlocks = MCAMath.unpackLongArray(blocks, 4096, bitsPerBlock);
+                this.blocks = EMPTY_LONG_ARRAY;
+            }
+
+            if (blockLight.length > 0 || skyLight.length > 0) {
+                this.decodedLight = MCAMath.unpackLight(skyLight, blockLight, 4096);
+                this.blockLight = EMPTY_BYTE_ARRAY;
+                this.skyLight = EMPTY_BYTE_ARRAY;
+            }
         }
 
         public int getSectionY() {
             return sectionY;
         }
 
+        /**
+         * Returns true if this section contains nothing but air
+         */
+        public boolean isEmpty() {
+            return palette.length == 0 || (palette.length == 1 && palette[0].isAir());
+        }
+
         public BlockState getBlockState(int x, int y, int z) {
             if (palette.length == 1) return palette[0];
-            if (blocks.length == 0) return BlockState.AIR;
+            if (decodedBlocks == null && blocks.length == 0) return BlockState.AIR;
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
 
-            long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+            long value = decodedBlocks != null ?
+                    decodedBlocks[blockIndex] & 0xFFFF :
+                    MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
             if (value >= palette.length) {
                 Logger.global.noFloodWarning("palettewarning", "Got palette value " + value + " but palette has size of " + palette.length + "! (Future occasions of this error will not be logged)");
                 return BlockState.MISSING;
@@ -275,11 +315,16 @@ public BlockState getBlockState(int x, int y, int z) {
         }
 
         public LightData getLightData(int x, int y, int z, LightData target) {
-            if (blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
+            if (decodedLight == null && blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockByteIndex = y * 256 + z * 16 + x;
+            if (decodedLight != null) {
+                int light = decodedLight[blockByteIndex];
+                return target.set((light >> 4) & 0xF, light & 0xF);
+            }
+
             int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2
             boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
 
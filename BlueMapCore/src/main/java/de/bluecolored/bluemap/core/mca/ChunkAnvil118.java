@@ -26,26 +26,24 @@
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockState;
+import de.bluecolored.bluemap.core.world.ColumnRanges;
 import de.bluecolored.bluemap.core.world.LightData;
 import net.querz.nbt.CompoundTag;
-import net.querz.nbt.ListTag;
-import net.querz.nbt.NumberTag;
-import net.querz.nbt.StringTag;
-import net.querz.nbt.Tag;
 
 @SuppressWarnings("FieldMayBeFinal")
 public class ChunkAnvil118 extends MCAChunk {
     private static final long[] EMPTY_LONG_ARRAY = new long[0];
+    private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
     private static final BlockState[] EMPTY_BLOCK_STATE_ARRAY = new BlockState[0];
     private static final String[] EMPTY_STRING_ARRAY = new String[0];
 
+    // the min-y of the overworld, assumed for the heightmaps if the chunk has no block-sections to derive it from
+    private static final int DEFAULT_WORLD_MIN_Y = -64;
+
     private boolean isGenerated;
     private boolean hasLight;
 
@@ -54,12 +52,17 @@ public class ChunkAnvil118 extends MCAChunk {
     private int sectionMin, sectionMax;
     private Section[] sections;
 
+    // the heightmaps are relative to the min-y of the dimension
+    private int worldMinY = DEFAULT_WORLD_MIN_Y;
+    private boolean hasWorldMinY = false;
+
     private long[] oceanFloorHeights = EMPTY_LONG_ARRAY;
     private long[] worldSurfaceHeights = EMPTY_LONG_ARRAY;
 
-    @SuppressWarnings("unchecked")
-    public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
-        super(world, chunkTag);
+    public ChunkAnvil118(MCAWorld world, ChunkData chunkData) {
+        super(world, chunkData.getTag());
+
+        CompoundTag chunkTag = chunkData.getTag();
 
         String status = chunkTag.getString("Status");
         this.isGenerated = status.equals("full") || status.equals("minecraft:full");
@@ -77,24 +80,33 @@ public ChunkAnvil118(MCAWorld world, CompoundTag chunkTag) {
             this.oceanFloorHeights = heightmapsTag.getLongArray("OCEAN_FLOOR");
         }
 
-        if (chunkTag.containsKey("sections")) {
+        if (chunkData.getSections() != null) {
             this.sectionMin = Integer.MAX_VALUE;
             this.sectionMax = Integer.MIN_VALUE;
 
-            ListTag<CompoundTag> sectionsTag = (ListTag<CompoundTag>) chunkTag.getListTag("sections");
-            ArrayList<Section> sectionList = new ArrayList<>(sectionsTag.size());
+            ChunkSectionData[] sectionsData = chunkData.getSections();
+            ArrayList<Section> sectionList = new ArrayList<>(sectionsData.length);
 
-            for (CompoundTag sectionTag : sectionsTag) {
+            int blockSectionMin = Integer.MAX_VALUE;
+            for (ChunkSectionData sectionData : sectionsData) {
 
-                Section section = new Section(sectionTag);
+                Section section = new Section(sectionData, getWorld().isDecodeChunks());
                 int y = section.getSectionY();
 
                 if (sectionMin > y) sectionMin = y;
                 if (sectionMax < y) sectionMax = y;
 
+                // all sections of the dimension have block-states, the additional light-only sections below and above don't
+                if (sectionData.getBlockPalette() != null && blockSectionMin > y) blockSectionMin = y;
+
                 sectionList.add(section);
             }
 
+            if (blockSectionMin != Integer.MAX_VALUE) {
+                this.worldMinY = blockSectionMin * 16;
+                this.hasWorldMinY = true;
+            }
+
             sections = new Section[1 + sectionMax - sectionMin];
             for (Section section : sectionList) {
                 sections[section.sectionY - sectionMin] = section;
@@ -161,7 +173,7 @@ public int getWorldSurfaceY(int x, int z) {
         if (this.worldSurfaceHeights.length < 37) return 0;
 
         x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.worldSurfaceHeights, z * 16 + x, 9) - 64;
+        return (int) MCAMath.getValueFromLongArray(this.worldSurfaceHeights, z * 16 + x, 9) + worldMinY;
     }
 
     @Override
@@ -169,7 +181,42 @@ public int getOceanFloorY(int x, int z) {
         if (this.oceanFloorHeights.length < 37) return 0;
 
         x &= 0xF; z &= 0xF;
-        return (int) MCAMath.getValueFromLongArray(this.oceanFloorHeights, z * 16 + x, 9) - 64;
+        return (int) MCAMath.getValueFromLongArray(this.oceanFloorHeights, z * 16 + x, 9) + worldMinY;
+    }
+
+    @Override
+    public ColumnRanges getNonEmptyRanges(int x, int z, ColumnRanges target) {
+        target.clear();
+
+        // the world-surface heightmap is only reliable on fully generated chunks,
+        // and only usable if we know the min-y of the dimension that it is relative to
+        int maxY = getMaxY(x, z);
+        if (hasLight && hasWorldMinY && this.worldSurfaceHeights.length >= 37) maxY = Math.min(maxY, getWorldSurfaceY(x, z) - 1);
+
+        for (int i = 0; i < this.sections.length; i++) {
+            Section section = this.sections[i];
+            if (section == null || section.isEmpty()) continue;
+
+            int sectionMinY = (sectionMin + i) * 16;
+            if (sectionMinY > maxY) break;
+
+            target.add(sectionMinY, Math.min(sectionMinY + 15, maxY));
+        }
+
+        return target;
+    }
+
+    @Override
+    public int estimateMemorySize() {
+        int size = 128 + 8 * (oceanFloorHeights.length + worldSurfaceHeights.length);
+        for (Section section : sections) {
+            if (section == null) continue;
+            if (section.decodedBlocks != null) size += 2 * section.decodedBlocks.length;
+            if (section.decodedLight != null) size += section.decodedLight.length;
+            size += 64 + section.blockLight.length + section.skyLight.length +
+                    8 * (section.blocks.length + section.biomes.length + section.blockPalette.length + section.biomePalette.length);
+        }
+        return size;
     }
 
     private Section getSection(int y) {
@@ -189,43 +236,20 @@ private static class Section {
 
         private int bitsPerBlock, bitsPerBiome;
 
-        @SuppressWarnings("unchecked")
-        public Section(CompoundTag sectionData) {
-            this.sectionY = sectionData.get("Y", NumberTag.class).asInt();
-            this.blockLight = sectionData.getByteArray("BlockLight");
-            this.skyLight = sectionData.getByteArray("SkyLight");
-
-            // blocks
-            CompoundTag blockStatesTag = sectionData.getCompoundTag("block_states");
-            if (blockStatesTag != null) {
-                // block data
-                this.blocks = blockStatesTag.getLongArray("data");
-
-                // block palette
-                ListTag<CompoundTag> paletteTag = (ListTag<CompoundTag>) blockStatesTag.getListTag("palette");
-                if (paletteTag != null) {
-                    this.blockPalette = new BlockState[paletteTag.size()];
-                    for (int i = 0; i < this.blockPalette.length; i++) {
-                        blockPalette[i] = readBlockStatePaletteEntry(paletteTag.get(i));
-                    }
-                }
-            }
+        // flat block-palette indices and light-levels (sky-light << 4 | block-light), only present if the section got decoded
+        private short[] decodedBlocks;
+        private byte[] decodedLight;
 
-            // biomes
-            CompoundTag biomesTag = sectionData.getCompoundTag("biomes");
-            if (biomesTag != null) {
-                // biomes data
-                this.biomes = biomesTag.getLongArray("data");
-
-                // biomes palette
-                ListTag<StringTag> paletteTag = (ListTag<StringTag>) biomesTag.getListTag("palette");
-                if (paletteTag != null) {
-                    this.biomePalette = new String[paletteTag.size()];
-                    for (int i = 0; i < this.biomePalette.length; i++) {
-                        biomePalette[i] = paletteTag.get(i).getValue();
-                    }
-                }
-            }
+        public Section(ChunkSectionData sectionData, boolean decode) {
+            this.sectionY = sectionData.getSectionY();
+            this.blockLight = sectionData.getBlockLight();
+            this.skyLight = sectionData.getSkyLight();
+
+            // blocks and biomes, the palettes are already resolved by the NBTChunkReader
+            this.blocks = sectionData.getBlockStates();
+            if (sectionData.getBlockPalette() != null) this.blockPalette = sectionData.getBlockPalette();
+            this.biomes = sectionData.getBiomes();
+            if (sectionData.getBiomePalette() != null) this.biomePalette = sectionData.getBiomePalette();
 
             if (blocks.length < 256 && blocks.length > 0) blocks = Arrays.copyOf(blocks, 256);
             if (blockLight.length < 2048 && blockLight.length > 0) blockLight = Arrays.copyOf(blockLight, 2048);
@@ -233,36 +257,49 @@ public Section(CompoundTag sectionData) {
 
             this.bitsPerBlock = this.blocks.length >> 6; // available longs * 64 (bits per long) / 4096 (blocks per section) (floored result)
             this.bitsPerBiome = Integer.SIZE - Integer.numberOfLeadingZeros(this.biomePalette.length - 1);
-        }
 
-        private BlockState readBlockStatePaletteEntry(CompoundTag paletteEntry) {
-            String id = paletteEntry.getString("Name");
-            if (BlockState.AIR.getFormatted().equals(id)) return BlockState.AIR; //shortcut to save time and memory
+            if (decode) decode();
+        }
 
-            Map<String, String> properties = new LinkedHashMap<>();
-            if (paletteEntry.containsKey("Properties")) {
-                CompoundTag propertiesTag = paletteEntry.getCompoundTag("Properties");
-                for (Entry<String, Tag<?>> property : propertiesTag) {
-                    properties.put(property.getKey().toLowerCase(), ((StringTag) property.getValue()).getValue().toLowerCase());
-                }
+        /**
+         * Expands the bit-packed block-data and the light nibble-arrays once into flat arrays,
+         * trading some memory for much cheaper random access.
+         */
+        private void decode() {
+            if (blockPalette.length > 1 && blocks.length > 0) {
+                this.decodedBlocks = MCAMath.unpackLongArray(blocks, 4096, bitsPerBlock);
+                this.blocks = EMPTY_LONG_ARRAY;
             }
 
-            return new BlockState(id, properties);
+            if (blockLight.length > 0 || skyLight.length > 0) {
+                this.decodedLight = MCAMath.unpackLight(skyLight, blockLight, 4096);
+                this.blockLight = EMPTY_BYTE_ARRAY;
+                this.skyLight = EMPTY_BYTE_ARRAY;
+            }
         }
 
         public int getSectionY() {
             return sectionY;
         }
 
+        /**
+         * Returns true if this section contains nothing but air
+         */
+        public boolean isEmpty() {
+            return blockPalette.length == 0 || (blockPalette.length == 1 && blockPalette[0].isAir());
+        }
+
         public BlockState getBlockState(int x, int y, int z) {
             if (blockPalette.length == 1) return blockPalette[0];
-            if (blocks.length == 0) return BlockState.AIR;
+            if (decodedBlocks == null && blocks.length == 0) return BlockState.AIR;
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockIndex = y * 256 + z * 16 + x;
 
-            long value = MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
+            long value = decodedBlocks != null ?
+                    decodedBlocks[blockIndex] & 0xFFFF :
+                    MCAMath.getValueFromLongArray(blocks, blockIndex, bitsPerBlock);
             if (value >= blockPalette.length) {
                 Logger.global.noFloodWarning("palettewarning", "Got block-palette value " + value + " but palette has size of " + blockPalette.length + "! (Future occasions of this error will not be logged)");
                 return BlockState.MISSING;
@@ -272,11 +309,16 @@ public BlockState getBlockState(int x, int y, int z) {
         }
 
         public LightData getLightData(int x, int y, int z, LightData target) {
-            if (blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
+            if (decodedLight == null && blockLight.length == 0 && skyLight.length == 0) return target.set(0, 0);
 
             x &= 0xF; y &= 0xF; z &= 0xF; // Math.floorMod(pos.getX(), 16)
 
             int blockByteIndex = y * 256 + z * 16 + x;
+            if (decodedLight != null) {
+                int light = decodedLight[blockByteIndex];
+                return target.set((light >> 4) & 0xF, light & 0xF);
+            }
+
             int blockHalfByteIndex = blockByteIndex >> 1; // blockByteIndex / 2
             boolean largeHalf = (blockByteIndex & 0x1) != 0; // (blockByteIndex % 2) == 0
 
@@ -0,0 +1,54 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import net.querz.nbt.CompoundTag;
+
+/**
+ * The data of a chunk as it is read by the {@link NBTChunkReader}:
+ * The (filtered) root-tag without the sections, and the sections decoded into {@link ChunkSectionData}.
+ */
+public class ChunkData {
+
+    private final CompoundTag tag;
+    private final ChunkSectionData[] sections;
+
+    public ChunkData(CompoundTag tag, ChunkSectionData[] sections) {
+        this.tag = tag;
+        this.sections = sections;
+    }
+
+    public CompoundTag getTag() {
+        return tag;
+    }
+
+    /**
+     * The sections of the chunk, or <code>null</code> if the chunk-data contained no section-list
+     */
+    public ChunkSectionData[] getSections() {
+        return sections;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+
+/**
+ * The data of one chunk-section as it is read by the {@link NBTChunkReader}.<br>
+ * Light, block-states and biomes are kept in the primitive arrays they are stored in, and the palettes are resolved
+ * to {@link BlockState}s and biome-ids directly, so no intermediate nbt-tags are created for them.<br>
+ * Covers the section-formats of all supported versions: "BlockStates"/"Palette" (1.13 - 1.17) and
+ * "block_states"/"biomes" (1.18+).
+ */
+public class ChunkSectionData {
+
+    static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+    static final long[] EMPTY_LONG_ARRAY = new long[0];
+
+    int sectionY;
+    byte[] blockLight = EMPTY_BYTE_ARRAY;
+    byte[] skyLight = EMPTY_BYTE_ARRAY;
+    long[] blockStates = EMPTY_LONG_ARRAY;
+    BlockState[] blockPalette;
+    long[] biomes = EMPTY_LONG_ARRAY;
+    String[] biomePalette;
+
+    ChunkSectionData() {}
+
+    public int getSectionY() {
+        return sectionY;
+    }
+
+    public byte[] getBlockLight() {
+        return blockLight;
+    }
+
+    public byte[] getSkyLight() {
+        return skyLight;
+    }
+
+    /**
+     * The bit-packed block-palette indices
+     */
+    public long[] getBlockStates() {
+        return blockStates;
+    }
+
+    /**
+     * The block-palette, or <code>null</code> if the section has none
+     */
+    public BlockState[] getBlockPalette() {
+        return blockPalette;
+    }
+
+    /**
+     * The bit-packed biome-palette indices (1.18+)
+     */
+    public long[] getBiomes() {
+        return biomes;
+    }
+
+    /**
+     * The biome-palette (1.18+), or <code>null</code> if the section has none
+     */
+    public String[] getBiomePalette() {
+        return biomePalette;
+    }
+
+}
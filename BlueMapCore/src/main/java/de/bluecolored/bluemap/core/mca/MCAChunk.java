@@ -90,13 +90,13 @@ protected MCAWorld getWorld() {
         return world;
     }
 
-    public static MCAChunk create(MCAWorld world, CompoundTag chunkTag) throws IOException {
-        int version = chunkTag.getInt("DataVersion");
+    public static MCAChunk create(MCAWorld world, ChunkData chunkData) throws IOException {
+        int version = chunkData.getTag().getInt("DataVersion");
 
-        if (version < 2200) return new ChunkAnvil113(world, chunkTag);
-        if (version < 2500) return new ChunkAnvil115(world, chunkTag);
-        if (version < 2844) return new ChunkAnvil116(world, chunkTag);
-        return new ChunkAnvil118(world, chunkTag);
+        if (version < 2200) return new ChunkAnvil113(world, chunkData);
+        if (version < 2500) return new ChunkAnvil115(world, chunkData);
+        if (version < 2844) return new ChunkAnvil116(world, chunkData);
+        return new ChunkAnvil118(world, chunkData);
     }
 
     @Override
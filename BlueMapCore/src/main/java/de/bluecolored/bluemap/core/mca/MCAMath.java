@@ -58,6 +58,64 @@ public static long getValueFromLongStream(long[] data, int valueIndex, int bitsP
         return value & (0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue);
     }
 
+    /**
+     * Unpacks the first "valueCount" values of a long array in the format of {@link #getValueFromLongArray(long[], int, int)}
+     * into a short array.<br>
+     * With 0 bits per value (a single-entry palette) all values are 0.
+     */
+    public static short[] unpackLongArray(long[] data, int valueCount, int bitsPerValue) {
+        short[] values = new short[valueCount];
+        if (bitsPerValue <= 0) return values;
+
+        int valuesPerLong = 64 / bitsPerValue;
+        long mask = 0xFFFFFFFFFFFFFFFFL >>> -bitsPerValue;
+
+        int valueIndex = 0;
+        for (int longIndex = 0; longIndex < data.length && valueIndex < valueCount; longIndex++) {
+            long value = data[longIndex];
+            for (int i = 0; i < valuesPerLong && valueIndex < valueCount; i++) {
+                values[valueIndex++] = (short) (value & mask);
+                value >>>= bitsPerValue;
+            }
+        }
+
+        return values;
+    }
+
+    /**
+     * Unpacks the first "valueCount" values of a long array in the format of {@link #getValueFromLongStream(long[], int, int)}
+     * into a short array.<br>
+     * With 0 bits per value (a single-entry palette) all values are 0.
+     */
+    public static short[] unpackLongStream(long[] data, int valueCount, int bitsPerValue) {
+        short[] values = new short[valueCount];
+        if (bitsPerValue <= 0) return values;
+
+        int maxValueCount = (int) Math.min(valueCount, (long) data.length * 64 / bitsPerValue);
+        for (int i = 0; i < maxValueCount; i++) {
+            values[i] = (short) getValueFromLongStream(data, i, bitsPerValue);
+        }
+        return values;
+    }
+
+    /**
+     * Unpacks the two light nibble-arrays of a section into one byte per block, with the sky-light in the upper
+     * and the block-light in the lower 4 bits.<br>
+     * Empty arrays are treated as a light-level of 0.
+     */
+    public static byte[] unpackLight(byte[] skyLight, byte[] blockLight, int valueCount) {
+        byte[] light = new byte[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            int halfByteIndex = i >> 1;
+            boolean largeHalf = (i & 0x1) != 0;
+
+            int sky = halfByteIndex < skyLight.length ? getByteHalf(skyLight[halfByteIndex], largeHalf) : 0;
+            int block = halfByteIndex < blockLight.length ? getByteHalf(blockLight[halfByteIndex], largeHalf) : 0;
+            light[i] = (byte) (sky << 4 | block);
+        }
+        return light;
+    }
+
     /**
      * Extracts the 4 bits of the left (largeHalf = <code>true</code>) or the right (largeHalf = <code>false</code>) side of the byte stored in <code>value</code>.<br>
      * The value is treated as an unsigned byte.
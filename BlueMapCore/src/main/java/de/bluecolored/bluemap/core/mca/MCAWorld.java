@@ -32,6 +32,7 @@
 import de.bluecolored.bluemap.core.BlueMap;
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mca.region.RegionType;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.world.*;
 import net.querz.nbt.CompoundTag;
@@ -56,6 +57,11 @@ public class MCAWorld implements World {
 
     private static final Vector2iCache VECTOR_2_I_CACHE = new Vector2iCache();
 
+    /**
+     * Whether chunks are decoded if not specified otherwise, this matches the default of the decode-chunks setting
+     */
+    public static final boolean DEFAULT_DECODE_CHUNKS = true;
+
     private final Path worldFolder;
 
     private final String name;
@@ -63,14 +69,33 @@ public class MCAWorld implements World {
 
     private final int skyLight;
     private final boolean ignoreMissingLightData;
+    private final boolean decodeChunks;
 
     private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, Chunk> chunkCache;
+    private final ChunkCache chunkCache;
 
     public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, ChunkCache.DEFAULT_BUDGET, DEFAULT_DECODE_CHUNKS);
+    }
+
+    public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemoryBudget) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, chunkCacheMemoryBudget, DEFAULT_DECODE_CHUNKS);
+    }
+
+    public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemoryBudget, boolean decodeChunks) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, new SharedMemoryBudget(chunkCacheMemoryBudget), decodeChunks);
+    }
+
+    /**
+     * @param chunkCacheMemoryBudget the memory-budget that the chunk-cache of this world shares with the chunk-caches of other worlds
+     * @param decodeChunks whether the chunk-sections should be decoded into flat arrays when they are loaded
+     *                     (uses more memory but makes block- and light-lookups cheaper)
+     */
+    public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, SharedMemoryBudget chunkCacheMemoryBudget, boolean decodeChunks) throws IOException {
         this.worldFolder = worldFolder.toRealPath();
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
+        this.decodeChunks = decodeChunks;
 
         this.regionCache = Caffeine.newBuilder()
                 .executor(BlueMap.THREAD_POOL)
@@ -78,11 +103,7 @@ public MCAWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
                 .expireAfterWrite(1, TimeUnit.MINUTES)
                 .build(this::loadRegion);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.chunkCache = new ChunkCache(this::loadChunk, chunkCacheMemoryBudget);
 
         try {
             Path levelFile = resolveLevelFile(worldFolder);
@@ -202,6 +223,27 @@ public void cleanUpChunkCache() {
         chunkCache.cleanUp();
     }
 
+    @Override
+    public void releaseResources() {
+        chunkCache.release();
+        regionCache.invalidateAll();
+        regionCache.cleanUp();
+    }
+
+    @Override
+    public void prefetchChunks(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                chunkCache.prefetch(VECTOR_2_I_CACHE.get(x, z));
+            }
+        }
+    }
+
+    @DebugDump
+    public ChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
     public Path getWorldFolder() {
         return worldFolder;
     }
@@ -214,6 +256,10 @@ public boolean isIgnoreMissingLightData() {
         return ignoreMissingLightData;
     }
 
+    public boolean isDecodeChunks() {
+        return decodeChunks;
+    }
+
     private Region loadRegion(Vector2i regionPos) {
         return loadRegion(regionPos.getX(), regionPos.getY());
     }
@@ -264,6 +310,7 @@ public String toString() {
                 ", spawnPoint=" + spawnPoint +
                 ", skyLight=" + skyLight +
                 ", ignoreMissingLightData=" + ignoreMissingLightData +
+                ", decodeChunks=" + decodeChunks +
                 '}';
     }
 
@@ -0,0 +1,453 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import net.querz.nbt.*;
+
+import java.io.DataInput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads the NBT-data of a chunk from a stream, but only materializes the tags that the {@link MCAChunk}-implementations
+ * actually use.<br>
+ * All other tags (entities, block-entities, structures, tick-lists, ...) are skipped on the byte-level without
+ * creating any objects for them.<br>
+ * The sections are not materialized as tags at all, but decoded straight into {@link ChunkSectionData}: light and
+ * block-state arrays are read into primitive arrays and the palette-entries are resolved to {@link BlockState}s
+ * and biome-ids while reading.
+ */
+public class NBTChunkReader {
+
+    private static final byte
+            TAG_END = 0,
+            TAG_BYTE = 1,
+            TAG_SHORT = 2,
+            TAG_INT = 3,
+            TAG_LONG = 4,
+            TAG_FLOAT = 5,
+            TAG_DOUBLE = 6,
+            TAG_BYTE_ARRAY = 7,
+            TAG_STRING = 8,
+            TAG_LIST = 9,
+            TAG_COMPOUND = 10,
+            TAG_INT_ARRAY = 11,
+            TAG_LONG_ARRAY = 12;
+
+    /** marks a section-list that is decoded into {@link ChunkSectionData} instead of being read as tags */
+    private static final Filter SECTIONS = new Filter();
+
+    private static final Filter HEIGHTMAPS_FILTER = new Filter()
+            .include("WORLD_SURFACE")
+            .include("OCEAN_FLOOR");
+
+    private static final Filter CHUNK_DATA_FILTER = new Filter()
+            .include("Status")
+            .include("InhabitedTime")
+            .include("Biomes")
+            .include("Sections", SECTIONS)
+            .include("Heightmaps", HEIGHTMAPS_FILTER);
+
+    private static final Filter CHUNK_FILTER = new Filter()
+            .include("DataVersion")
+            .include("Status")
+            .include("InhabitedTime")
+            .include("sections", SECTIONS)
+            .include("Heightmaps", HEIGHTMAPS_FILTER)
+            .include("Level", CHUNK_DATA_FILTER); // chunks before 1.18 have all their data in the "Level" tag
+
+    private final DataInput in;
+    private final int maxDepth;
+
+    private ChunkSectionData[] sections;
+
+    private NBTChunkReader(DataInput in, int maxDepth) {
+        this.in = in;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Reads the (named) root-tag of a chunk from the provided input and returns it as {@link ChunkData}
+     * only containing the tags that are needed to create an {@link MCAChunk}.
+     */
+    public static ChunkData read(DataInput in) throws IOException {
+        NBTChunkReader reader = new NBTChunkReader(in, Tag.DEFAULT_MAX_DEPTH);
+        CompoundTag tag = reader.readRoot();
+        return new ChunkData(tag, reader.sections);
+    }
+
+    private CompoundTag readRoot() throws IOException {
+        byte type = in.readByte();
+        if (type != TAG_COMPOUND) throw new IOException("Invalid root tag type: " + type);
+        skipString(); // root name
+        return readCompound(CHUNK_FILTER, 0);
+    }
+
+    private Tag<?> readTag(byte type, Filter filter, int depth) throws IOException {
+        switch (type) {
+            case TAG_BYTE: return new ByteTag(in.readByte());
+            case TAG_SHORT: return new ShortTag(in.readShort());
+            case TAG_INT: return new IntTag(in.readInt());
+            case TAG_LONG: return new LongTag(in.readLong());
+            case TAG_FLOAT: return new FloatTag(in.readFloat());
+            case TAG_DOUBLE: return new DoubleTag(in.readDouble());
+            case TAG_STRING: return new StringTag(in.readUTF());
+            case TAG_BYTE_ARRAY: return new ByteArrayTag(readByteArray());
+            case TAG_INT_ARRAY: {
+                int[] data = new int[readLength()];
+                for (int i = 0; i < data.length; i++) data[i] = in.readInt();
+                return new IntArrayTag(data);
+            }
+            case TAG_LONG_ARRAY: return new LongArrayTag(readLongArray());
+            case TAG_LIST: return readList(filter, depth + 1);
+            case TAG_COMPOUND: return readCompound(filter, depth + 1);
+            default: throw new IOException("Invalid tag type: " + type);
+        }
+    }
+
+    private CompoundTag readCompound(Filter filter, int depth) throws IOException {
+        checkDepth(depth);
+
+        CompoundTag compound = new CompoundTag();
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+
+            if (filter == null) {
+                compound.put(name, readTag(type, null, depth));
+                continue;
+            }
+
+            if (!filter.includes(name)) {
+                skipTag(type, depth);
+                continue;
+            }
+
+            Filter childFilter = filter.getChildFilter(name);
+            if (childFilter == SECTIONS && type == TAG_LIST) {
+                this.sections = readSections(depth + 1);
+                continue;
+            }
+
+            compound.put(name, readTag(type, childFilter, depth));
+        }
+
+        return compound;
+    }
+
+    private ChunkSectionData[] readSections(int depth) throws IOException {
+        checkDepth(depth);
+
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (type != TAG_COMPOUND) {
+            for (int i = 0; i < length; i++) skipTag(type, depth);
+            return new ChunkSectionData[0];
+        }
+
+        ChunkSectionData[] sections = new ChunkSectionData[Math.max(length, 0)];
+        for (int i = 0; i < sections.length; i++) {
+            sections[i] = readSection(depth + 1);
+        }
+        return sections;
+    }
+
+    private ChunkSectionData readSection(int depth) throws IOException {
+        checkDepth(depth);
+
+        ChunkSectionData section = new ChunkSectionData();
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            switch (name) {
+                case "Y":
+                    section.sectionY = readInt(type, depth);
+                    break;
+                case "BlockLight":
+                    if (type == TAG_BYTE_ARRAY) section.blockLight = readByteArray();
+                    else skipTag(type, depth);
+                    break;
+                case "SkyLight":
+                    if (type == TAG_BYTE_ARRAY) section.skyLight = readByteArray();
+                    else skipTag(type, depth);
+                    break;
+                case "BlockStates": // 1.13 - 1.17
+                    if (type == TAG_LONG_ARRAY) section.blockStates = readLongArray();
+                    else skipTag(type, depth);
+                    break;
+                case "Palette": // 1.13 - 1.17
+                    if (type == TAG_LIST) section.blockPalette = readBlockPalette(depth + 1);
+                    else skipTag(type, depth);
+                    break;
+                case "block_states": // 1.18+
+                    if (type == TAG_COMPOUND) readBlockStates(section, depth + 1);
+                    else skipTag(type, depth);
+                    break;
+                case "biomes": // 1.18+
+                    if (type == TAG_COMPOUND) readBiomes(section, depth + 1);
+                    else skipTag(type, depth);
+                    break;
+                default:
+                    skipTag(type, depth);
+            }
+        }
+
+        return section;
+    }
+
+    private void readBlockStates(ChunkSectionData section, int depth) throws IOException {
+        checkDepth(depth);
+
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            if (name.equals("data") && type == TAG_LONG_ARRAY) section.blockStates = readLongArray();
+            else if (name.equals("palette") && type == TAG_LIST) section.blockPalette = readBlockPalette(depth + 1);
+            else skipTag(type, depth);
+        }
+    }
+
+    private void readBiomes(ChunkSectionData section, int depth) throws IOException {
+        checkDepth(depth);
+
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            if (name.equals("data") && type == TAG_LONG_ARRAY) section.biomes = readLongArray();
+            else if (name.equals("palette") && type == TAG_LIST) section.biomePalette = readStringList(depth + 1);
+            else skipTag(type, depth);
+        }
+    }
+
+    private BlockState[] readBlockPalette(int depth) throws IOException {
+        checkDepth(depth);
+
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (type != TAG_COMPOUND) {
+            for (int i = 0; i < length; i++) skipTag(type, depth);
+            return new BlockState[0];
+        }
+
+        BlockState[] palette = new BlockState[Math.max(length, 0)];
+        for (int i = 0; i < palette.length; i++) {
+            palette[i] = readBlockState(depth + 1);
+        }
+        return palette;
+    }
+
+    private BlockState readBlockState(int depth) throws IOException {
+        checkDepth(depth);
+
+        String id = "";
+        Map<String, String> properties = null;
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            if (name.equals("Name") && type == TAG_STRING) {
+                id = in.readUTF();
+            } else if (name.equals("Properties") && type == TAG_COMPOUND) {
+                properties = readProperties(depth + 1);
+            } else {
+                skipTag(type, depth);
+            }
+        }
+
+        if (BlockState.AIR.getFormatted().equals(id)) return BlockState.AIR; //shortcut to save time and memory
+        return new BlockState(id, properties != null ? properties : new LinkedHashMap<>());
+    }
+
+    private Map<String, String> readProperties(int depth) throws IOException {
+        checkDepth(depth);
+
+        Map<String, String> properties = new LinkedHashMap<>();
+        for (byte type = in.readByte(); type != TAG_END; type = in.readByte()) {
+            String name = in.readUTF();
+            if (type == TAG_STRING) properties.put(name.toLowerCase(), in.readUTF().toLowerCase());
+            else skipTag(type, depth);
+        }
+        return properties;
+    }
+
+    private String[] readStringList(int depth) throws IOException {
+        checkDepth(depth);
+
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (type != TAG_STRING) {
+            for (int i = 0; i < length; i++) skipTag(type, depth);
+            return new String[0];
+        }
+
+        String[] strings = new String[Math.max(length, 0)];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = in.readUTF();
+        }
+        return strings;
+    }
+
+    private int readInt(byte type, int depth) throws IOException {
+        switch (type) {
+            case TAG_BYTE: return in.readByte();
+            case TAG_SHORT: return in.readShort();
+            case TAG_INT: return in.readInt();
+            case TAG_LONG: return (int) in.readLong();
+            default:
+                skipTag(type, depth);
+                return 0;
+        }
+    }
+
+    private byte[] readByteArray() throws IOException {
+        byte[] data = new byte[readLength()];
+        in.readFully(data);
+        return data;
+    }
+
+    private long[] readLongArray() throws IOException {
+        long[] data = new long[readLength()];
+        for (int i = 0; i < data.length; i++) data[i] = in.readLong();
+        return data;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private ListTag<?> readList(Filter filter, int depth) throws IOException {
+        checkDepth(depth);
+
+        byte type = in.readByte();
+        int length = in.readInt();
+
+        // empty lists might have the END-type which ListTag can't represent, so we just use CompoundTag
+        if (length <= 0) return new ListTag<>(CompoundTag.class);
+
+        ListTag list = new ListTag(getTagClass(type));
+        for (int i = 0; i < length; i++) {
+            list.add(readTag(type, filter, depth));
+        }
+
+        return list;
+    }
+
+    private void skipTag(byte type, int depth) throws IOException {
+        switch (type) {
+            case TAG_BYTE: skipBytes(1); break;
+            case TAG_SHORT: skipBytes(2); break;
+            case TAG_INT:
+            case TAG_FLOAT: skipBytes(4); break;
+            case TAG_LONG:
+            case TAG_DOUBLE: skipBytes(8); break;
+            case TAG_STRING: skipString(); break;
+            case TAG_BYTE_ARRAY: skipBytes(readLength()); break;
+            case TAG_INT_ARRAY: skipBytes(readLength() * 4L); break;
+            case TAG_LONG_ARRAY: skipBytes(readLength() * 8L); break;
+            case TAG_LIST: {
+                checkDepth(depth + 1);
+                byte elementType = in.readByte();
+                int length = in.readInt();
+                for (int i = 0; i < length; i++) skipTag(elementType, depth + 1);
+                break;
+            }
+            case TAG_COMPOUND: {
+                checkDepth(depth + 1);
+                for (byte elementType = in.readByte(); elementType != TAG_END; elementType = in.readByte()) {
+                    skipString();
+                    skipTag(elementType, depth + 1);
+                }
+                break;
+            }
+            default: throw new IOException("Invalid tag type: " + type);
+        }
+    }
+
+    private void skipString() throws IOException {
+        skipBytes(in.readUnsignedShort());
+    }
+
+    private void skipBytes(long count) throws IOException {
+        while (count > 0) {
+            int skipped = in.skipBytes((int) Math.min(count, Integer.MAX_VALUE));
+            if (skipped <= 0) {
+                in.readByte(); // throws an EOFException if the stream ended
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    private int readLength() throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new EOFException("Negative array length: " + length);
+        return length;
+    }
+
+    private void checkDepth(int depth) throws IOException {
+        if (depth > maxDepth) throw new IOException("Maximum nbt depth of " + maxDepth + " exceeded!");
+    }
+
+    private static Class<?> getTagClass(byte type) throws IOException {
+        switch (type) {
+            case TAG_BYTE: return ByteTag.class;
+            case TAG_SHORT: return ShortTag.class;
+            case TAG_INT: return IntTag.class;
+            case TAG_LONG: return LongTag.class;
+            case TAG_FLOAT: return FloatTag.class;
+            case TAG_DOUBLE: return DoubleTag.class;
+            case TAG_BYTE_ARRAY: return ByteArrayTag.class;
+            case TAG_STRING: return StringTag.class;
+            case TAG_LIST: return ListTag.class;
+            case TAG_COMPOUND: return CompoundTag.class;
+            case TAG_INT_ARRAY: return IntArrayTag.class;
+            case TAG_LONG_ARRAY: return LongArrayTag.class;
+            default: throw new IOException("Invalid list element type: " + type);
+        }
+    }
+
+    /**
+     * Defines which tags of a compound are read.
+     * A <code>null</code> child-filter means that the whole tag is read.
+     */
+    private static class Filter {
+
+        private final Map<String, Filter> children = new HashMap<>();
+
+        public Filter include(String name) {
+            return include(name, null);
+        }
+
+        public Filter include(String name, Filter childFilter) {
+            children.put(name, childFilter);
+            return this;
+        }
+
+        public boolean includes(String name) {
+            return children.containsKey(name);
+        }
+
+        public Filter getChildFilter(String name) {
+            return children.get(name);
+        }
+
+    }
+
+}
@@ -26,14 +26,14 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.mca.ChunkData;
 import de.bluecolored.bluemap.core.mca.MCAChunk;
 import de.bluecolored.bluemap.core.mca.MCAWorld;
+import de.bluecolored.bluemap.core.mca.NBTChunkReader;
 import de.bluecolored.bluemap.core.world.Chunk;
 import de.bluecolored.bluemap.core.world.EmptyChunk;
 import de.bluecolored.bluemap.core.world.Region;
 import io.airlift.compress.zstd.ZstdInputStream;
-import net.querz.nbt.CompoundTag;
-import net.querz.nbt.Tag;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
@@ -120,14 +120,10 @@ public Chunk loadChunk(int chunkX, int chunkZ, boolean ignoreMissingLightData) t
                 dis.skipBytes(((1024 - pos - 1) << 3) + 4); // Skip current chunk 0 and unneeded other chunks zero/size
                 dis.skipBytes(skip); // Skip unneeded chunks data
 
-                Tag<?> tag = Tag.deserialize(dis, Tag.DEFAULT_MAX_DEPTH);
-                if (tag instanceof CompoundTag) {
-                    MCAChunk chunk = MCAChunk.create(world, (CompoundTag) tag);
-                    if (!chunk.isGenerated()) return EmptyChunk.INSTANCE;
-                    return chunk;
-                } else {
-                    throw new IOException("Invalid data tag: " + (tag == null ? "null" : tag.getClass().getName()));
-                }
+                ChunkData chunkData = NBTChunkReader.read(dis);
+                MCAChunk chunk = MCAChunk.create(world, chunkData);
+                if (!chunk.isGenerated()) return EmptyChunk.INSTANCE;
+                return chunk;
             }
         } catch (RuntimeException e) {
             throw new IOException(e);
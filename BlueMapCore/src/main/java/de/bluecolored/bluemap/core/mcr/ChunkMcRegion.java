@@ -111,6 +111,13 @@ public int getOceanFloorY(int x, int z) {
         return 50; // TODO figure out the actual min noise value
     }
 
+    @Override
+    public int estimateMemorySize() {
+        if (section == null) return 64;
+        return 128 + section.blocks.length + section.metadata.data.length +
+                section.blockLight.data.length + section.skyLight.data.length;
+    }
+
     private static class Section {
         private static final int AIR_ID = 0;
 
@@ -45,8 +45,10 @@
 import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.mcr.region.RegionType;
 import de.bluecolored.bluemap.core.mcr.region.WorldChunkManager;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
 import de.bluecolored.bluemap.core.util.Vector2iCache;
 import de.bluecolored.bluemap.core.world.Chunk;
+import de.bluecolored.bluemap.core.world.ChunkCache;
 import de.bluecolored.bluemap.core.world.EmptyChunk;
 import de.bluecolored.bluemap.core.world.Grid;
 import de.bluecolored.bluemap.core.world.Region;
@@ -74,9 +76,20 @@ public class MCRWorld implements World {
     private final boolean ignoreMissingLightData;
 
     private final LoadingCache<Vector2i, Region> regionCache;
-    private final LoadingCache<Vector2i, Chunk> chunkCache;
+    private final ChunkCache chunkCache;
 
     public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, ChunkCache.DEFAULT_BUDGET);
+    }
+
+    public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, long chunkCacheMemoryBudget) throws IOException {
+        this(worldFolder, skyLight, ignoreMissingLightData, new SharedMemoryBudget(chunkCacheMemoryBudget));
+    }
+
+    /**
+     * @param chunkCacheMemoryBudget the memory-budget that the chunk-cache of this world shares with the chunk-caches of other worlds
+     */
+    public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData, SharedMemoryBudget chunkCacheMemoryBudget) throws IOException {
         this.worldFolder = worldFolder.toRealPath();
         this.skyLight = skyLight;
         this.ignoreMissingLightData = ignoreMissingLightData;
@@ -87,11 +100,7 @@ public MCRWorld(Path worldFolder, int skyLight, boolean ignoreMissingLightData)
                 .expireAfterWrite(1, TimeUnit.MINUTES)
                 .build(this::loadRegion);
 
-        this.chunkCache = Caffeine.newBuilder()
-                .executor(BlueMap.THREAD_POOL)
-                .maximumSize(500)
-                .expireAfterWrite(1, TimeUnit.MINUTES)
-                .build(this::loadChunk);
+        this.chunkCache = new ChunkCache(this::loadChunk, chunkCacheMemoryBudget);
 
         try {
             Path levelFile = resolveLevelFile(worldFolder);
@@ -221,6 +230,27 @@ public void cleanUpChunkCache() {
         chunkCache.cleanUp();
     }
 
+    @Override
+    public void releaseResources() {
+        chunkCache.release();
+        regionCache.invalidateAll();
+        regionCache.cleanUp();
+    }
+
+    @Override
+    public void prefetchChunks(int minX, int minZ, int maxX, int maxZ) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                chunkCache.prefetch(VECTOR_2_I_CACHE.get(x, z));
+            }
+        }
+    }
+
+    @DebugDump
+    public ChunkCache getChunkCache() {
+        return chunkCache;
+    }
+
     public Path getWorldFolder() {
         return worldFolder;
     }
@@ -0,0 +1,169 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resources;
+
+import de.bluecolored.bluemap.core.resources.resourcepack.ResourcePack;
+import de.bluecolored.bluemap.core.util.math.Color;
+import de.bluecolored.bluemap.core.world.Biome;
+import de.bluecolored.bluemap.core.world.Block;
+import de.bluecolored.bluemap.core.world.World;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputes the blended (averaged) grass-, foliage- and water-colors for an area of the world, e.g. one hires-tile.<br>
+ * For each y-layer that is requested, the biome-colors of the area plus a border are collected once into a
+ * summed-area-table, so that each blended color only needs a few array-reads instead of resolving the biomes of all
+ * surrounding blocks again.<br>
+ * <br>
+ * <i>This class is not thread-safe!</i>
+ */
+public class BiomeBlendGrid {
+
+    /** The blend-radius in x and z direction, same as {@link BlockColorCalculatorFactory.BlockColorCalculator} */
+    public static final int BLEND_RADIUS_XZ = 2;
+
+    /** The blend-radius in y direction, same as {@link BlockColorCalculatorFactory.BlockColorCalculator} */
+    public static final int BLEND_RADIUS_Y = 1;
+
+    private static final int TYPE_GRASS = 0, TYPE_FOLIAGE = 1, TYPE_WATER = 2;
+
+    private final ResourcePack resourcePack;
+    private final BlockColorCalculatorFactory.BlockColorCalculator colorCalculator;
+    private final Block<?> block;
+
+    private final int minX, minZ, maxX, maxZ;
+    private final int gridMinX, gridMinZ, gridSizeX, gridSizeZ;
+
+    private final List<Map<Integer, float[]>> layers = List.of(new HashMap<>(), new HashMap<>(), new HashMap<>());
+
+    private final Color tempColor = new Color();
+
+    /**
+     * Creates a grid that can blend colors for all blocks with x and z coordinates inside the given bounds (inclusive)
+     */
+    public BiomeBlendGrid(ResourcePack resourcePack, World world, int minX, int minZ, int maxX, int maxZ) {
+        this.resourcePack = resourcePack;
+        this.colorCalculator = resourcePack.getColorCalculatorFactory().createCalculator();
+        this.block = new Block<>(world, 0, 0, 0);
+
+        this.minX = minX;
+        this.minZ = minZ;
+        this.maxX = maxX;
+        this.maxZ = maxZ;
+
+        this.gridMinX = minX - BLEND_RADIUS_XZ;
+        this.gridMinZ = minZ - BLEND_RADIUS_XZ;
+        this.gridSizeX = maxX - minX + 1 + 2 * BLEND_RADIUS_XZ;
+        this.gridSizeZ = maxZ - minZ + 1 + 2 * BLEND_RADIUS_XZ;
+    }
+
+    public boolean contains(int x, int z) {
+        return x >= minX && x <= maxX && z >= minZ && z <= maxZ;
+    }
+
+    public Color getGrassColor(int x, int y, int z, Color target) {
+        return getBlendedColor(TYPE_GRASS, x, y, z, target);
+    }
+
+    public Color getFoliageColor(int x, int y, int z, Color target) {
+        return getBlendedColor(TYPE_FOLIAGE, x, y, z, target);
+    }
+
+    public Color getWaterColor(int x, int y, int z, Color target) {
+        return getBlendedColor(TYPE_WATER, x, y, z, target);
+    }
+
+    private Color getBlendedColor(int type, int x, int y, int z, Color target) {
+        int x0 = x - BLEND_RADIUS_XZ - gridMinX, x1 = x + BLEND_RADIUS_XZ + 1 - gridMinX;
+        int z0 = z - BLEND_RADIUS_XZ - gridMinZ, z1 = z + BLEND_RADIUS_XZ + 1 - gridMinZ;
+
+        float r = 0, g = 0, b = 0, a = 0;
+        for (int dy = -BLEND_RADIUS_Y; dy <= BLEND_RADIUS_Y; dy++) {
+            float[] table = getLayer(type, y + dy);
+            int i11 = tableIndex(x1, z1), i01 = tableIndex(x0, z1),
+                    i10 = tableIndex(x1, z0), i00 = tableIndex(x0, z0);
+
+            r += table[i11] - table[i01] - table[i10] + table[i00];
+            g += table[i11 + 1] - table[i01 + 1] - table[i10 + 1] + table[i00 + 1];
+            b += table[i11 + 2] - table[i01 + 2] - table[i10 + 2] + table[i00 + 2];
+            a += table[i11 + 3] - table[i01 + 3] - table[i10 + 3] + table[i00 + 3];
+        }
+
+        return target.set(r, g, b, a, true).flatten();
+    }
+
+    private float[] getLayer(int type, int y) {
+        Map<Integer, float[]> layer = layers.get(type);
+        float[] table = layer.get(y);
+        if (table == null) {
+            table = createLayer(type, y);
+            layer.put(y, table);
+        }
+        return table;
+    }
+
+    /**
+     * Creates the summed-area-table of the (premultiplied) biome-colors of one layer.
+     * The table has one additional row and column of zeros at the min-side and 4 floats (r, g, b, a) per entry.
+     */
+    private float[] createLayer(int type, int y) {
+        float[] table = new float[(gridSizeX + 1) * (gridSizeZ + 1) * 4];
+
+        for (int x = 0; x < gridSizeX; x++) {
+            for (int z = 0; z < gridSizeZ; z++) {
+                block.set(gridMinX + x, y, gridMinZ + z);
+                Color color = getBiomeColor(type, resourcePack.getBiome(block.getBiomeId()));
+
+                int i = tableIndex(x + 1, z + 1),
+                        iLeft = tableIndex(x, z + 1),
+                        iUp = tableIndex(x + 1, z),
+                        iDiag = tableIndex(x, z);
+
+                table[i] = color.r + table[iLeft] + table[iUp] - table[iDiag];
+                table[i + 1] = color.g + table[iLeft + 1] + table[iUp + 1] - table[iDiag + 1];
+                table[i + 2] = color.b + table[iLeft + 2] + table[iUp + 2] - table[iDiag + 2];
+                table[i + 3] = color.a + table[iLeft + 3] + table[iUp + 3] - table[iDiag + 3];
+            }
+        }
+
+        return table;
+    }
+
+    private Color getBiomeColor(int type, Biome biome) {
+        switch (type) {
+            case TYPE_GRASS: return colorCalculator.getGrassColor(biome, tempColor);
+            case TYPE_FOLIAGE: return colorCalculator.getFoliageColor(biome, tempColor);
+            default: return biome.getWaterColor();
+        }
+    }
+
+    private int tableIndex(int x, int z) {
+        return (x * (gridSizeZ + 1) + z) * 4;
+    }
+
+}
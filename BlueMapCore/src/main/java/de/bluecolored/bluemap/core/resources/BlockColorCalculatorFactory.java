@@ -30,10 +30,12 @@
 import de.bluecolored.bluemap.core.util.math.Color;
 import de.bluecolored.bluemap.core.world.Biome;
 import de.bluecolored.bluemap.core.world.BlockNeighborhood;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -53,42 +55,46 @@ public BlockColorCalculatorFactory() {
 
     public void load(Path configFile) throws IOException {
         try (BufferedReader reader = Files.newBufferedReader(configFile)) {
-            JsonReader json = new JsonReader(reader);
-            json.setLenient(true);
-
-            json.beginObject();
-            while (json.hasNext()) {
-
-                String key = json.nextName();
-                String value = json.nextString();
-
-                ColorFunction colorFunction;
-                switch (value) {
-                    case "@foliage":
-                        colorFunction = BlockColorCalculator::getFoliageAverageColor;
-                        break;
-                    case "@grass":
-                        colorFunction = BlockColorCalculator::getGrassAverageColor;
-                        break;
-                    case "@water":
-                        colorFunction = BlockColorCalculator::getWaterAverageColor;
-                        break;
-                    case "@redstone":
-                        colorFunction = BlockColorCalculator::getRedstoneColor;
-                        break;
-                    default:
-                        final Color color = new Color();
-                        color.parse(value).premultiplied();
-                        colorFunction = (calculator, block, target) -> target.set(color);
-                        break;
-                }
+            load(reader);
+        }
+    }
 
-                // don't overwrite already present values, higher priority resources are loaded first
-                blockColorMap.putIfAbsent(key, colorFunction);
+    public void load(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+
+        json.beginObject();
+        while (json.hasNext()) {
+
+            String key = json.nextName();
+            String value = json.nextString();
+
+            ColorFunction colorFunction;
+            switch (value) {
+                case "@foliage":
+                    colorFunction = BlockColorCalculator::getFoliageAverageColor;
+                    break;
+                case "@grass":
+                    colorFunction = BlockColorCalculator::getGrassAverageColor;
+                    break;
+                case "@water":
+                    colorFunction = BlockColorCalculator::getWaterAverageColor;
+                    break;
+                case "@redstone":
+                    colorFunction = BlockColorCalculator::getRedstoneColor;
+                    break;
+                default:
+                    final Color color = new Color();
+                    color.parse(value).premultiplied();
+                    colorFunction = (calculator, block, target) -> target.set(color);
+                    break;
             }
 
-            json.endObject();
+            // don't overwrite already present values, higher priority resources are loaded first
+            blockColorMap.putIfAbsent(key, colorFunction);
         }
+
+        json.endObject();
     }
 
     public void setFoliageMap(BufferedImage foliageMap) {
@@ -100,7 +106,15 @@ public void setGrassMap(BufferedImage grassMap) {
     }
 
     public BlockColorCalculator createCalculator() {
-        return new BlockColorCalculator();
+        return new BlockColorCalculator(null);
+    }
+
+    /**
+     * Creates a calculator that uses the given {@link BiomeBlendGrid} to blend the biome-colors of all blocks inside the
+     * grid, and falls back to blending them block by block for all other blocks.
+     */
+    public BlockColorCalculator createCalculator(@Nullable BiomeBlendGrid biomeBlendGrid) {
+        return new BlockColorCalculator(biomeBlendGrid);
     }
 
     @FunctionalInterface
@@ -112,6 +126,12 @@ public class BlockColorCalculator {
 
         private final Color tempColor = new Color();
 
+        @Nullable private final BiomeBlendGrid biomeBlendGrid;
+
+        private BlockColorCalculator(@Nullable BiomeBlendGrid biomeBlendGrid) {
+            this.biomeBlendGrid = biomeBlendGrid;
+        }
+
         public Color getBlockColor(BlockNeighborhood<?> block, Color target) {
             String blockId = block.getBlockState().getFormatted();
 
@@ -131,6 +151,9 @@ public Color getRedstoneColor(BlockNeighborhood<?> block, Color target) {
         }
 
         public Color getWaterAverageColor(BlockNeighborhood<?> block, Color target) {
+            if (biomeBlendGrid != null && biomeBlendGrid.contains(block.getX(), block.getZ()))
+                return biomeBlendGrid.getWaterColor(block.getX(), block.getY(), block.getZ(), target);
+
             target.set(0, 0, 0, 0, true);
 
             int x, y, z,
@@ -155,6 +178,9 @@ public Color getWaterAverageColor(BlockNeighborhood<?> block, Color target) {
         }
 
         public Color getFoliageAverageColor(BlockNeighborhood<?> block, Color target) {
+            if (biomeBlendGrid != null && biomeBlendGrid.contains(block.getX(), block.getZ()))
+                return biomeBlendGrid.getFoliageColor(block.getX(), block.getY(), block.getZ(), target);
+
             target.set(0, 0, 0, 0, true);
 
             int x, y, z,
@@ -184,6 +210,9 @@ public Color getFoliageColor(Biome biome, Color target) {
         }
 
         public Color getGrassAverageColor(BlockNeighborhood<?> block, Color target) {
+            if (biomeBlendGrid != null && biomeBlendGrid.contains(block.getX(), block.getZ()))
+                return biomeBlendGrid.getGrassColor(block.getX(), block.getY(), block.getZ(), target);
+
             target.set(0, 0, 0, 0, true);
 
             int x, y, z,
@@ -31,6 +31,7 @@
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
@@ -50,35 +51,39 @@ public BlockPropertiesConfig() {
 
     public void load(Path configFile) throws IOException {
         try (BufferedReader reader = Files.newBufferedReader(configFile)) {
-            JsonReader json = new JsonReader(reader);
-            json.setLenient(true);
+            load(reader);
+        }
+    }
+
+    public void load(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+
+        json.beginObject();
+        while (json.hasNext()) {
+            String formatted = json.nextName();
+            BlockState bsKey = BlockState.fromString(formatted);
+            BlockProperties.Builder bsValueBuilder = BlockProperties.builder();
 
             json.beginObject();
             while (json.hasNext()) {
-                String formatted = json.nextName();
-                BlockState bsKey = BlockState.fromString(formatted);
-                BlockProperties.Builder bsValueBuilder = BlockProperties.builder();
-
-                json.beginObject();
-                while (json.hasNext()) {
-                    switch (json.nextName()) {
-                        case "culling": bsValueBuilder.culling(json.nextBoolean()); break;
-                        case "occluding": bsValueBuilder.occluding(json.nextBoolean()); break;
-                        case "alwaysWaterlogged": bsValueBuilder.alwaysWaterlogged(json.nextBoolean()); break;
-                        case "randomOffset": bsValueBuilder.randomOffset(json.nextBoolean()); break;
-                        case "cullingIdentical": bsValueBuilder.cullingIdentical(json.nextBoolean()); break;
-                        default: break;
-                    }
+                switch (json.nextName()) {
+                    case "culling": bsValueBuilder.culling(json.nextBoolean()); break;
+                    case "occluding": bsValueBuilder.occluding(json.nextBoolean()); break;
+                    case "alwaysWaterlogged": bsValueBuilder.alwaysWaterlogged(json.nextBoolean()); break;
+                    case "randomOffset": bsValueBuilder.randomOffset(json.nextBoolean()); break;
+                    case "cullingIdentical": bsValueBuilder.cullingIdentical(json.nextBoolean()); break;
+                    default: break;
                 }
-                json.endObject();
-
-                BlockStateMapping<BlockProperties> mapping = new BlockStateMapping<>(bsKey, bsValueBuilder.build());
-
-                // don't overwrite already present values, higher priority resources are loaded first
-                mappings.computeIfAbsent(bsKey.getFormatted(), k -> new LinkedList<>()).add(0, mapping);
             }
             json.endObject();
+
+            BlockStateMapping<BlockProperties> mapping = new BlockStateMapping<>(bsKey, bsValueBuilder.build());
+
+            // don't overwrite already present values, higher priority resources are loaded first
+            mappings.computeIfAbsent(bsKey.getFormatted(), k -> new LinkedList<>()).add(0, mapping);
         }
+        json.endObject();
     }
 
     public BlockProperties getBlockProperties(BlockState from){
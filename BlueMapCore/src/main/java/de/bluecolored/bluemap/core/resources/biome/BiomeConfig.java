@@ -32,6 +32,7 @@
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.HashMap;
@@ -48,39 +49,47 @@ public BiomeConfig() {
 
     public void load(Path configFile) throws IOException {
         try (BufferedReader reader = Files.newBufferedReader(configFile)) {
-            JsonReader json = new JsonReader(reader);
-            json.setLenient(true);
+            load(reader);
+        }
+    }
 
-            json.beginObject();
+    public void load(Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
 
-            while (json.hasNext()) {
-                String formatted = json.nextName();
-                BiomeConfigEntry entry = ResourcesGson.INSTANCE.fromJson(json, BiomeConfigEntry.class);
-                Biome biome = entry.createBiome(formatted);
+        json.beginObject();
 
-                // don't overwrite already present values, higher priority resources are loaded first
-                biomes.putIfAbsent(biome.getFormatted(), biome);
-            }
+        while (json.hasNext()) {
+            String formatted = json.nextName();
+            BiomeConfigEntry entry = ResourcesGson.INSTANCE.fromJson(json, BiomeConfigEntry.class);
+            Biome biome = entry.createBiome(formatted);
 
-            json.endObject();
+            // don't overwrite already present values, higher priority resources are loaded first
+            biomes.putIfAbsent(biome.getFormatted(), biome);
         }
+
+        json.endObject();
     }
 
     public void loadDatapackBiome(String namespace, Path biomeFile) throws IOException {
         try (BufferedReader reader = Files.newBufferedReader(biomeFile)) {
-            JsonReader json = new JsonReader(reader);
-            json.setLenient(true);
-            DpBiome dpBiome = ResourcesGson.INSTANCE.fromJson(json, DpBiome.class);
+            loadDatapackBiome(namespace, biomeFile.getFileName().toString(), reader);
+        }
+    }
 
-            String formatted = namespace + ":" + biomeFile.getFileName().toString();
-            int fileEndingDot = formatted.lastIndexOf('.');
-            if (fileEndingDot != -1) formatted = formatted.substring(0, fileEndingDot);
+    public void loadDatapackBiome(String namespace, String fileName, Reader reader) throws IOException {
+        JsonReader json = new JsonReader(reader);
+        json.setLenient(true);
+        DpBiome dpBiome = ResourcesGson.INSTANCE.fromJson(json, DpBiome.class);
 
-            Biome biome = dpBiome.createBiome(formatted);
+        String formatted = namespace + ":" + fileName;
+        int fileEndingDot = formatted.lastIndexOf('.');
+        if (fileEndingDot != -1) formatted = formatted.substring(0, fileEndingDot);
 
-            // don't overwrite already present values, higher priority resources are loaded first
-            biomes.putIfAbsent(biome.getFormatted(), biome);
-        }
+        Biome biome = dpBiome.createBiome(formatted);
+
+        // don't overwrite already present values, higher priority resources are loaded first
+        biomes.putIfAbsent(biome.getFormatted(), biome);
     }
 
     public Biome getBiome(String formatted) {
@@ -48,8 +48,10 @@
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.StringReader;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
@@ -184,17 +186,44 @@ private BlockProperties loadBlockProperties(de.bluecolored.bluemap.core.world.Bl
     }
 
     public synchronized void loadResources(Iterable<Path> roots) throws IOException {
-        Logger.global.logInfo("Loading resources...");
+        loadResources(roots, null);
+    }
 
-        for (Path root : roots) {
-            Logger.global.logDebug("Loading resources from: " + root + " ...");
-            loadResourcePath(root, this::loadResources);
+    /**
+     * Loads all resources from the given roots.<br>
+     * If a cacheFile is provided, the resources are read from that cache if it is still valid for the given roots,
+     * without opening the roots at all. Otherwise they are loaded from the roots and the cache is (re)written.
+     */
+    public synchronized void loadResources(Iterable<Path> roots, @Nullable Path cacheFile) throws IOException {
+        String cacheHash = null;
+        ResourcePackCache cache = null;
+        if (cacheFile != null) {
+            cacheHash = ResourcePackCache.calculateHash(roots);
+            cache = ResourcePackCache.read(cacheFile, cacheHash);
         }
 
-        Logger.global.logInfo("Loading textures...");
-        for (Path root : roots) {
-            Logger.global.logDebug("Loading textures from: " + root + " ...");
-            loadResourcePath(root, this::loadTextures);
+        if (cache != null) {
+            Logger.global.logInfo("Loading resources from cache...");
+            loadCachedResources(cache);
+        } else {
+            ResourcePackCache newCache = cacheFile != null ? new ResourcePackCache(cacheHash) : null;
+
+            Logger.global.logInfo("Loading resources...");
+            for (Path root : roots) {
+                Logger.global.logDebug("Loading resources from: " + root + " ...");
+                loadResourcePath(root, r -> loadResources(r, newCache));
+            }
+
+            Logger.global.logInfo("Loading textures...");
+            for (Path root : roots) {
+                Logger.global.logDebug("Loading textures from: " + root + " ...");
+                loadResourcePath(root, this::loadTextures);
+            }
+
+            if (newCache != null) {
+                newCache.setTextures(textures.values().toArray(Texture[]::new));
+                newCache.write(cacheFile);
+            }
         }
 
         Logger.global.logInfo("Baking resources...");
@@ -236,7 +265,7 @@ private void loadResourcePath(Path root, PathLoader resourceLoader) throws IOExc
         resourceLoader.load(root);
     }
 
-    private void loadResources(Path root) throws IOException {
+    private void loadResources(Path root, @Nullable ResourcePackCache cache) throws IOException {
         try {
             // do those in parallel
             CompletableFuture.allOf(
@@ -249,10 +278,11 @@ private void loadResources(Path root) throws IOException {
                                 .flatMap(ResourcePack::walk)
                                 .filter(path -> path.getFileName().toString().endsWith(".json"))
                                 .filter(Files::isRegularFile)
-                                .forEach(file -> loadResource(root, file, () -> {
-                                    try (BufferedReader reader = Files.newBufferedReader(file)) {
-                                        return ResourcesGson.INSTANCE.fromJson(reader, BlockState.class);
-                                    }
+                                .forEach(file -> loadResource(root, file, resourcePath -> {
+                                    String json = Files.readString(file);
+                                    BlockState blockState = ResourcesGson.INSTANCE.fromJson(json, BlockState.class);
+                                    if (cache != null && blockState != null) cache.addBlockState(resourcePath.getFormatted(), json);
+                                    return blockState;
                                 }, blockStates));
                     }, BlueMap.THREAD_POOL),
 
@@ -265,10 +295,11 @@ private void loadResources(Path root) throws IOException {
                                 .flatMap(ResourcePack::walk)
                                 .filter(path -> path.getFileName().toString().endsWith(".json"))
                                 .filter(Files::isRegularFile)
-                                .forEach(file -> loadResource(root, file, () -> {
-                                    try (BufferedReader reader = Files.newBufferedReader(file)) {
-                                        return ResourcesGson.INSTANCE.fromJson(reader, BlockModel.class);
-                                    }
+                                .forEach(file -> loadResource(root, file, resourcePath -> {
+                                    String json = Files.readString(file);
+                                    BlockModel blockModel = ResourcesGson.INSTANCE.fromJson(json, BlockModel.class);
+                                    if (cache != null && blockModel != null) cache.addBlockModel(resourcePath.getFormatted(), json);
+                                    return blockModel;
                                 }, blockModels));
                     }, BlueMap.THREAD_POOL),
 
@@ -277,10 +308,11 @@ private void loadResources(Path root) throws IOException {
                         walk(root.resolve("assets").resolve("minecraft").resolve("textures").resolve("colormap"))
                                 .filter(path -> path.getFileName().toString().endsWith(".png"))
                                 .filter(Files::isRegularFile)
-                                .forEach(file -> loadResource(root, file, () -> {
-                                    try (InputStream in = Files.newInputStream(file)) {
-                                        return ImageIO.read(in);
-                                    }
+                                .forEach(file -> loadResource(root, file, resourcePath -> {
+                                    byte[] data = Files.readAllBytes(file);
+                                    BufferedImage colormap = ImageIO.read(new ByteArrayInputStream(data));
+                                    if (cache != null && colormap != null) cache.addColormap(resourcePath.getFormatted(), data);
+                                    return colormap;
                                 }, colormaps));
                     }, BlueMap.THREAD_POOL),
 
@@ -291,7 +323,9 @@ private void loadResources(Path root) throws IOException {
                                 .filter(Files::isRegularFile)
                                 .forEach(file -> {
                                     try {
-                                        colorCalculatorFactory.load(file);
+                                        String json = Files.readString(file);
+                                        colorCalculatorFactory.load(new StringReader(json));
+                                        if (cache != null) cache.addBlockColorConfig(json);
                                     } catch (Exception ex) {
                                         Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
                                     }
@@ -305,7 +339,9 @@ private void loadResources(Path root) throws IOException {
                                 .filter(Files::isRegularFile)
                                 .forEach(file -> {
                                     try {
-                                        biomeConfig.load(file);
+                                        String json = Files.readString(file);
+                                        biomeConfig.load(new StringReader(json));
+                                        if (cache != null) cache.addBiomeConfig(json);
                                     } catch (Exception ex) {
                                         Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
                                     }
@@ -318,7 +354,10 @@ private void loadResources(Path root) throws IOException {
                                         .filter(Files::isRegularFile)
                                         .forEach(file -> {
                                             try {
-                                                biomeConfig.loadDatapackBiome(namespace.getFileName().toString(), file);
+                                                String json = Files.readString(file);
+                                                String ns = namespace.getFileName().toString(), fileName = file.getFileName().toString();
+                                                biomeConfig.loadDatapackBiome(ns, fileName, new StringReader(json));
+                                                if (cache != null) cache.addDatapackBiome(ns, fileName, json);
                                             } catch (Exception ex) {
                                                 Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
                                             }
@@ -333,7 +372,9 @@ private void loadResources(Path root) throws IOException {
                                 .filter(Files::isRegularFile)
                                 .forEach(file -> {
                                     try {
-                                        blockPropertiesConfig.load(file);
+                                        String json = Files.readString(file);
+                                        blockPropertiesConfig.load(new StringReader(json));
+                                        if (cache != null) cache.addBlockPropertiesConfig(json);
                                     } catch (Exception ex) {
                                         Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
                                     }
@@ -369,8 +410,7 @@ private void loadTextures(Path root) throws IOException {
                     .flatMap(ResourcePack::walk)
                     .filter(path -> path.getFileName().toString().endsWith(".png"))
                     .filter(Files::isRegularFile)
-                    .forEach(file -> loadResource(root, file, () -> {
-                        ResourcePath<Texture> resourcePath = new ResourcePath<>(root.relativize(file));
+                    .forEach(file -> loadResource(root, file, resourcePath -> {
                         if (!usedTextures.contains(resourcePath)) return null; // don't load unused textures
 
                         try (InputStream in = Files.newInputStream(file)) {
@@ -386,6 +426,42 @@ private void loadTextures(Path root) throws IOException {
         }
     }
 
+    private void loadCachedResources(ResourcePackCache cache) throws IOException {
+        try {
+            // do those in parallel
+            CompletableFuture.allOf(
+                    CompletableFuture.runAsync(() -> cache.getBlockStates().forEach((path, json) ->
+                            loadResource(new ResourcePath<>(path), path, resourcePath ->
+                                    ResourcesGson.INSTANCE.fromJson(json, BlockState.class), blockStates)
+                    ), BlueMap.THREAD_POOL),
+                    CompletableFuture.runAsync(() -> cache.getBlockModels().forEach((path, json) ->
+                            loadResource(new ResourcePath<>(path), path, resourcePath ->
+                                    ResourcesGson.INSTANCE.fromJson(json, BlockModel.class), blockModels)
+                    ), BlueMap.THREAD_POOL)
+            ).join();
+        } catch (RuntimeException ex) {
+            Throwable cause = ex.getCause();
+            if (cause != null) throw new IOException(cause);
+            throw new IOException(ex);
+        }
+
+        cache.getColormaps().forEach((path, data) ->
+                loadResource(new ResourcePath<>(path), path, resourcePath ->
+                        ImageIO.read(new ByteArrayInputStream(data)), colormaps));
+
+        for (String json : cache.getBlockColorConfigs()) colorCalculatorFactory.load(new StringReader(json));
+        for (String json : cache.getBiomeConfigs()) biomeConfig.load(new StringReader(json));
+        for (ResourcePackCache.DatapackBiome biome : cache.getDatapackBiomes())
+            biomeConfig.loadDatapackBiome(biome.getNamespace(), biome.getFileName(), new StringReader(biome.getJson()));
+        for (String json : cache.getBlockPropertiesConfigs()) blockPropertiesConfig.load(new StringReader(json));
+
+        for (Texture texture : cache.getTextures()) {
+            ResourcePath<Texture> resourcePath = texture.getResourcePath();
+            resourcePath.setResource(texture);
+            textures.put(resourcePath, texture);
+        }
+    }
+
     private void bake() throws IOException {
 
         // fill path maps
@@ -419,17 +495,28 @@ private void bake() throws IOException {
     }
 
     private <T> void loadResource(Path root, Path file, Loader<T> loader, Map<ResourcePath<T>, T> resultMap) {
+        ResourcePath<T> resourcePath;
+        try {
+            resourcePath = new ResourcePath<>(root.relativize(file));
+        } catch (IllegalArgumentException ex) {
+            Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
+            return;
+        }
+
+        loadResource(resourcePath, file.toString(), loader, resultMap);
+    }
+
+    private <T> void loadResource(ResourcePath<T> resourcePath, String source, Loader<T> loader, Map<ResourcePath<T>, T> resultMap) {
         try {
-            ResourcePath<T> resourcePath = new ResourcePath<>(root.relativize(file));
             if (resultMap.containsKey(resourcePath)) return; // don't load already present resources
 
-            T resource = loader.load();
+            T resource = loader.load(resourcePath);
             if (resource == null) return; // don't load missing resources
 
             resourcePath.setResource(resource);
             resultMap.put(resourcePath, resource);
         } catch (Exception ex) {
-            Logger.global.logDebug("Failed to parse resource-file '" + file + "': " + ex);
+            Logger.global.logDebug("Failed to parse resource-file '" + source + "': " + ex);
         }
     }
 
@@ -453,7 +540,7 @@ private static Stream<Path> walk(Path root) {
     }
 
     private interface Loader<T> {
-        T load() throws IOException;
+        T load(ResourcePath<T> resourcePath) throws IOException;
     }
 
     private interface PathLoader {
@@ -0,0 +1,273 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resources.resourcepack;
+
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.resources.adapter.ResourcesGson;
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+import de.bluecolored.bluemap.core.util.FileHelper;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A persistent cache for the resources of a {@link ResourcePack}.<br>
+ * It holds the decoded textures and the raw content of all other resources (blockstates, models, colormaps and the
+ * block-color, biome and block-property configs) that have been loaded from the resource-roots. On a cache-hit the
+ * resource-roots (and all the mod-jars in them) don't need to be opened and searched at all, only the cached content
+ * is parsed and baked again.<br>
+ * The cache is keyed by a hash over the metadata (path, size and last-modified time) of all resource-roots and the
+ * BlueMap-version, so any change to the installed resources invalidates it.
+ */
+class ResourcePackCache {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private int version;
+    private String hash;
+
+    // the raw json (or base64 encoded png) of all loaded resources by their resource-path
+    private Map<String, String> blockStates;
+    private Map<String, String> blockModels;
+    private Map<String, String> colormaps;
+
+    // the raw json of all loaded configs in the order they have been loaded
+    private List<String> blockColorConfigs;
+    private List<String> biomeConfigs;
+    private List<DatapackBiome> datapackBiomes;
+    private List<String> blockPropertiesConfigs;
+
+    private Texture[] textures;
+
+    @SuppressWarnings("unused")
+    private ResourcePackCache() {}
+
+    /**
+     * Creates an empty cache, that collects the resources while they are loaded
+     */
+    ResourcePackCache(String hash) {
+        this.version = FORMAT_VERSION;
+        this.hash = hash;
+        this.blockStates = new ConcurrentHashMap<>();
+        this.blockModels = new ConcurrentHashMap<>();
+        this.colormaps = new ConcurrentHashMap<>();
+        this.blockColorConfigs = Collections.synchronizedList(new ArrayList<>());
+        this.biomeConfigs = Collections.synchronizedList(new ArrayList<>());
+        this.datapackBiomes = Collections.synchronizedList(new ArrayList<>());
+        this.blockPropertiesConfigs = Collections.synchronizedList(new ArrayList<>());
+        this.textures = new Texture[0];
+    }
+
+    public Map<String, String> getBlockStates() {
+        return blockStates;
+    }
+
+    public Map<String, String> getBlockModels() {
+        return blockModels;
+    }
+
+    public Map<String, byte[]> getColormaps() {
+        Map<String, byte[]> decoded = new HashMap<>();
+        colormaps.forEach((path, data) -> decoded.put(path, Base64.getDecoder().decode(data)));
+        return decoded;
+    }
+
+    public List<String> getBlockColorConfigs() {
+        return blockColorConfigs;
+    }
+
+    public List<String> getBiomeConfigs() {
+        return biomeConfigs;
+    }
+
+    public List<DatapackBiome> getDatapackBiomes() {
+        return datapackBiomes;
+    }
+
+    public List<String> getBlockPropertiesConfigs() {
+        return blockPropertiesConfigs;
+    }
+
+    public Texture[] getTextures() {
+        return textures;
+    }
+
+    void addBlockState(String path, String json) {
+        blockStates.put(path, json);
+    }
+
+    void addBlockModel(String path, String json) {
+        blockModels.put(path, json);
+    }
+
+    void addColormap(String path, byte[] data) {
+        colormaps.put(path, Base64.getEncoder().encodeToString(data));
+    }
+
+    void addBlockColorConfig(String json) {
+        blockColorConfigs.add(json);
+    }
+
+    void addBiomeConfig(String json) {
+        biomeConfigs.add(json);
+    }
+
+    void addDatapackBiome(String namespace, String fileName, String json) {
+        datapackBiomes.add(new DatapackBiome(namespace, fileName, json));
+    }
+
+    void addBlockPropertiesConfig(String json) {
+        blockPropertiesConfigs.add(json);
+    }
+
+    void setTextures(Texture[] textures) {
+        this.textures = textures;
+    }
+
+    /**
+     * Reads the cache from the given file and returns it, if it exists and was created for the given hash.
+     * Returns <code>null</code> otherwise.
+     */
+    @Nullable
+    public static ResourcePackCache read(Path file, String hash) {
+        if (!Files.isRegularFile(file)) return null;
+
+        try (Reader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            ResourcePackCache cache = ResourcesGson.INSTANCE.fromJson(reader, ResourcePackCache.class);
+            if (cache == null || cache.version != FORMAT_VERSION || !hash.equals(cache.hash) || !cache.isComplete())
+                return null;
+            return cache;
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logDebug("Failed to read resource-cache '" + file + "': " + ex);
+            return null;
+        }
+    }
+
+    private boolean isComplete() {
+        return blockStates != null && blockModels != null && colormaps != null &&
+                blockColorConfigs != null && biomeConfigs != null && datapackBiomes != null &&
+                blockPropertiesConfigs != null && textures != null;
+    }
+
+    public void write(Path file) {
+        try (Writer writer = new OutputStreamWriter(
+                new GZIPOutputStream(FileHelper.createFilepartOutputStream(file)), StandardCharsets.UTF_8)) {
+            ResourcesGson.INSTANCE.toJson(this, writer);
+        } catch (IOException | RuntimeException ex) {
+            Logger.global.logWarning("Failed to write resource-cache '" + file + "': " + ex);
+        }
+    }
+
+    /**
+     * Calculates a hash over the metadata of all files in the given resource-roots.
+     * Files are not read, so this stays cheap even for large mod-packs.
+     */
+    public static String calculateHash(Iterable<Path> roots) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex);
+        }
+
+        update(digest, FORMAT_VERSION + ":" + BlueMap.VERSION + ":" + BlueMap.GIT_HASH);
+        for (Path root : roots) {
+            update(digest, "root:" + root.toAbsolutePath().normalize());
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> files = Files.walk(root)) {
+                    Iterable<Path> sortedFiles = files
+                            .filter(Files::isRegularFile)
+                            .sorted(Comparator.comparing(Path::toString))
+                            ::iterator;
+                    for (Path file : sortedFiles) {
+                        update(digest, root.relativize(file).toString());
+                        updateAttributes(digest, file);
+                    }
+                }
+            } else if (Files.exists(root)) {
+                updateAttributes(digest, root);
+            }
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private static void updateAttributes(MessageDigest digest, Path file) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        update(digest, attributes.size() + ":" + attributes.lastModifiedTime().toMillis());
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    static class DatapackBiome {
+
+        private String namespace;
+        private String fileName;
+        private String json;
+
+        @SuppressWarnings("unused")
+        private DatapackBiome() {}
+
+        private DatapackBiome(String namespace, String fileName, String json) {
+            this.namespace = namespace;
+            this.fileName = fileName;
+            this.json = json;
+        }
+
+        public String getNamespace() {
+            return namespace;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+    }
+
+}
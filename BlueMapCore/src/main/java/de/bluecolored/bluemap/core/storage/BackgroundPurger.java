@@ -0,0 +1,123 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Physically deletes the data of purged maps in the background, after the storage already detached it from the map.<br>
+ * All purgers share a small pool of daemon-threads, and each purger limits the number of delete-operations per second
+ * so the deletion doesn't starve rendering and the webserver of I/O.
+ */
+@DebugDump
+public class BackgroundPurger {
+
+    private static final int THREAD_COUNT = 2;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREAD_COUNT, runnable -> {
+        Thread thread = new Thread(runnable, "BlueMap-Purge-" + THREAD_COUNTER.getAndIncrement());
+        thread.setContextClassLoader(BlueMap.class.getClassLoader());
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final long nanosPerOperation;
+    private long nextOperationTime;
+
+    private final AtomicInteger runningJobs;
+
+    /**
+     * @param operationsPerSecond the maximum number of delete-operations per second
+     */
+    public BackgroundPurger(int operationsPerSecond) {
+        this.nanosPerOperation = TimeUnit.SECONDS.toNanos(1) / Math.max(operationsPerSecond, 1);
+        this.nextOperationTime = System.nanoTime();
+        this.runningJobs = new AtomicInteger();
+    }
+
+    /**
+     * Runs the job in the background until it reports that it is done.<br>
+     * The returned future completes when the job is finished, even if it failed.
+     */
+    public CompletableFuture<Void> submit(String name, Job job) {
+        runningJobs.incrementAndGet();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                while (job.step()) {
+                    if (Thread.currentThread().isInterrupted()) return;
+                }
+            } catch (IOException | RuntimeException ex) {
+                Logger.global.logError("Failed to purge " + name + "! (The deletion will be retried on the next start)", ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                runningJobs.decrementAndGet();
+            }
+        }, EXECUTOR);
+    }
+
+    /**
+     * Blocks until the given number of delete-operations can be done without exceeding the rate-limit
+     */
+    public void acquire(int operations) throws InterruptedException {
+        long waitNanos;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextOperationTime - now < 0) nextOperationTime = now;
+            waitNanos = nextOperationTime - now;
+            nextOperationTime += operations * nanosPerOperation;
+        }
+
+        if (waitNanos > 0) TimeUnit.NANOSECONDS.sleep(waitNanos);
+    }
+
+    @DebugDump
+    public int getRunningJobCount() {
+        return runningJobs.get();
+    }
+
+    @FunctionalInterface
+    public interface Job {
+
+        /**
+         * Deletes the next part of the purged data.<br>
+         * Implementations call {@link BackgroundPurger#acquire(int)} before each delete-operation.
+         * @return true if there is more to delete, false if the job is done
+         */
+        boolean step() throws IOException, InterruptedException;
+
+    }
+
+}
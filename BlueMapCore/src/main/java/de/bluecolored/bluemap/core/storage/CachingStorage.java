@@ -0,0 +1,493 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.util.WrappedOutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A {@link Storage} that wraps another storage and keeps the (still compressed) data and the {@link TileInfo} of
+ * recently read tiles in memory, up to a maximum total size.<br>
+ * Tiles written, deleted or purged through this storage are invalidated immediately. Changes made by other processes
+ * to the same underlying storage are only noticed after the cached tiles expire.
+ */
+@DebugDump
+public class CachingStorage extends Storage {
+
+    private static final int ENTRY_OVERHEAD = 96; // approximate memory-size of a cache-entry without its data
+    private static final int VERSION_STRIPES = 64;
+
+    private final Storage storage;
+    private final long maxCacheSize;
+
+    private final Cache<TileKey, CachedTile> tileCache;
+
+    // incremented whenever a tile is changed, to detect if a tile was changed while it was read from the storage
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+
+    // an entry might only contain the info or the data of a tile, so the hits are counted here and not by the cache
+    private final LongAdder hitCount = new LongAdder(), missCount = new LongAdder();
+
+    /**
+     * @param maxCacheSize the maximum total size of all cached tiles in bytes
+     * @param expiration the time in milliseconds after which a cached tile is read from the storage again
+     */
+    public CachingStorage(Storage storage, long maxCacheSize, long expiration) {
+        this.storage = storage;
+        this.maxCacheSize = maxCacheSize;
+
+        this.tileCache = Caffeine.newBuilder()
+                .executor(BlueMap.THREAD_POOL)
+                .maximumWeight(maxCacheSize)
+                .weigher((TileKey key, CachedTile tile) -> tile.getWeight())
+                .expireAfterWrite(expiration, TimeUnit.MILLISECONDS)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public void initialize() throws IOException {
+        storage.initialize();
+    }
+
+    @Override
+    public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, lod, tile);
+        invalidate(key);
+
+        // invalidate again when the tile is written, in case it has been read in the meantime
+        OutputStream out = storage.writeMapTile(mapId, lod, tile);
+        return new WrappedOutputStream(out, () -> invalidate(key));
+    }
+
+    @Override
+    public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, lod, tile);
+
+        CachedTile cached = tileCache.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.exists()) return hit(Optional.empty());
+            if (cached.hasData()) return hit(Optional.of(cached.createInputStream()));
+        }
+
+        missCount.increment();
+        long version = getVersion(key);
+        Optional<CompressedInputStream> optData = storage.readMapTile(mapId, lod, tile);
+        if (optData.isEmpty()) {
+            cache(key, version, CachedTile.ABSENT);
+            return Optional.empty();
+        }
+
+        CachedTile read;
+        try (CompressedInputStream in = optData.get()) {
+            read = CachedTile.withData(cached, in);
+        }
+
+        cache(key, version, read);
+        return Optional.of(read.createInputStream());
+    }
+
+    @Override
+    public Optional<TileInfo> readMapTileInfo(String mapId, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, lod, tile);
+
+        CachedTile cached = tileCache.getIfPresent(key);
+        if (cached != null) {
+            if (!cached.exists()) return hit(Optional.empty());
+            if (cached.hasInfo()) return hit(Optional.of(createTileInfo(key, cached)));
+        }
+
+        missCount.increment();
+        long version = getVersion(key);
+        Optional<TileInfo> optTileInfo = storage.readMapTileInfo(mapId, lod, tile);
+        if (optTileInfo.isEmpty()) {
+            cache(key, version, CachedTile.ABSENT);
+            return Optional.empty();
+        }
+
+        CachedTile read = CachedTile.withInfo(cached, optTileInfo.get());
+        cache(key, version, read);
+        return Optional.of(createTileInfo(key, read));
+    }
+
+    @Override
+    public void readMapTiles(String mapId, int lod, Collection<Vector2i> tiles, TileConsumer consumer) throws IOException {
+        List<Vector2i> missing = new ArrayList<>();
+        Map<Vector2i, CachedTile> cachedTiles = new HashMap<>();
+        Map<Vector2i, Long> versions = new HashMap<>();
+
+        for (Vector2i tile : tiles) {
+            TileKey key = new TileKey(mapId, lod, tile);
+            CachedTile cached = tileCache.getIfPresent(key);
+            if (cached != null) {
+                if (!cached.exists()) {
+                    hitCount.increment();
+                    continue;
+                }
+                if (cached.hasData()) {
+                    hitCount.increment();
+                    try (CompressedInputStream in = cached.createInputStream()) {
+                        consumer.accept(tile, in);
+                    }
+                    continue;
+                }
+                cachedTiles.put(tile, cached);
+            }
+
+            missCount.increment();
+            versions.put(tile, getVersion(key));
+            missing.add(tile);
+        }
+
+        if (missing.isEmpty()) return;
+
+        Set<Vector2i> found = new HashSet<>();
+        storage.readMapTiles(mapId, lod, missing, (tile, data) -> {
+            CachedTile read = CachedTile.withData(cachedTiles.get(tile), data);
+            cache(new TileKey(mapId, lod, tile), versions.get(tile), read);
+            found.add(tile);
+
+            try (CompressedInputStream in = read.createInputStream()) {
+                consumer.accept(tile, in);
+            }
+        });
+
+        for (Vector2i tile : missing) {
+            if (!found.contains(tile)) cache(new TileKey(mapId, lod, tile), versions.get(tile), CachedTile.ABSENT);
+        }
+    }
+
+    @Override
+    public Map<Vector2i, TileInfo> readMapTileInfos(String mapId, int lod, Collection<Vector2i> tiles) throws IOException {
+        Map<Vector2i, TileInfo> tileInfos = new LinkedHashMap<>();
+        List<Vector2i> missing = new ArrayList<>();
+        Map<Vector2i, CachedTile> cachedTiles = new HashMap<>();
+        Map<Vector2i, Long> versions = new HashMap<>();
+
+        for (Vector2i tile : tiles) {
+            TileKey key = new TileKey(mapId, lod, tile);
+            CachedTile cached = tileCache.getIfPresent(key);
+            if (cached != null) {
+                if (!cached.exists()) {
+                    hitCount.increment();
+                    continue;
+                }
+                if (cached.hasInfo()) {
+                    hitCount.increment();
+                    tileInfos.put(tile, createTileInfo(key, cached));
+                    continue;
+                }
+                cachedTiles.put(tile, cached);
+            }
+
+            missCount.increment();
+            versions.put(tile, getVersion(key));
+            missing.add(tile);
+        }
+
+        if (missing.isEmpty()) return tileInfos;
+
+        Map<Vector2i, TileInfo> read = storage.readMapTileInfos(mapId, lod, missing);
+        for (Vector2i tile : missing) {
+            TileKey key = new TileKey(mapId, lod, tile);
+            TileInfo tileInfo = read.get(tile);
+            if (tileInfo == null) {
+                cache(key, versions.get(tile), CachedTile.ABSENT);
+                continue;
+            }
+
+            CachedTile cached = CachedTile.withInfo(cachedTiles.get(tile), tileInfo);
+            cache(key, versions.get(tile), cached);
+            tileInfos.put(tile, createTileInfo(key, cached));
+        }
+
+        return tileInfos;
+    }
+
+    @Override
+    public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+        TileKey key = new TileKey(mapId, lod, tile);
+        try {
+            storage.deleteMapTile(mapId, lod, tile);
+        } finally {
+            invalidate(key);
+        }
+    }
+
+    @Override
+    public OutputStream writeMeta(String mapId, String name) throws IOException {
+        return storage.writeMeta(mapId, name);
+    }
+
+    @Override
+    public Optional<InputStream> readMeta(String mapId, String name) throws IOException {
+        return storage.readMeta(mapId, name);
+    }
+
+    @Override
+    public Optional<MetaInfo> readMetaInfo(String mapId, String name) throws IOException {
+        return storage.readMetaInfo(mapId, name);
+    }
+
+    @Override
+    public void deleteMeta(String mapId, String name) throws IOException {
+        storage.deleteMeta(mapId, name);
+    }
+
+    @Override
+    public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
+        try {
+            storage.purgeMap(mapId, onProgress);
+        } finally {
+            for (int i = 0; i < VERSION_STRIPES; i++) versions.incrementAndGet(i);
+            tileCache.asMap().keySet().removeIf(key -> key.mapId.equals(mapId));
+        }
+    }
+
+    @Override
+    public Collection<String> collectMapIds() throws IOException {
+        return storage.collectMapIds();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return storage.isClosed();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tileCache.invalidateAll();
+        storage.close();
+    }
+
+    /**
+     * The storage this storage is caching the tiles of
+     */
+    public Storage getStorage() {
+        return storage;
+    }
+
+    @DebugDump
+    public long getMaxCacheSize() {
+        return maxCacheSize;
+    }
+
+    @DebugDump
+    public long getCacheSize() {
+        return tileCache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @DebugDump
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    @DebugDump
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    @DebugDump
+    public double getHitRate() {
+        long hits = hitCount.sum();
+        long requests = hits + missCount.sum();
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @DebugDump
+    public long getEvictionCount() {
+        return tileCache.stats().evictionCount();
+    }
+
+    private <T> T hit(T result) {
+        hitCount.increment();
+        return result;
+    }
+
+    private void invalidate(TileKey key) {
+        versions.incrementAndGet(key.stripe());
+        tileCache.invalidate(key);
+    }
+
+    private long getVersion(TileKey key) {
+        return versions.get(key.stripe());
+    }
+
+    /**
+     * Caches the tile, but only if no tile that might be this one has been changed since the version was taken
+     */
+    private void cache(TileKey key, long version, CachedTile tile) {
+        tileCache.asMap().compute(key, (k, existing) -> {
+            if (versions.get(key.stripe()) != version) return existing;
+            return tile;
+        });
+    }
+
+    private TileInfo createTileInfo(TileKey key, CachedTile cached) {
+        return new TileInfo() {
+            @Override
+            public CompressedInputStream readMapTile() throws IOException {
+                // the data cached together with the info belongs to the same version of the tile
+                if (cached.hasData()) return cached.createInputStream();
+
+                return CachingStorage.this.readMapTile(key.mapId, key.lod, key.tile)
+                        .orElseThrow(() -> new IOException("Tile no longer present!"));
+            }
+
+            @Override
+            public Compression getCompression() {
+                return cached.compression;
+            }
+
+            @Override
+            public long getSize() {
+                return cached.size;
+            }
+
+            @Override
+            public long getLastModified() {
+                return cached.lastModified;
+            }
+        };
+    }
+
+    private static class TileKey {
+
+        private final String mapId;
+        private final int lod;
+        private final Vector2i tile;
+        private final int hash;
+
+        private TileKey(String mapId, int lod, Vector2i tile) {
+            this.mapId = mapId;
+            this.lod = lod;
+            this.tile = tile;
+            this.hash = 31 * (31 * mapId.hashCode() + lod) + tile.hashCode();
+        }
+
+        private int stripe() {
+            return Math.floorMod(hash, VERSION_STRIPES);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            TileKey tileKey = (TileKey) o;
+            return lod == tileKey.lod && tile.equals(tileKey.tile) && mapId.equals(tileKey.mapId);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+    /**
+     * The cached state of a tile, the info and the data are cached independently as they are read.<br>
+     * Since the tile might have been changed (by another process) in between, the info and the data are only kept
+     * together if their sizes match. Otherwise a {@link TileInfo} could describe a different version of the tile
+     * than the data that is read with it.
+     */
+    private static class CachedTile {
+
+        private static final CachedTile ABSENT = new CachedTile(false, null, -1, -1, null, null);
+
+        private final boolean exists;
+        private final Compression compression;
+        private final long size, lastModified;
+        @Nullable private final byte[] data;
+        @Nullable private final Compression.DictionaryLookup dictionaries;
+
+        private CachedTile(boolean exists, Compression compression, long size, long lastModified, @Nullable byte[] data, @Nullable Compression.DictionaryLookup dictionaries) {
+            this.exists = exists;
+            this.compression = compression;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.data = data;
+            this.dictionaries = dictionaries;
+        }
+
+        private static CachedTile withInfo(@Nullable CachedTile cached, TileInfo tileInfo) {
+            byte[] data = null;
+            Compression.DictionaryLookup dictionaries = null;
+            if (cached != null && cached.exists && cached.hasData() && cached.data.length == tileInfo.getSize()) {
+                data = cached.data;
+                dictionaries = cached.dictionaries;
+            }
+
+            return new CachedTile(true, tileInfo.getCompression(), tileInfo.getSize(), tileInfo.getLastModified(), data, dictionaries);
+        }
+
+        private static CachedTile withData(@Nullable CachedTile cached, CompressedInputStream in) throws IOException {
+            byte[] data = in.readAllBytes();
+            if (cached != null && cached.exists && cached.size == data.length)
+                return new CachedTile(true, in.getCompression(), cached.size, cached.lastModified, data, in.getDictionaries());
+
+            return new CachedTile(true, in.getCompression(), -1, -1, data, in.getDictionaries());
+        }
+
+        private boolean exists() {
+            return exists;
+        }
+
+        private boolean hasInfo() {
+            return size >= 0;
+        }
+
+        private boolean hasData() {
+            return data != null;
+        }
+
+        private CompressedInputStream createInputStream() {
+            return new CompressedInputStream(new ByteArrayInputStream(Objects.requireNonNull(data)), compression, dictionaries);
+        }
+
+        private int getWeight() {
+            // the dictionary is shared by all tiles of a map, so it is not counted
+            return ENTRY_OVERHEAD + (data != null ? data.length : 0);
+        }
+
+    }
+
+}
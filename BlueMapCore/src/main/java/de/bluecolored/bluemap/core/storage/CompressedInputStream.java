@@ -24,6 +24,8 @@
  */
 package de.bluecolored.bluemap.core.storage;
 
+import org.jetbrains.annotations.Nullable;
+
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -31,20 +33,31 @@ public class CompressedInputStream extends InputStream {
 
     private final InputStream in;
     private final Compression compression;
+    @Nullable private final Compression.DictionaryLookup dictionaries;
 
     public CompressedInputStream(InputStream in, Compression compression) {
+        this(in, compression, null);
+    }
+
+    public CompressedInputStream(InputStream in, Compression compression, @Nullable Compression.DictionaryLookup dictionaries) {
         this.in = in;
         this.compression = compression;
+        this.dictionaries = dictionaries;
     }
 
     public InputStream decompress() throws IOException {
-        return compression.decompress(in);
+        return compression.decompress(in, dictionaries);
     }
 
     public Compression getCompression() {
         return compression;
     }
 
+    @Nullable
+    public Compression.DictionaryLookup getDictionaries() {
+        return dictionaries;
+    }
+
     @Override
     public int read() throws IOException {
         return in.read();
@@ -27,34 +27,41 @@
 import io.airlift.compress.zstd.ZstdInputStream;
 import io.airlift.compress.zstd.ZstdOutputStream;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
 import java.util.NoSuchElementException;
-import java.util.zip.DeflaterInputStream;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPInputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.*;
 
 public enum Compression {
 
-    NONE("none", "", out -> out, in -> in),
-    GZIP("gzip", ".gz", GZIPOutputStream::new, GZIPInputStream::new),
-    DEFLATE("deflate", ".deflate", DeflaterOutputStream::new, DeflaterInputStream::new),
-    ZSTD("zstd", ".zst", ZstdOutputStream::new, ZstdInputStream::new);
+    NONE("none", "", (out, dict) -> out, (in, dict) -> in),
+    GZIP("gzip", ".gz", (out, dict) -> new GZIPOutputStream(out), (in, dict) -> new GZIPInputStream(in)),
+    DEFLATE("deflate", ".deflate", (out, dict) -> new DeflaterOutputStream(out), (in, dict) -> new DeflaterInputStream(in)),
+    ZSTD("zstd", ".zst", (out, dict) -> new ZstdOutputStream(out), (in, dict) -> new ZstdInputStream(in)),
+    DEFLATE_DICT("deflate-dict", ".zdict", Compression::deflateWithDictionary, Compression::inflateWithDictionary, true);
 
     private final String typeId;
     private final String fileSuffix;
     private final StreamTransformer<OutputStream> compressor;
-    private final StreamTransformer<InputStream> decompressor;
+    private final Decompressor decompressor;
+    private final boolean usesDictionary;
+
+    Compression(String typeId, String fileSuffix,
+                StreamTransformer<OutputStream> compressor,
+                Decompressor decompressor) {
+        this(typeId, fileSuffix, compressor, decompressor, false);
+    }
 
     Compression(String typeId, String fileSuffix,
                 StreamTransformer<OutputStream> compressor,
-                StreamTransformer<InputStream> decompressor) {
+                Decompressor decompressor,
+                boolean usesDictionary) {
         this.fileSuffix = fileSuffix;
         this.typeId = typeId;
         this.compressor = compressor;
         this.decompressor = decompressor;
+        this.usesDictionary = usesDictionary;
     }
 
     public String getTypeId() {
@@ -65,12 +72,36 @@ public String getFileSuffix() {
         return fileSuffix;
     }
 
+    /**
+     * Whether this compression uses a preset-dictionary (see {@link CompressionDictionaries}).<br>
+     * Data compressed this way can not be decoded by web-browsers and has to be re-encoded before it is sent to them,
+     * so such a compression only saves storage-space and not bandwidth.
+     */
+    public boolean usesDictionary() {
+        return usesDictionary;
+    }
+
     public OutputStream compress(OutputStream out) throws IOException {
-        return compressor.apply(out);
+        return compress(out, null);
+    }
+
+    public OutputStream compress(OutputStream out, @Nullable byte[] dictionary) throws IOException {
+        return compressor.apply(out, dictionary);
     }
 
     public InputStream decompress(InputStream in) throws IOException {
-        return decompressor.apply(in);
+        return decompress(in, (DictionaryLookup) null);
+    }
+
+    public InputStream decompress(InputStream in, @Nullable byte[] dictionary) throws IOException {
+        return decompress(in, dictionary == null ? null : dictionaryId -> dictionary);
+    }
+
+    /**
+     * Decompresses the data, looking up the dictionary the data references (if any) with the given lookup
+     */
+    public InputStream decompress(InputStream in, @Nullable DictionaryLookup dictionaries) throws IOException {
+        return decompressor.apply(in, dictionaries);
     }
 
     public static Compression forTypeId(String id) {
@@ -81,9 +112,70 @@ public static Compression forTypeId(String id) {
         throw new NoSuchElementException("There is no Compression with type-id: " + id);
     }
 
+    private static OutputStream deflateWithDictionary(OutputStream out, @Nullable byte[] dictionary) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+        // a preset-dictionary is flagged in the zlib-header together with its adler32-checksum
+        if (dictionary != null) deflater.setDictionary(dictionary);
+
+        return new DeflaterOutputStream(out, deflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    def.end();
+                }
+            }
+        };
+    }
+
+    private static InputStream inflateWithDictionary(InputStream in, @Nullable DictionaryLookup dictionaries) throws IOException {
+        int cmf = in.read(), flg = in.read();
+        if (cmf < 0 || flg < 0) throw new EOFException("Missing zlib-header!");
+        if ((cmf & 0x0F) != 8 || ((cmf << 8) | flg) % 31 != 0) throw new IOException("Invalid zlib-header!");
+
+        // read the raw deflate-data and set the dictionary ourselves, the trailing checksum is never read
+        Inflater inflater = new Inflater(true);
+        if ((flg & 0x20) != 0) {
+            long dictionaryId = new DataInputStream(in).readInt() & 0xFFFFFFFFL;
+            byte[] dictionary = dictionaries != null ? dictionaries.getDictionary(dictionaryId) : null;
+            if (dictionary == null || CompressionDictionaries.getDictionaryId(dictionary) != dictionaryId) {
+                inflater.end();
+                throw new IOException("The data has been compressed with an unknown dictionary (" + Long.toHexString(dictionaryId) + ")!");
+            }
+
+            inflater.setDictionary(dictionary);
+        }
+
+        return new InflaterInputStream(in, inflater) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inf.end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Provides the preset-dictionaries that compressed data can reference by their adler32-checksum
+     */
+    @FunctionalInterface
+    public interface DictionaryLookup {
+        @Nullable byte[] getDictionary(long dictionaryId) throws IOException;
+    }
+
     @FunctionalInterface
     private interface StreamTransformer<T> {
-        T apply(T original) throws IOException;
+        T apply(T original, @Nullable byte[] dictionary) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Decompressor {
+        InputStream apply(InputStream original, @Nullable DictionaryLookup dictionaries) throws IOException;
     }
 
 }
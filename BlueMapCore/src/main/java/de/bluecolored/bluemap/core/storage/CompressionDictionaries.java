@@ -0,0 +1,359 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Adler32;
+
+/**
+ * Manages the preset-dictionaries of the maps of a {@link Storage} for {@link Compression}s that use one.<br>
+ * <br>
+ * As long as a map has no dictionary, its tiles are compressed without one and the beginning of each written tile is
+ * sampled. Once enough samples are collected, a dictionary is trained from them (asynchronously, so the thread
+ * writing the tile is not held up) and stored as map-meta.
+ * Tiles written after that reference the dictionary by its adler32-checksum, so tiles with and without dictionary
+ * can be read side by side.<br>
+ * <br>
+ * Every dictionary is additionally stored by its checksum and never replaced, so if multiple processes write to the
+ * same storage and train a dictionary at the same time, the tiles of all of them stay readable.
+ */
+@DebugDump
+public class CompressionDictionaries {
+
+    public static final String META_FILE_DICTIONARY = "compression-dictionary.bin";
+    public static final String META_FILE_DICTIONARY_BY_ID = "compression-dictionary-%08x.bin";
+
+    static final int SAMPLE_COUNT = 32;
+    static final int SAMPLE_SIZE = 32 * 1024;
+    static final int DICTIONARY_SIZE = 32 * 1024; // the max distance a deflate-stream can reference
+
+    private static final int KMER_SIZE = 8;
+    private static final int SEGMENT_SIZE = 256;
+    private static final int HASH_BITS = 20;
+
+    private final Storage storage;
+    private final Map<String, MapDictionary> dictionaries;
+
+    public CompressionDictionaries(Storage storage) {
+        this.storage = storage;
+        this.dictionaries = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Wraps the output-stream with the given compression, using (or sampling for) the dictionary of the map
+     * if the compression uses one.
+     */
+    public OutputStream compress(String mapId, Compression compression, OutputStream out) throws IOException {
+        if (!compression.usesDictionary()) return compression.compress(out);
+
+        MapDictionary mapDictionary = getMapDictionary(mapId);
+        byte[] dictionary = mapDictionary.get();
+        OutputStream compressed = compression.compress(out, dictionary);
+        if (dictionary != null) return compressed;
+
+        return new SamplingOutputStream(compressed, mapDictionary);
+    }
+
+    /**
+     * Returns the lookup for the dictionaries that are needed to decompress data of that map with the given
+     * compression, or null if the compression doesn't use any.
+     */
+    @Nullable
+    public Compression.DictionaryLookup getDictionaries(String mapId, Compression compression) {
+        if (!compression.usesDictionary()) return null;
+        return getMapDictionary(mapId)::get;
+    }
+
+    /**
+     * Forgets the dictionary of that map, this has to be called if the map-meta got deleted (e.g. the map got purged)
+     */
+    public void invalidate(String mapId) {
+        dictionaries.remove(mapId);
+    }
+
+    private MapDictionary getMapDictionary(String mapId) {
+        return dictionaries.computeIfAbsent(mapId, MapDictionary::new);
+    }
+
+    public static long getDictionaryId(byte[] dictionary) {
+        Adler32 adler32 = new Adler32();
+        adler32.update(dictionary);
+        return adler32.getValue();
+    }
+
+    /**
+     * Trains a dictionary of (at most) the given size from the samples.<br>
+     * This is a simplified version of the cover-algorithm: the samples are split into segments, and the segments
+     * covering the most k-mers that appear in many different samples are greedily picked. The most valuable segments
+     * are placed at the end of the dictionary, where they are the cheapest to reference.
+     */
+    static byte[] train(List<byte[]> samples, int dictionarySize) {
+        int hashMask = (1 << HASH_BITS) - 1;
+
+        // count in how many samples each k-mer appears
+        int[] frequencies = new int[1 << HASH_BITS];
+        int[] lastSeen = new int[1 << HASH_BITS];
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int i = 0; i + KMER_SIZE <= sample.length; i++) {
+                int hash = hashKmer(sample, i) & hashMask;
+                if (lastSeen[hash] != s + 1) {
+                    lastSeen[hash] = s + 1;
+                    frequencies[hash]++;
+                }
+            }
+        }
+
+        // k-mers only found in a single sample are worthless for the dictionary
+        for (int i = 0; i < frequencies.length; i++) {
+            if (frequencies[i] < 2) frequencies[i] = 0;
+        }
+
+        // collect all candidate-segments, ordered by their score
+        List<int[]> segments = new ArrayList<>();
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> Integer.compare(b[2], a[2]));
+        for (int s = 0; s < samples.size(); s++) {
+            byte[] sample = samples.get(s);
+            for (int offset = 0; offset + SEGMENT_SIZE <= sample.length; offset += SEGMENT_SIZE) {
+                int[] segment = new int[] {s, offset, 0};
+                segment[2] = scoreSegment(sample, offset, frequencies, hashMask);
+                if (segment[2] > 0) queue.add(segment);
+            }
+        }
+
+        // greedily pick the best segments, scores only ever decrease so stale scores are re-evaluated lazily
+        int size = 0;
+        while (!queue.isEmpty() && size + SEGMENT_SIZE <= dictionarySize) {
+            int[] segment = queue.poll();
+            byte[] sample = samples.get(segment[0]);
+
+            int score = scoreSegment(sample, segment[1], frequencies, hashMask);
+            if (score <= 0) continue;
+            if (!queue.isEmpty() && score < queue.peek()[2]) {
+                segment[2] = score;
+                queue.add(segment);
+                continue;
+            }
+
+            // the picked k-mers are covered now
+            for (int i = segment[1]; i + KMER_SIZE <= segment[1] + SEGMENT_SIZE; i++) {
+                frequencies[hashKmer(sample, i) & hashMask] = 0;
+            }
+
+            segments.add(segment);
+            size += SEGMENT_SIZE;
+        }
+
+        byte[] dictionary = new byte[size];
+        int position = size;
+        for (int[] segment : segments) {
+            position -= SEGMENT_SIZE;
+            System.arraycopy(samples.get(segment[0]), segment[1], dictionary, position, SEGMENT_SIZE);
+        }
+
+        return dictionary;
+    }
+
+    private static int scoreSegment(byte[] sample, int offset, int[] frequencies, int hashMask) {
+        int score = 0;
+        for (int i = offset; i + KMER_SIZE <= offset + SEGMENT_SIZE; i++) {
+            score += frequencies[hashKmer(sample, i) & hashMask];
+        }
+        return score;
+    }
+
+    private static int hashKmer(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < KMER_SIZE; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return (int) ((value * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    private class MapDictionary {
+
+        private final String mapId;
+        private final Map<Long, byte[]> knownDictionaries;
+
+        private boolean loaded;
+        private volatile byte[] dictionary;
+        private List<byte[]> samples;
+
+        public MapDictionary(String mapId) {
+            this.mapId = mapId;
+            this.knownDictionaries = new ConcurrentHashMap<>();
+            this.loaded = false;
+            this.dictionary = null;
+            this.samples = new ArrayList<>();
+        }
+
+        /**
+         * Returns the dictionary that new data of this map is compressed with, or null if there is none (yet)
+         */
+        @Nullable
+        public synchronized byte[] get() throws IOException {
+            if (!loaded) {
+                byte[] current = readDictionary(META_FILE_DICTIONARY);
+                if (current != null) {
+                    this.dictionary = current;
+                    this.samples = null;
+                }
+                loaded = true;
+            }
+
+            return dictionary;
+        }
+
+        /**
+         * Returns the dictionary with the given id, which might have been trained and stored by a different process
+         * after this one checked for a dictionary
+         */
+        @Nullable
+        public byte[] get(long dictionaryId) throws IOException {
+            byte[] known = knownDictionaries.get(dictionaryId);
+            if (known != null) return known;
+
+            byte[] dictionary = readDictionary(String.format(META_FILE_DICTIONARY_BY_ID, dictionaryId));
+
+            // dictionaries stored before they were stored by id as well
+            if (dictionary == null) dictionary = readDictionary(META_FILE_DICTIONARY);
+
+            if (dictionary == null || getDictionaryId(dictionary) != dictionaryId) return null;
+            knownDictionaries.put(dictionaryId, dictionary);
+            return dictionary;
+        }
+
+        @Nullable
+        private byte[] readDictionary(String metaFile) throws IOException {
+            Optional<InputStream> in = storage.readMeta(mapId, metaFile);
+            if (in.isEmpty()) return null;
+
+            try (InputStream dictionaryIn = in.get()) {
+                byte[] dictionary = dictionaryIn.readAllBytes();
+                knownDictionaries.put(getDictionaryId(dictionary), dictionary);
+                return dictionary;
+            }
+        }
+
+        public void addSample(byte[] sample) {
+            List<byte[]> trainingSamples;
+            synchronized (this) {
+                if (dictionary != null || samples == null) return;
+
+                samples.add(sample);
+                if (samples.size() < SAMPLE_COUNT) return;
+
+                trainingSamples = samples;
+                samples = null;
+            }
+
+            // training takes a while, tiles that are written meanwhile are just not sampled
+            BlueMap.THREAD_POOL.execute(() -> trainAndSave(trainingSamples));
+        }
+
+        private void trainAndSave(List<byte[]> trainingSamples) {
+            byte[] trained = train(trainingSamples, DICTIONARY_SIZE);
+            if (trained.length == 0) {
+                restartSampling();
+                return;
+            }
+
+            // the dictionary has to be stored before any tile is compressed with it
+            try {
+                // another process might have stored a dictionary since we checked, then that one is used instead
+                byte[] current = readDictionary(META_FILE_DICTIONARY);
+                if (current == null) {
+                    long dictionaryId = getDictionaryId(trained);
+                    try (OutputStream out = storage.writeMeta(mapId, String.format(META_FILE_DICTIONARY_BY_ID, dictionaryId))) {
+                        out.write(trained);
+                    }
+                    try (OutputStream out = storage.writeMeta(mapId, META_FILE_DICTIONARY)) {
+                        out.write(trained);
+                    }
+                    knownDictionaries.put(dictionaryId, trained);
+                    current = trained;
+
+                    Logger.global.logDebug("Trained a " + trained.length + " byte compression-dictionary for map '" + mapId + "'.");
+                }
+
+                synchronized (this) {
+                    this.dictionary = current;
+                }
+            } catch (IOException ex) {
+                Logger.global.logError("Failed to save compression-dictionary for map '" + mapId + "'!", ex);
+                restartSampling();
+            }
+        }
+
+        private synchronized void restartSampling() {
+            if (dictionary == null) samples = new ArrayList<>();
+        }
+
+    }
+
+    private static class SamplingOutputStream extends FilterOutputStream {
+
+        private final MapDictionary mapDictionary;
+        private final ByteArrayOutputStream sample;
+
+        public SamplingOutputStream(OutputStream out, MapDictionary mapDictionary) {
+            super(out);
+            this.mapDictionary = mapDictionary;
+            this.sample = new ByteArrayOutputStream();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (sample.size() < SAMPLE_SIZE) sample.write(b);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            int sampled = Math.min(len, SAMPLE_SIZE - sample.size());
+            if (sampled > 0) sample.write(b, off, sampled);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            mapDictionary.addSample(sample.toByteArray());
+        }
+
+    }
+
+}
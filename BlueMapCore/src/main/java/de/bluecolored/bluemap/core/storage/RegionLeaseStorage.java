@@ -0,0 +1,84 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.OptionalLong;
+
+/**
+ * A storage that can be shared by multiple BlueMap instances rendering the same maps.<br>
+ * Before rendering a region, an instance claims a lease on it. The lease needs to be renewed regularly and is
+ * released with the new render-time of the region once it is rendered. If an instance stops without releasing
+ * its leases, they expire and the regions can be claimed by other instances.<br>
+ * The expiration of the leases is determined by the clock of the storage, so the clocks of the instances don't
+ * need to be in sync.
+ */
+public interface RegionLeaseStorage {
+
+    /**
+     * Tries to claim the lease on a region, this succeeds if the region is not leased, the lease expired
+     * or if it is already held by the same owner.
+     * @param leaseDuration the time (in milliseconds) until the lease expires if it isn't renewed
+     * @return the last render-time of the region (or -1 if it has never been rendered) if the lease has been claimed,
+     * or an empty OptionalLong if the region is currently leased by someone else
+     */
+    OptionalLong claimRegion(String mapId, Vector2i region, String owner, long leaseDuration) throws IOException;
+
+    /**
+     * Extends the lease on a region.
+     * @param leaseDuration the time (in milliseconds) from now until the lease expires if it isn't renewed again
+     * @return false if the lease is no longer held by the owner
+     */
+    boolean renewRegion(String mapId, Vector2i region, String owner, long leaseDuration) throws IOException;
+
+    /**
+     * Releases the lease on a region and updates its render-time,
+     * the render-time is only changed if it is newer than the currently stored one.
+     */
+    void releaseRegion(String mapId, Vector2i region, String owner, long renderTime) throws IOException;
+
+    /**
+     * Tries to claim a short lease on a single tile of a map. It is held while the tile is merged with its stored
+     * version and written, so instances writing the same tile (e.g. a lowres-tile spanning regions rendered by
+     * different instances) don't overwrite each other's changes.
+     * @param leaseDuration the time (in milliseconds) until the lease expires if it isn't released
+     * @return true if the lease has been claimed, false if the tile is currently leased by someone else
+     */
+    boolean claimTile(String mapId, int lod, Vector2i tile, String owner, long leaseDuration) throws IOException;
+
+    /**
+     * Releases the lease on a tile
+     */
+    void releaseTile(String mapId, int lod, Vector2i tile, String owner) throws IOException;
+
+    /**
+     * Reads the render-times of all regions of a map that have been rendered by any instance
+     */
+    Map<Vector2i, Long> readRegionRenderTimes(String mapId) throws IOException;
+
+}
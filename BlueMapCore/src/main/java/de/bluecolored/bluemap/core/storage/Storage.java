@@ -31,6 +31,8 @@
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Function;
 
@@ -44,6 +46,38 @@ public abstract class Storage implements Closeable {
 
     public abstract Optional<TileInfo> readMapTileInfo(String mapId, int lod, Vector2i tile) throws IOException;
 
+    /**
+     * Reads multiple tiles of the same lod and passes each tile that exists to the consumer, in no particular order.
+     * The stream passed to the consumer is only valid until the consumer returns.<br>
+     * The default implementation reads the tiles one by one, storages override this if they can read them more
+     * efficiently at once.
+     */
+    public void readMapTiles(String mapId, int lod, Collection<Vector2i> tiles, TileConsumer consumer) throws IOException {
+        for (Vector2i tile : tiles) {
+            Optional<CompressedInputStream> data = readMapTile(mapId, lod, tile);
+            if (data.isEmpty()) continue;
+
+            try (CompressedInputStream in = data.get()) {
+                consumer.accept(tile, in);
+            }
+        }
+    }
+
+    /**
+     * Reads the tile-infos of multiple tiles of the same lod, tiles that don't exist are not contained in the
+     * returned map.<br>
+     * The default implementation reads the tile-infos one by one, storages override this if they can read them more
+     * efficiently at once.
+     */
+    public Map<Vector2i, TileInfo> readMapTileInfos(String mapId, int lod, Collection<Vector2i> tiles) throws IOException {
+        Map<Vector2i, TileInfo> tileInfos = new LinkedHashMap<>();
+        for (Vector2i tile : tiles) {
+            Optional<TileInfo> tileInfo = readMapTileInfo(mapId, lod, tile);
+            tileInfo.ifPresent(info -> tileInfos.put(tile, info));
+        }
+        return tileInfos;
+    }
+
     public abstract void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException;
 
     public abstract OutputStream writeMeta(String mapId, String name) throws IOException;
@@ -92,6 +126,10 @@ public Storage getStorage() {
             return Storage.this;
         }
 
+        public String getMapId() {
+            return mapId;
+        }
+
     }
 
     public class TileStorage {
@@ -122,6 +160,13 @@ public Storage getStorage() {
 
     }
 
+    @FunctionalInterface
+    public interface TileConsumer {
+
+        void accept(Vector2i tile, CompressedInputStream data) throws IOException;
+
+    }
+
     public static class ProgressInfo {
 
         private final double progress;
@@ -26,15 +26,16 @@
 
 import com.flowpowered.math.vector.Vector2i;
 import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.logger.Logger;
 import de.bluecolored.bluemap.core.storage.*;
 import de.bluecolored.bluemap.core.util.DeletingPathVisitor;
 import de.bluecolored.bluemap.core.util.FileHelper;
 
 import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -42,21 +43,41 @@
 @DebugDump
 public class FileStorage extends Storage {
 
+    private static final String PURGED_PREFIX = ".purged-";
+    private static final int PURGE_OPERATIONS_PER_SECOND = 2000;
+
+    /**
+     * The depth of the subtrees of a purged map-directory (e.g. <code>tiles/0/x12</code>) that are deleted in parallel
+     */
+    private static final int PURGE_SUBTREE_DEPTH = 3;
+
     private final Path root;
     private final Compression hiresCompression;
+    private final CompressionDictionaries compressionDictionaries;
+    private final BackgroundPurger purger;
 
     public FileStorage(FileStorageSettings config) {
-        this.root = config.getRoot();
-        this.hiresCompression = config.getCompression();
+        this(config.getRoot(), config.getCompression());
     }
 
     public FileStorage(Path root, Compression compression) {
         this.root = root;
         this.hiresCompression = compression;
+        this.compressionDictionaries = new CompressionDictionaries(this);
+        this.purger = new BackgroundPurger(PURGE_OPERATIONS_PER_SECOND);
     }
 
     @Override
-    public void initialize() {}
+    public void initialize() throws IOException {
+        if (!Files.isDirectory(root)) return;
+
+        // continue deleting maps that have been purged but not completely deleted before the last shutdown
+        try (Stream<Path> fileStream = Files.list(root)) {
+            fileStream
+                    .filter(path -> path.getFileName().toString().startsWith(PURGED_PREFIX))
+                    .forEach(this::deleteInBackground);
+        }
+    }
 
     @Override
     public boolean isClosed() {
@@ -68,14 +89,14 @@ public void close() throws IOException {}
 
     @Override
     public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
         Path file = getFilePath(mapId, lod, tile);
 
         OutputStream os = FileHelper.createFilepartOutputStream(file);
         os = new BufferedOutputStream(os);
 
         try {
-            os = compression.compress(os);
+            os = compressionDictionaries.compress(mapId, compression, os);
         } catch (IOException ex) {
             os.close();
             throw ex;
@@ -86,20 +107,22 @@ public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IO
 
     @Override
     public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
         Path file = getFilePath(mapId, lod, tile);
 
         if (!Files.exists(file)) return Optional.empty();
 
+        Compression.DictionaryLookup dictionaries = compressionDictionaries.getDictionaries(mapId, compression);
+
         InputStream is = Files.newInputStream(file, StandardOpenOption.READ);
         is = new BufferedInputStream(is);
 
-        return Optional.of(new CompressedInputStream(is, compression));
+        return Optional.of(new CompressedInputStream(is, compression, dictionaries));
     }
 
     @Override
     public Optional<TileInfo> readMapTileInfo(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
         Path file = getFilePath(mapId, lod, tile);
 
         if (!Files.exists(file)) return Optional.empty();
@@ -131,6 +154,82 @@ public long getLastModified() {
         });
     }
 
+    @Override
+    public void readMapTiles(String mapId, int lod, Collection<Vector2i> tiles, TileConsumer consumer) throws IOException {
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
+        Compression.DictionaryLookup dictionaries = compressionDictionaries.getDictionaries(mapId, compression);
+
+        for (Map.Entry<Path, Vector2i> entry : sortedFilePaths(mapId, lod, tiles).entrySet()) {
+            InputStream is;
+            try {
+                is = Files.newInputStream(entry.getKey(), StandardOpenOption.READ);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+
+            try (CompressedInputStream in = new CompressedInputStream(new BufferedInputStream(is), compression, dictionaries)) {
+                consumer.accept(entry.getValue(), in);
+            }
+        }
+    }
+
+    @Override
+    public Map<Vector2i, TileInfo> readMapTileInfos(String mapId, int lod, Collection<Vector2i> tiles) throws IOException {
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
+
+        Map<Vector2i, TileInfo> tileInfos = new LinkedHashMap<>();
+        for (Map.Entry<Path, Vector2i> entry : sortedFilePaths(mapId, lod, tiles).entrySet()) {
+            Vector2i tile = entry.getValue();
+
+            // read all attributes at once instead of checking existence, size and modification-time separately
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(entry.getKey(), BasicFileAttributes.class);
+            } catch (NoSuchFileException ex) {
+                continue;
+            }
+
+            final long size = attributes.size();
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+
+            tileInfos.put(tile, new TileInfo() {
+                @Override
+                public CompressedInputStream readMapTile() throws IOException {
+                    return FileStorage.this.readMapTile(mapId, lod, tile)
+                            .orElseThrow(() -> new IOException("Tile no longer present!"));
+                }
+
+                @Override
+                public Compression getCompression() {
+                    return compression;
+                }
+
+                @Override
+                public long getSize() {
+                    return size;
+                }
+
+                @Override
+                public long getLastModified() {
+                    return lastModified;
+                }
+            });
+        }
+
+        return tileInfos;
+    }
+
+    /**
+     * Sorts the tiles by their file-path, so that files in the same directory are accessed one after another
+     */
+    private SortedMap<Path, Vector2i> sortedFilePaths(String mapId, int lod, Collection<Vector2i> tiles) {
+        SortedMap<Path, Vector2i> files = new TreeMap<>();
+        for (Vector2i tile : tiles) {
+            files.put(getFilePath(mapId, lod, tile), tile);
+        }
+        return files;
+    }
+
     @Override
     public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
         Path file = getFilePath(mapId, lod, tile);
@@ -188,32 +287,55 @@ public void deleteMeta(String mapId, String name) throws IOException {
         Files.deleteIfExists(file);
     }
 
+    /**
+     * Purges the map by moving its directory out of the way, which is instant no matter how big the map is.
+     * The moved directory is then deleted in the background.
+     */
     @Override
     public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
         final Path directory = getFilePath(mapId);
-        final int subFilesCount;
-        final LinkedList<Path> subFiles;
 
-        // collect sub-files to be able to provide progress-updates
-        try (Stream<Path> pathStream = Files.walk(directory, 3)) {
-            subFiles = pathStream.collect(Collectors.toCollection(LinkedList::new));
-        }
-        subFilesCount = subFiles.size();
+        compressionDictionaries.invalidate(mapId);
 
-        // delete subFiles first to be able to track the progress and cancel
-        while (!subFiles.isEmpty()) {
-            Path subFile = subFiles.getLast();
-            Files.walkFileTree(subFile, DeletingPathVisitor.INSTANCE);
-            subFiles.removeLast();
+        if (Files.exists(directory)) {
+            Path tombstone = root.resolve(PURGED_PREFIX + mapId + "-" + System.currentTimeMillis());
+            try {
+                Files.move(directory, tombstone, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(directory, tombstone);
+            }
 
-            if (!onProgress.apply(
-                    new ProgressInfo(1d - (subFiles.size() / (double) subFilesCount))
-            )) return;
+            deleteInBackground(tombstone);
         }
 
-        // make sure everything is deleted
-        if (Files.exists(directory))
-            Files.walkFileTree(directory, DeletingPathVisitor.INSTANCE);
+        onProgress.apply(new ProgressInfo(1d));
+    }
+
+    private void deleteInBackground(Path tombstone) {
+        String name = "'" + tombstone + "'";
+
+        // split the directory into subtrees that are deleted in parallel, and delete the rest once they are done
+        purger.submit(name, () -> {
+            List<CompletableFuture<Void>> subtreeJobs = new ArrayList<>();
+            try (Stream<Path> pathStream = Files.find(tombstone, PURGE_SUBTREE_DEPTH, (path, attributes) ->
+                    attributes.isDirectory() && tombstone.relativize(path).getNameCount() == PURGE_SUBTREE_DEPTH
+            )) {
+                pathStream.forEach(subtree -> subtreeJobs.add(purger.submit(name, () -> deleteTree(subtree))));
+            }
+
+            CompletableFuture.allOf(subtreeJobs.toArray(CompletableFuture[]::new))
+                    .thenRun(() -> purger.submit(name, () -> deleteTree(tombstone)));
+            return false;
+        });
+    }
+
+    private boolean deleteTree(Path path) throws IOException {
+        try {
+            Files.walkFileTree(path, new ThrottledDeletingPathVisitor(purger));
+        } catch (NoSuchFileException ex) {
+            Logger.global.logDebug("Purged file is already deleted: " + ex.getFile());
+        }
+        return false;
     }
 
     @Override
@@ -221,6 +343,7 @@ public Collection<String> collectMapIds() throws IOException {
         try (Stream<Path> fileStream = Files.list(root)) {
                 return fileStream
                         .filter(Files::isDirectory)
+                        .filter(path -> !path.getFileName().toString().startsWith(PURGED_PREFIX))
                         .map(path -> path.getFileName().toString())
                         .collect(Collectors.toList());
         }
@@ -245,7 +368,8 @@ public Path getFilePath(String mapId, int lod, Vector2i tile){
             p = p.resolve(s);
         }
 
-        if (lod == 0) {
+        // hires (0) and midres (< 0) tiles are models, lowres (> 0) tiles are images
+        if (lod <= 0) {
             return p.resolve(fileName + ".json" + hiresCompression.getFileSuffix());
         } else {
             return p.resolve(fileName + ".png");
@@ -261,4 +385,26 @@ public Path getMetaFilePath(String mapId, String name) {
                 .replace("/", root.getFileSystem().getSeparator()));
     }
 
+    private static class ThrottledDeletingPathVisitor extends DeletingPathVisitor {
+
+        private final BackgroundPurger purger;
+
+        private ThrottledDeletingPathVisitor(BackgroundPurger purger) {
+            this.purger = purger;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            try {
+                purger.acquire(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return FileVisitResult.TERMINATE;
+            }
+
+            return super.visitFile(file, attrs);
+        }
+
+    }
+
 }
@@ -49,9 +49,9 @@ public PostgreSQLStorage(Dialect dialect, SQLStorageSettings config) throws Malf
 
     @Override
     public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
         ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        return new WrappedOutputStream(compression.compress(byteOut), () -> {
+        return new WrappedOutputStream(compressionDictionaries.compress(mapId, compression, byteOut), () -> {
             int mapFK = getMapFK(mapId);
             int tileCompressionFK = getMapTileCompressionFK(compression);
 
@@ -85,7 +85,7 @@ public OutputStream writeMeta(String mapId, String name) {
 
     @Override
     public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
 
         try {
             byte[] data = recoveringConnection(connection -> {
@@ -108,8 +108,10 @@ public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector
                 return Optional.empty();
             }
 
+            Compression.DictionaryLookup dictionaries = compressionDictionaries.getDictionaries(mapId, compression);
+
             InputStream inputStream = new ByteArrayInputStream(data);
-            return Optional.of(new CompressedInputStream(inputStream, compression));
+            return Optional.of(new CompressedInputStream(inputStream, compression, dictionaries));
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
@@ -50,12 +50,20 @@
 import java.util.concurrent.CompletionException;
 import java.util.function.Function;
 
-public abstract class SQLStorage extends Storage {
+public abstract class SQLStorage extends Storage implements RegionLeaseStorage {
+
+    private static final int MAX_TILE_BATCH_SIZE = 100;
+
+    private static final String PURGED_PREFIX = "~purged~";
+    private static final int PURGE_BATCH_SIZE = 1000;
+    private static final int PURGE_OPERATIONS_PER_SECOND = 5000;
 
     private final DataSource dataSource;
 
     protected final Dialect dialect;
     protected final Compression hiresCompression;
+    protected final CompressionDictionaries compressionDictionaries;
+    private final BackgroundPurger purger;
 
     private final LoadingCache<String, Integer> mapFKs = Caffeine.newBuilder()
             .executor(BlueMap.THREAD_POOL)
@@ -101,14 +109,16 @@ public SQLStorage(Dialect dialect, SQLStorageSettings config) throws MalformedUR
         }
 
         this.hiresCompression = config.getCompression();
+        this.compressionDictionaries = new CompressionDictionaries(this);
+        this.purger = new BackgroundPurger(PURGE_OPERATIONS_PER_SECOND);
     }
 
     @Override
     public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
 
         ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
-        return new WrappedOutputStream(compression.compress(byteOut), () -> {
+        return new WrappedOutputStream(compressionDictionaries.compress(mapId, compression, byteOut), () -> {
             int mapFK = getMapFK(mapId);
             int tileCompressionFK = getMapTileCompressionFK(compression);
 
@@ -136,7 +146,7 @@ public OutputStream writeMapTile(String mapId, int lod, Vector2i tile) throws IO
 
     @Override
     public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
 
         try {
             byte[] data = recoveringConnection(connection -> {
@@ -158,7 +168,9 @@ public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector
             }, 2);
 
             if (data == null) return Optional.empty();
-            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(data), compression));
+
+            Compression.DictionaryLookup dictionaries = compressionDictionaries.getDictionaries(mapId, compression);
+            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(data), compression, dictionaries));
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
@@ -166,7 +178,7 @@ public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector
 
     @Override
     public Optional<TileInfo> readMapTileInfo(final String mapId, int lod, final Vector2i tile) throws IOException {
-        Compression compression = lod == 0 ? this.hiresCompression : Compression.NONE;
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
 
         try {
             TileInfo tileInfo = recoveringConnection(connection -> {
@@ -216,6 +228,118 @@ public long getLastModified() {
         }
     }
 
+    @Override
+    public void readMapTiles(String mapId, int lod, Collection<Vector2i> tiles, TileConsumer consumer) throws IOException {
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
+        Compression.DictionaryLookup dictionaries = compressionDictionaries.getDictionaries(mapId, compression);
+
+        try {
+            for (List<Vector2i> batch : batches(tiles)) {
+
+                // collect the batch before passing it on, so a retried query doesn't pass tiles twice
+                Map<Vector2i, byte[]> tileData = recoveringConnection(connection -> {
+                    ResultSet result = executeQuery(connection,
+                            this.dialect.readMapTiles(batch.size()),
+                            tileBatchParameters(mapId, lod, compression, batch)
+                    );
+
+                    Map<Vector2i, byte[]> data = new LinkedHashMap<>();
+                    while (result.next()) {
+                        // getBytes works for blob- (mysql, sqlite) and bytea-columns (postgres) alike
+                        data.put(
+                                new Vector2i(result.getInt("x"), result.getInt("z")),
+                                result.getBytes("data")
+                        );
+                    }
+                    return data;
+                }, 2);
+
+                for (Map.Entry<Vector2i, byte[]> entry : tileData.entrySet()) {
+                    try (CompressedInputStream in = new CompressedInputStream(new ByteArrayInputStream(entry.getValue()), compression, dictionaries)) {
+                        consumer.accept(entry.getKey(), in);
+                    }
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public Map<Vector2i, TileInfo> readMapTileInfos(String mapId, int lod, Collection<Vector2i> tiles) throws IOException {
+        Compression compression = lod <= 0 ? this.hiresCompression : Compression.NONE;
+
+        Map<Vector2i, TileInfo> tileInfos = new LinkedHashMap<>();
+        try {
+            for (List<Vector2i> batch : batches(tiles)) {
+                recoveringConnection(connection -> {
+                    ResultSet result = executeQuery(connection,
+                            this.dialect.readMapTileInfos(batch.size()),
+                            tileBatchParameters(mapId, lod, compression, batch)
+                    );
+
+                    while (result.next()) {
+                        final Vector2i tile = new Vector2i(result.getInt("x"), result.getInt("z"));
+                        final long lastModified = result.getTimestamp("changed").getTime();
+                        final long size = result.getLong("size");
+
+                        tileInfos.put(tile, new TileInfo() {
+                            @Override
+                            public CompressedInputStream readMapTile() throws IOException {
+                                return SQLStorage.this.readMapTile(mapId, lod, tile)
+                                        .orElseThrow(() -> new IOException("Tile no longer present!"));
+                            }
+
+                            @Override
+                            public Compression getCompression() {
+                                return compression;
+                            }
+
+                            @Override
+                            public long getSize() {
+                                return size;
+                            }
+
+                            @Override
+                            public long getLastModified() {
+                                return lastModified;
+                            }
+                        });
+                    }
+                }, 2);
+            }
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+
+        return tileInfos;
+    }
+
+    /**
+     * Splits the tiles into batches that are small enough to be queried with one statement
+     */
+    private List<List<Vector2i>> batches(Collection<Vector2i> tiles) {
+        List<Vector2i> tileList = new ArrayList<>(tiles);
+        List<List<Vector2i>> batches = new ArrayList<>();
+        for (int i = 0; i < tileList.size(); i += MAX_TILE_BATCH_SIZE) {
+            batches.add(tileList.subList(i, Math.min(i + MAX_TILE_BATCH_SIZE, tileList.size())));
+        }
+        return batches;
+    }
+
+    private Object[] tileBatchParameters(String mapId, int lod, Compression compression, List<Vector2i> tiles) {
+        Object[] parameters = new Object[3 + tiles.size() * 2];
+        parameters[0] = mapId;
+        parameters[1] = lod;
+        parameters[2] = compression.getTypeId();
+        int i = 3;
+        for (Vector2i tile : tiles) {
+            parameters[i++] = tile.getX();
+            parameters[i++] = tile.getY();
+        }
+        return parameters;
+    }
+
     @Override
     public void deleteMapTile(String mapId, int lod, Vector2i tile) throws IOException {
         try {
@@ -333,34 +457,87 @@ public void deleteMeta(String mapId, String name) throws IOException {
         }
     }
 
+    /**
+     * Purges the map by renaming its entry in the map-table, which detaches all of its data from the map-id at once.
+     * The detached data is then deleted in the background.
+     */
     @Override
     public void purgeMap(String mapId, Function<ProgressInfo, Boolean> onProgress) throws IOException {
         synchronized (mapFKs) {
             try {
-                recoveringConnection(connection -> {
+                Integer detachedMapFK = recoveringConnection(connection -> {
+                    ResultSet result = executeQuery(connection,
+                            this.dialect.lookupFK("bluemap_map", "id", "map_id"),
+                            mapId
+                    );
+                    if (!result.next()) return null;
+
+                    int mapFK = result.getInt("id");
                     executeUpdate(connection,
+                            this.dialect.detachMap(),
+                            PURGED_PREFIX + mapFK,
+                            mapFK
+                    );
+                    return mapFK;
+                }, 2);
+
+                mapFKs.invalidate(mapId);
+                compressionDictionaries.invalidate(mapId);
+
+                if (detachedMapFK != null)
+                    deleteInBackground(detachedMapFK);
+
+            } catch (SQLException ex) {
+                throw new IOException(ex);
+            }
+        }
+
+        onProgress.apply(new ProgressInfo(1d));
+    }
+
+    private void deleteInBackground(int mapFK) {
+        purger.submit("detached map-data (" + PURGED_PREFIX + mapFK + ")", () -> {
+            if (isClosed()) return false;
+
+            try {
+                purger.acquire(PURGE_BATCH_SIZE);
+
+                // delete tiles in small batches to not lock the table for a long time
+                int deleted = recoveringConnection(connection -> {
+                    return executeUpdate(connection,
                             this.dialect.purgeMapTile(),
-                            mapId
+                            mapFK,
+                            PURGE_BATCH_SIZE
                     );
+                }, 2);
+                if (deleted > 0) return true;
 
+                recoveringConnection(connection -> {
                     executeUpdate(connection,
                             this.dialect.purgeMapMeta(),
-                            mapId
+                            mapFK
                     );
 
+                    executeUpdate(connection,
+                            this.dialect.purgeMapRegion(),
+                            mapFK
+                    );
+
+                    executeUpdate(connection,
+                            this.dialect.purgeMapTileLease(),
+                            mapFK
+                    );
 
                     executeUpdate(connection,
                             this.dialect.purgeMap(),
-                            mapId
+                            mapFK
                     );
                 }, 2);
-
-                mapFKs.invalidate(mapId);
-
+                return false;
             } catch (SQLException ex) {
                 throw new IOException(ex);
             }
-        }
+        });
     }
 
     @Override
@@ -372,7 +549,8 @@ public Collection<String> collectMapIds() throws IOException {
                     );
                     Collection<String> mapIds = new ArrayList<>();
                     while (result.next()) {
-                        mapIds.add(result.getString("map_id"));
+                        String mapId = result.getString("map_id");
+                        if (!mapId.startsWith(PURGED_PREFIX)) mapIds.add(mapId);
                     }
                     return mapIds;
             }, 2);
@@ -381,6 +559,155 @@ public Collection<String> collectMapIds() throws IOException {
         }
     }
 
+    @Override
+    public OptionalLong claimRegion(String mapId, Vector2i region, String owner, long leaseDuration) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            return recoveringConnection(connection -> {
+                executeUpdate(connection,
+                        this.dialect.insertMapRegion(),
+                        mapFK,
+                        region.getX(),
+                        region.getY()
+                );
+
+                int claimed = executeUpdate(connection,
+                        this.dialect.claimMapRegion(),
+                        owner,
+                        leaseDuration,
+                        mapFK,
+                        region.getX(),
+                        region.getY(),
+                        owner
+                );
+                if (claimed == 0) return OptionalLong.empty();
+
+                ResultSet result = executeQuery(connection,
+                        this.dialect.readMapRegionRenderTime(),
+                        mapFK,
+                        region.getX(),
+                        region.getY()
+                );
+
+                return OptionalLong.of(result.next() ? result.getLong("render_time") : -1);
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public boolean renewRegion(String mapId, Vector2i region, String owner, long leaseDuration) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            return recoveringConnection(connection ->
+                    executeUpdate(connection,
+                            this.dialect.renewMapRegion(),
+                            leaseDuration,
+                            mapFK,
+                            region.getX(),
+                            region.getY(),
+                            owner
+                    ) > 0, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void releaseRegion(String mapId, Vector2i region, String owner, long renderTime) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            recoveringConnection(connection ->
+                    executeUpdate(connection,
+                            this.dialect.releaseMapRegion(),
+                            renderTime,
+                            mapFK,
+                            region.getX(),
+                            region.getY(),
+                            owner
+                    ), 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public boolean claimTile(String mapId, int lod, Vector2i tile, String owner, long leaseDuration) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            return recoveringConnection(connection -> {
+                executeUpdate(connection,
+                        this.dialect.insertMapTileLease(),
+                        mapFK,
+                        lod,
+                        tile.getX(),
+                        tile.getY()
+                );
+
+                return executeUpdate(connection,
+                        this.dialect.claimMapTileLease(),
+                        owner,
+                        leaseDuration,
+                        mapFK,
+                        lod,
+                        tile.getX(),
+                        tile.getY(),
+                        owner
+                ) > 0;
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public void releaseTile(String mapId, int lod, Vector2i tile, String owner) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            recoveringConnection(connection ->
+                    executeUpdate(connection,
+                            this.dialect.releaseMapTileLease(),
+                            mapFK,
+                            lod,
+                            tile.getX(),
+                            tile.getY(),
+                            owner
+                    ), 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    public Map<Vector2i, Long> readRegionRenderTimes(String mapId) throws IOException {
+        try {
+            int mapFK = getMapFK(mapId);
+
+            return recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectMapRegionRenderTimes(),
+                        mapFK
+                );
+
+                Map<Vector2i, Long> renderTimes = new HashMap<>();
+                while (result.next()) {
+                    long renderTime = result.getLong("render_time");
+                    if (renderTime < 0) continue;
+                    renderTimes.put(new Vector2i(result.getInt("x"), result.getInt("z")), renderTime);
+                }
+                return renderTimes;
+            }, 2);
+        } catch (SQLException ex) {
+            throw new IOException(ex);
+        }
+    }
+
     @SuppressWarnings("UnusedAssignment")
     public void initialize() throws IOException {
         try {
@@ -414,7 +741,7 @@ public void initialize() throws IOException {
             }
 
             // validate schema version
-            if (schemaVersion < 0 || schemaVersion > 3)
+            if (schemaVersion < 0 || schemaVersion > 5)
                 throw new IOException("Unknown schema-version: " + schemaVersion);
 
             // update schema to current version
@@ -485,6 +812,57 @@ public void initialize() throws IOException {
                 schemaVersion = 3;
             }
 
+            if (schemaVersion == 3) {
+                Logger.global.logInfo("Updating database schema: Adding bluemap_map_region table...");
+                recoveringConnection(connection -> {
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.initializeMapRegion()
+                    );
+
+                    // update schemaVersion
+                    executeUpdate(connection,
+                            this.dialect.updateStorageMeta(),
+                            "4", "schema_version"
+                    );
+                }, 2);
+
+                schemaVersion = 4;
+            }
+
+            if (schemaVersion == 4) {
+                Logger.global.logInfo("Updating database schema: Adding bluemap_map_tile_lease table...");
+                recoveringConnection(connection -> {
+
+                    connection.createStatement().executeUpdate(
+                            this.dialect.initializeMapTileLease()
+                    );
+
+                    // update schemaVersion
+                    executeUpdate(connection,
+                            this.dialect.updateStorageMeta(),
+                            "5", "schema_version"
+                    );
+                }, 2);
+
+                schemaVersion = 5;
+            }
+
+            // continue deleting maps that have been purged but not completely deleted before the last shutdown
+            List<Integer> detachedMapFKs = recoveringConnection(connection -> {
+                ResultSet result = executeQuery(connection,
+                        this.dialect.selectMapIds()
+                );
+                List<Integer> mapFKs = new ArrayList<>();
+                while (result.next()) {
+                    String mapId = result.getString("map_id");
+                    if (mapId.startsWith(PURGED_PREFIX))
+                        mapFKs.add(Integer.parseInt(mapId.substring(PURGED_PREFIX.length())));
+                }
+                return mapFKs;
+            }, 2);
+            detachedMapFKs.forEach(this::deleteInBackground);
+
         } catch (SQLException ex) {
             throw new IOException(ex);
         }
@@ -36,6 +36,22 @@ public interface Dialect {
     @Language("sql")
     String readMapTileInfo();
 
+    /**
+     * Same as {@link #readMapTile()} but for multiple tiles of the same lod, the parameters are the map-id, lod and
+     * compression followed by an x and z parameter for each tile.
+     * The result additionally contains the x and z of each tile.
+     */
+    @Language("sql")
+    String readMapTiles(int tileCount);
+
+    /**
+     * Same as {@link #readMapTileInfo()} but for multiple tiles of the same lod, the parameters are the map-id, lod and
+     * compression followed by an x and z parameter for each tile.
+     * The result additionally contains the x and z of each tile.
+     */
+    @Language("sql")
+    String readMapTileInfos(int tileCount);
+
     @Language("sql")
     String deleteMapTile();
 
@@ -51,6 +67,9 @@ public interface Dialect {
     @Language("sql")
     String deleteMeta();
 
+    /**
+     * Deletes up to a limited number of tiles of a map, parameters are the map-fk and the limit
+     */
     @Language("sql")
     String purgeMapTile();
 
@@ -60,6 +79,12 @@ public interface Dialect {
     @Language("sql")
     String purgeMap();
 
+    /**
+     * Renames the map-id of a map, so its data is no longer associated with the map and can be deleted in the background
+     */
+    @Language("sql")
+    String detachMap();
+
     @Language("sql")
     String selectMapIds();
 
@@ -99,4 +124,55 @@ public interface Dialect {
     @Language("sql")
     String insertFK(String table, String valueField);
 
+    @Language("sql")
+    String initializeMapRegion();
+
+    @Language("sql")
+    String insertMapRegion(); // must not fail if the region already exists
+
+    @Language("sql")
+    String claimMapRegion(); // lease-expirations are computed from and compared to the clock of the database
+
+    @Language("sql")
+    String renewMapRegion();
+
+    @Language("sql")
+    String releaseMapRegion();
+
+    @Language("sql")
+    String readMapRegionRenderTime();
+
+    @Language("sql")
+    String selectMapRegionRenderTimes();
+
+    @Language("sql")
+    String purgeMapRegion();
+
+    @Language("sql")
+    String initializeMapTileLease();
+
+    @Language("sql")
+    String insertMapTileLease(); // must not fail if the lease already exists
+
+    @Language("sql")
+    String claimMapTileLease();
+
+    @Language("sql")
+    String releaseMapTileLease();
+
+    @Language("sql")
+    String purgeMapTileLease();
+
+    /**
+     * Creates the parameter-list for a row-value IN-clause, e.g. <code>(?, ?), (?, ?)</code>
+     */
+    static String tileParameters(int tileCount) {
+        StringBuilder sb = new StringBuilder(tileCount * 8);
+        for (int i = 0; i < tileCount; i++) {
+            if (i > 0) sb.append(", ");
+            sb.append("(?, ?)");
+        }
+        return sb.toString();
+    }
+
 }
@@ -71,6 +71,36 @@ public String readMapTileInfo() {
                 "AND c.`compression` = ?";
     }
 
+    @Override
+    @Language("MySQL")
+    public String readMapTiles(int tileCount) {
+        return "SELECT t.`x`, t.`z`, t.`data` " +
+                "FROM `bluemap_map_tile` t " +
+                " INNER JOIN `bluemap_map` m " +
+                "  ON t.`map` = m.`id` " +
+                " INNER JOIN `bluemap_map_tile_compression` c " +
+                "  ON t.`compression` = c.`id` " +
+                "WHERE m.`map_id` = ? " +
+                "AND t.`lod` = ? " +
+                "AND c.`compression` = ? " +
+                "AND (t.`x`, t.`z`) IN (" + Dialect.tileParameters(tileCount) + ")";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String readMapTileInfos(int tileCount) {
+        return "SELECT t.`x`, t.`z`, t.`changed`, LENGTH(t.`data`) as 'size' " +
+                "FROM `bluemap_map_tile` t " +
+                " INNER JOIN `bluemap_map` m " +
+                "  ON t.`map` = m.`id` " +
+                " INNER JOIN `bluemap_map_tile_compression` c " +
+                "  ON t.`compression` = c.`id` " +
+                "WHERE m.`map_id` = ? " +
+                "AND t.`lod` = ? " +
+                "AND c.`compression` = ? " +
+                "AND (t.`x`, t.`z`) IN (" + Dialect.tileParameters(tileCount) + ")";
+    }
+
     @Override
     @Language("MySQL")
     public String deleteMapTile() {
@@ -127,21 +157,18 @@ public String deleteMeta() {
     @Override
     @Language("MySQL")
     public String purgeMapTile() {
-        return "DELETE t " +
-                "FROM `bluemap_map_tile` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                "WHERE m.`map_id` = ?";
+        return "DELETE " +
+                "FROM `bluemap_map_tile` " +
+                "WHERE `map` = ? " +
+                "LIMIT ?";
     }
 
     @Override
     @Language("MySQL")
     public String purgeMapMeta() {
-        return "DELETE t " +
-                "FROM `bluemap_map_meta` t " +
-                " INNER JOIN `bluemap_map` m " +
-                "  ON t.`map` = m.`id` " +
-                "WHERE m.`map_id` = ?";
+        return "DELETE " +
+                "FROM `bluemap_map_meta` " +
+                "WHERE `map` = ?";
     }
 
     @Override
@@ -149,7 +176,15 @@ public String purgeMapMeta() {
     public String purgeMap() {
         return "DELETE " +
                 "FROM `bluemap_map` " +
-                "WHERE `map_id` = ?";
+                "WHERE `id` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String detachMap() {
+        return "UPDATE `bluemap_map` " +
+                "SET `map_id` = ? " +
+                "WHERE `id` = ?";
     }
 
     @Override
@@ -270,5 +305,139 @@ public String insertFK(String table, String valueField) {
                 "VALUES (?)";
     }
 
+    @Override
+    @Language("MySQL")
+    public String initializeMapRegion() {
+        return "CREATE TABLE `bluemap_map_region` (" +
+                "`map` SMALLINT UNSIGNED NOT NULL," +
+                "`x` INT NOT NULL," +
+                "`z` INT NOT NULL," +
+                "`owner` VARCHAR(255) DEFAULT NULL," +
+                "`lease_expiration` BIGINT NOT NULL DEFAULT 0," +
+                "`render_time` BIGINT NOT NULL DEFAULT -1," +
+                "PRIMARY KEY (`map`, `x`, `z`)," +
+                "CONSTRAINT `fk_bluemap_map_region_map` FOREIGN KEY (`map`) REFERENCES `bluemap_map` (`id`) ON UPDATE RESTRICT ON DELETE RESTRICT" +
+                ");";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String insertMapRegion() {
+        return "INSERT IGNORE INTO `bluemap_map_region` (`map`, `x`, `z`) " +
+                "VALUES (?, ?, ?)";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String claimMapRegion() {
+        return "UPDATE `bluemap_map_region` " +
+                "SET `owner` = ?, `lease_expiration` = CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED) + ? " +
+                "WHERE `map` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ? " +
+                "AND (`owner` IS NULL OR `owner` = ? OR `lease_expiration` < CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED))";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String renewMapRegion() {
+        return "UPDATE `bluemap_map_region` " +
+                "SET `lease_expiration` = CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED) + ? " +
+                "WHERE `map` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ? " +
+                "AND `owner` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String releaseMapRegion() {
+        return "UPDATE `bluemap_map_region` " +
+                "SET `owner` = NULL, `lease_expiration` = 0, `render_time` = GREATEST(`render_time`, ?) " +
+                "WHERE `map` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ? " +
+                "AND `owner` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String readMapRegionRenderTime() {
+        return "SELECT `render_time` " +
+                "FROM `bluemap_map_region` " +
+                "WHERE `map` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String selectMapRegionRenderTimes() {
+        return "SELECT `x`, `z`, `render_time` " +
+                "FROM `bluemap_map_region` " +
+                "WHERE `map` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String purgeMapRegion() {
+        return "DELETE " +
+                "FROM `bluemap_map_region` " +
+                "WHERE `map` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String initializeMapTileLease() {
+        return "CREATE TABLE `bluemap_map_tile_lease` (" +
+                "`map` SMALLINT UNSIGNED NOT NULL," +
+                "`lod` SMALLINT UNSIGNED NOT NULL," +
+                "`x` INT NOT NULL," +
+                "`z` INT NOT NULL," +
+                "`owner` VARCHAR(255) DEFAULT NULL," +
+                "`lease_expiration` BIGINT NOT NULL DEFAULT 0," +
+                "PRIMARY KEY (`map`, `lod`, `x`, `z`)," +
+                "CONSTRAINT `fk_bluemap_map_tile_lease_map` FOREIGN KEY (`map`) REFERENCES `bluemap_map` (`id`) ON UPDATE RESTRICT ON DELETE RESTRICT" +
+                ");";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String insertMapTileLease() {
+        return "INSERT IGNORE INTO `bluemap_map_tile_lease` (`map`, `lod`, `x`, `z`) " +
+                "VALUES (?, ?, ?, ?)";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String claimMapTileLease() {
+        return "UPDATE `bluemap_map_tile_lease` " +
+                "SET `owner` = ?, `lease_expiration` = CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED) + ? " +
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ? " +
+                "AND (`owner` IS NULL OR `owner` = ? OR `lease_expiration` < CAST(UNIX_TIMESTAMP(NOW(3)) * 1000 AS SIGNED))";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String releaseMapTileLease() {
+        return "UPDATE `bluemap_map_tile_lease` " +
+                "SET `owner` = NULL, `lease_expiration` = 0 " +
+                "WHERE `map` = ? " +
+                "AND `lod` = ? " +
+                "AND `x` = ? " +
+                "AND `z` = ? " +
+                "AND `owner` = ?";
+    }
+
+    @Override
+    @Language("MySQL")
+    public String purgeMapTileLease() {
+        return "DELETE " +
+                "FROM `bluemap_map_tile_lease` " +
+                "WHERE `map` = ?";
+    }
 
 }
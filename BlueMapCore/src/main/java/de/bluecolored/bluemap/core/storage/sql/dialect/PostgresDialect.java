@@ -72,6 +72,36 @@ public String readMapTileInfo() {
                 "AND c.compression = ?";
     }
 
+    @Override
+    @Language("PostgreSQL")
+    public String readMapTiles(int tileCount) {
+        return "SELECT t.x, t.z, t.data " +
+                "FROM bluemap_map_tile t " +
+                " INNER JOIN bluemap_map m " +
+                "  ON t.map = m.id " +
+                " INNER JOIN bluemap_map_tile_compression c " +
+                "  ON t.compression = c.id " +
+                "WHERE m.map_id = ? " +
+                "AND t.lod = ? " +
+                "AND c.compression = ? " +
+                "AND (t.x, t.z) IN (" + Dialect.tileParameters(tileCount) + ")";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String readMapTileInfos(int tileCount) {
+        return "SELECT t.x, t.z, t.changed, OCTET_LENGTH(t.data) as size " +
+                "FROM bluemap_map_tile t " +
+                " INNER JOIN bluemap_map m " +
+                "  ON t.map = m.id " +
+                " INNER JOIN bluemap_map_tile_compression c " +
+                "  ON t.compression = c.id " +
+                "WHERE m.map_id = ? " +
+                "AND t.lod = ? " +
+                "AND c.compression = ? " +
+                "AND (t.x, t.z) IN (" + Dialect.tileParameters(tileCount) + ")";
+    }
+
     @Override
     @Language("PostgreSQL")
     public String deleteMapTile() {
@@ -127,26 +157,35 @@ public String deleteMeta() {
     @Override
     @Language("PostgreSQL")
     public String purgeMapTile() {
-        return "DELETE FROM bluemap_map_tile t " +
-                "USING bluemap_map m " +
-                "WHERE t.map = m.id " +
-                "AND m.map_id = ?";
+        return "DELETE FROM bluemap_map_tile " +
+                "WHERE ctid IN( " +
+                " SELECT ctid " +
+                " FROM bluemap_map_tile " +
+                " WHERE map = ? " +
+                " LIMIT ? " +
+                ")";
     }
 
     @Override
     @Language("PostgreSQL")
     public String purgeMapMeta() {
-        return "DELETE FROM bluemap_map_meta t " +
-                "USING bluemap_map m " +
-                "WHERE t.map = m.id " +
-                "AND m.map_id = ?";
+        return "DELETE FROM bluemap_map_meta " +
+                "WHERE map = ?";
     }
 
     @Override
     @Language("PostgreSQL")
     public String purgeMap() {
         return "DELETE FROM bluemap_map " +
-                "WHERE map_id = ?";
+                "WHERE id = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String detachMap() {
+        return "UPDATE bluemap_map " +
+                "SET map_id = ? " +
+                "WHERE id = ?";
     }
 
     @Override
@@ -260,5 +299,137 @@ public String insertFK(String table, String valueField) {
                 "VALUES (?)";
     }
 
+    @Override
+    @Language("PostgreSQL")
+    public String initializeMapRegion() {
+        return "CREATE TABLE IF NOT EXISTS bluemap_map_region (" +
+                "map SMALLINT REFERENCES bluemap_map(id) ON UPDATE RESTRICT ON DELETE RESTRICT, " +
+                "x INT NOT NULL, " +
+                "z INT NOT NULL, " +
+                "owner VARCHAR(255) DEFAULT NULL, " +
+                "lease_expiration BIGINT NOT NULL DEFAULT 0, " +
+                "render_time BIGINT NOT NULL DEFAULT -1, " +
+                "PRIMARY KEY (map, x, z)" +
+                ")";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String insertMapRegion() {
+        return "INSERT INTO bluemap_map_region (map, x, z) " +
+                "VALUES (?, ?, ?) " +
+                "ON CONFLICT (map, x, z) DO NOTHING";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String claimMapRegion() {
+        return "UPDATE bluemap_map_region " +
+                "SET owner = ?, lease_expiration = CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS BIGINT) + ? " +
+                "WHERE map = ? " +
+                "AND x = ? " +
+                "AND z = ? " +
+                "AND (owner IS NULL OR owner = ? OR lease_expiration < CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS BIGINT))";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String renewMapRegion() {
+        return "UPDATE bluemap_map_region " +
+                "SET lease_expiration = CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS BIGINT) + ? " +
+                "WHERE map = ? " +
+                "AND x = ? " +
+                "AND z = ? " +
+                "AND owner = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String releaseMapRegion() {
+        return "UPDATE bluemap_map_region " +
+                "SET owner = NULL, lease_expiration = 0, render_time = GREATEST(render_time, ?) " +
+                "WHERE map = ? " +
+                "AND x = ? " +
+                "AND z = ? " +
+                "AND owner = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String readMapRegionRenderTime() {
+        return "SELECT render_time " +
+                "FROM bluemap_map_region " +
+                "WHERE map = ? " +
+                "AND x = ? " +
+                "AND z = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String selectMapRegionRenderTimes() {
+        return "SELECT x, z, render_time " +
+                "FROM bluemap_map_region " +
+                "WHERE map = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String purgeMapRegion() {
+        return "DELETE FROM bluemap_map_region " +
+                "WHERE map = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String initializeMapTileLease() {
+        return "CREATE TABLE IF NOT EXISTS bluemap_map_tile_lease (" +
+                "map SMALLINT REFERENCES bluemap_map(id) ON UPDATE RESTRICT ON DELETE RESTRICT, " +
+                "lod SMALLINT NOT NULL, " +
+                "x INT NOT NULL, " +
+                "z INT NOT NULL, " +
+                "owner VARCHAR(255) DEFAULT NULL, " +
+                "lease_expiration BIGINT NOT NULL DEFAULT 0, " +
+                "PRIMARY KEY (map, lod, x, z)" +
+                ")";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String insertMapTileLease() {
+        return "INSERT INTO bluemap_map_tile_lease (map, lod, x, z) " +
+                "VALUES (?, ?, ?, ?) " +
+                "ON CONFLICT (map, lod, x, z) DO NOTHING";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String claimMapTileLease() {
+        return "UPDATE bluemap_map_tile_lease " +
+                "SET owner = ?, lease_expiration = CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS BIGINT) + ? " +
+                "WHERE map = ? " +
+                "AND lod = ? " +
+                "AND x = ? " +
+                "AND z = ? " +
+                "AND (owner IS NULL OR owner = ? OR lease_expiration < CAST(EXTRACT(EPOCH FROM CURRENT_TIMESTAMP) * 1000 AS BIGINT))";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String releaseMapTileLease() {
+        return "UPDATE bluemap_map_tile_lease " +
+                "SET owner = NULL, lease_expiration = 0 " +
+                "WHERE map = ? " +
+                "AND lod = ? " +
+                "AND x = ? " +
+                "AND z = ? " +
+                "AND owner = ?";
+    }
+
+    @Override
+    @Language("PostgreSQL")
+    public String purgeMapTileLease() {
+        return "DELETE FROM bluemap_map_tile_lease " +
+                "WHERE map = ?";
+    }
 
 }
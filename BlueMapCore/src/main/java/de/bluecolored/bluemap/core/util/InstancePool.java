@@ -24,38 +24,127 @@
  */
 package de.bluecolored.bluemap.core.util;
 
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
+/**
+ * A pool of reusable instances.<br>
+ * The pool can optionally be bounded by the total weight (e.g. the memory-size) of the pooled instances, recycled
+ * instances that don't fit into the pool anymore are dropped. It can also shrink when idle: periodically all
+ * instances that have not been needed since the last check are dropped.
+ */
+@DebugDump
 public class InstancePool<T> {
 
     private final Supplier<T> creator;
     private final Function<T, T> recycler;
+    private final ToLongFunction<T> weigher;
+    private final long maxPooledWeight;
+    private final long idleTrimInterval;
+
     private final ConcurrentLinkedQueue<T> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final AtomicLong pooledWeight = new AtomicLong();
+
+    // the lowest amount of pooled instances since the last trim, those have not been needed
+    private final AtomicInteger unusedCount = new AtomicInteger();
+    private final AtomicBoolean trimScheduled = new AtomicBoolean();
 
     public InstancePool(Supplier<T> creator) {
-        this.creator = creator;
-        this.recycler = t -> t;
+        this(creator, t -> t);
     }
 
     public InstancePool(Supplier<T> creator, Function<T, T> recycler) {
+        this(creator, recycler, t -> 0, Long.MAX_VALUE, -1);
+    }
+
+    /**
+     * @param weigher the weight of an instance (after it has been recycled)
+     * @param maxPooledWeight the maximum total weight of all pooled instances
+     * @param idleTrimInterval the interval in milliseconds in which instances that were not needed are dropped,
+     *                         zero or less to never drop them
+     */
+    public InstancePool(Supplier<T> creator, Function<T, T> recycler, ToLongFunction<T> weigher, long maxPooledWeight, long idleTrimInterval) {
         this.creator = creator;
         this.recycler = recycler;
+        this.weigher = weigher;
+        this.maxPooledWeight = maxPooledWeight;
+        this.idleTrimInterval = idleTrimInterval;
     }
 
     public T claimInstance() {
         T instance = pool.poll();
         if (instance == null) {
-            instance = creator.get();
+            return creator.get();
         }
+
+        pooledWeight.addAndGet(-weigher.applyAsLong(instance));
+        unusedCount.accumulateAndGet(pooledCount.decrementAndGet(), Math::min);
         return instance;
     }
 
     public void recycleInstance(T instance) {
         instance = recycler.apply(instance);
-        if (instance != null)
-            pool.offer(instance);
+        if (instance == null) return;
+
+        long weight = weigher.applyAsLong(instance);
+        if (pooledWeight.addAndGet(weight) > maxPooledWeight) {
+            // the pool is full, drop the instance
+            pooledWeight.addAndGet(-weight);
+            return;
+        }
+
+        pool.offer(instance);
+        pooledCount.incrementAndGet();
+        scheduleTrim();
+    }
+
+    /**
+     * Drops all instances that have not been claimed since the last call of this method
+     */
+    public void trim() {
+        int unused = unusedCount.getAndSet(Integer.MAX_VALUE);
+        for (int i = 0; i < unused; i++) {
+            T instance = pool.poll();
+            if (instance == null) break;
+
+            pooledWeight.addAndGet(-weigher.applyAsLong(instance));
+            pooledCount.decrementAndGet();
+        }
+        unusedCount.accumulateAndGet(pooledCount.get(), Math::min);
+    }
+
+    private void scheduleTrim() {
+        if (idleTrimInterval <= 0) return;
+        if (!trimScheduled.compareAndSet(false, true)) return;
+
+        CompletableFuture.runAsync(() -> {
+            trim();
+            trimScheduled.set(false);
+
+            // keep trimming as long as there is something in the pool
+            if (pooledCount.get() > 0) scheduleTrim();
+        }, CompletableFuture.delayedExecutor(idleTrimInterval, TimeUnit.MILLISECONDS, BlueMap.THREAD_POOL));
+    }
+
+    @DebugDump
+    public int getPooledCount() {
+        return pooledCount.get();
+    }
+
+    @DebugDump
+    public long getPooledWeight() {
+        return pooledWeight.get();
     }
 
 }
@@ -0,0 +1,93 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import de.bluecolored.bluemap.api.debug.DebugDump;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A memory-budget that is split evenly between all caches using it,
+ * so the memory used by all of them together doesn't grow with the number of caches.
+ */
+@DebugDump
+public class SharedMemoryBudget {
+
+    private final long memoryBudget;
+    private final Set<Cache> caches;
+
+    public SharedMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        this.caches = Collections.newSetFromMap(new WeakHashMap<>());
+    }
+
+    @DebugDump
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    @DebugDump
+    public synchronized int getCacheCount() {
+        return caches.size();
+    }
+
+    /**
+     * Adds the cache to this budget and updates the share of all caches using it.<br>
+     * Caches are only weakly referenced, so a cache that is no longer used frees its share once it is garbage-collected.
+     */
+    public synchronized void register(Cache cache) {
+        caches.add(cache);
+        split();
+    }
+
+    /**
+     * Removes the cache from this budget (e.g. because it has been emptied) and gives its share to the other caches
+     * using this budget. The cache can be registered again once it is used again.
+     */
+    public synchronized void release(Cache cache) {
+        if (caches.remove(cache)) split();
+    }
+
+    private void split() {
+        if (caches.isEmpty()) return;
+
+        long share = memoryBudget / caches.size();
+        for (Cache c : caches) {
+            c.setMemoryBudget(share);
+        }
+    }
+
+    public interface Cache {
+
+        /**
+         * Sets the memory (in bytes) that this cache can occupy
+         */
+        void setMemoryBudget(long memoryBudget);
+
+    }
+
+}
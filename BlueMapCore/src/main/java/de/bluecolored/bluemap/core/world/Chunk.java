@@ -48,4 +48,22 @@ default int fromBlocksArray(int x, int y, int z) {
 
     int getOceanFloorY(int x, int z);
 
+    /**
+     * Collects the y-intervals of the block-column at x, z that might contain non-air blocks into the target.<br>
+     * Every block of the column outside of those intervals is guaranteed to be air.
+     */
+    default ColumnRanges getNonEmptyRanges(int x, int z, ColumnRanges target) {
+        target.clear();
+        target.add(getMinY(x, z), getMaxY(x, z));
+        return target;
+    }
+
+    /**
+     * Returns a rough estimate of the heap-memory (in bytes) this chunk occupies.<br>
+     * This is used to weigh chunks in the chunk-cache.
+     */
+    default int estimateMemorySize() {
+        return 64 * 1024;
+    }
+
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import com.flowpowered.math.vector.Vector2i;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import de.bluecolored.bluemap.api.debug.DebugDump;
+import de.bluecolored.bluemap.core.BlueMap;
+import de.bluecolored.bluemap.core.logger.Logger;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A chunk-cache that is bounded by the estimated memory the cached chunks occupy
+ * (see {@link Chunk#estimateMemorySize()}) instead of a fixed amount of chunks.<br>
+ * Multiple caches (e.g. of different worlds) can share one {@link SharedMemoryBudget}, so the memory used by all
+ * of them together doesn't grow with the number of worlds.
+ */
+@DebugDump
+public class ChunkCache implements SharedMemoryBudget.Cache {
+
+    private static final long MIN_MEMORY_BUDGET = 16L * 1024 * 1024;
+
+    /**
+     * The memory-budget that is shared by all chunk-caches that are not created with an explicit budget
+     */
+    public static final SharedMemoryBudget DEFAULT_BUDGET = new SharedMemoryBudget(getDefaultMemoryBudget());
+
+    private final Function<Vector2i, Chunk> loader;
+    private final LoadingCache<Vector2i, Chunk> cache;
+    private final SharedMemoryBudget memoryBudget;
+    private final Map<Vector2i, CompletableFuture<Chunk>> prefetching;
+    private final LongAdder prefetchedChunks;
+
+    private volatile boolean released;
+
+    public ChunkCache(Function<Vector2i, Chunk> loader) {
+        this(loader, DEFAULT_BUDGET);
+    }
+
+    public ChunkCache(Function<Vector2i, Chunk> loader, long memoryBudget) {
+        this(loader, new SharedMemoryBudget(memoryBudget));
+    }
+
+    /**
+     * Creates a chunk-cache that gets an equal share of the given budget with all other caches using the same budget
+     */
+    public ChunkCache(Function<Vector2i, Chunk> loader, SharedMemoryBudget memoryBudget) {
+        this.loader = loader;
+        this.cache = Caffeine.newBuilder()
+                .executor(BlueMap.THREAD_POOL)
+                .maximumWeight(memoryBudget.getMemoryBudget())
+                .weigher((Vector2i pos, Chunk chunk) -> chunk.estimateMemorySize())
+                .expireAfterAccess(1, TimeUnit.MINUTES)
+                .recordStats()
+                .build(this::load);
+        this.memoryBudget = memoryBudget;
+        this.prefetching = new ConcurrentHashMap<>();
+        this.prefetchedChunks = new LongAdder();
+        this.released = false;
+
+        memoryBudget.register(this);
+    }
+
+    public Chunk get(Vector2i pos) {
+        ensureRegistered();
+        return cache.get(pos);
+    }
+
+    /**
+     * Loads the chunk asynchronously into the cache, if it is not already cached.<br>
+     * Prefetched chunks are counted separately and not as cache-misses, so the stats only reflect actual lookups.
+     */
+    public void prefetch(Vector2i pos) {
+        if (cache.asMap().containsKey(pos)) return;
+        ensureRegistered();
+
+        CompletableFuture<Chunk> future = new CompletableFuture<>();
+        if (prefetching.putIfAbsent(pos, future) != null) return;
+
+        BlueMap.THREAD_POOL.execute(() -> {
+            try {
+                if (cache.asMap().containsKey(pos)) {
+                    future.complete(null);
+                    return;
+                }
+
+                Chunk chunk = loader.apply(pos);
+                prefetchedChunks.increment();
+
+                // complete before adding it to the cache, a get waiting on this future blocks that entry until then
+                future.complete(chunk);
+                cache.asMap().putIfAbsent(pos, chunk);
+            } catch (RuntimeException ex) {
+                Logger.global.logDebug("Failed to prefetch chunk " + pos + ": " + ex);
+                future.complete(null);
+            } finally {
+                prefetching.remove(pos, future);
+            }
+        });
+    }
+
+    private Chunk load(Vector2i pos) {
+        // wait for a running prefetch of this chunk instead of loading it a second time
+        CompletableFuture<Chunk> future = prefetching.get(pos);
+        if (future != null) {
+            Chunk chunk = future.join();
+            if (chunk != null) return chunk;
+        }
+
+        return loader.apply(pos);
+    }
+
+    public void invalidate(Vector2i pos) {
+        cache.invalidate(pos);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    /**
+     * Invalidates all cached chunks and gives the share of the memory-budget of this cache to the other caches using
+     * the same budget, until this cache is used again
+     */
+    public void release() {
+        synchronized (this) {
+            if (!released) {
+                memoryBudget.release(this);
+                released = true;
+            }
+        }
+
+        cache.invalidateAll();
+        cache.cleanUp();
+    }
+
+    private void ensureRegistered() {
+        if (!released) return;
+        synchronized (this) {
+            if (!released) return;
+            memoryBudget.register(this);
+            released = false;
+        }
+    }
+
+    @DebugDump
+    public long getMemoryBudget() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.getMaximum())
+                .orElse(0L);
+    }
+
+    @Override
+    public void setMemoryBudget(long memoryBudget) {
+        cache.policy().eviction().ifPresent(eviction -> eviction.setMaximum(memoryBudget));
+    }
+
+    @DebugDump
+    public long getEstimatedMemoryUsage() {
+        return cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0))
+                .orElse(0L);
+    }
+
+    @DebugDump
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    @DebugDump
+    public long getPrefetchCount() {
+        return prefetchedChunks.sum();
+    }
+
+    /**
+     * Returns the default memory-budget (in bytes) for all chunk-caches together, which is an eighth of the maximum heap-size.
+     */
+    public static long getDefaultMemoryBudget() {
+        return Math.max(Runtime.getRuntime().maxMemory() / 8, MIN_MEMORY_BUDGET);
+    }
+
+}
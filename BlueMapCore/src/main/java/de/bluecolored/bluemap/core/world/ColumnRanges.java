@@ -0,0 +1,82 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import java.util.Arrays;
+
+/**
+ * A reusable list of ascending, inclusive y-intervals of a single block-column.<br>
+ * <i>This class is not thread-save!</i>
+ */
+public class ColumnRanges {
+
+    private int[] ranges;
+    private int size;
+
+    public ColumnRanges() {
+        this.ranges = new int[16];
+        this.size = 0;
+    }
+
+    public void clear() {
+        this.size = 0;
+    }
+
+    /**
+     * Adds the interval minY..maxY (inclusive) to the end of this list.<br>
+     * The intervals have to be added in ascending order, an interval that touches or overlaps the previous one is merged into it.
+     */
+    public void add(int minY, int maxY) {
+        if (maxY < minY) return;
+
+        if (size > 0 && minY <= ranges[size * 2 - 1] + 1) {
+            ranges[size * 2 - 1] = Math.max(ranges[size * 2 - 1], maxY);
+            return;
+        }
+
+        if (ranges.length < (size + 1) * 2) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+
+        ranges[size * 2] = minY;
+        ranges[size * 2 + 1] = maxY;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getMinY(int index) {
+        return ranges[index * 2];
+    }
+
+    public int getMaxY(int index) {
+        return ranges[index * 2 + 1];
+    }
+
+}
@@ -69,4 +69,13 @@ public int getMinY(int x, int z) {
     @Override
     public int getOceanFloorY(int x, int z) { return 0; }
 
+    @Override
+    public ColumnRanges getNonEmptyRanges(int x, int z, ColumnRanges target) {
+        target.clear();
+        return target;
+    }
+
+    @Override
+    public int estimateMemorySize() { return 16; }
+
 }
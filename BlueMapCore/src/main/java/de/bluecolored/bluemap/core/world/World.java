@@ -50,6 +50,14 @@ public interface World {
 
     int getMinY(int x, int z);
 
+    /**
+     * Collects the y-intervals of the block-column at x, z that might contain non-air blocks into the target.
+     * @see Chunk#getNonEmptyRanges(int, int, ColumnRanges)
+     */
+    default ColumnRanges getNonEmptyRanges(int x, int z, ColumnRanges target) {
+        return getChunk(x >> 4, z >> 4).getNonEmptyRanges(x, z, target);
+    }
+
     Grid getChunkGrid();
 
     Grid getRegionGrid();
@@ -89,6 +97,21 @@ public interface World {
      * Cleans up invalid cache-entries to free up memory
      */
     void cleanUpChunkCache();
+
+    /**
+     * Releases all cached chunks and regions (and with them any open region-files) of this world.
+     * They are loaded again on demand the next time they are needed.
+     */
+    default void releaseResources() {
+        invalidateChunkCache();
+        cleanUpChunkCache();
+    }
+
+    /**
+     * Hints that the chunks in the given area (chunk-coordinates, inclusive) will be needed soon,
+     * so they can be loaded into the chunk-cache in the background (if there is a cache)
+     */
+    default void prefetchChunks(int minX, int minZ, int maxX, int maxZ) {}
     
     default long getSeed() {
     	return 0;
@@ -0,0 +1,139 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MapRenderStateTest {
+
+    @Test
+    public void testSetAndGet() {
+        MapRenderState state = new MapRenderState();
+        for (int i = 0; i < 5000; i++) {
+            state.setRenderTime(new Vector2i(i - 2500, 7 - i), i);
+        }
+        state.setRenderTime(new Vector2i(-2500, 7), 42);
+
+        assertEquals(5000, state.size());
+        assertEquals(42, state.getRenderTime(new Vector2i(-2500, 7)));
+        assertEquals(1234, state.getRenderTime(new Vector2i(1234 - 2500, 7 - 1234)));
+        assertEquals(-1, state.getRenderTime(new Vector2i(0, 0)));
+        assertEquals(4999, state.getLatestRenderTime());
+
+        state.setRenderTime(new Vector2i(4999 - 2500, 7 - 4999), 10);
+        assertEquals(4998, state.getLatestRenderTime());
+    }
+
+    @Test
+    public void testSaveAndLoadJournal() throws IOException {
+        MapRenderState state = new MapRenderState();
+        state.setRenderTime(new Vector2i(1, 2), 100);
+        state.setRenderTime(new Vector2i(-3, 4), 200);
+
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        state.save(saved);
+        assertFalse(state.isModified());
+        assertEquals(0, state.getJournalSize());
+
+        state.setRenderTime(new Vector2i(1, 2), 300);
+        state.setRenderTime(new Vector2i(5, -6), 400);
+        assertTrue(state.isModified());
+        assertFalse(state.isCompactionDue());
+        assertEquals(2, state.getJournalSize());
+
+        ByteArrayOutputStream journal = new ByteArrayOutputStream();
+        state.saveJournal(journal);
+        assertFalse(state.isModified());
+        assertEquals(2, state.getJournalSize());
+
+        MapRenderState loaded = new MapRenderState();
+        loaded.load(new ByteArrayInputStream(saved.toByteArray()));
+        assertEquals(100, loaded.getRenderTime(new Vector2i(1, 2)));
+
+        loaded.loadJournal(new ByteArrayInputStream(journal.toByteArray()));
+        assertEquals(3, loaded.size());
+        assertEquals(300, loaded.getRenderTime(new Vector2i(1, 2)));
+        assertEquals(200, loaded.getRenderTime(new Vector2i(-3, 4)));
+        assertEquals(400, loaded.getRenderTime(new Vector2i(5, -6)));
+        assertEquals(400, loaded.getLatestRenderTime());
+        assertFalse(loaded.isModified());
+    }
+
+    @Test
+    public void testCompaction() {
+        MapRenderState state = new MapRenderState();
+        assertFalse(state.isModified());
+
+        state.reset();
+        assertTrue(state.isCompactionDue());
+
+        for (int i = 0; i < 2000; i++) {
+            state.setRenderTime(new Vector2i(i, i), i);
+        }
+        assertTrue(state.isCompactionDue());
+    }
+
+    @Test
+    public void testResetWhileSavingKeepsCompactionDue() throws Exception {
+        MapRenderState state = new MapRenderState();
+        CyclicBarrier start = new CyclicBarrier(2);
+
+        for (int i = 0; i < 200; i++) {
+            for (int j = 0; j < 10000; j++) {
+                state.setRenderTime(new Vector2i(j, -j), j);
+            }
+            ByteArrayOutputStream saved = new ByteArrayOutputStream();
+
+            CompletableFuture<Void> reset = CompletableFuture.runAsync(() -> {
+                try {
+                    start.await();
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+                state.reset();
+            });
+            start.await();
+            state.save(saved);
+            reset.join();
+
+            // the saved state can only be trusted if it doesn't have to be saved completely again
+            if (!state.isCompactionDue()) {
+                MapRenderState loaded = new MapRenderState();
+                loaded.load(new ByteArrayInputStream(saved.toByteArray()));
+                assertEquals(state.size(), loaded.size());
+            }
+        }
+    }
+
+}
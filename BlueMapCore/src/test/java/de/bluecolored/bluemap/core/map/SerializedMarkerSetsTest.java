@@ -0,0 +1,77 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import de.bluecolored.bluemap.api.markers.MarkerSet;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SerializedMarkerSetsTest {
+
+    @Test
+    public void testIndexRoundtrip() throws IOException {
+        Map<String, MarkerSet> markerSets = new HashMap<>();
+        markerSets.put("a", new MarkerSet("Set A"));
+        markerSets.put("b", new MarkerSet("Set B"));
+
+        SerializedMarkerSets serialized = SerializedMarkerSets.serialize(markerSets);
+        StringWriter index = new StringWriter();
+        serialized.writeIndex(index);
+
+        // the index is enough to tell that nothing changed, e.g. after a restart
+        SerializedMarkerSets stored = SerializedMarkerSets.readIndex(new StringReader(index.toString()));
+        assertTrue(serialized.isEqual(stored));
+        assertEquals(serialized.getETag("a"), stored.getETag("a"));
+
+        markerSets.get("b").setLabel("Set B2");
+        markerSets.remove("a");
+        SerializedMarkerSets changed = SerializedMarkerSets.serialize(markerSets, stored);
+        assertFalse(changed.isEqual(stored));
+        assertTrue(changed.isChanged("b", stored));
+        assertTrue(stored.getIds().contains("a"));
+        assertNull(changed.getJson("a"));
+        assertTrue(changed.getJson("b").contains("Set B2"));
+    }
+
+    @Test
+    public void testReuseUnchangedJson() {
+        Map<String, MarkerSet> markerSets = new HashMap<>();
+        markerSets.put("a", new MarkerSet("Set A"));
+
+        SerializedMarkerSets first = SerializedMarkerSets.serialize(markerSets);
+        SerializedMarkerSets second = SerializedMarkerSets.serialize(markerSets, first);
+        assertTrue(second.isEqual(first));
+        assertSame(first.getJson("a"), second.getJson("a"));
+        assertFalse(second.isChanged("a", first));
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.map.hires.HiresTileModel;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileContentHashesTest {
+
+    @Test
+    public void testUpdateAndRemove() {
+        TileContentHashes hashes = new TileContentHashes();
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(hashes.update(i % 3 - 1, new Vector2i(i, -i), i));
+        }
+        assertEquals(5000, hashes.size());
+
+        for (int i = 0; i < 5000; i++) {
+            assertFalse(hashes.update(i % 3 - 1, new Vector2i(i, -i), i));
+        }
+
+        for (int i = 0; i < 5000; i += 2) {
+            hashes.remove(i % 3 - 1, new Vector2i(i, -i));
+        }
+        assertEquals(2500, hashes.size());
+
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i % 2 == 0, hashes.update(i % 3 - 1, new Vector2i(i, -i), i));
+        }
+    }
+
+    @Test
+    public void testWriteSkipsUnchanged() throws IOException {
+        TileContentHashes hashes = new TileContentHashes();
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        Vector2i tile = new Vector2i(3, 7);
+
+        assertTrue(hashes.write(0, tile, out -> out.write(new byte[] {1, 2, 3}), () -> target));
+        assertFalse(hashes.write(0, tile, out -> out.write(new byte[] {1, 2, 3}), () -> target));
+        assertTrue(hashes.write(0, tile, out -> out.write(new byte[] {1, 2, 4}), () -> target));
+        assertArrayEquals(new byte[] {1, 2, 3, 1, 2, 4}, target.toByteArray());
+    }
+
+    @Test
+    public void testHashIsOnlyStoredAfterWrite() throws IOException {
+        TileContentHashes hashes = new TileContentHashes();
+        Vector2i tile = new Vector2i(3, 7);
+
+        // hashes saved while the tile is written don't contain it yet
+        ByteArrayOutputStream saved = new ByteArrayOutputStream();
+        assertTrue(hashes.write(0, tile, out -> out.write(new byte[] {1, 2, 3}), () -> {
+            hashes.save(saved);
+            return new ByteArrayOutputStream();
+        }));
+        TileContentHashes loaded = new TileContentHashes();
+        loaded.load(new ByteArrayInputStream(saved.toByteArray()));
+        assertEquals(0, loaded.size());
+        assertEquals(1, hashes.size());
+
+        // a failed write doesn't store the hash
+        assertThrows(IOException.class, () -> hashes.write(0, tile, out -> out.write(new byte[] {4, 5, 6}), () -> {
+            throw new IOException("failed");
+        }));
+        assertEquals(0, hashes.size());
+        assertTrue(hashes.write(0, tile, out -> out.write(new byte[] {4, 5, 6}), ByteArrayOutputStream::new));
+    }
+
+    @Test
+    public void testHiresModelEncodesDeterministic() throws IOException {
+        HiresTileModel model = new HiresTileModel(10);
+        int face = model.add(1);
+        model.setPositions(face, 0, 0, 0, 1, 0, 0, 0, 0, 1);
+        model.setColor(face, 1f, 0.5f, 0.25f);
+        model.setSunlight(face, 15);
+
+        TileContentHashes hashes = new TileContentHashes();
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        Vector2i tile = new Vector2i(1, 1);
+
+        assertTrue(hashes.write(0, tile, model::writeBufferGeometryJson, () -> target));
+        assertFalse(hashes.write(0, tile, model::writeBufferGeometryJson, () -> target));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws IOException {
+        TileContentHashes hashes = new TileContentHashes();
+        hashes.update(1, new Vector2i(-5, 12), 42);
+        hashes.update(-1, new Vector2i(8, -3), -7);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hashes.save(out);
+        assertFalse(hashes.isModified());
+
+        TileContentHashes loaded = new TileContentHashes();
+        loaded.load(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(2, loaded.size());
+        assertFalse(loaded.update(1, new Vector2i(-5, 12), 42));
+        assertFalse(loaded.update(-1, new Vector2i(8, -3), -7));
+    }
+
+    @Test
+    public void testLazyLoadAndUnload() throws IOException {
+        TileContentHashes hashes = new TileContentHashes();
+        hashes.update(0, new Vector2i(1, 2), 3);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        hashes.save(out);
+
+        AtomicInteger loads = new AtomicInteger();
+        TileContentHashes lazy = new TileContentHashes(() -> {
+            loads.incrementAndGet();
+            return Optional.of(new ByteArrayInputStream(out.toByteArray()));
+        });
+        assertEquals(0, loads.get());
+        assertFalse(lazy.update(0, new Vector2i(1, 2), 3));
+        assertEquals(1, loads.get());
+
+        assertTrue(lazy.update(0, new Vector2i(4, 5), 6));
+        assertFalse(lazy.unload());
+
+        lazy.save(new ByteArrayOutputStream());
+        assertTrue(lazy.unload());
+        assertEquals(1, lazy.size());
+        assertEquals(2, loads.get());
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TileWritePipelineTest {
+
+    @Test
+    public void testFlushWaitsForAllWrites() throws IOException {
+        AtomicInteger written = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        try (TileWritePipeline pipeline = new TileWritePipeline(2, 2, 4)) {
+            for (int i = 0; i < 100; i++) {
+                final int value = i;
+                pipeline.submit(
+                        () -> {
+                            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                            return value;
+                        },
+                        encoded -> {
+                            Thread.onSpinWait();
+                            inFlight.decrementAndGet();
+                            written.incrementAndGet();
+                        }
+                );
+            }
+
+            pipeline.flush();
+            assertEquals(100, written.get());
+            assertEquals(0, pipeline.getInFlightCount());
+            assertTrue(maxInFlight.get() <= 4);
+        }
+    }
+
+    @Test
+    public void testFailuresCompleteExceptionally() throws InterruptedException {
+        TileWritePipeline pipeline = TileWritePipeline.SYNCHRONOUS;
+        CompletableFuture<Void> future = pipeline.submit(() -> 1, encoded -> { throw new IOException("test"); });
+
+        ExecutionException ex = assertThrows(ExecutionException.class, future::get);
+        assertTrue(ex.getCause() instanceof IOException);
+    }
+
+}
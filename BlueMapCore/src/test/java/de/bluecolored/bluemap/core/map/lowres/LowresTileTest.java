@@ -0,0 +1,78 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.map.lowres;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.util.math.Color;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LowresTileTest {
+
+    private static final Vector2i TILE_SIZE = new Vector2i(16, 16);
+
+    @Test
+    public void testMergeKeepsForeignChanges() throws IOException {
+        LowresTile original = new LowresTile(TILE_SIZE);
+        original.set(1, 1, new Color().set(0xFF000000), 10, 0);
+        byte[] stored = save(original);
+
+        // two instances load the same tile and change different pixels
+        LowresTile own = new LowresTile(TILE_SIZE, new ByteArrayInputStream(stored), true);
+        LowresTile foreign = new LowresTile(TILE_SIZE, new ByteArrayInputStream(stored), true);
+        own.set(2, 2, new Color().set(0xFFFF0000), 20, 5);
+        foreign.set(3, 3, new Color().set(0xFF00FF00), 30, 0);
+
+        // the foreign instance saves first, our tile is merged onto its version
+        byte[] foreignStored = save(foreign);
+        assertTrue(own.merge(new ByteArrayInputStream(foreignStored)));
+
+        assertEquals(10, own.getHeight(1, 1));
+        assertEquals(20, own.getHeight(2, 2));
+        assertEquals(5, own.getBlockLight(2, 2));
+        assertEquals(30, own.getHeight(3, 3));
+        assertEquals(0xFF00FF00, own.getColor(3, 3, new Color()).getInt());
+
+        // nothing to write if the stored tile already contains all changes
+        byte[] merged = save(own);
+        own.set(2, 2, new Color().set(0xFF0000FF), 20, 5);
+        own.set(2, 2, new Color().set(0xFFFF0000), 20, 5);
+        assertTrue(own.isDirty());
+        assertFalse(own.merge(new ByteArrayInputStream(merged)));
+        assertFalse(own.isDirty());
+    }
+
+    private static byte[] save(LowresTile tile) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        tile.save(out);
+        return out.toByteArray();
+    }
+
+}
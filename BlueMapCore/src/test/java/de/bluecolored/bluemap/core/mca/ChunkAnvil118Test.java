@@ -0,0 +1,128 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.ColumnRanges;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ChunkAnvil118Test {
+
+    @TempDir
+    static Path worldFolder;
+
+    private static MCAWorld world;
+
+    @BeforeAll
+    public static void createWorld() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(Files.newOutputStream(worldFolder.resolve("level.dat"))))) {
+            out.writeByte(10); out.writeUTF("");
+            out.writeByte(10); out.writeUTF("Data");
+            out.writeByte(8); out.writeUTF("LevelName"); out.writeUTF("test");
+            out.writeByte(3); out.writeUTF("SpawnX"); out.writeInt(0);
+            out.writeByte(3); out.writeUTF("SpawnY"); out.writeInt(64);
+            out.writeByte(3); out.writeUTF("SpawnZ"); out.writeInt(0);
+            out.writeByte(0);
+            out.writeByte(0);
+        }
+
+        world = new MCAWorld(worldFolder, 15, false);
+    }
+
+    @Test
+    public void testNonEmptyRangesOverworld() throws IOException {
+        MCAChunk chunk = createChunk(-64, 5);
+
+        assertEquals(-59, chunk.getWorldSurfaceY(0, 0));
+
+        ColumnRanges ranges = chunk.getNonEmptyRanges(0, 0, new ColumnRanges());
+        assertEquals(1, ranges.size());
+        assertEquals(-64, ranges.getMinY(0));
+        assertEquals(-60, ranges.getMaxY(0));
+    }
+
+    @Test
+    public void testNonEmptyRangesMinYZero() throws IOException {
+        MCAChunk chunk = createChunk(0, 5);
+
+        assertEquals(5, chunk.getWorldSurfaceY(0, 0));
+
+        ColumnRanges ranges = chunk.getNonEmptyRanges(0, 0, new ColumnRanges());
+        assertEquals(1, ranges.size());
+        assertEquals(0, ranges.getMinY(0));
+        assertEquals(4, ranges.getMaxY(0));
+    }
+
+    /**
+     * Creates a full 1.18 chunk of a dimension with the given min-y, with 4 sections of which only the lowest one
+     * contains (stone) blocks, and a world-surface heightmap with the given value in all columns.
+     */
+    private static MCAChunk createChunk(int worldMinY, int heightmapValue) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(10); out.writeUTF(""); // root
+        out.writeByte(3); out.writeUTF("DataVersion"); out.writeInt(2975);
+        out.writeByte(8); out.writeUTF("Status"); out.writeUTF("minecraft:full");
+
+        long[] heights = new long[37];
+        for (int i = 0; i < 256; i++) heights[i / 7] |= (long) heightmapValue << ((i % 7) * 9);
+        out.writeByte(10); out.writeUTF("Heightmaps");
+        out.writeByte(12); out.writeUTF("WORLD_SURFACE"); out.writeInt(heights.length);
+        for (long height : heights) out.writeLong(height);
+        out.writeByte(0);
+
+        int minSection = worldMinY >> 4;
+        out.writeByte(9); out.writeUTF("sections"); out.writeByte(10); out.writeInt(5);
+
+        // light-only section below the world
+        out.writeByte(1); out.writeUTF("Y"); out.writeByte(minSection - 1);
+        out.writeByte(0);
+
+        for (int y = minSection; y < minSection + 4; y++) {
+            out.writeByte(1); out.writeUTF("Y"); out.writeByte(y);
+            out.writeByte(10); out.writeUTF("block_states");
+            out.writeByte(9); out.writeUTF("palette"); out.writeByte(10); out.writeInt(1);
+            out.writeByte(8); out.writeUTF("Name"); out.writeUTF(y == minSection ? "minecraft:stone" : "minecraft:air");
+            out.writeByte(0);
+            out.writeByte(0);
+            out.writeByte(0);
+        }
+
+        out.writeByte(0); // end root
+        out.flush();
+
+        return MCAChunk.create(world, NBTChunkReader.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class MCAMathTest {
+
+    @Test
+    public void testUnpackLongArray() {
+        Random random = new Random(0);
+        for (int bitsPerValue = 4; bitsPerValue <= 12; bitsPerValue++) {
+            long[] data = new long[(int) Math.ceil(4096.0 / (64 / bitsPerValue))];
+            for (int i = 0; i < data.length; i++) data[i] = random.nextLong();
+
+            short[] unpacked = MCAMath.unpackLongArray(data, 4096, bitsPerValue);
+            for (int i = 0; i < 4096; i++) {
+                assertEquals(MCAMath.getValueFromLongArray(data, i, bitsPerValue), unpacked[i] & 0xFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void testUnpackLongStream() {
+        Random random = new Random(0);
+        for (int bitsPerValue = 4; bitsPerValue <= 12; bitsPerValue++) {
+            long[] data = new long[4096 * bitsPerValue / 64];
+            for (int i = 0; i < data.length; i++) data[i] = random.nextLong();
+
+            short[] unpacked = MCAMath.unpackLongStream(data, 4096, bitsPerValue);
+            for (int i = 0; i < 4096; i++) {
+                assertEquals(MCAMath.getValueFromLongStream(data, i, bitsPerValue), unpacked[i] & 0xFFFF);
+            }
+        }
+    }
+
+    @Test
+    public void testUnpackZeroBitsPerValue() {
+        assertArrayEquals(new short[4096], MCAMath.unpackLongArray(new long[0], 4096, 0));
+        assertArrayEquals(new short[4096], MCAMath.unpackLongStream(new long[0], 4096, 0));
+    }
+
+    @Test
+    public void testUnpackLight() {
+        Random random = new Random(0);
+        byte[] skyLight = new byte[2048];
+        byte[] blockLight = new byte[2048];
+        random.nextBytes(skyLight);
+        random.nextBytes(blockLight);
+
+        byte[] light = MCAMath.unpackLight(skyLight, blockLight, 4096);
+        for (int i = 0; i < 4096; i++) {
+            boolean largeHalf = (i & 0x1) != 0;
+            assertEquals(MCAMath.getByteHalf(skyLight[i >> 1], largeHalf), (light[i] >> 4) & 0xF);
+            assertEquals(MCAMath.getByteHalf(blockLight[i >> 1], largeHalf), light[i] & 0xF);
+        }
+
+        byte[] noBlockLight = MCAMath.unpackLight(skyLight, new byte[0], 4096);
+        for (int i = 0; i < 4096; i++) {
+            assertEquals(0, noBlockLight[i] & 0xF);
+        }
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.mca;
+
+import de.bluecolored.bluemap.core.world.BlockState;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NBTChunkReaderTest {
+
+    @Test
+    public void testReadSections118() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(10); out.writeUTF(""); // root
+        out.writeByte(3); out.writeUTF("DataVersion"); out.writeInt(2975);
+        out.writeByte(8); out.writeUTF("Status"); out.writeUTF("minecraft:full");
+
+        // unused list that needs to be skipped
+        out.writeByte(9); out.writeUTF("block_entities"); out.writeByte(10); out.writeInt(1);
+        out.writeByte(8); out.writeUTF("id"); out.writeUTF("minecraft:chest");
+        out.writeByte(0);
+
+        out.writeByte(9); out.writeUTF("sections"); out.writeByte(10); out.writeInt(1);
+        out.writeByte(1); out.writeUTF("Y"); out.writeByte(-4);
+        out.writeByte(10); out.writeUTF("block_states");
+        out.writeByte(9); out.writeUTF("palette"); out.writeByte(10); out.writeInt(2);
+        out.writeByte(8); out.writeUTF("Name"); out.writeUTF("minecraft:air");
+        out.writeByte(0);
+        out.writeByte(8); out.writeUTF("Name"); out.writeUTF("minecraft:oak_log");
+        out.writeByte(10); out.writeUTF("Properties");
+        out.writeByte(8); out.writeUTF("Axis"); out.writeUTF("Y");
+        out.writeByte(0);
+        out.writeByte(0);
+        out.writeByte(12); out.writeUTF("data"); out.writeInt(2); out.writeLong(1L); out.writeLong(2L);
+        out.writeByte(0);
+        out.writeByte(10); out.writeUTF("biomes");
+        out.writeByte(9); out.writeUTF("palette"); out.writeByte(8); out.writeInt(1); out.writeUTF("minecraft:plains");
+        out.writeByte(0);
+        out.writeByte(7); out.writeUTF("SkyLight"); out.writeInt(2048); out.write(new byte[2048]);
+        out.writeByte(0);
+
+        out.writeByte(0); // end root
+        out.flush();
+
+        ChunkData chunkData = NBTChunkReader.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals(2975, chunkData.getTag().getInt("DataVersion"));
+        assertEquals("minecraft:full", chunkData.getTag().getString("Status"));
+        assertFalse(chunkData.getTag().containsKey("sections"));
+        assertFalse(chunkData.getTag().containsKey("block_entities"));
+
+        ChunkSectionData[] sections = chunkData.getSections();
+        assertNotNull(sections);
+        assertEquals(1, sections.length);
+
+        ChunkSectionData section = sections[0];
+        assertEquals(-4, section.getSectionY());
+        assertArrayEquals(new long[]{ 1L, 2L }, section.getBlockStates());
+        assertEquals(2, section.getBlockPalette().length);
+        assertSame(BlockState.AIR, section.getBlockPalette()[0]);
+        assertEquals("minecraft:oak_log", section.getBlockPalette()[1].getFormatted());
+        assertEquals("y", section.getBlockPalette()[1].getProperties().get("axis"));
+        assertArrayEquals(new String[]{ "minecraft:plains" }, section.getBiomePalette());
+        assertEquals(2048, section.getSkyLight().length);
+        assertEquals(0, section.getBlockLight().length);
+    }
+
+    @Test
+    public void testReadLegacySections() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(10); out.writeUTF(""); // root
+        out.writeByte(3); out.writeUTF("DataVersion"); out.writeInt(2586);
+        out.writeByte(10); out.writeUTF("Level");
+        out.writeByte(8); out.writeUTF("Status"); out.writeUTF("full");
+        out.writeByte(9); out.writeUTF("Sections"); out.writeByte(10); out.writeInt(2);
+        out.writeByte(1); out.writeUTF("Y"); out.writeByte(-1);
+        out.writeByte(0);
+        out.writeByte(1); out.writeUTF("Y"); out.writeByte(3);
+        out.writeByte(9); out.writeUTF("Palette"); out.writeByte(10); out.writeInt(1);
+        out.writeByte(8); out.writeUTF("Name"); out.writeUTF("minecraft:stone");
+        out.writeByte(0);
+        out.writeByte(12); out.writeUTF("BlockStates"); out.writeInt(1); out.writeLong(42L);
+        out.writeByte(0);
+        out.writeByte(0); // end level
+
+        out.writeByte(0); // end root
+        out.flush();
+
+        ChunkData chunkData = NBTChunkReader.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertEquals("full", chunkData.getTag().getCompoundTag("Level").getString("Status"));
+        assertFalse(chunkData.getTag().getCompoundTag("Level").containsKey("Sections"));
+
+        ChunkSectionData[] sections = chunkData.getSections();
+        assertNotNull(sections);
+        assertEquals(2, sections.length);
+
+        assertEquals(-1, sections[0].getSectionY());
+        assertNull(sections[0].getBlockPalette());
+
+        assertEquals(3, sections[1].getSectionY());
+        assertEquals(new BlockState("minecraft:stone"), sections[1].getBlockPalette()[0]);
+        assertArrayEquals(new long[]{ 42L }, sections[1].getBlockStates());
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.resources.resourcepack;
+
+import de.bluecolored.bluemap.core.resources.ResourcePath;
+import de.bluecolored.bluemap.core.resources.resourcepack.blockmodel.BlockModel;
+import de.bluecolored.bluemap.core.resources.resourcepack.texture.Texture;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResourcePackCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testLoadFromCache() throws IOException {
+        Path root = tempDir.resolve("pack");
+        Path cacheFile = tempDir.resolve("resources.cache");
+        createPack(root);
+
+        ResourcePack loaded = new ResourcePack();
+        loaded.loadResources(List.of(root), cacheFile);
+        assertTrue(Files.isRegularFile(cacheFile));
+
+        // change the content of a model, but keep its size and last-modified time, so the cache is still valid
+        Path modelFile = root.resolve("assets/minecraft/models/block/stone.json");
+        FileTime lastModified = Files.getLastModifiedTime(modelFile);
+        Files.writeString(modelFile, "{\"textures\":{\"all\":\"minecraft:block/stonf\"}}");
+        Files.setLastModifiedTime(modelFile, lastModified);
+
+        // .. so the resources are loaded from the cache, and not from the pack
+        ResourcePack cached = new ResourcePack();
+        cached.loadResources(List.of(root), cacheFile);
+        assertEquals(loaded.getBlockStates().keySet(), cached.getBlockStates().keySet());
+        assertEquals(loaded.getBlockModels().keySet(), cached.getBlockModels().keySet());
+        assertEquals(loaded.getTextures().keySet(), cached.getTextures().keySet());
+
+        BlockModel model = cached.getBlockModels().get(new ResourcePath<BlockModel>("minecraft:block/stone"));
+        assertNotNull(model);
+        assertEquals(new ResourcePath<Texture>("minecraft:block/stone"), model.getTextures().get("all").getTexturePath());
+        assertEquals(0.3f, cached.getBiome("test:dry").getHumidity());
+        assertEquals(0.7f, cached.getBiome("minecraft:wet").getHumidity());
+
+        // a changed pack invalidates the cache
+        Files.writeString(modelFile, "{\"textures\":{\"all\":\"minecraft:block/stonf\"}} ");
+        ResourcePack reloaded = new ResourcePack();
+        reloaded.loadResources(List.of(root), cacheFile);
+        assertNotEquals(new ResourcePath<Texture>("minecraft:block/stone"), reloaded.getBlockModels()
+                .get(new ResourcePath<BlockModel>("minecraft:block/stone")).getTextures().get("all").getTexturePath());
+    }
+
+    private static void createPack(Path root) throws IOException {
+        Path assets = root.resolve("assets").resolve("minecraft");
+        write(assets.resolve("blockstates/stone.json"), "{\"variants\":{\"\":{\"model\":\"minecraft:block/stone\"}}}");
+        write(assets.resolve("models/block/stone.json"), "{\"textures\":{\"all\":\"minecraft:block/stone\"}}");
+        write(assets.resolve("biomes.json"), "{\"minecraft:wet\":{\"humidity\":0.7}}");
+        write(root.resolve("data/test/worldgen/biome/dry.json"), "{\"downfall\":0.3}");
+
+        writeImage(assets.resolve("textures/block/stone.png"), 16);
+        writeImage(assets.resolve("textures/colormap/foliage.png"), 256);
+        writeImage(assets.resolve("textures/colormap/grass.png"), 256);
+    }
+
+    private static void write(Path file, String content) throws IOException {
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+    }
+
+    private static void writeImage(Path file, int size) throws IOException {
+        Files.createDirectories(file.getParent());
+        ImageIO.write(new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB), "png", file.toFile());
+    }
+
+}
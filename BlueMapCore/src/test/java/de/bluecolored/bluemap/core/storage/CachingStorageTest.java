@@ -0,0 +1,226 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.file.FileStorage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingStorageTest {
+
+    private static final Vector2i TILE = new Vector2i(1, -2);
+
+    @TempDir
+    Path tempDir;
+
+    private HookedStorage storage;
+    private CachingStorage cache;
+
+    @BeforeEach
+    public void setup() {
+        storage = new HookedStorage(tempDir);
+        cache = new CachingStorage(storage, 1024 * 1024, 60000);
+    }
+
+    @Test
+    public void testWriteInvalidates() throws IOException {
+        write(cache, "a", "old");
+        assertEquals("old", read(cache, "a"));
+        assertEquals("old", read(cache, "a"));
+        assertEquals(1, cache.getHitCount());
+
+        write(cache, "a", "new");
+        assertEquals("new", read(cache, "a"));
+        assertEquals("new", readBatch(cache, "a"));
+    }
+
+    @Test
+    public void testWriteDuringReadIsNotCachedStale() throws IOException {
+        write(cache, "a", "old");
+
+        // the stale data has been read from the storage when the tile is written
+        storage.afterRead = () -> write(cache, "a", "new");
+        assertEquals("old", read(cache, "a"));
+        assertEquals("new", read(cache, "a"));
+        assertEquals("new", readBatch(cache, "a"));
+    }
+
+    @Test
+    public void testBatchWriteDuringReadIsNotCachedStale() throws IOException {
+        write(cache, "a", "old");
+
+        storage.afterRead = () -> write(cache, "a", "new");
+        assertEquals("old", readBatch(cache, "a"));
+        assertEquals("new", readBatch(cache, "a"));
+        assertEquals("new", read(cache, "a"));
+    }
+
+    @Test
+    public void testAbsentTileIsDroppedOnWrite() throws IOException {
+        assertNull(read(cache, "a"));
+        assertNull(readBatch(cache, "a"));
+        assertTrue(cache.readMapTileInfo("a", 0, TILE).isEmpty());
+
+        write(cache, "a", "new");
+        assertEquals("new", read(cache, "a"));
+        assertTrue(cache.readMapTileInfo("a", 0, TILE).isPresent());
+    }
+
+    @Test
+    public void testAbsentTileIsDroppedOnBatchRead() throws IOException {
+        assertNull(readBatch(cache, "a"));
+
+        write(cache, "a", "new");
+        assertEquals("new", readBatch(cache, "a"));
+    }
+
+    @Test
+    public void testPurgeOnlyEvictsPurgedMap() throws IOException {
+        write(cache, "a", "tile a");
+        write(cache, "b", "tile b");
+        assertEquals("tile a", read(cache, "a"));
+        assertEquals("tile b", read(cache, "b"));
+
+        cache.purgeMap("a", progress -> true);
+
+        long hits = cache.getHitCount();
+        assertEquals("tile b", read(cache, "b"));
+        assertEquals(hits + 1, cache.getHitCount());
+
+        assertNull(read(cache, "a"));
+        assertEquals(hits + 1, cache.getHitCount());
+    }
+
+    @Test
+    public void testTileInfoMatchesData() throws IOException {
+        write(cache, "a", "old");
+        assertEquals("old", read(cache, "a"));
+
+        // changed by another process, so the cache doesn't notice it
+        write(storage, "a", "a newer version");
+
+        TileInfo tileInfo = cache.readMapTileInfo("a", 0, TILE).orElseThrow();
+        try (InputStream in = tileInfo.readMapTile().decompress()) {
+            assertEquals(tileInfo.getSize(), in.readAllBytes().length);
+        }
+    }
+
+    @Test
+    public void testBatchTileInfosMatchData() throws IOException {
+        write(cache, "a", "old");
+        assertEquals("old", readBatch(cache, "a"));
+
+        write(storage, "a", "a newer version");
+
+        TileInfo tileInfo = cache.readMapTileInfos("a", 0, List.of(TILE)).get(TILE);
+        try (InputStream in = tileInfo.readMapTile().decompress()) {
+            assertEquals(tileInfo.getSize(), in.readAllBytes().length);
+        }
+    }
+
+    private static void write(Storage storage, String mapId, String data) throws IOException {
+        try (OutputStream out = storage.writeMapTile(mapId, 0, TILE)) {
+            out.write(data.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String read(Storage storage, String mapId) throws IOException {
+        Optional<CompressedInputStream> in = storage.readMapTile(mapId, 0, TILE);
+        if (in.isEmpty()) return null;
+        try (InputStream data = in.get().decompress()) {
+            return new String(data.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String readBatch(Storage storage, String mapId) throws IOException {
+        List<String> read = new ArrayList<>();
+        storage.readMapTiles(mapId, 0, List.of(TILE), (tile, data) -> {
+            assertEquals(TILE, tile);
+            read.add(new String(data.decompress().readAllBytes(), StandardCharsets.UTF_8));
+        });
+        assertTrue(read.size() <= 1);
+        return read.isEmpty() ? null : read.get(0);
+    }
+
+    /**
+     * A file-storage that can run an action after the data of a tile has been read, but before it is returned
+     */
+    private static class HookedStorage extends FileStorage {
+
+        private IOAction afterRead;
+
+        public HookedStorage(Path root) {
+            super(root, Compression.NONE);
+        }
+
+        @Override
+        public Optional<CompressedInputStream> readMapTile(String mapId, int lod, Vector2i tile) throws IOException {
+            Optional<CompressedInputStream> in = super.readMapTile(mapId, lod, tile);
+            if (in.isEmpty()) return in;
+
+            byte[] data;
+            try (CompressedInputStream compressedIn = in.get()) {
+                data = compressedIn.readAllBytes();
+            }
+            runAfterRead();
+            return Optional.of(new CompressedInputStream(new ByteArrayInputStream(data), Compression.NONE));
+        }
+
+        @Override
+        public void readMapTiles(String mapId, int lod, Collection<Vector2i> tiles, TileConsumer consumer) throws IOException {
+            Map<Vector2i, byte[]> read = new HashMap<>();
+            super.readMapTiles(mapId, lod, tiles, (tile, data) -> read.put(tile, data.readAllBytes()));
+            runAfterRead();
+            for (Map.Entry<Vector2i, byte[]> entry : read.entrySet()) {
+                consumer.accept(entry.getKey(), new CompressedInputStream(new ByteArrayInputStream(entry.getValue()), Compression.NONE));
+            }
+        }
+
+        private void runAfterRead() throws IOException {
+            IOAction action = afterRead;
+            afterRead = null;
+            if (action != null) action.run();
+        }
+
+    }
+
+    @FunctionalInterface
+    private interface IOAction {
+        void run() throws IOException;
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.file.FileStorage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressionDictionariesTest {
+
+    @Test
+    public void testTrainAndRoundtrip() throws IOException {
+        Random random = new Random(0);
+        List<byte[]> samples = new ArrayList<>();
+        for (int i = 0; i < CompressionDictionaries.SAMPLE_COUNT; i++) {
+            samples.add(createSample(random));
+        }
+
+        byte[] dictionary = CompressionDictionaries.train(samples, CompressionDictionaries.DICTIONARY_SIZE);
+        assertTrue(dictionary.length > 0);
+        assertTrue(dictionary.length <= CompressionDictionaries.DICTIONARY_SIZE);
+
+        byte[] data = createSample(random);
+        byte[] withDictionary = compress(data, dictionary);
+        byte[] withoutDictionary = compress(data, null);
+        assertTrue(withDictionary.length < withoutDictionary.length);
+
+        assertArrayEquals(data, Compression.DEFLATE_DICT.decompress(new ByteArrayInputStream(withDictionary), dictionary).readAllBytes());
+        assertArrayEquals(data, Compression.DEFLATE_DICT.decompress(new ByteArrayInputStream(withoutDictionary), dictionary).readAllBytes());
+        assertThrows(IOException.class, () -> Compression.DEFLATE_DICT.decompress(new ByteArrayInputStream(withDictionary), (byte[]) null));
+    }
+
+    @Test
+    public void testDictionaryOfOtherProcessIsReadable(@TempDir Path root) throws IOException, InterruptedException {
+        FileStorage writer = new FileStorage(root, Compression.DEFLATE_DICT);
+        FileStorage reader = new FileStorage(root, Compression.DEFLATE_DICT);
+
+        // the reader checks for a dictionary before the writer trained one
+        Random random = new Random(0);
+        byte[] first = createSample(random);
+        writeTile(writer, new Vector2i(0, 0), first);
+        assertArrayEquals(first, readTile(reader, new Vector2i(0, 0)));
+
+        for (int i = 1; i < CompressionDictionaries.SAMPLE_COUNT; i++) {
+            writeTile(writer, new Vector2i(i, 0), createSample(random));
+        }
+
+        // wait until the writer compresses with the trained dictionary (flagged in the zlib-header)
+        byte[] data = createSample(random);
+        long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        do {
+            Thread.sleep(10);
+            writeTile(writer, new Vector2i(0, 1), data);
+        } while (!usesDictionary(writer, new Vector2i(0, 1)) && System.nanoTime() < timeout);
+        assertTrue(usesDictionary(writer, new Vector2i(0, 1)));
+
+        assertArrayEquals(data, readTile(reader, new Vector2i(0, 1)));
+    }
+
+    private static void writeTile(FileStorage storage, Vector2i tile, byte[] data) throws IOException {
+        try (OutputStream out = storage.writeMapTile("map", 0, tile)) {
+            out.write(data);
+        }
+    }
+
+    private static boolean usesDictionary(FileStorage storage, Vector2i tile) throws IOException {
+        try (CompressedInputStream in = storage.readMapTile("map", 0, tile).orElseThrow()) {
+            return (in.readAllBytes()[1] & 0x20) != 0;
+        }
+    }
+
+    private static byte[] readTile(FileStorage storage, Vector2i tile) throws IOException {
+        Optional<CompressedInputStream> in = storage.readMapTile("map", 0, tile);
+        assertTrue(in.isPresent());
+        try (InputStream data = in.get().decompress()) {
+            return data.readAllBytes();
+        }
+    }
+
+    private static byte[] compress(byte[] data, byte[] dictionary) throws IOException {
+        ByteArrayOutputStream byteOut = new ByteArrayOutputStream();
+        try (OutputStream out = Compression.DEFLATE_DICT.compress(byteOut, dictionary)) {
+            out.write(data);
+        }
+        return byteOut.toByteArray();
+    }
+
+    private static byte[] createSample(Random random) {
+        StringBuilder json = new StringBuilder("{\"type\":\"BufferGeometry\",\"data\":{\"attributes\":{\"position\":{\"type\":\"Float32Array\",\"itemSize\":3,\"array\":[");
+        for (int i = 0; i < 200; i++) json.append(random.nextInt(32)).append(',').append(64 + random.nextInt(8)).append(',');
+        json.append("0]},\"sunlight\":{\"type\":\"Float32Array\",\"itemSize\":1,\"array\":[15]}}}}");
+        return json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+}
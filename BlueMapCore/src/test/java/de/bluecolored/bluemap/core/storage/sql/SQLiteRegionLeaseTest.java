@@ -0,0 +1,194 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.sql;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.Compression;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the region-leases of a (local) sqlite-storage that is shared between two processes
+ */
+public class SQLiteRegionLeaseTest {
+
+    private static final String MAP_ID = "world";
+    private static final Vector2i REGION = new Vector2i(3, -2);
+
+    private static final int CLAIMED = 0, NOT_CLAIMED = 1;
+
+    @TempDir
+    Path tempDir;
+
+    private Path database;
+    private SQLiteStorage storage;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        database = tempDir.resolve("bluemap.db");
+        storage = createStorage(database);
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void testClaimAndExpire() throws Exception {
+        // node-a claims the region, so node-b can't claim it
+        assertEquals(OptionalLong.of(-1), storage.claimRegion(MAP_ID, REGION, "node-a", 60000));
+        assertEquals(NOT_CLAIMED, runNode("claim", "node-b"));
+
+        // node-a can renew and re-claim its own lease
+        assertTrue(storage.renewRegion(MAP_ID, REGION, "node-a", 60000));
+        assertTrue(storage.claimRegion(MAP_ID, REGION, "node-a", 60000).isPresent());
+        assertFalse(storage.renewRegion(MAP_ID, REGION, "node-b", 60000));
+
+        // the lease of node-a expires (e.g. because node-a stopped) and node-b takes over
+        assertTrue(storage.renewRegion(MAP_ID, REGION, "node-a", -1000));
+        assertEquals(CLAIMED, runNode("claim", "node-b"));
+        assertFalse(storage.renewRegion(MAP_ID, REGION, "node-a", 60000));
+
+        // node-a doesn't own the lease anymore, so releasing it has no effect
+        storage.releaseRegion(MAP_ID, REGION, "node-a", 1000);
+        assertTrue(storage.readRegionRenderTimes(MAP_ID).isEmpty());
+
+        // once node-b released the region, its render-time is stored and node-a can claim it again
+        assertEquals(CLAIMED, runNode("release", "node-b"));
+        assertEquals(Map.of(REGION, 2000L), storage.readRegionRenderTimes(MAP_ID));
+        assertEquals(OptionalLong.of(2000), storage.claimRegion(MAP_ID, REGION, "node-a", 60000));
+
+        // an older render-time never overwrites a newer one
+        storage.releaseRegion(MAP_ID, REGION, "node-a", 1000);
+        assertEquals(Map.of(REGION, 2000L), storage.readRegionRenderTimes(MAP_ID));
+    }
+
+    @Test
+    public void testTileLease() throws Exception {
+        Vector2i tile = new Vector2i(-3, 4);
+
+        assertTrue(storage.claimTile(MAP_ID, 1, tile, "node-a", 60000));
+        assertTrue(storage.claimTile(MAP_ID, 1, tile, "node-a", 60000));
+        assertFalse(storage.claimTile(MAP_ID, 1, tile, "node-b", 60000));
+
+        // leases are per lod
+        assertTrue(storage.claimTile(MAP_ID, 2, tile, "node-b", 60000));
+
+        storage.releaseTile(MAP_ID, 1, tile, "node-a");
+        assertTrue(storage.claimTile(MAP_ID, 1, tile, "node-b", 60000));
+
+        // an expired lease can be taken over
+        assertTrue(storage.claimTile(MAP_ID, 1, tile, "node-b", -1000));
+        assertTrue(storage.claimTile(MAP_ID, 1, tile, "node-a", 60000));
+    }
+
+    /**
+     * Runs an operation on the shared database in a separate process
+     */
+    private int runNode(String operation, String owner) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                SQLiteRegionLeaseTest.class.getName(),
+                database.toString(), operation, owner
+        ).inheritIO().start();
+
+        assertTrue(process.waitFor(60, TimeUnit.SECONDS), "Node-process did not finish in time");
+        return process.exitValue();
+    }
+
+    public static void main(String[] args) throws Exception {
+        SQLiteStorage storage = createStorage(Path.of(args[0]));
+        try {
+            String owner = args[2];
+            boolean success;
+            switch (args[1]) {
+                case "claim":
+                    success = storage.claimRegion(MAP_ID, REGION, owner, 60000).isPresent();
+                    break;
+                case "release":
+                    storage.releaseRegion(MAP_ID, REGION, owner, 2000);
+                    success = true;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown operation: " + args[1]);
+            }
+            System.exit(success ? CLAIMED : NOT_CLAIMED);
+        } finally {
+            storage.close();
+        }
+    }
+
+    static SQLiteStorage createStorage(Path database) throws Exception {
+        SQLiteStorage storage = new SQLiteStorage(new SQLStorageSettings() {
+            @Override
+            public Optional<URL> getDriverJar() {
+                return Optional.empty();
+            }
+
+            @Override
+            public Optional<String> getDriverClass() {
+                return Optional.of("org.sqlite.JDBC");
+            }
+
+            @Override
+            public String getConnectionUrl() {
+                return "jdbc:sqlite:" + database.toAbsolutePath().toString().replace(File.separatorChar, '/');
+            }
+
+            @Override
+            public Map<String, String> getConnectionProperties() {
+                return Map.of();
+            }
+
+            @Override
+            public int getMaxConnections() {
+                return 1;
+            }
+
+            @Override
+            public Compression getCompression() {
+                return Compression.GZIP;
+            }
+        });
+        storage.initialize();
+        return storage;
+    }
+
+}
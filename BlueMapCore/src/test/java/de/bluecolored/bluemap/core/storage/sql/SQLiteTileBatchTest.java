@@ -0,0 +1,126 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.storage.sql;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.storage.TileInfo;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests reading multiple tiles at once from a sqlite-storage, with more tiles than fit into a single query
+ */
+public class SQLiteTileBatchTest {
+
+    private static final String MAP_ID = "world";
+    private static final int STORED_TILES = 150, REQUESTED_TILES = 250;
+
+    @TempDir
+    Path tempDir;
+
+    private SQLiteStorage storage;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        storage = SQLiteRegionLeaseTest.createStorage(tempDir.resolve("bluemap.db"));
+
+        for (int lod = 0; lod <= 1; lod++) {
+            for (int i = 0; i < STORED_TILES; i++) {
+                try (OutputStream out = storage.writeMapTile(MAP_ID, lod, tile(i))) {
+                    out.write(content(lod, i));
+                }
+            }
+        }
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        storage.close();
+    }
+
+    @Test
+    public void testReadMapTiles() throws IOException {
+        for (int lod = 0; lod <= 1; lod++) {
+            Map<Vector2i, byte[]> read = new HashMap<>();
+            storage.readMapTiles(MAP_ID, lod, requestedTiles(), (tile, data) -> {
+                try (InputStream in = data.decompress()) {
+                    assertNull(read.put(tile, in.readAllBytes()), "Tile " + tile + " has been read twice");
+                }
+            });
+
+            assertEquals(STORED_TILES, read.size());
+            for (int i = 0; i < STORED_TILES; i++) {
+                assertArrayEquals(content(lod, i), read.get(tile(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testReadMapTileInfos() throws IOException {
+        for (int lod = 0; lod <= 1; lod++) {
+            Map<Vector2i, TileInfo> infos = storage.readMapTileInfos(MAP_ID, lod, requestedTiles());
+
+            assertEquals(STORED_TILES, infos.size());
+            for (int i = 0; i < STORED_TILES; i++) {
+                TileInfo info = infos.get(tile(i));
+                assertNotNull(info);
+                assertTrue(info.getSize() > 0);
+                assertEquals(storage.readMapTileInfo(MAP_ID, lod, tile(i)).orElseThrow().getSize(), info.getSize());
+                try (InputStream in = info.readMapTile().decompress()) {
+                    assertArrayEquals(content(lod, i), in.readAllBytes());
+                }
+            }
+        }
+    }
+
+    private static List<Vector2i> requestedTiles() {
+        List<Vector2i> tiles = new ArrayList<>();
+        for (int i = 0; i < REQUESTED_TILES; i++) tiles.add(tile(i));
+        return tiles;
+    }
+
+    private static Vector2i tile(int i) {
+        return new Vector2i(i % 20 - 10, i / 20 - 5);
+    }
+
+    private static byte[] content(int lod, int i) {
+        return ("tile " + i + " of lod " + lod).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstancePoolTest {
+
+    @Test
+    public void testWeightBudget() {
+        InstancePool<int[]> pool = new InstancePool<>(() -> new int[10], a -> a, a -> a.length, 25, -1);
+
+        int[] a = pool.claimInstance(), b = pool.claimInstance(), c = pool.claimInstance();
+        pool.recycleInstance(a);
+        pool.recycleInstance(b);
+        pool.recycleInstance(c); // doesn't fit anymore
+
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(20, pool.getPooledWeight());
+
+        assertSame(a, pool.claimInstance());
+        assertEquals(10, pool.getPooledWeight());
+    }
+
+    @Test
+    public void testTrimDropsUnusedInstances() {
+        InstancePool<int[]> pool = new InstancePool<>(() -> new int[10], a -> a, a -> a.length, Long.MAX_VALUE, -1);
+
+        int[] a = pool.claimInstance(), b = pool.claimInstance(), c = pool.claimInstance();
+        pool.recycleInstance(a);
+        pool.recycleInstance(b);
+        pool.recycleInstance(c);
+        pool.trim(); // starts tracking
+        assertEquals(3, pool.getPooledCount());
+
+        // only one instance is needed at a time
+        for (int i = 0; i < 5; i++) pool.recycleInstance(pool.claimInstance());
+        pool.trim();
+        assertEquals(1, pool.getPooledCount());
+
+        pool.trim();
+        assertEquals(0, pool.getPooledCount());
+        assertEquals(0, pool.getPooledWeight());
+    }
+
+}
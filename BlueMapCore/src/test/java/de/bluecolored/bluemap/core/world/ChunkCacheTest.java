@@ -0,0 +1,79 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import com.flowpowered.math.vector.Vector2i;
+import de.bluecolored.bluemap.core.util.SharedMemoryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkCacheTest {
+
+    @Test
+    public void testSharedMemoryBudget() {
+        SharedMemoryBudget budget = new SharedMemoryBudget(1000);
+        ChunkCache cache1 = new ChunkCache(pos -> EmptyChunk.INSTANCE, budget);
+        assertEquals(1000, cache1.getMemoryBudget());
+
+        ChunkCache cache2 = new ChunkCache(pos -> EmptyChunk.INSTANCE, budget);
+        assertEquals(500, cache1.getMemoryBudget());
+        assertEquals(500, cache2.getMemoryBudget());
+        assertEquals(2, budget.getCacheCount());
+    }
+
+    @Test
+    public void testReleaseResplitsMemoryBudget() {
+        SharedMemoryBudget budget = new SharedMemoryBudget(1000);
+        ChunkCache cache1 = new ChunkCache(pos -> EmptyChunk.INSTANCE, budget);
+        ChunkCache cache2 = new ChunkCache(pos -> EmptyChunk.INSTANCE, budget);
+
+        cache2.release();
+        assertEquals(1000, cache1.getMemoryBudget());
+        assertEquals(1, budget.getCacheCount());
+
+        cache2.get(new Vector2i(0, 0));
+        assertEquals(500, cache1.getMemoryBudget());
+        assertEquals(500, cache2.getMemoryBudget());
+        assertEquals(2, budget.getCacheCount());
+    }
+
+    @Test
+    public void testPrefetchIsNoMiss() throws InterruptedException {
+        ChunkCache cache = new ChunkCache(pos -> EmptyChunk.INSTANCE, 1000);
+        cache.prefetch(new Vector2i(1, 2));
+
+        long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (cache.getPrefetchCount() == 0 && System.nanoTime() < timeout) Thread.sleep(1);
+        assertEquals(1, cache.getPrefetchCount());
+
+        cache.get(new Vector2i(1, 2));
+        assertEquals(0, cache.getStats().missCount());
+        assertEquals(1, cache.getStats().hitCount());
+    }
+
+}
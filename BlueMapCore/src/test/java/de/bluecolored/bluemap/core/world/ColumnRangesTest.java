@@ -0,0 +1,63 @@
+/*
+ * This file is part of BlueMap, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) Blue (Lukas Rieger) <https://bluecolored.de>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.bluecolored.bluemap.core.world;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ColumnRangesTest {
+
+    @Test
+    public void testMergeAdjacent() {
+        ColumnRanges ranges = new ColumnRanges();
+        ranges.add(-64, -49);
+        ranges.add(-48, -33);
+        ranges.add(0, 15);
+        ranges.add(10, 20);
+
+        assertEquals(2, ranges.size());
+        assertEquals(-64, ranges.getMinY(0));
+        assertEquals(-33, ranges.getMaxY(0));
+        assertEquals(0, ranges.getMinY(1));
+        assertEquals(20, ranges.getMaxY(1));
+    }
+
+    @Test
+    public void testGrowAndClear() {
+        ColumnRanges ranges = new ColumnRanges();
+        ranges.add(5, 4);
+        assertTrue(ranges.isEmpty());
+
+        for (int i = 0; i < 20; i++) ranges.add(i * 32, i * 32 + 15);
+        assertEquals(20, ranges.size());
+        assertEquals(19 * 32 + 15, ranges.getMaxY(19));
+
+        ranges.clear();
+        assertTrue(ranges.isEmpty());
+    }
+
+}
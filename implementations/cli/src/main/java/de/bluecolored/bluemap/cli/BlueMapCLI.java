@@ -32,7 +32,9 @@
 import de.bluecolored.bluemap.common.config.CoreConfig;
 import de.bluecolored.bluemap.common.config.WebserverConfig;
 import de.bluecolored.bluemap.common.plugin.RegionFileWatchService;
+import de.bluecolored.bluemap.common.rendermanager.IdleResourceReleaser;
 import de.bluecolored.bluemap.common.rendermanager.MapUpdateTask;
+import de.bluecolored.bluemap.common.rendermanager.RegionLeaseManager;
 import de.bluecolored.bluemap.common.rendermanager.RenderManager;
 import de.bluecolored.bluemap.common.rendermanager.RenderTask;
 import de.bluecolored.bluemap.common.serverinterface.Player;
@@ -51,10 +53,12 @@
 import de.bluecolored.bluemap.core.util.FileHelper;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang3.time.DurationFormatUtils;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
 import java.net.BindException;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.file.Path;
@@ -63,14 +67,23 @@
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Pattern;
 
 public class BlueMapCLI implements ServerInterface {
 
+    private static final long DISTRIBUTED_LEASE_DURATION = TimeUnit.MINUTES.toMillis(1);
+
     private MinecraftVersion minecraftVersion = MinecraftVersion.LATEST_SUPPORTED;
     private Path configFolder;
 
     public void renderMaps(BlueMapService blueMap, boolean watch, boolean forceRender, boolean forceGenerateWebapp) throws ConfigurationException, IOException, InterruptedException {
+        renderMaps(blueMap, watch, forceRender, forceGenerateWebapp, null);
+    }
+
+    /**
+     * @param nodeName if not null, the rendering is shared with all other nodes rendering the same maps into the same
+     *                 (sql-)storage, each region is then only rendered by one of the nodes
+     */
+    public void renderMaps(BlueMapService blueMap, boolean watch, boolean forceRender, boolean forceGenerateWebapp, @Nullable String nodeName) throws ConfigurationException, IOException, InterruptedException {
 
         //metrics report
         if (blueMap.getConfigs().getCoreConfig().isMetrics()) Metrics.sendReportAsync("cli");
@@ -87,12 +100,26 @@ public void renderMaps(BlueMapService blueMap, boolean watch, boolean forceRende
         //load maps
         Map<String, BmMap> maps = blueMap.getMaps();
 
+        //distributed rendering
+        final RegionLeaseManager leaseManager;
+        if (nodeName != null) {
+            leaseManager = new RegionLeaseManager(nodeName, DISTRIBUTED_LEASE_DURATION);
+            Logger.global.logInfo("Sharing the rendering with other nodes as node '" + nodeName + "'");
+
+            for (BmMap map : maps.values()) {
+                if (RegionLeaseManager.supports(map)) map.enableSharedRendering();
+                else Logger.global.logWarning("The storage of map '" + map.getId() + "' can not be shared, this map will be fully rendered by this node!");
+            }
+        } else {
+            leaseManager = null;
+        }
+
         //watcher
         List<RegionFileWatchService> regionFileWatchServices = new ArrayList<>();
         if (watch) {
             for (BmMap map : maps.values()) {
                 try {
-                    RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, true);
+                    RegionFileWatchService watcher = new RegionFileWatchService(renderManager, map, true, leaseManager);
                     watcher.start();
                     regionFileWatchServices.add(watcher);
                 } catch (IOException ex) {
@@ -105,7 +132,7 @@ public void renderMaps(BlueMapService blueMap, boolean watch, boolean forceRende
         //update all maps
         int totalRegions = 0;
         for (BmMap map : maps.values()) {
-            MapUpdateTask updateTask = new MapUpdateTask(map, forceRender);
+            MapUpdateTask updateTask = new MapUpdateTask(map, forceRender, leaseManager);
             renderManager.scheduleRenderTask(updateTask);
             totalRegions += updateTask.getRegions().size();
         }
@@ -139,16 +166,23 @@ public void run() {
             @Override
             public void run() {
                 for (BmMap map : maps.values()) {
+                    if (leaseManager != null) leaseManager.syncRenderState(map);
                     map.save();
                 }
             }
         };
         timer.scheduleAtFixedRate(saveTask, TimeUnit.MINUTES.toMillis(2), TimeUnit.MINUTES.toMillis(2));
 
+        int idleMapTimeout = blueMap.getConfigs().getCoreConfig().getIdleMapTimeout();
+        TimerTask releaseTask = new IdleResourceReleaser(maps::values, TimeUnit.MINUTES.toMillis(idleMapTimeout));
+        if (idleMapTimeout > 0)
+            timer.scheduleAtFixedRate(releaseTask, TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(1));
+
         Runnable shutdown = () -> {
             Logger.global.logInfo("Stopping...");
             updateInfoTask.cancel();
             saveTask.cancel();
+            releaseTask.cancel();
             renderManager.stop();
 
             for (RegionFileWatchService watcher : regionFileWatchServices) {
@@ -165,6 +199,8 @@ public void run() {
             Logger.global.logInfo("Saving...");
             saveTask.run();
 
+            if (leaseManager != null) leaseManager.close();
+
             Logger.global.logInfo("Stopped.");
         };
 
@@ -199,9 +235,8 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
         for (var mapConfigEntry : blueMap.getConfigs().getMapConfigs().entrySet()) {
             Storage storage = blueMap.getStorage(mapConfigEntry.getValue().getStorage());
 
-            routingRequestHandler.register(
-                    "maps/" + Pattern.quote(mapConfigEntry.getKey()) + "/(.*)",
-                    "$1",
+            routingRequestHandler.registerPrefix(
+                    "maps/" + mapConfigEntry.getKey() + "/",
                     new MapRequestHandler(mapConfigEntry.getKey(), storage)
             );
         }
@@ -225,7 +260,11 @@ public void startWebserver(BlueMapService blueMap, boolean verbose) throws IOExc
 
         try {
             //noinspection resource
-            HttpServer webServer = new HttpServer(handler);
+            HttpServer webServer = new HttpServer(
+                    handler,
+                    config.getMaxRequestsPerConnection(),
+                    TimeUnit.SECONDS.toMillis(config.getIdleTimeout())
+            );
             webServer.bind(new InetSocketAddress(
                     config.resolveIp(),
                     config.getPort()
@@ -362,7 +401,14 @@ public static void main(String[] args) {
                 boolean watch = cmd.hasOption("u");
                 boolean force = cmd.hasOption("f");
                 boolean generateWebappFiles = cmd.hasOption("g");
-                cli.renderMaps(blueMap, watch, force, generateWebappFiles);
+
+                String nodeName = null;
+                if (cmd.hasOption("d")) {
+                    nodeName = cmd.getOptionValue("d");
+                    if (nodeName == null) nodeName = createNodeName();
+                }
+
+                cli.renderMaps(blueMap, watch, force, generateWebappFiles, nodeName);
             } else {
                 if (cmd.hasOption("g")) {
                     noActions = false;
@@ -461,6 +507,16 @@ private static Options createOptions() {
 
         options.addOption("u", "watch", false, "Watches for file-changes after rendering and updates the map");
 
+        options.addOption(
+                Option.builder("d")
+                .longOpt("distributed")
+                .hasArg()
+                .optionalArg(true)
+                .argName("node-name")
+                .desc("Shares the rendering with other BlueMap-CLI nodes that render the same maps into the same sql-storage. Each node needs a unique name, defaults to the host-name and process-id.")
+                .build()
+            );
+
         options.addOption("V", "version", false, "Print the current BlueMap version");
 
         return options;
@@ -496,12 +552,25 @@ private static void printHelp() {
         footer.append("Render the configured maps\n\n");
         footer.append(command).append(" -w\n");
         footer.append("Start only the webserver without doing anything else\n\n");
+        footer.append(command).append(" -r -d node-1\n");
+        footer.append("Render the configured maps together with other nodes that use the same sql-storage\n\n");
         footer.append(command).append(" -ru\n");
         footer.append("Render the configured maps and then keeps watching the world-files and updates the map once something changed.\n\n");
 
         formatter.printHelp(command + " [options]", "\nOptions:", createOptions(), "\n" + footer);
     }
 
+    private static String createNodeName() {
+        String hostName;
+        try {
+            hostName = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            hostName = "unknown";
+        }
+
+        return hostName + "-" + ProcessHandle.current().pid();
+    }
+
     private static void printVersion() {
         System.out.printf("%s\n%s\n", BlueMap.VERSION, BlueMap.GIT_HASH);
     }